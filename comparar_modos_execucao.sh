@@ -0,0 +1,89 @@
+#!/bin/bash
+
+# Compara o modo "pool" (50 threads de plataforma) com o modo "virtual"
+# (uma virtual thread por conexão) do ServidorItensCardapioComSocket.
+#
+# Cenários:
+# 1. Conexões ociosas: abre CONEXOES_OCIOSAS sockets que não enviam nada e mede
+#    quanto tempo uma requisição normal leva para ser atendida.
+# 2. Carga concorrente: CONCORRENCIA clientes curl em paralelo (keep-alive)
+#    fazendo TOTAL requisições GET /itens-cardapio; mostra vazão e latências.
+#
+# O servidor roda com uma gravação JFR do evento jdk.VirtualThreadPinned (virtual thread bloqueada
+# presa à carrier thread), limite 0 ms; ao final de cada modo são contados os eventos gravados
+# e os stack traces ficam em /tmp/servidor_<modo>_pinning.txt.
+#
+# Uso: ./comparar_modos_execucao.sh (requer Java 21+ e as classes compiladas em build/classes/java/main)
+
+CLASSPATH_SERVIDOR="${CLASSPATH_SERVIDOR:-build/classes/java/main}"
+URL="http://localhost:8000/itens-cardapio"
+CONEXOES_OCIOSAS="${CONEXOES_OCIOSAS:-60}"
+CONCORRENCIA="${CONCORRENCIA:-200}"
+TOTAL="${TOTAL:-5000}"
+
+iniciar_servidor() {
+    rm -f "/tmp/servidor_$1.jfr"
+    java -Dcardapio.servidor.modo="$1" \
+        -XX:StartFlightRecording=filename="/tmp/servidor_$1.jfr",jdk.VirtualThreadPinned#threshold=0ms \
+        -cp "$CLASSPATH_SERVIDOR" mx.florinda.cardapio.ServidorItensCardapioComSocket > "/tmp/servidor_$1.log" 2>&1 &
+    PID_SERVIDOR=$!
+    for _ in $(seq 1 50); do
+        curl -s -o /dev/null "$URL/total" && return 0
+        sleep 0.1
+    done
+    echo "Servidor no modo $1 não respondeu"
+    exit 1
+}
+
+parar_servidor() {
+    kill "$PID_SERVIDOR" 2>/dev/null
+    wait "$PID_SERVIDOR" 2>/dev/null
+}
+
+cenario_conexoes_ociosas() {
+    # Abre sockets pelo /dev/tcp do bash e não envia nada (cliente lento/ocioso)
+    local fds=()
+    for i in $(seq 1 "$CONEXOES_OCIOSAS"); do
+        exec {fd}<>/dev/tcp/localhost/8000
+        fds+=("$fd")
+    done
+    sleep 0.5
+    local tempo
+    tempo=$(curl -s -o /dev/null -w '%{time_total}' "$URL/total")
+    echo "  GET /itens-cardapio/total com $CONEXOES_OCIOSAS conexões ociosas: ${tempo}s"
+    for fd in "${fds[@]}"; do
+        exec {fd}>&-
+    done
+}
+
+cenario_carga_concorrente() {
+    local inicio fim
+    inicio=$(date +%s.%N)
+    # curl --parallel reutiliza as conexões (keep-alive) e imprime o tempo de cada transferência
+    seq 1 "$TOTAL" | sed "s|.*|url = \"$URL\"\noutput = /dev/null|" \
+        | curl -s --parallel --parallel-max "$CONCORRENCIA" -w '%{time_total}\n' -K - > /tmp/latencias.txt 2>/dev/null
+    fim=$(date +%s.%N)
+    sort -n /tmp/latencias.txt | awk -v total="$TOTAL" -v inicio="$inicio" -v fim="$fim" '
+        { v[NR] = $1 }
+        END {
+            printf "  %d requisições, %d clientes: %.0f req/s | p50 %.1fms | p99 %.1fms | max %.1fms\n",
+                NR, '"$CONCORRENCIA"', NR / (fim - inicio),
+                v[int(NR * 0.50)] * 1000, v[int(NR * 0.99)] * 1000, v[NR] * 1000
+        }'
+}
+
+for modo in pool virtual; do
+    echo "=== Modo: $modo ==="
+    iniciar_servidor "$modo"
+    cenario_conexoes_ociosas
+    cenario_carga_concorrente
+    parar_servidor
+    # A gravação é gravada no arquivo quando a JVM termina
+    jfr print --events jdk.VirtualThreadPinned "/tmp/servidor_$modo.jfr" > "/tmp/servidor_${modo}_pinning.txt"
+    fixadas=$(grep -c "^jdk.VirtualThreadPinned" "/tmp/servidor_${modo}_pinning.txt")
+    echo "  Eventos jdk.VirtualThreadPinned (JFR): $fixadas"
+    if [ "$fixadas" -gt 0 ]; then
+        echo "  ATENÇÃO: pinning de virtual thread detectado (veja /tmp/servidor_${modo}_pinning.txt)"
+    fi
+    echo ""
+done
@@ -0,0 +1,179 @@
+package mx.florinda.cardapio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operações do catálogo com 10 a 1.000.000 de itens em cada estrutura candidata:
+ * - skiplist: ConcurrentSkipListMap (base do CatalogoCardapio, ver ArrayList)
+ * - hash: ConcurrentHashMap (busca O(1), mas sem ordem: a listagem e o cursor precisariam ordenar)
+ * - treemap: TreeMap com synchronized (ordenado, com um lock para leituras e escritas)
+ * - catalogo: o CatalogoCardapio completo (versões por ID e ouvintes)
+ * - compacto: ArmazemCompactoItens (colunas de tipos primitivos)
+ *
+ * - buscar: ID aleatório existente
+ * - substituir: grava um item existente de novo (como PUT /preco)
+ * - inserirRemover: insere um ID novo no fim e remove em seguida (como POST + DELETE)
+ * - percorrer: lê todos os itens em ordem de ID (a ordem do hash é a da tabela)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CatalogoBenchmark {
+
+    /**
+     * Operações comuns às estruturas comparadas
+     */
+    private interface Estrutura {
+        ItemCardapio buscar(long id);
+
+        void gravar(ItemCardapio item);
+
+        void remover(long id);
+
+        Iterable<ItemCardapio> itens();
+    }
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int itens;
+
+    @Param({"skiplist", "hash", "treemap", "catalogo", "compacto"})
+    private String estrutura;
+
+    private Estrutura alvo;
+    private ItemCardapio[] existentes;
+    private ItemCardapio novo;
+
+    @Setup
+    public void preparar() {
+        alvo = criar(estrutura);
+        List<ItemCardapio> modelos = new Database().listaDeItensCardapio();
+        existentes = new ItemCardapio[itens];
+        for (int i = 0; i < itens; i++) {
+            existentes[i] = ComparacaoMemoriaCatalogo.gerarItem(modelos, i);
+            alvo.gravar(existentes[i]);
+        }
+        novo = ComparacaoMemoriaCatalogo.gerarItem(modelos, itens);
+    }
+
+    private static Estrutura criar(String nome) {
+        return switch (nome) {
+            case "skiplist" -> doMapa(new ConcurrentSkipListMap<>());
+            case "hash" -> doMapa(new ConcurrentHashMap<>());
+            case "treemap" -> doMapa(Collections.synchronizedSortedMap(new TreeMap<>()));
+            case "catalogo" -> {
+                CatalogoCardapio catalogo = new CatalogoCardapio();
+                yield new Estrutura() {
+                    @Override
+                    public ItemCardapio buscar(long id) {
+                        return catalogo.buscar(id);
+                    }
+
+                    @Override
+                    public void gravar(ItemCardapio item) {
+                        catalogo.adicionar(item);
+                    }
+
+                    @Override
+                    public void remover(long id) {
+                        catalogo.remover(id);
+                    }
+
+                    @Override
+                    public Iterable<ItemCardapio> itens() {
+                        return catalogo.itens();
+                    }
+                };
+            }
+            case "compacto" -> {
+                ArmazemCompactoItens armazem = new ArmazemCompactoItens();
+                yield new Estrutura() {
+                    @Override
+                    public ItemCardapio buscar(long id) {
+                        return armazem.buscar(id);
+                    }
+
+                    @Override
+                    public void gravar(ItemCardapio item) {
+                        armazem.gravar(item);
+                    }
+
+                    @Override
+                    public void remover(long id) {
+                        armazem.remover(id);
+                    }
+
+                    @Override
+                    public Iterable<ItemCardapio> itens() {
+                        return armazem.itens();
+                    }
+                };
+            }
+            default -> throw new IllegalArgumentException("Estrutura desconhecida: " + nome);
+        };
+    }
+
+    private static Estrutura doMapa(Map<Long, ItemCardapio> mapa) {
+        return new Estrutura() {
+            @Override
+            public ItemCardapio buscar(long id) {
+                return mapa.get(id);
+            }
+
+            @Override
+            public void gravar(ItemCardapio item) {
+                mapa.put(item.id(), item);
+            }
+
+            @Override
+            public void remover(long id) {
+                mapa.remove(id);
+            }
+
+            @Override
+            public Iterable<ItemCardapio> itens() {
+                // Com uma thread só, o synchronizedSortedMap pode ser percorrido sem o lock do mapa
+                return mapa.values();
+            }
+        };
+    }
+
+    @Benchmark
+    public ItemCardapio buscar() {
+        return alvo.buscar(existentes[ThreadLocalRandom.current().nextInt(itens)].id());
+    }
+
+    @Benchmark
+    public void substituir() {
+        alvo.gravar(existentes[ThreadLocalRandom.current().nextInt(itens)]);
+    }
+
+    @Benchmark
+    public void inserirRemover() {
+        alvo.gravar(novo);
+        alvo.remover(novo.id());
+    }
+
+    @Benchmark
+    public void percorrer(Blackhole bh) {
+        for (ItemCardapio item : alvo.itens()) {
+            bh.consume(item);
+        }
+    }
+}
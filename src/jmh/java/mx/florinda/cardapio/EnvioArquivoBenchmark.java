@@ -0,0 +1,173 @@
+package mx.florinda.cardapio;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envio do cardapio.json publicado para um socket TCP local, como em GET /cardapio.json
+ *
+ * - readString: Files.readString + getBytes + write, o caminho do ServidorItensCardapio antes do cache
+ * - bufferHeap: FileChannel.read num buffer de 64 KB no heap + write, a cópia "manual" sem carregar o arquivo todo
+ * - transferTo: FileChannel.transferTo direto para o SocketChannel (sendfile no Linux), como o ServidorItensCardapioComSocket
+ *
+ * Cada operação abre o arquivo (o page cache já está quente depois do warmup) e envia o arquivo
+ * inteiro; uma thread separada lê e descarta do outro lado da conexão. Além das operações/s, os
+ * contadores auxiliares mostram, por segundo:
+ * - bytes: vazão do envio
+ * - nanosCpu: tempo de CPU (usuário + kernel) da thread que envia; dividido por 1e9 é a fração de um núcleo
+ *   usada, e dividido por bytes, o custo de CPU por byte enviado
+ * Com -Pbenchmarks=EnvioArquivoBenchmark e o profiler gc (jmh { profilers = ['gc'] }) também aparece
+ * a alocação por operação (o arquivo inteiro duas vezes no readString, quase nada no transferTo).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EnvioArquivoBenchmark {
+
+    // ~200 bytes por item: ~2 MB e ~50 MB
+    @Param({"10000", "250000"})
+    private int itens;
+
+    private Path arquivo;
+    private ServerSocketChannel servidor;
+    private SocketChannel envio;
+    private SocketChannel recepcao;
+    private Thread leitor;
+
+    /**
+     * Bytes enviados e CPU gasto pela thread do benchmark (normalizados por segundo pelo JMH)
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Consumo {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        public long bytes;
+        public long nanosCpu;
+
+        @Setup(Level.Iteration)
+        public void zerar() {
+            bytes = 0;
+            nanosCpu = 0;
+        }
+
+        long cpuAtual() {
+            return THREADS.getCurrentThreadCpuTime();
+        }
+
+        void registrar(long enviados, long cpuInicio) {
+            bytes += enviados;
+            nanosCpu += THREADS.getCurrentThreadCpuTime() - cpuInicio;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        List<ItemCardapio> modelos = new Database().listaDeItensCardapio();
+        List<ItemCardapio> lista = new ArrayList<>(itens);
+        for (int i = 0; i < itens; i++) {
+            lista.add(ComparacaoMemoriaCatalogo.gerarItem(modelos, i));
+        }
+        arquivo = Files.createTempFile("cardapio-benchmark", ".json");
+        Files.write(arquivo, EscritorJsonItemCardapio.paraBytes(lista, itens * 200 + 2));
+
+        servidor = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        envio = SocketChannel.open(servidor.getLocalAddress());
+        recepcao = servidor.accept();
+        leitor = new Thread(this::descartar, "benchmark-leitor");
+        leitor.setDaemon(true);
+        leitor.start();
+    }
+
+    /**
+     * Outro lado da conexão: lê e descarta tudo, para o envio nunca ficar parado no buffer do socket
+     */
+    private void descartar() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+        try {
+            while (recepcao.read(buffer) >= 0) {
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            // conexão fechada no fim do trial
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() throws IOException, InterruptedException {
+        envio.close();
+        leitor.join(1000);
+        recepcao.close();
+        servidor.close();
+        Files.deleteIfExists(arquivo);
+    }
+
+    @Benchmark
+    public void readString(Consumo consumo) throws IOException {
+        long cpu = consumo.cpuAtual();
+        String json = Files.readString(arquivo);
+        ByteBuffer buffer = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+        long tamanho = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            envio.write(buffer);
+        }
+        consumo.registrar(tamanho, cpu);
+    }
+
+    @Benchmark
+    public void bufferHeap(Consumo consumo) throws IOException {
+        long cpu = consumo.cpuAtual();
+        long enviados = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            while (canal.read(buffer) > 0) {
+                buffer.flip();
+                enviados += buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    envio.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        consumo.registrar(enviados, cpu);
+    }
+
+    @Benchmark
+    public void transferTo(Consumo consumo) throws IOException {
+        long cpu = consumo.cpuAtual();
+        long enviados = 0;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            while (enviados < tamanho) {
+                enviados += canal.transferTo(enviados, tamanho - enviados, envio);
+            }
+        }
+        consumo.registrar(enviados, cpu);
+    }
+}
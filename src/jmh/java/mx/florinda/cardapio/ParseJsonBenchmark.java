@@ -0,0 +1,60 @@
+package mx.florinda.cardapio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing manual do body de POST /itens-cardapio e escape de Strings em JSON,
+ * ambos no ServidorItensCardapioComSocket
+ *
+ * extrairValor é medido no primeiro e no último campo do body, já que ele procura
+ * o nome do campo com indexOf a partir do início.
+ *
+ * Chamar os métodos inicializa o ServidorItensCardapioComSocket (catálogo e índices); a task
+ * jmh roda com cardapio.wal.ativo=false para isso não criar o log de escrita em dados/.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParseJsonBenchmark {
+
+    private final String body = """
+        {"nome": "Sanduíche de presunto", "descricao": "Pão, presunto e queijo, com \\"molho especial\\"",
+         "categoria": "PRATOS_PRINCIPAIS", "preco": "25.90", "precoComDesconto": "22.50"}""";
+    // Mesmo recorte usado por parseJsonParaItemCardapio (sem as chaves externas)
+    private final String campos = body.substring(1, body.length() - 1);
+    private final String textoSimples = "Sanduiche de presunto e queijo";
+    private final String textoComEscapes = "Linha 1\nLinha 2\t\"citação\" com \\ barra";
+    private long proximoId = 1;
+
+    @Benchmark
+    public ItemCardapio parseJsonParaItemCardapio() {
+        return ServidorItensCardapioComSocket.parseJsonParaItemCardapio(body, () -> proximoId++);
+    }
+
+    @Benchmark
+    public String extrairValorPrimeiroCampo() {
+        return ServidorItensCardapioComSocket.extrairValor(campos, "nome");
+    }
+
+    @Benchmark
+    public String extrairValorUltimoCampo() {
+        return ServidorItensCardapioComSocket.extrairValor(campos, "precoComDesconto");
+    }
+
+    @Benchmark
+    public String escaparJsonSemEscapes() {
+        return ServidorItensCardapioComSocket.escaparJson(textoSimples);
+    }
+
+    @Benchmark
+    public String escaparJsonComEscapes() {
+        return ServidorItensCardapioComSocket.escaparJson(textoComEscapes);
+    }
+}
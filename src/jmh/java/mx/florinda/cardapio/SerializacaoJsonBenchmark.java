@@ -0,0 +1,88 @@
+package mx.florinda.cardapio;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialização de itens para JSON: EscritorJsonItemCardapio (usado pelos servidores)
+ * contra o Gson (como em GeradorItensCardapioJSON, com e sem pretty printing)
+ *
+ * - item: um único item, como em GET /itens-cardapio/{id}
+ * - listagem: a lista inteira num byte[], como no cache de GET /itens-cardapio
+ * - listagemEmBlocos: a lista em blocos de 16 KB, como na listagem enviada em chunks
+ *
+ * Os tempos são por operação; divida pelo número de itens para comparar os tamanhos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializacaoJsonBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int itens;
+
+    private List<ItemCardapio> lista;
+    private ItemCardapio item;
+    private Gson gson;
+    private Gson gsonFormatado;
+
+    @Setup
+    public void preparar() {
+        List<ItemCardapio> modelos = new Database().listaDeItensCardapio();
+        lista = new ArrayList<>(itens);
+        for (int i = 0; i < itens; i++) {
+            lista.add(ComparacaoMemoriaCatalogo.gerarItem(modelos, i));
+        }
+        item = lista.get(0);
+        gson = new Gson();
+        gsonFormatado = new GsonBuilder().setPrettyPrinting().create();
+    }
+
+    @Benchmark
+    public byte[] itemEscritor() {
+        return EscritorJsonItemCardapio.paraBytes(item);
+    }
+
+    @Benchmark
+    public String itemGson() {
+        return gson.toJson(item);
+    }
+
+    @Benchmark
+    public byte[] listagemEscritor() {
+        return EscritorJsonItemCardapio.paraBytes(lista, itens * 200 + 2);
+    }
+
+    @Benchmark
+    public void listagemEmBlocosEscritor(Blackhole bh) {
+        EscritorJsonItemCardapio.Blocos blocos = new EscritorJsonItemCardapio.Blocos(lista);
+        ByteBuffer bloco;
+        while ((bloco = blocos.proximoBloco()) != null) {
+            bh.consume(bloco);
+        }
+    }
+
+    @Benchmark
+    public String listagemGson() {
+        return gson.toJson(lista);
+    }
+
+    @Benchmark
+    public String listagemGsonFormatado() {
+        return gsonFormatado.toJson(lista);
+    }
+}
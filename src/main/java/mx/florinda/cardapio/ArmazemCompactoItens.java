@@ -0,0 +1,378 @@
+package mx.florinda.cardapio;
+
+import mx.florinda.cardapio.ItemCardapio.CategoriaCardapio;
+
+import java.math.BigDecimal;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Armazenamento compacto de itens do cardápio, alternativo ao ConcurrentSkipListMap de ArrayList.mapaDeItensCardapio()
+ *
+ * Em vez de um objeto por item (nó da skip list + Long + ItemCardapio + dois BigDecimal),
+ * os campos ficam em colunas de tipos primitivos, ordenadas por ID:
+ * - id, preço e preço com desconto em long[] (preços em centavos)
+ * - categoria em byte[] (ordinal do enum)
+ * - nome e descrição em int[], apontando para um pool de textos sem repetição
+ *
+ * São cerca de 33 bytes por item mais os textos distintos, contra centenas de bytes por item
+ * no mapa (veja ComparacaoMemoriaCatalogo). Os ItemCardapio são montados na leitura, como visões.
+ *
+ * Preços: só são aceitos valores com até 2 casas decimais (IllegalArgumentException caso
+ * contrário), e são devolvidos sempre com escala 2 (ex: 5 vira 5.00).
+ *
+ * Concorrência: escritas usam o lock exclusivo de um StampedLock; buscar() tenta primeiro
+ * uma leitura otimista sem lock, refeita com o lock de leitura se uma escrita acontecer no meio.
+ * Listagens copiam os itens em blocos e são fracamente consistentes, como as visões do mapa.
+ *
+ * Remoções só marcam a linha (a categoria vira REMOVIDO); as colunas são compactadas quando
+ * as linhas removidas passam da metade. Inserir um ID maior que todos (o caso comum, com
+ * IDs sequenciais) é O(1) amortizado; um ID no meio desloca as colunas, O(n).
+ * Textos do pool não são liberados quando o último item que os usa é removido.
+ */
+public final class ArmazemCompactoItens {
+
+    private static final CategoriaCardapio[] CATEGORIAS = CategoriaCardapio.values();
+    private static final byte SEM_CATEGORIA = -1;
+    private static final byte REMOVIDO = -2;
+    private static final long SEM_PRECO = Long.MIN_VALUE;
+    private static final int SEM_TEXTO = -1;
+    private static final int ITENS_POR_BLOCO = 256;
+
+    private final StampedLock trava = new StampedLock();
+    private final PoolTextos textos = new PoolTextos();
+
+    // Colunas: a linha i de cada array é o mesmo item; só as 'linhas' primeiras posições são usadas
+    private long[] ids;
+    private long[] precos;
+    private long[] precosComDesconto;
+    private byte[] categorias;
+    private int[] nomes;
+    private int[] descricoes;
+    private int linhas;
+    private int removidas;
+
+    public ArmazemCompactoItens() {
+        this(1024);
+    }
+
+    public ArmazemCompactoItens(int capacidadeInicial) {
+        int capacidade = Math.max(16, capacidadeInicial);
+        ids = new long[capacidade];
+        precos = new long[capacidade];
+        precosComDesconto = new long[capacidade];
+        categorias = new byte[capacidade];
+        nomes = new int[capacidade];
+        descricoes = new int[capacidade];
+    }
+
+    /**
+     * Item com o ID (montado agora), ou null se não existir
+     */
+    public ItemCardapio buscar(long id) {
+        long stamp = trava.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                ItemCardapio item = ler(id);
+                if (trava.validate(stamp)) {
+                    return item;
+                }
+            } catch (RuntimeException e) {
+                // Colunas lidas no meio de uma escrita (ex: índice fora do array): refaz com o lock
+            }
+        }
+        stamp = trava.readLock();
+        try {
+            return ler(id);
+        } finally {
+            trava.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Insere ou substitui o item com o mesmo ID, retornando o anterior (null se não existia)
+     */
+    public ItemCardapio gravar(ItemCardapio item) {
+        long id = item.id();
+        long preco = paraCentavos(item.preco());
+        long precoComDesconto = paraCentavos(item.precoComDesconto());
+        byte categoria = item.categoria() == null ? SEM_CATEGORIA : (byte) item.categoria().ordinal();
+
+        long stamp = trava.writeLock();
+        try {
+            int nome = textos.indice(item.nome());
+            int descricao = textos.indice(item.descricao());
+            int linha = linhas > 0 && ids[linhas - 1] < id ? -(linhas + 1) : posicao(id);
+            ItemCardapio anterior = null;
+            if (linha >= 0) {
+                if (categorias[linha] == REMOVIDO) {
+                    removidas--;
+                } else {
+                    anterior = montar(linha);
+                }
+            } else {
+                linha = -(linha + 1);
+                abrirLinha(linha);
+                ids[linha] = id;
+            }
+            precos[linha] = preco;
+            precosComDesconto[linha] = precoComDesconto;
+            categorias[linha] = categoria;
+            nomes[linha] = nome;
+            descricoes[linha] = descricao;
+            return anterior;
+        } finally {
+            trava.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove o item pelo ID, retornando o item removido ou null se não existia
+     */
+    public ItemCardapio remover(long id) {
+        long stamp = trava.writeLock();
+        try {
+            int linha = posicao(id);
+            if (linha < 0 || categorias[linha] == REMOVIDO) {
+                return null;
+            }
+            ItemCardapio removido = montar(linha);
+            categorias[linha] = REMOVIDO;
+            removidas++;
+            if (removidas > linhas / 2) {
+                compactar();
+            }
+            return removido;
+        } finally {
+            trava.unlockWrite(stamp);
+        }
+    }
+
+    public int tamanho() {
+        long stamp = trava.readLock();
+        try {
+            return linhas - removidas;
+        } finally {
+            trava.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Quantidade de textos distintos guardados no pool
+     */
+    public int textosDistintos() {
+        long stamp = trava.readLock();
+        try {
+            return textos.quantidade;
+        } finally {
+            trava.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Visão dos itens ordenados por ID (sem cópia do armazenamento; reflete alterações concorrentes)
+     */
+    public Collection<ItemCardapio> itens() {
+        return itensDepoisDe(Long.MIN_VALUE);
+    }
+
+    /**
+     * Visão dos itens com ID maior que o informado, em ordem de ID (mesmo uso de
+     * CatalogoCardapio.itensDepoisDe na paginação por cursor). size() é o total do armazenamento.
+     */
+    public Collection<ItemCardapio> itensDepoisDe(long id) {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<ItemCardapio> iterator() {
+                return new IteradorEmBlocos(id);
+            }
+
+            @Override
+            public int size() {
+                return tamanho();
+            }
+        };
+    }
+
+    // ---------------------------------------------------------------- colunas (chamados com o lock)
+
+    private ItemCardapio ler(long id) {
+        int linha = posicao(id);
+        return linha < 0 || categorias[linha] == REMOVIDO ? null : montar(linha);
+    }
+
+    private ItemCardapio montar(int linha) {
+        byte categoria = categorias[linha];
+        return new ItemCardapio(ids[linha], textos.texto(nomes[linha]), textos.texto(descricoes[linha]),
+            categoria == SEM_CATEGORIA ? null : CATEGORIAS[categoria],
+            deCentavos(precos[linha]), deCentavos(precosComDesconto[linha]));
+    }
+
+    /**
+     * Busca binária na coluna de IDs (linhas removidas incluídas): linha do ID, ou
+     * -(ponto de inserção) - 1 (mesma convenção de Arrays.binarySearch)
+     */
+    private int posicao(long id) {
+        return Arrays.binarySearch(ids, 0, linhas, id);
+    }
+
+    /**
+     * Abre espaço para uma linha nova na posição, deslocando as seguintes
+     */
+    private void abrirLinha(int linha) {
+        if (linhas == ids.length) {
+            int capacidade = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacidade);
+            precos = Arrays.copyOf(precos, capacidade);
+            precosComDesconto = Arrays.copyOf(precosComDesconto, capacidade);
+            categorias = Arrays.copyOf(categorias, capacidade);
+            nomes = Arrays.copyOf(nomes, capacidade);
+            descricoes = Arrays.copyOf(descricoes, capacidade);
+        }
+        int seguintes = linhas - linha;
+        if (seguintes > 0) {
+            System.arraycopy(ids, linha, ids, linha + 1, seguintes);
+            System.arraycopy(precos, linha, precos, linha + 1, seguintes);
+            System.arraycopy(precosComDesconto, linha, precosComDesconto, linha + 1, seguintes);
+            System.arraycopy(categorias, linha, categorias, linha + 1, seguintes);
+            System.arraycopy(nomes, linha, nomes, linha + 1, seguintes);
+            System.arraycopy(descricoes, linha, descricoes, linha + 1, seguintes);
+        }
+        linhas++;
+    }
+
+    /**
+     * Descarta as linhas removidas, mantendo a ordem por ID
+     */
+    private void compactar() {
+        int destino = 0;
+        for (int i = 0; i < linhas; i++) {
+            if (categorias[i] == REMOVIDO) {
+                continue;
+            }
+            ids[destino] = ids[i];
+            precos[destino] = precos[i];
+            precosComDesconto[destino] = precosComDesconto[i];
+            categorias[destino] = categorias[i];
+            nomes[destino] = nomes[i];
+            descricoes[destino] = descricoes[i];
+            destino++;
+        }
+        linhas = destino;
+        removidas = 0;
+    }
+
+    static long paraCentavos(BigDecimal valor) {
+        if (valor == null) {
+            return SEM_PRECO;
+        }
+        try {
+            long centavos = valor.movePointRight(2).longValueExact();
+            if (centavos != SEM_PRECO) {
+                return centavos;
+            }
+        } catch (ArithmeticException e) {
+            // cai no erro abaixo
+        }
+        throw new IllegalArgumentException("Preço não cabe em centavos: " + valor.toPlainString());
+    }
+
+    static BigDecimal deCentavos(long centavos) {
+        return centavos == SEM_PRECO ? null : BigDecimal.valueOf(centavos, 2);
+    }
+
+    /**
+     * Percorre os itens copiando até ITENS_POR_BLOCO por vez com o lock de leitura;
+     * o próximo bloco recomeça depois do último ID entregue
+     */
+    private final class IteradorEmBlocos implements Iterator<ItemCardapio> {
+
+        private final ItemCardapio[] bloco = new ItemCardapio[ITENS_POR_BLOCO];
+        private int tamanhoBloco;
+        private int indice;
+        private long ultimoId;
+        private boolean fim;
+
+        IteradorEmBlocos(long depoisDe) {
+            this.ultimoId = depoisDe;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (indice < tamanhoBloco) {
+                return true;
+            }
+            if (fim) {
+                return false;
+            }
+            carregarBloco();
+            return indice < tamanhoBloco;
+        }
+
+        private void carregarBloco() {
+            Arrays.fill(bloco, 0, tamanhoBloco, null);
+            tamanhoBloco = 0;
+            indice = 0;
+            long stamp = trava.readLock();
+            try {
+                int linha = posicao(ultimoId);
+                linha = linha >= 0 ? linha + 1 : -(linha + 1);
+                for (; linha < linhas && tamanhoBloco < bloco.length; linha++) {
+                    if (categorias[linha] != REMOVIDO) {
+                        bloco[tamanhoBloco++] = montar(linha);
+                    }
+                }
+                fim = linha >= linhas;
+            } finally {
+                trava.unlockRead(stamp);
+            }
+            if (tamanhoBloco > 0) {
+                ultimoId = bloco[tamanhoBloco - 1].id();
+            }
+        }
+
+        @Override
+        public ItemCardapio next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return bloco[indice++];
+        }
+    }
+
+    /**
+     * Textos sem repetição: cada texto distinto é guardado uma vez e referenciado pelo índice
+     */
+    private static final class PoolTextos {
+
+        private final Map<String, Integer> indices = new HashMap<>();
+        private String[] textos = new String[256];
+        private int quantidade;
+
+        int indice(String texto) {
+            if (texto == null) {
+                return SEM_TEXTO;
+            }
+            Integer existente = indices.get(texto);
+            if (existente != null) {
+                return existente;
+            }
+            if (quantidade == textos.length) {
+                textos = Arrays.copyOf(textos, quantidade * 2);
+            }
+            textos[quantidade] = texto;
+            indices.put(texto, quantidade);
+            return quantidade++;
+        }
+
+        String texto(int indice) {
+            return indice == SEM_TEXTO ? null : textos[indice];
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package mx.florinda.cardapio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Arquivo de snapshot do CatalogoCardapio: todos os itens em formato binário compacto,
+ * ordenados por ID, com um índice no fim do arquivo
+ *
+ * Na inicialização o arquivo é mapeado em memória (FileChannel.map) e entregue ao catálogo
+ * como base: abrir custa a conferência do cabeçalho, do índice e do CRC de cada item (uma
+ * passada sequencial pelo arquivo, sem decodificar nada), e cada item só é decodificado
+ * quando alguém o lê. Nada é copiado para o heap.
+ *
+ * Formato (big-endian):
+ *   cabeçalho (64 bytes): int magia | int formato | long LSN | long maior ID | int quantidade |
+ *                         long posição do índice | int CRC32C do índice | int CRC32C do cabeçalho
+ *   itens:  int tamanho | int CRC32C (versão + item) | long versão | item (mesma codificação do log de escrita)
+ *   índice: quantidade x (long ID | int posição do item), em ordem de ID
+ *
+ * Corrupção: cabeçalho, índice e itens são conferidos ao abrir. Um arquivo inválido vira
+ * snapshot-{LSN}.snap.corrompido (fora da rotação, guardado para análise) e o snapshot anterior
+ * é usado, com o log reproduzido a partir do LSN dele: os segmentos do log só são apagados
+ * até o mais antigo dos snapshots mantidos. Um item com problema nunca chega a ser lido
+ * pelo catálogo, então a falha aparece como IOException na inicialização, e não como
+ * exceção nas threads que percorrem o catálogo.
+ *
+ * Gravação: o arquivo é escrito como snapshot-{LSN}.tmp, sincronizado com o disco e só então
+ * renomeado para snapshot-{LSN}.snap, então um snapshot pela metade nunca é carregado.
+ * Como o arquivo inteiro é mapeado em um único MappedByteBuffer, o limite é de 2 GB.
+ */
+public final class ArquivoSnapshotCatalogo {
+
+    private static final int MAGIA = 0x43534E31; // "CSN1"
+    private static final int FORMATO = 1;
+    private static final int TAMANHO_CABECALHO = 64;
+    private static final int TAMANHO_CABECALHO_ITEM = 4 + 4 + 8;
+    private static final int TAMANHO_ENTRADA_INDICE = 8 + 4;
+
+    private final Path arquivo;
+    private final MappedByteBuffer mapa;
+    private final long lsn;
+    private final long maiorId;
+    private final int quantidade;
+    private final int posicaoIndice;
+
+    private ArquivoSnapshotCatalogo(Path arquivo, MappedByteBuffer mapa, long lsn, long maiorId, int quantidade, int posicaoIndice) {
+        this.arquivo = arquivo;
+        this.mapa = mapa;
+        this.lsn = lsn;
+        this.maiorId = maiorId;
+        this.quantidade = quantidade;
+        this.posicaoIndice = posicaoIndice;
+    }
+
+    /**
+     * Mapeia o arquivo e confere cabeçalho, índice e o CRC de cada item
+     */
+    public static ArquivoSnapshotCatalogo abrir(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            if (tamanho < TAMANHO_CABECALHO || tamanho > Integer.MAX_VALUE) {
+                throw new IOException("tamanho inválido (" + tamanho + " bytes)");
+            }
+            // O mapeamento continua válido depois que o canal é fechado
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+
+            CRC32C crc = new CRC32C();
+            crc.update(mapa.slice(0, TAMANHO_CABECALHO - 4));
+            if (mapa.getInt(0) != MAGIA || mapa.getInt(4) != FORMATO || mapa.getInt(TAMANHO_CABECALHO - 4) != (int) crc.getValue()) {
+                throw new IOException("cabeçalho inválido");
+            }
+            long lsn = mapa.getLong(8);
+            long maiorId = mapa.getLong(16);
+            int quantidade = mapa.getInt(24);
+            long posicaoIndice = mapa.getLong(28);
+            if (quantidade < 0 || posicaoIndice < TAMANHO_CABECALHO
+                || posicaoIndice + (long) quantidade * TAMANHO_ENTRADA_INDICE != tamanho) {
+                throw new IOException("índice fora do arquivo");
+            }
+            crc.reset();
+            crc.update(mapa.slice((int) posicaoIndice, quantidade * TAMANHO_ENTRADA_INDICE));
+            if (mapa.getInt(36) != (int) crc.getValue()) {
+                throw new IOException("CRC do índice não confere");
+            }
+            ArquivoSnapshotCatalogo snapshot = new ArquivoSnapshotCatalogo(arquivo, mapa, lsn, maiorId, quantidade, (int) posicaoIndice);
+            snapshot.conferirItens();
+            return snapshot;
+        }
+    }
+
+    /**
+     * Confere limites e CRC de todos os itens, na ordem do índice (que é a ordem do arquivo)
+     */
+    private void conferirItens() throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer janela = mapa.duplicate();
+        for (int i = 0; i < quantidade; i++) {
+            int inicio = mapa.getInt(posicaoIndice + i * TAMANHO_ENTRADA_INDICE + 8);
+            int tamanho = inicio < TAMANHO_CABECALHO || inicio > posicaoIndice - TAMANHO_CABECALHO_ITEM ? -1 : mapa.getInt(inicio);
+            if (tamanho < 0 || (long) inicio + TAMANHO_CABECALHO_ITEM + tamanho > posicaoIndice) {
+                throw new IOException("item " + id(i) + " fora da área de itens");
+            }
+            crc.reset();
+            crc.update(janela.limit(inicio + TAMANHO_CABECALHO_ITEM + tamanho).position(inicio + 8));
+            if (mapa.getInt(inicio + 4) != (int) crc.getValue()) {
+                throw new IOException("CRC do item " + id(i) + " não confere");
+            }
+        }
+    }
+
+    /**
+     * Abre o snapshot mais recente do diretório que estiver íntegro (null se não houver nenhum).
+     * Arquivos .tmp deixados por uma gravação interrompida são apagados, e os inválidos
+     * são renomeados para .corrompido.
+     */
+    public static ArquivoSnapshotCatalogo abrirMaisRecente(Path diretorio) throws IOException {
+        if (!Files.isDirectory(diretorio)) {
+            return null;
+        }
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            for (Path temporario : arquivos.filter(p -> p.getFileName().toString().endsWith(".tmp")).toList()) {
+                Files.deleteIfExists(temporario);
+            }
+        }
+        List<Path> snapshots = listar(diretorio);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                return abrir(snapshots.get(i));
+            } catch (IOException e) {
+                Path invalido = snapshots.get(i);
+                LogServidor.error("Snapshot " + invalido.getFileName() + " corrompido (" + e.getMessage()
+                    + "); usando o anterior e reproduzindo o log a partir dele");
+                // Fora da rotação: senão ele contaria como um dos snapshots mantidos e o log anterior a ele seria apagado
+                Files.move(invalido, invalido.resolveSibling(invalido.getFileName() + ".corrompido"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Snapshots do diretório, do mais antigo para o mais recente
+     */
+    static List<Path> listar(Path diretorio) throws IOException {
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            // O nome tem o LSN com zeros à esquerda: a ordem alfabética é a ordem dos snapshots
+            return arquivos
+                .filter(p -> p.getFileName().toString().matches("snapshot-\\d{20}\\.snap"))
+                .sorted()
+                .toList();
+        }
+    }
+
+    /**
+     * LSN gravado no nome do arquivo de snapshot
+     */
+    static long lsnDoArquivo(Path snapshot) {
+        String nome = snapshot.getFileName().toString();
+        return Long.parseLong(nome.substring("snapshot-".length(), nome.length() - ".snap".length()));
+    }
+
+    /**
+     * Grava um snapshot com os itens (em ordem crescente de ID) e retorna o arquivo criado.
+     * lsn é o último registro do log de escrita já refletido nos itens; maiorId, o maior ID já atribuído.
+     */
+    public static Path gravar(Path diretorio, Iterator<CatalogoCardapio.ItemVersionado> itens, long lsn, long maiorId) throws IOException {
+        Files.createDirectories(diretorio);
+        Path definitivo = diretorio.resolve(String.format("snapshot-%020d.snap", lsn));
+        Path temporario = diretorio.resolve(String.format("snapshot-%020d.tmp", lsn));
+
+        long[] ids = new long[1024];
+        int[] posicoes = new int[1024];
+        int quantidade = 0;
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            long posicao = TAMANHO_CABECALHO;
+            canal.position(posicao);
+            CRC32C crc = new CRC32C();
+            long idAnterior = Long.MIN_VALUE;
+            while (itens.hasNext()) {
+                CatalogoCardapio.ItemVersionado versionado = itens.next();
+                long id = versionado.item().id();
+                if (id <= idAnterior) {
+                    throw new IllegalStateException("Itens fora de ordem no snapshot: " + id + " depois de " + idAnterior);
+                }
+                idAnterior = id;
+
+                if (buffer.remaining() < 64 * 1024) {
+                    posicao += escreverTudo(canal, buffer);
+                }
+                int inicio = buffer.position();
+                buffer.position(inicio + TAMANHO_CABECALHO_ITEM);
+                buffer = LogEscritaCatalogo.escreverItem(buffer, versionado.item());
+                int tamanhoItem = buffer.position() - inicio - TAMANHO_CABECALHO_ITEM;
+                buffer.putLong(inicio + 8, versionado.versao());
+                crc.reset();
+                crc.update(buffer.array(), inicio + 8, 8 + tamanhoItem);
+                buffer.putInt(inicio, tamanhoItem);
+                buffer.putInt(inicio + 4, (int) crc.getValue());
+
+                if (quantidade == ids.length) {
+                    ids = Arrays.copyOf(ids, quantidade * 2);
+                    posicoes = Arrays.copyOf(posicoes, quantidade * 2);
+                }
+                long posicaoItem = posicao + inicio;
+                if (posicaoItem > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot maior que 2 GB");
+                }
+                ids[quantidade] = id;
+                posicoes[quantidade] = (int) posicaoItem;
+                quantidade++;
+            }
+            posicao += escreverTudo(canal, buffer);
+
+            long posicaoIndice = posicao;
+            crc.reset();
+            for (int i = 0; i < quantidade; i++) {
+                if (buffer.remaining() < TAMANHO_ENTRADA_INDICE) {
+                    crc.update(buffer.array(), 0, buffer.position());
+                    escreverTudo(canal, buffer);
+                }
+                buffer.putLong(ids[i]).putInt(posicoes[i]);
+            }
+            crc.update(buffer.array(), 0, buffer.position());
+            escreverTudo(canal, buffer);
+            if (posicaoIndice + (long) quantidade * TAMANHO_ENTRADA_INDICE > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot maior que 2 GB");
+            }
+
+            // Cabeçalho por último: só é válido depois que todo o resto foi escrito
+            ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+            cabecalho.putInt(MAGIA).putInt(FORMATO).putLong(lsn).putLong(maiorId).putInt(quantidade)
+                .putLong(posicaoIndice).putInt((int) crc.getValue());
+            CRC32C crcCabecalho = new CRC32C();
+            crcCabecalho.update(cabecalho.array(), 0, TAMANHO_CABECALHO - 4);
+            cabecalho.putInt(TAMANHO_CABECALHO - 4, (int) crcCabecalho.getValue());
+            cabecalho.clear();
+            canal.position(0);
+            escreverTudo(canal, cabecalho.position(TAMANHO_CABECALHO));
+            canal.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporario);
+            throw e;
+        }
+        Files.move(temporario, definitivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        sincronizarDiretorio(diretorio);
+        return definitivo;
+    }
+
+    /**
+     * Escreve o conteúdo do buffer (de 0 até a posição atual) e o limpa. Retorna os bytes escritos.
+     */
+    private static int escreverTudo(FileChannel canal, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+        return bytes;
+    }
+
+    private static void sincronizarDiretorio(Path diretorio) {
+        try (FileChannel dir = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Nem todo sistema operacional permite abrir diretórios (ex: Windows)
+        }
+    }
+
+    // ---------------------------------------------------------------- leitura
+
+    public Path arquivo() {
+        return arquivo;
+    }
+
+    /**
+     * Último LSN do log de escrita refletido no snapshot: a reprodução continua do seguinte
+     */
+    public long lsn() {
+        return lsn;
+    }
+
+    public long maiorId() {
+        return maiorId;
+    }
+
+    public int quantidade() {
+        return quantidade;
+    }
+
+    /**
+     * ID do i-ésimo item (em ordem de ID), lido direto do índice
+     */
+    public long id(int i) {
+        return mapa.getLong(posicaoIndice + i * TAMANHO_ENTRADA_INDICE);
+    }
+
+    /**
+     * Busca binária no índice: posição do ID, ou -(ponto de inserção) - 1 se ele não estiver
+     * no snapshot (mesma convenção de Arrays.binarySearch)
+     */
+    public int posicao(long id) {
+        int baixo = 0;
+        int alto = quantidade - 1;
+        while (baixo <= alto) {
+            int meio = (baixo + alto) >>> 1;
+            long atual = id(meio);
+            if (atual < id) {
+                baixo = meio + 1;
+            } else if (atual > id) {
+                alto = meio - 1;
+            } else {
+                return meio;
+            }
+        }
+        return -(baixo + 1);
+    }
+
+    /**
+     * Decodifica o i-ésimo item, conferindo o CRC de novo (já conferido ao abrir; só falha se
+     * o arquivo for alterado por fora depois disso)
+     */
+    public CatalogoCardapio.ItemVersionado item(int i) {
+        int inicio = mapa.getInt(posicaoIndice + i * TAMANHO_ENTRADA_INDICE + 8);
+        int tamanho = mapa.getInt(inicio);
+        if (tamanho < 0 || inicio + TAMANHO_CABECALHO_ITEM + tamanho > posicaoIndice) {
+            throw new IllegalStateException("Snapshot " + arquivo.getFileName() + " corrompido no item " + id(i));
+        }
+        ByteBuffer registro = mapa.slice(inicio + 8, 8 + tamanho);
+        CRC32C crc = new CRC32C();
+        crc.update(registro.duplicate());
+        if (mapa.getInt(inicio + 4) != (int) crc.getValue()) {
+            throw new IllegalStateException("Snapshot " + arquivo.getFileName() + " corrompido no item " + id(i));
+        }
+        long versao = registro.getLong();
+        return new CatalogoCardapio.ItemVersionado(LogEscritaCatalogo.lerItem(registro), versao);
+    }
+}
@@ -1,6 +1,6 @@
 package mx.florinda.cardapio;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
@@ -18,6 +18,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
  * - Remoção por ID muito rápida: O(log n) vs O(n) da lista
  * - Não copia estrutura inteira em escritas
  * - Itens sempre ordenados por ID
+ * - Visões por faixa de ID (tailMap/subMap) sem copiar nada, usadas na paginação por cursor
  * - Melhor para muitas operações de escrita
  *
  * Desvantagens:
@@ -30,9 +31,9 @@ public class ArrayList {
     /**
      * Retorna um mapa thread-safe de ItemCardapio, usando ID como chave.
      *
-     * @return Mapa vazio thread-safe usando ConcurrentSkipListMap
+     * @return Mapa vazio thread-safe e navegável usando ConcurrentSkipListMap
      */
-    public Map<Long, ItemCardapio> mapaDeItensCardapio() {
+    public ConcurrentNavigableMap<Long, ItemCardapio> mapaDeItensCardapio() {
         // ConcurrentSkipListMap é thread-safe e perfeita para cenários onde
         // há necessidade de busca e remoção eficientes por ID
         return new ConcurrentSkipListMap<>();
@@ -0,0 +1,184 @@
+package mx.florinda.cardapio;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache da resposta de GET /itens-cardapio já serializada em bytes UTF-8
+ *
+ * As leituras são muito mais frequentes que as escritas, então em vez de percorrer
+ * o catálogo e montar o JSON a cada GET, o cache guarda um snapshot (versão do catálogo
+ * + byte[] pronto, também nas variantes gzip e deflate). Um GET só compara a versão e
+ * devolve o mesmo array, sem serializar nem comprimir nada.
+ *
+ * Quando o catálogo muda (POST/DELETE), a reconstrução é agendada numa thread de fundo,
+ * fora do caminho da requisição, e só existe uma em andamento por vez. Se um GET chegar antes
+ * dela terminar, ele espera essa mesma reconstrução (ou a próxima, se a em andamento começou
+ * antes da versão que ele leu) em vez de serializar e comprimir o catálogo por conta própria:
+ * nunca devolve dados anteriores a uma escrita já confirmada, e N leitores simultâneos custam
+ * uma reconstrução, não N.
+ *
+ * O percurso dos itens não bloqueia as escritas, então a versão é lida antes e depois de
+ * serializar: se ela mudou no meio, o JSON pode ter parte das escritas seguintes e não
+ * corresponde exatamente a nenhuma versão. Nesse caso a serialização é refeita (até
+ * TENTATIVAS_SERIALIZACAO vezes); se o catálogo continuar mudando, o snapshot é publicado
+ * como não exato e a resposta leva ETag fraca.
+ *
+ * Catálogos acima de cardapio.json.limiteSnapshot itens (padrão 10000) não são guardados:
+ * a listagem passa a ser gerada em blocos direto para o socket (ver cabeEmSnapshot()).
+ */
+public final class CacheRespostaCardapio implements OuvinteCatalogo {
+
+    static final int LIMITE_ITENS_SNAPSHOT = Integer.getInteger("cardapio.json.limiteSnapshot", 10_000);
+    private static final int TENTATIVAS_SERIALIZACAO = 3;
+
+    /**
+     * JSON completo da listagem com as variantes comprimidas. Contém pelo menos todas as
+     * alterações até a versão; exata indica que nenhuma escrita ocorreu durante a serialização
+     * (o JSON é exatamente o da versão, e a ETag pode ser forte).
+     */
+    public record Snapshot(long versao, boolean exata, CompressaoHttp.Variantes corpo) {
+
+        public byte[] json() {
+            return corpo.identidade();
+        }
+    }
+
+    private final CatalogoCardapio catalogo;
+    private final AtomicReference<Snapshot> atual = new AtomicReference<>();
+    // Reconstrução em andamento na thread de fundo (null se nenhuma); leitores e escritas compartilham a mesma
+    private final AtomicReference<CompletableFuture<Snapshot>> emAndamento = new AtomicReference<>();
+    private final ExecutorService reconstrutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cache-resposta-cardapio");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CacheRespostaCardapio(CatalogoCardapio catalogo) {
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * Cria o cache, passa a ouvir o catálogo e agenda a primeira serialização (fora do construtor:
+     * o ouvinte e a thread de reconstrução só veem o cache depois de inicializado)
+     */
+    public static CacheRespostaCardapio criar(CatalogoCardapio catalogo) {
+        CacheRespostaCardapio cache = new CacheRespostaCardapio(catalogo);
+        catalogo.adicionarOuvinte(cache);
+        // Catálogo grande (ex: carregado de um snapshot) não é serializado na inicialização
+        if (cache.cabeEmSnapshot()) {
+            cache.reconstruir();
+        }
+        return cache;
+    }
+
+    /**
+     * Indica se a listagem do catálogo atual é pequena o bastante para ficar em memória
+     */
+    public boolean cabeEmSnapshot() {
+        return catalogo.tamanho() <= LIMITE_ITENS_SNAPSHOT;
+    }
+
+    /**
+     * Retorna o snapshot da versão atual do catálogo (lida na chamada), esperando a
+     * reconstrução em segundo plano se ela ainda não tiver publicado essa versão
+     */
+    public Snapshot snapshot() {
+        long versao = catalogo.versao();
+        while (true) {
+            Snapshot snapshot = atual.get();
+            if (snapshot != null && snapshot.versao() >= versao) {
+                return snapshot;
+            }
+            // Se a reconstrução que terminar agora tiver começado antes da versão lida, o laço espera a seguinte
+            reconstrucao().join();
+        }
+    }
+
+    @Override
+    public void itemAdicionado(ItemCardapio item, ItemCardapio anterior) {
+        agendarReconstrucao();
+    }
+
+    @Override
+    public void itemRemovido(ItemCardapio item) {
+        agendarReconstrucao();
+    }
+
+    /**
+     * Agenda uma reconstrução, a não ser que já exista uma em andamento (as escritas feitas
+     * enquanto ela roda são cobertas pela seguinte, disparada quando ela termina)
+     */
+    private void agendarReconstrucao() {
+        if (!cabeEmSnapshot()) {
+            // Listagem servida em blocos: descarta o snapshot antigo em vez de serializar o catálogo inteiro
+            atual.set(null);
+            return;
+        }
+        reconstrucao();
+    }
+
+    /**
+     * Reconstrução em andamento, ou uma nova iniciada na thread de fundo
+     */
+    private CompletableFuture<Snapshot> reconstrucao() {
+        CompletableFuture<Snapshot> existente = emAndamento.get();
+        if (existente != null) {
+            return existente;
+        }
+        CompletableFuture<Snapshot> nova = new CompletableFuture<>();
+        if (!emAndamento.compareAndSet(null, nova)) {
+            // Outra thread iniciou uma ao mesmo tempo
+            return reconstrucao();
+        }
+        try {
+            reconstrutor.execute(() -> executar(nova));
+        } catch (RejectedExecutionException e) {
+            // Executor encerrado (desligamento): reconstrói na própria thread
+            executar(nova);
+        }
+        return nova;
+    }
+
+    private void executar(CompletableFuture<Snapshot> reconstrucao) {
+        Snapshot snapshot;
+        try {
+            snapshot = reconstruir();
+        } catch (RuntimeException | Error e) {
+            emAndamento.set(null);
+            reconstrucao.completeExceptionally(e);
+            throw e;
+        }
+        // Liberada antes de completar: quem acordar e ainda estiver atrasado inicia (ou encontra) a próxima
+        emAndamento.set(null);
+        reconstrucao.complete(snapshot);
+        if (snapshot.versao() < catalogo.versao() && cabeEmSnapshot()) {
+            // Escritas feitas durante a reconstrução
+            reconstrucao();
+        }
+    }
+
+    private Snapshot reconstruir() {
+        Snapshot anterior = atual.get();
+        // O snapshot anterior dá uma boa estimativa do tamanho, evitando realocar o buffer
+        int capacidade = anterior == null ? 4096 : anterior.json().length + 1024;
+        for (int tentativa = 1; ; tentativa++) {
+            // A versão é lida antes de percorrer os itens: o JSON contém pelo menos essa versão
+            long versao = catalogo.versao();
+            byte[] json = EscritorJsonItemCardapio.paraBytes(catalogo.itens(), capacidade);
+            boolean exata = catalogo.versao() == versao;
+            if (!exata && tentativa < TENTATIVAS_SERIALIZACAO) {
+                continue;
+            }
+            // Comprimido aqui, uma vez por versão, e não a cada GET
+            Snapshot novo = new Snapshot(versao, exata, CompressaoHttp.Variantes.de(json));
+
+            // Só substitui se for mais novo que o atual (ou exato no lugar de um não exato da mesma versão)
+            return atual.updateAndGet(existente -> existente == null || existente.versao() < novo.versao()
+                || (existente.versao() == novo.versao() && !existente.exata() && novo.exata()) ? novo : existente);
+        }
+    }
+}
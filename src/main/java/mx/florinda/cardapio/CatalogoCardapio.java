@@ -0,0 +1,369 @@
+package mx.florinda.cardapio;
+
+import java.math.BigDecimal;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Catálogo de itens do cardápio usado pelo ServidorItensCardapioComSocket
+ *
+ * Centraliza o mapa thread-safe de itens (ConcurrentSkipListMap, via ArrayList.mapaDeItensCardapio())
+ * e mantém uma versão que é incrementada a cada alteração. Quem guarda dados derivados
+ * do catálogo (ex: o JSON pré-serializado da listagem) compara a versão para saber se
+ * ainda está atualizado, sem precisar percorrer os itens.
+ *
+ * Ordem garantida: o mapa é alterado antes da versão ser incrementada. Quem lê a versão v
+ * e depois percorre o mapa enxerga pelo menos todas as alterações até v.
+ *
+ * Cada item também guarda a versão do catálogo em que foi gravado pela última vez
+ * (ItemVersionado), usada como ETag do GET /itens-cardapio/{id}. Item e versão ficam
+ * juntos num único valor do mapa por ID, então quem lê nunca vê um item novo com a
+ * versão antiga. As escritas são serializadas por um lock (as leituras não usam lock),
+ * o que mantém os dois mapas e a ordem das notificações aos ouvintes consistentes.
+ *
+ * Base em snapshot: na inicialização o catálogo pode receber um ArquivoSnapshotCatalogo
+ * (carregarSnapshot) em vez de ter cada item inserido. Os itens da base ficam no arquivo
+ * mapeado e só são decodificados quando lidos; os mapas acima guardam apenas o que foi
+ * gravado depois da carga, e têm precedência sobre a base. IDs da base removidos depois
+ * ficam em removidosDaBase. Listagens intercalam base e mapas em ordem de ID.
+ */
+public class CatalogoCardapio {
+
+    /**
+     * Item junto com a versão do catálogo em que foi inserido ou substituído
+     */
+    public record ItemVersionado(ItemCardapio item, long versao) {
+    }
+
+    // Ordenado por ID, para listagem e paginação
+    private final ConcurrentNavigableMap<Long, ItemCardapio> itens;
+    // Busca por ID em O(1), com a versão de cada item
+    private final ConcurrentMap<Long, ItemVersionado> porId = new ConcurrentHashMap<>();
+    private final ReentrantLock escrita = new ReentrantLock();
+    private final AtomicLong versao = new AtomicLong(1);
+    // ConcurrentSkipListMap.size() percorre o mapa inteiro; a contagem é mantida à parte
+    private final AtomicInteger quantidade = new AtomicInteger();
+    private final List<OuvinteCatalogo> ouvintes = new CopyOnWriteArrayList<>();
+    // Itens carregados do snapshot (null sem snapshot) e os IDs deles removidos depois da carga
+    private volatile ArquivoSnapshotCatalogo base;
+    private final Set<Long> removidosDaBase = ConcurrentHashMap.newKeySet();
+
+    public CatalogoCardapio() {
+        this.itens = new ArrayList().mapaDeItensCardapio();
+        this.quantidade.set(itens.size());
+    }
+
+    /**
+     * Registra quem deve ser avisado das alterações do catálogo
+     */
+    public void adicionarOuvinte(OuvinteCatalogo ouvinte) {
+        ouvintes.add(ouvinte);
+    }
+
+    /**
+     * Usa o snapshot como base do catálogo, ainda vazio. A versão do catálogo passa a ser
+     * a do snapshot: cada registro do log de escrita corresponde a uma versão (versão = LSN + 1),
+     * e a reprodução do log a partir do LSN do snapshot continua a contagem de onde ela parou.
+     */
+    public void carregarSnapshot(ArquivoSnapshotCatalogo snapshot) {
+        escrita.lock();
+        try {
+            if (base != null || !itens.isEmpty()) {
+                throw new IllegalStateException("O snapshot só pode ser carregado em um catálogo vazio");
+            }
+            base = snapshot;
+            quantidade.set(snapshot.quantidade());
+            versao.set(snapshot.lsn() + 1);
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    /**
+     * Chamado pela reprodução do log de escrita depois de cada registro: a versão passa a ser
+     * LSN + 1 mesmo que o registro não tenha mudado nada (uma remoção cujo efeito já está no
+     * snapshot não incrementa a versão). Sem isso a versão ficaria abaixo da de antes do
+     * desligamento, e versões (ETags) já entregues a clientes voltariam a ser usadas.
+     */
+    public void reproduzido(long lsn) {
+        escrita.lock();
+        try {
+            versao.set(lsn + 1);
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    public ItemCardapio buscar(Long id) {
+        ItemVersionado versionado = buscarVersionado(id);
+        return versionado == null ? null : versionado.item();
+    }
+
+    /**
+     * Item e a versão em que foi gravado, lidos juntos (null se o ID não existir)
+     */
+    public ItemVersionado buscarVersionado(Long id) {
+        ItemVersionado versionado = porId.get(id);
+        return versionado != null ? versionado : daBase(id);
+    }
+
+    /**
+     * Item do snapshot com o ID, se ele não tiver sido removido (decodificado agora)
+     */
+    private ItemVersionado daBase(long id) {
+        ArquivoSnapshotCatalogo snapshot = base;
+        if (snapshot == null || removidosDaBase.contains(id)) {
+            return null;
+        }
+        int i = snapshot.posicao(id);
+        return i < 0 ? null : snapshot.item(i);
+    }
+
+    /**
+     * Insere ou substitui o item com o mesmo ID
+     */
+    public void adicionar(ItemCardapio item) {
+        escrita.lock();
+        try {
+            gravar(item);
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    /**
+     * Insere ou substitui vários itens adquirindo o lock de escrita uma única vez
+     * (cada item recebe sua própria versão, como em adicionar)
+     */
+    public void adicionarTodos(List<ItemCardapio> novos) {
+        escrita.lock();
+        try {
+            for (ItemCardapio item : novos) {
+                gravar(item);
+            }
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    /**
+     * Troca os preços do item, mantendo os demais campos (como DatabaseHashMap.alterarPrecoItem).
+     * Retorna o item atualizado com a nova versão, ou null se o ID não existir.
+     */
+    public ItemVersionado alterarPreco(Long id, BigDecimal preco, BigDecimal precoComDesconto) {
+        escrita.lock();
+        try {
+            ItemVersionado atual = buscarVersionado(id);
+            if (atual == null) {
+                return null;
+            }
+            ItemCardapio item = atual.item();
+            gravar(new ItemCardapio(item.id(), item.nome(), item.descricao(), item.categoria(), preco, precoComDesconto));
+            return porId.get(id);
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    /**
+     * Remove o item pelo ID, retornando o item removido ou null se não existia
+     */
+    public ItemCardapio remover(Long id) {
+        escrita.lock();
+        try {
+            ItemVersionado naBase = daBase(id);
+            if (naBase != null) {
+                // Antes de tirar dos mapas: quem ler em seguida não pode voltar a enxergar o item da base
+                removidosDaBase.add(id);
+            }
+            ItemCardapio removido = itens.remove(id);
+            if (removido == null && naBase != null) {
+                removido = naBase.item();
+            }
+            if (removido != null) {
+                porId.remove(id);
+                quantidade.decrementAndGet();
+                versao.incrementAndGet();
+                for (OuvinteCatalogo ouvinte : ouvintes) {
+                    ouvinte.itemRemovido(removido);
+                }
+            }
+            return removido;
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    /**
+     * Grava o item, incrementa a versão e avisa os ouvintes (chamado com o lock de escrita)
+     */
+    private void gravar(ItemCardapio item) {
+        ItemCardapio anterior = itens.put(item.id(), item);
+        if (anterior == null && base != null) {
+            ItemVersionado naBase = daBase(item.id());
+            anterior = naBase == null ? null : naBase.item();
+        }
+        if (anterior == null) {
+            quantidade.incrementAndGet();
+        }
+        long nova = versao.incrementAndGet();
+        porId.put(item.id(), new ItemVersionado(item, nova));
+        for (OuvinteCatalogo ouvinte : ouvintes) {
+            ouvinte.itemAdicionado(item, anterior);
+        }
+    }
+
+    /**
+     * Visão dos itens ordenados por ID (sem cópia; reflete alterações concorrentes)
+     */
+    public Collection<ItemCardapio> itens() {
+        if (base == null) {
+            return itens.values();
+        }
+        return new VisaoComBase(Long.MIN_VALUE);
+    }
+
+    /**
+     * Visão dos itens com ID maior que o informado, em ordem de ID (cursor da paginação).
+     * Localizar o início custa O(log n); nada é copiado.
+     */
+    public Collection<ItemCardapio> itensDepoisDe(long id) {
+        if (base == null) {
+            return itens.tailMap(id, false).values();
+        }
+        return new VisaoComBase(id);
+    }
+
+    /**
+     * Itens com a versão de cada um, em ordem de ID, para gravar um snapshot. A leitura não
+     * bloqueia as escritas: alterações feitas durante o percurso podem ou não aparecer.
+     */
+    public Iterator<ItemVersionado> itensVersionados() {
+        return new IteradorComBase(Long.MIN_VALUE, true);
+    }
+
+    /**
+     * Quantidade de itens em O(1)
+     */
+    public int tamanho() {
+        return quantidade.get();
+    }
+
+    /**
+     * Versão atual do catálogo, incrementada a cada inserção ou remoção
+     */
+    public long versao() {
+        return versao.get();
+    }
+
+    /**
+     * itens()/itensDepoisDe() quando há snapshot: o tamanho só é exato para a visão completa
+     */
+    private final class VisaoComBase extends AbstractCollection<ItemCardapio> {
+
+        private final long depoisDe;
+
+        VisaoComBase(long depoisDe) {
+            this.depoisDe = depoisDe;
+        }
+
+        @Override
+        public Iterator<ItemCardapio> iterator() {
+            IteradorComBase versionados = new IteradorComBase(depoisDe, false);
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return versionados.hasNext();
+                }
+
+                @Override
+                public ItemCardapio next() {
+                    return versionados.next().item();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return quantidade.get();
+        }
+    }
+
+    /**
+     * Intercala, em ordem de ID, os itens do snapshot (pulando os removidos) e os dos mapas;
+     * com o mesmo ID nos dois, vale o dos mapas. Sem versões, os itens dos mapas são devolvidos
+     * com versão 0 (evita uma busca em porId por item).
+     */
+    private final class IteradorComBase implements Iterator<ItemVersionado> {
+
+        private final ArquivoSnapshotCatalogo snapshot = base;
+        private final Iterator<Map.Entry<Long, ItemCardapio>> gravados;
+        private final boolean comVersao;
+        private Map.Entry<Long, ItemCardapio> gravado;
+        private int indiceBase;
+        private ItemVersionado proximo;
+
+        IteradorComBase(long depoisDe, boolean comVersao) {
+            this.gravados = itens.tailMap(depoisDe, false).entrySet().iterator();
+            this.gravado = gravados.hasNext() ? gravados.next() : null;
+            this.comVersao = comVersao;
+            if (snapshot != null) {
+                int i = snapshot.posicao(depoisDe);
+                indiceBase = i >= 0 ? i + 1 : -(i + 1);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (proximo == null) {
+                boolean temBase = snapshot != null && indiceBase < snapshot.quantidade();
+                long idBase = temBase ? snapshot.id(indiceBase) : 0;
+                if (gravado != null && (!temBase || gravado.getKey() <= idBase)) {
+                    if (temBase && gravado.getKey() == idBase) {
+                        indiceBase++;
+                    }
+                    proximo = deGravado(gravado);
+                    gravado = gravados.hasNext() ? gravados.next() : null;
+                } else if (temBase) {
+                    if (!removidosDaBase.contains(idBase)) {
+                        proximo = snapshot.item(indiceBase);
+                    }
+                    indiceBase++;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private ItemVersionado deGravado(Map.Entry<Long, ItemCardapio> entrada) {
+            if (!comVersao) {
+                return new ItemVersionado(entrada.getValue(), 0);
+            }
+            // null se o item foi removido depois de o iterador passar por ele: segue para o próximo
+            return porId.get(entrada.getKey());
+        }
+
+        @Override
+        public ItemVersionado next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ItemVersionado atual = proximo;
+            proximo = null;
+            return atual;
+        }
+    }
+}
@@ -17,13 +17,19 @@ import java.net.Socket;
  * - Envia uma requisição HTTP GET manual
  * - Lê a resposta do servidor através do InputStream
  * - Exibe a resposta HTTP completa
+ *
+ * Com parâmetros (ex: conexoes=50 taxa=2000), roda o GeradorCargaCardapio em vez da requisição única.
  */
 public class ClienteItensCardapioComSocket {
 
     private static final String HOST = "localhost";
     private static final int PORTA = 8000;
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0) {
+            GeradorCargaCardapio.main(args);
+            return;
+        }
         System.out.println("=== Cliente HTTP com Socket ===");
         System.out.println("Conectando ao servidor em " + HOST + ":" + PORTA + "...\n");
 
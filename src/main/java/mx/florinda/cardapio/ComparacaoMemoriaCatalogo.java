@@ -0,0 +1,129 @@
+package mx.florinda.cardapio;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongFunction;
+
+/**
+ * Compara o heap ocupado por N itens no CatalogoCardapio (ConcurrentSkipListMap + mapa de
+ * versões por ID) e no ArmazemCompactoItens
+ *
+ * Os itens imitam o catálogo de várias franquias: os nomes e descrições do Database se
+ * repetem com variações por franquia, mas cada item recebe Strings e BigDecimals novos,
+ * como aconteceria se viessem de requisições POST diferentes. Cada estrutura é preenchida
+ * sozinha, e o heap é medido depois de GCs antes e depois do preenchimento.
+ *
+ * Uso: ./gradlew runComparacaoMemoria [-Pitens=N]  (padrão 1.000.000 itens; use -Xmx de pelo menos 2 GB)
+ */
+public class ComparacaoMemoriaCatalogo {
+
+    private static final int FRANQUIAS = 200;
+
+    public static void main(String[] args) {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("Comparando %,d itens (%d franquias)%n%n", quantidade, FRANQUIAS);
+        List<ItemCardapio> modelos = new Database().listaDeItensCardapio();
+
+        long bytesMapa = medirCatalogo(modelos, quantidade);
+        long bytesCompacto = medirArmazemCompacto(modelos, quantidade);
+
+        System.out.printf("Redução de heap: %.1fx%n", (double) bytesMapa / Math.max(1, bytesCompacto));
+    }
+
+    /**
+     * Preenche um CatalogoCardapio, imprime os números e retorna o heap ocupado por ele
+     * (em um método à parte para que o catálogo possa ser coletado antes da próxima medição)
+     */
+    private static long medirCatalogo(List<ItemCardapio> modelos, int quantidade) {
+        long antes = heapUsado();
+        long inicio = System.nanoTime();
+        CatalogoCardapio catalogo = new CatalogoCardapio();
+        for (int i = 0; i < quantidade; i++) {
+            catalogo.adicionar(gerarItem(modelos, i));
+        }
+        long millis = (System.nanoTime() - inicio) / 1_000_000;
+        long bytes = heapUsado() - antes;
+        long nanosBusca = medirBuscas(quantidade, id -> catalogo.buscar(id));
+        imprimir("CatalogoCardapio (skip list)", catalogo.tamanho(), bytes, millis, nanosBusca);
+        Reference.reachabilityFence(catalogo);
+        return bytes;
+    }
+
+    private static long medirArmazemCompacto(List<ItemCardapio> modelos, int quantidade) {
+        long antes = heapUsado();
+        long inicio = System.nanoTime();
+        ArmazemCompactoItens armazem = new ArmazemCompactoItens();
+        for (int i = 0; i < quantidade; i++) {
+            armazem.gravar(gerarItem(modelos, i));
+        }
+        long millis = (System.nanoTime() - inicio) / 1_000_000;
+        long bytes = heapUsado() - antes;
+        long nanosBusca = medirBuscas(quantidade, armazem::buscar);
+        imprimir("ArmazemCompactoItens", armazem.tamanho(), bytes, millis, nanosBusca);
+        System.out.printf("  textos distintos: %,d%n%n", armazem.textosDistintos());
+        Reference.reachabilityFence(armazem);
+        return bytes;
+    }
+
+    /**
+     * Item i: variação por franquia de um dos itens do Database, com preço em centavos inteiros
+     */
+    static ItemCardapio gerarItem(List<ItemCardapio> modelos, int i) {
+        ItemCardapio modelo = modelos.get(i % modelos.size());
+        int franquia = (i / modelos.size()) % FRANQUIAS;
+        String nome = modelo.nome() + " - Franquia " + franquia;
+        // Descrição igual em todas as franquias, mas em uma String nova, como se viesse no JSON da requisição
+        String descricao = new String(modelo.descricao());
+        BigDecimal preco = modelo.preco().add(BigDecimal.valueOf(franquia % 100, 2));
+        BigDecimal precoComDesconto = modelo.precoComDesconto().add(BigDecimal.valueOf(franquia % 100, 2));
+        return new ItemCardapio(i + 1L, nome, descricao, modelo.categoria(), preco,
+            precoComDesconto);
+    }
+
+    /**
+     * Nanossegundos médios de buscar() para IDs aleatórios
+     */
+    private static long medirBuscas(int quantidade, LongFunction<ItemCardapio> buscar) {
+        int buscas = 1_000_000;
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        long encontrados = 0;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < buscas; i++) {
+            if (buscar.apply(aleatorio.nextLong(1, quantidade + 1L)) != null) {
+                encontrados++;
+            }
+        }
+        long nanos = (System.nanoTime() - inicio) / buscas;
+        if (encontrados != buscas) {
+            throw new IllegalStateException("Busca não encontrou " + (buscas - encontrados) + " itens");
+        }
+        return nanos;
+    }
+
+    private static void imprimir(String nome, int itens, long bytes, long millis, long nanosBusca) {
+        System.out.printf("%s%n", nome);
+        System.out.printf("  itens:           %,d%n", itens);
+        System.out.printf("  heap ocupado:    %,d KB (%d bytes/item)%n", bytes / 1024, bytes / Math.max(1, itens));
+        System.out.printf("  preenchimento:   %,d ms%n", millis);
+        System.out.printf("  buscar(id):      %d ns/busca%n", nanosBusca);
+    }
+
+    private static long heapUsado() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        long usado = Long.MAX_VALUE;
+        // Alguns GCs seguidos até o valor estabilizar
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long atual = memoria.getHeapMemoryUsage().getUsed();
+            if (Math.abs(usado - atual) < 64 * 1024) {
+                return atual;
+            }
+            usado = atual;
+        }
+        return usado;
+    }
+}
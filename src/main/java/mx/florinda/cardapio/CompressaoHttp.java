@@ -0,0 +1,356 @@
+package mx.florinda.cardapio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Negociação de Accept-Encoding e compressão gzip/deflate das respostas
+ *
+ * Usado pelos dois servidores (ServidorItensCardapioComSocket e ServidorItensCardapio):
+ * - negociar() escolhe a codificação pelo Accept-Encoding do cliente (gzip, deflate ou
+ *   nenhuma), respeitando os pesos "q" e "q=0"; em empate o gzip tem preferência
+ * - Bodies menores que cardapio.compressao.tamanhoMinimo bytes (padrão 1024) vão sem
+ *   compressão: o ganho não compensa o custo de CPU nem os ~20 bytes de cabeçalho do gzip
+ * - Conteúdo que muda pouco (listagem do catálogo, cardapio.json) é comprimido uma vez
+ *   por versão em Variantes; o resto é comprimido por requisição. Os dois usam o nível
+ *   cardapio.compressao.nivel (padrão 6, o padrão do zlib): o nível máximo custa bem mais
+ *   CPU por poucos bytes a menos, e a reconstrução das Variantes também está no caminho de
+ *   quem espera uma versão nova
+ *
+ * "deflate" segue a RFC 9110: formato zlib (RFC 1950), não o deflate cru.
+ */
+public final class CompressaoHttp {
+
+    public enum Codificacao {
+        IDENTIDADE(null), GZIP("gzip"), DEFLATE("deflate");
+
+        private final String valorCabecalho;
+
+        Codificacao(String valorCabecalho) {
+            this.valorCabecalho = valorCabecalho;
+        }
+
+        /**
+         * Valor do header Content-Encoding (null para IDENTIDADE)
+         */
+        public String valorCabecalho() {
+            return valorCabecalho;
+        }
+    }
+
+    static final int TAMANHO_MINIMO = Integer.getInteger("cardapio.compressao.tamanhoMinimo", 1024);
+    static final int NIVEL = Integer.getInteger("cardapio.compressao.nivel", 6);
+
+    // ID1 ID2 CM(deflate) FLG MTIME(4) XFL OS(desconhecido)
+    private static final byte[] CABECALHO_GZIP = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] GZIP = "gzip".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] X_GZIP = "x-gzip".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DEFLATE = "deflate".getBytes(StandardCharsets.US_ASCII);
+
+    private CompressaoHttp() {
+    }
+
+    /**
+     * Corpo de uma resposta em todas as codificações, comprimido uma única vez
+     *
+     * gzip e deflate ficam null quando o JSON é pequeno demais para valer a compressão.
+     */
+    public record Variantes(byte[] identidade, byte[] gzip, byte[] deflate) {
+
+        public static Variantes de(byte[] json) {
+            if (!valeComprimir(json.length)) {
+                return new Variantes(json, null, null);
+            }
+            return new Variantes(json,
+                comprimir(json, Codificacao.GZIP, NIVEL),
+                comprimir(json, Codificacao.DEFLATE, NIVEL));
+        }
+
+        /**
+         * Corpo na codificação pedida, ou null se essa variante não existir
+         */
+        public byte[] corpo(Codificacao codificacao) {
+            return switch (codificacao) {
+                case IDENTIDADE -> identidade;
+                case GZIP -> gzip;
+                case DEFLATE -> deflate;
+            };
+        }
+
+        /**
+         * Resposta 200 com a melhor variante disponível para o cliente
+         * (etag é a da variante sem compressão, ou null)
+         */
+        public RespostaHttp resposta(Codificacao aceita, String etag) {
+            RespostaHttp resposta = new RespostaHttp(200, "OK", identidade).comEtag(etag);
+            byte[] comprimido = corpo(aceita);
+            if (aceita != Codificacao.IDENTIDADE && comprimido != null) {
+                return resposta.codificada(aceita, comprimido);
+            }
+            // Se existe variante comprimida, caches intermediários precisam saber que o body depende do Accept-Encoding
+            return gzip != null ? resposta.variandoPorCodificacao() : resposta;
+        }
+    }
+
+    public static boolean valeComprimir(int tamanho) {
+        return tamanho >= TAMANHO_MINIMO;
+    }
+
+    /**
+     * Escolhe a codificação a partir do valor do header Accept-Encoding (null = ausente)
+     */
+    public static Codificacao negociar(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return Codificacao.IDENTIDADE;
+        }
+        byte[] bytes = acceptEncoding.getBytes(StandardCharsets.ISO_8859_1);
+        return negociar(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Mesma negociação, direto sobre os bytes do header (usado pelo RequisicaoHttp, sem criar String)
+     *
+     * Formato: "gzip, deflate;q=0.5, *;q=0". Pesos em milésimos para evitar ponto flutuante.
+     */
+    public static Codificacao negociar(byte[] dados, int de, int ate) {
+        int pesoGzip = -1;
+        int pesoDeflate = -1;
+        int pesoCuringa = -1;
+        int i = de;
+        while (i < ate) {
+            int fimItem = i;
+            while (fimItem < ate && dados[fimItem] != ',') {
+                fimItem++;
+            }
+            int fimToken = i;
+            while (fimToken < fimItem && dados[fimToken] != ';') {
+                fimToken++;
+            }
+            int inicioToken = pularEspacos(dados, i, fimToken);
+            int fimTokenSemEspaco = fimToken;
+            while (fimTokenSemEspaco > inicioToken && espaco(dados[fimTokenSemEspaco - 1])) {
+                fimTokenSemEspaco--;
+            }
+            int peso = fimToken < fimItem ? lerPeso(dados, fimToken + 1, fimItem) : 1000;
+
+            if (token(dados, inicioToken, fimTokenSemEspaco, GZIP) || token(dados, inicioToken, fimTokenSemEspaco, X_GZIP)) {
+                pesoGzip = Math.max(pesoGzip, peso);
+            } else if (token(dados, inicioToken, fimTokenSemEspaco, DEFLATE)) {
+                pesoDeflate = Math.max(pesoDeflate, peso);
+            } else if (fimTokenSemEspaco - inicioToken == 1 && dados[inicioToken] == '*') {
+                pesoCuringa = peso;
+            }
+            i = fimItem + 1;
+        }
+        // "*" vale para as codificações não listadas explicitamente
+        if (pesoGzip < 0) {
+            pesoGzip = pesoCuringa;
+        }
+        if (pesoDeflate < 0) {
+            pesoDeflate = pesoCuringa;
+        }
+        if (pesoGzip <= 0 && pesoDeflate <= 0) {
+            return Codificacao.IDENTIDADE;
+        }
+        return pesoGzip >= pesoDeflate ? Codificacao.GZIP : Codificacao.DEFLATE;
+    }
+
+    /**
+     * Comprime a resposta gerada pela requisição conforme a codificação aceita pelo cliente.
+     * Respostas já negociadas (variantes pré-comprimidas) e bodies pequenos passam direto.
+     */
+    public static RespostaHttp comprimirSeAceito(RespostaHttp resposta, Codificacao aceita) {
+        if (resposta.variaPorCodificacao() || resposta.emArquivo()) {
+            // Já negociada pelo handler (ex: arquivo publicado, que tem a própria variante .gz)
+            return resposta;
+        }
+        if (resposta.emBlocos()) {
+            return aceita == Codificacao.IDENTIDADE
+                ? resposta.variandoPorCodificacao()
+                : resposta.codificadaEmBlocos(aceita, new BlocosComprimidos(resposta.corpoEmBlocos(), aceita));
+        }
+        if (!valeComprimir(resposta.body().length)) {
+            return resposta;
+        }
+        if (aceita == Codificacao.IDENTIDADE) {
+            return resposta.variandoPorCodificacao();
+        }
+        return resposta.codificada(aceita, comprimir(resposta.body(), aceita, NIVEL));
+    }
+
+    public static byte[] comprimir(byte[] dados, Codificacao codificacao, int nivel) {
+        Compressor compressor = new Compressor(codificacao, nivel, Math.max(64, dados.length / 4));
+        compressor.adicionar(dados, 0, dados.length);
+        compressor.finalizar();
+        return compressor.toByteArray();
+    }
+
+    private static int lerPeso(byte[] dados, int de, int ate) {
+        int i = pularEspacos(dados, de, ate);
+        if (i + 1 >= ate || (dados[i] | 0x20) != 'q' || dados[i + 1] != '=') {
+            return 1000;
+        }
+        i += 2;
+        int peso = 0;
+        if (i < ate && dados[i] == '1') {
+            return 1000;
+        }
+        if (i < ate && dados[i] == '0') {
+            i++;
+        }
+        if (i < ate && dados[i] == '.') {
+            i++;
+            for (int casa = 100; casa >= 1 && i < ate && dados[i] >= '0' && dados[i] <= '9'; casa /= 10, i++) {
+                peso += (dados[i] - '0') * casa;
+            }
+        }
+        return peso;
+    }
+
+    private static boolean token(byte[] dados, int de, int ate, byte[] esperado) {
+        if (ate - de != esperado.length) {
+            return false;
+        }
+        for (int i = 0; i < esperado.length; i++) {
+            byte b = dados[de + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != esperado[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int pularEspacos(byte[] dados, int de, int ate) {
+        while (de < ate && espaco(dados[de])) {
+            de++;
+        }
+        return de;
+    }
+
+    private static boolean espaco(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Deflater com a moldura gzip (cabeçalho + CRC32 + tamanho) ou zlib, escrevendo num buffer que cresce
+     */
+    private static final class Compressor {
+        private final Deflater deflater;
+        private final CRC32 crc;
+        private long tamanhoOriginal;
+        private byte[] saida;
+        private int tamanho;
+
+        private Compressor(Codificacao codificacao, int nivel, int capacidade) {
+            boolean gzip = codificacao == Codificacao.GZIP;
+            // gzip usa deflate cru (nowrap) com cabeçalho próprio; deflate usa o formato zlib do Deflater
+            this.deflater = new Deflater(nivel, gzip);
+            this.crc = gzip ? new CRC32() : null;
+            this.saida = new byte[capacidade];
+            if (gzip) {
+                System.arraycopy(CABECALHO_GZIP, 0, saida, 0, CABECALHO_GZIP.length);
+                tamanho = CABECALHO_GZIP.length;
+            }
+        }
+
+        private void adicionar(byte[] dados, int de, int quantidade) {
+            if (crc != null) {
+                crc.update(dados, de, quantidade);
+            }
+            tamanhoOriginal += quantidade;
+            deflater.setInput(dados, de, quantidade);
+            while (!deflater.needsInput()) {
+                comprimirPasso();
+            }
+        }
+
+        private void finalizar() {
+            deflater.finish();
+            while (!deflater.finished()) {
+                comprimirPasso();
+            }
+            deflater.end();
+            if (crc != null) {
+                garantirEspaco(8);
+                escreverInt32(crc.getValue());
+                escreverInt32(tamanhoOriginal);
+            }
+        }
+
+        private void comprimirPasso() {
+            garantirEspaco(512);
+            tamanho += deflater.deflate(saida, tamanho, saida.length - tamanho);
+        }
+
+        private void escreverInt32(long valor) {
+            // gzip grava os inteiros em little-endian
+            for (int i = 0; i < 4; i++) {
+                saida[tamanho++] = (byte) (valor >>> (8 * i));
+            }
+        }
+
+        private void garantirEspaco(int adicional) {
+            if (saida.length - tamanho < adicional) {
+                byte[] maior = new byte[Math.max(saida.length * 2, tamanho + adicional)];
+                System.arraycopy(saida, 0, maior, 0, tamanho);
+                saida = maior;
+            }
+        }
+
+        private byte[] toByteArray() {
+            byte[] copia = new byte[tamanho];
+            System.arraycopy(saida, 0, copia, 0, tamanho);
+            return copia;
+        }
+    }
+
+    /**
+     * Comprime um body em blocos conforme os blocos originais são gerados (listagens grandes)
+     *
+     * Cada bloco original passa pelo Deflater; blocos que ainda não produziram saída
+     * comprimida (o zlib acumula até ter o suficiente) são emendados no próximo.
+     * Se o cliente desconectar no meio, a memória nativa do Deflater é liberada pelo GC.
+     */
+    private static final class BlocosComprimidos implements RespostaHttp.CorpoEmBlocos {
+        private final RespostaHttp.CorpoEmBlocos original;
+        private final Compressor compressor;
+        private ByteBuffer visao;
+        private boolean terminado;
+
+        private BlocosComprimidos(RespostaHttp.CorpoEmBlocos original, Codificacao codificacao) {
+            this.original = original;
+            this.compressor = new Compressor(codificacao, NIVEL, EscritorJsonItemCardapio.TAMANHO_BLOCO);
+        }
+
+        @Override
+        public ByteBuffer proximoBloco() {
+            if (terminado) {
+                return null;
+            }
+            // O cabeçalho gzip (escrito no construtor) sai junto com o primeiro bloco
+            if (visao != null) {
+                compressor.tamanho = 0;
+            }
+            int inicial = compressor.tamanho;
+            do {
+                ByteBuffer bloco = original.proximoBloco();
+                if (bloco == null) {
+                    compressor.finalizar();
+                    terminado = true;
+                    break;
+                }
+                compressor.adicionar(bloco.array(), bloco.arrayOffset() + bloco.position(), bloco.remaining());
+            } while (compressor.tamanho == inicial);
+            if (visao == null || visao.array() != compressor.saida) {
+                visao = ByteBuffer.wrap(compressor.saida);
+            }
+            visao.limit(compressor.tamanho).position(0);
+            return visao;
+        }
+    }
+}
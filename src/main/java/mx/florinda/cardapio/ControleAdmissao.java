@@ -0,0 +1,96 @@
+package mx.florinda.cardapio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controle de admissão no estilo CoDel: descarta leituras em massa quando a espera na fila cresce
+ *
+ * A espera é o tempo entre a conexão ser aceita (ou, no modo NIO, a requisição ser entregue aos
+ * workers) e um worker começar a atendê-la. A cada intervalo (cardapio.admissao.intervaloMs,
+ * padrão 100 ms) é guardada a menor espera observada: se até a menor espera passou do alvo
+ * (cardapio.admissao.alvoMs, padrão 20 ms), a fila não está só absorvendo um pico, ela não
+ * esvazia, e o servidor entra em sobrecarga até um intervalo terminar com a menor espera abaixo do alvo.
+ *
+ * Com sobrecarga, as leituras em massa (listagem, busca, faixa de preço, promoções, /cardapio.json) que esperaram
+ * mais que o alvo recebem 503 com Retry-After sem chegar ao handler; fora dela, só as que esperaram
+ * mais que um intervalo inteiro (o cliente provavelmente já desistiu). Escritas, GET por ID e
+ * health checks (/health, /metrics, /itens-cardapio/total) nunca são descartados aqui: elas
+ * passam na frente das leituras em massa, que são as que mais ocupam os workers.
+ *
+ * Durante a sobrecarga as respostas fecham a conexão (sem keep-alive), para que as conexões
+ * paradas na fila cheguem a um worker em vez de esperarem as conexões persistentes terminarem.
+ *
+ * O estado é atualizado sem lock: a menor espera do intervalo é um AtomicLong (accumulateAndGet)
+ * e só a thread que vence o compareAndSet do início do intervalo fecha o intervalo.
+ */
+public final class ControleAdmissao {
+
+    private final long alvoNanos;
+    private final long intervaloNanos;
+    private final int retryAfterSegundos;
+    private final AtomicLong inicioIntervalo = new AtomicLong(System.nanoTime());
+    private final AtomicLong menorEspera = new AtomicLong(Long.MAX_VALUE);
+    private volatile boolean sobrecarregado;
+
+    public ControleAdmissao() {
+        this(Long.getLong("cardapio.admissao.alvoMs", 20), Long.getLong("cardapio.admissao.intervaloMs", 100),
+            Integer.getInteger("cardapio.admissao.retryAfterSegundos", 1));
+    }
+
+    public ControleAdmissao(long alvoMs, long intervaloMs, int retryAfterSegundos) {
+        this.alvoNanos = alvoMs * 1_000_000;
+        this.intervaloNanos = intervaloMs * 1_000_000;
+        this.retryAfterSegundos = retryAfterSegundos;
+    }
+
+    /**
+     * Registra a espera na fila de uma conexão/requisição que acabou de chegar a um worker
+     */
+    public void registrarEspera(long esperaNanos) {
+        menorEspera.accumulateAndGet(esperaNanos, Math::min);
+        long inicio = inicioIntervalo.get();
+        long agora = System.nanoTime();
+        if (agora - inicio >= intervaloNanos && inicioIntervalo.compareAndSet(inicio, agora)) {
+            long menor = menorEspera.getAndSet(Long.MAX_VALUE);
+            boolean estava = sobrecarregado;
+            sobrecarregado = menor != Long.MAX_VALUE && menor > alvoNanos;
+            if (sobrecarregado != estava) {
+                LogServidor.warn(sobrecarregado
+                    ? "Sobrecarga: menor espera na fila de " + menor / 1_000_000 + " ms; descartando leituras em massa"
+                    : "Fim da sobrecarga: a fila voltou a esvaziar");
+            }
+        }
+    }
+
+    /**
+     * Se a requisição deve receber 503 em vez de ser processada
+     */
+    public boolean descartar(MetricasServidor.Rota rota, long esperaNanos) {
+        if (!descartavel(rota)) {
+            return false;
+        }
+        return esperaNanos > (sobrecarregado ? alvoNanos : intervaloNanos);
+    }
+
+    public boolean sobrecarregado() {
+        return sobrecarregado;
+    }
+
+    /**
+     * Só as leituras em massa são descartadas; escritas e health checks têm prioridade
+     */
+    static boolean descartavel(MetricasServidor.Rota rota) {
+        return switch (rota) {
+            case LISTAR, BUSCA, FAIXA_PRECO, PROMOCOES, PUBLICADO -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * 503 com Retry-After para requisições descartadas e conexões recusadas com a fila cheia
+     */
+    public RespostaHttp respostaSobrecarga() {
+        return RespostaHttp.json(503, "Service Unavailable", "{\"erro\": \"Servidor sobrecarregado, tente novamente\"}")
+            .comRetryAfter(retryAfterSegundos);
+    }
+}
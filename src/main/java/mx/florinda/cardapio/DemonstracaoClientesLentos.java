@@ -0,0 +1,209 @@
+package mx.florinda.cardapio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Demonstração de slowloris contra o ServidorItensCardapioComSocket: centenas de clientes lentos
+ * conectados enquanto clientes normais continuam fazendo requisições
+ *
+ * - Clientes lentos: abrem a conexão, mandam a request line e depois um byte de header a cada
+ *   intervaloMs, sem nunca terminar os headers. Quando o servidor fecha a conexão, reconectam.
+ *   Com um setSoTimeout (reiniciado a cada read) cada um prenderia uma thread do pool para sempre;
+ *   com os prazos do PrazoConexao a conexão dura no máximo o prazo de headers (ou o prazo sob pressão).
+ * - Clientes normais: uma conexão nova por requisição (GET /itens-cardapio/total), medindo a latência
+ *   desde o connect, que inclui a espera por uma thread livre no modo pool.
+ *
+ * O relatório mostra quantas requisições normais tiveram sucesso, seus percentis de latência e
+ * quanto tempo, em média, o servidor deixou cada conexão lenta aberta.
+ *
+ * Uso (parâmetros nome=valor, todos opcionais):
+ *   ./gradlew runClientesLentos --args="lentos=300 duracao=20"
+ * - host, porta (localhost, 8000)
+ * - lentos (300), intervaloMs entre bytes dos lentos (1000)
+ * - normais (4), duracao em segundos (20)
+ */
+public class DemonstracaoClientesLentos {
+
+    private static final byte[] INICIO_LENTO = "GET /itens-cardapio HTTP/1.1\r\nHost: localhost\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REQUISICAO_NORMAL =
+        "GET /itens-cardapio/total HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final String host;
+    private final int porta;
+    private final int lentos;
+    private final int intervaloMs;
+    private final int normais;
+    private final long duracaoNanos;
+
+    private final LongAdder conexoesLentas = new LongAdder();
+    private final LongAdder lentasFechadasPeloServidor = new LongAdder();
+    private final AtomicLong duracaoLentasMs = new AtomicLong();
+    private final LongAdder normaisOk = new LongAdder();
+    private final LongAdder normaisFalha = new LongAdder();
+
+    DemonstracaoClientesLentos(Map<String, String> parametros) {
+        this.host = parametros.getOrDefault("host", "localhost");
+        this.porta = Integer.parseInt(parametros.getOrDefault("porta", "8000"));
+        this.lentos = Integer.parseInt(parametros.getOrDefault("lentos", "300"));
+        this.intervaloMs = Integer.parseInt(parametros.getOrDefault("intervaloMs", "1000"));
+        this.normais = Integer.parseInt(parametros.getOrDefault("normais", "4"));
+        this.duracaoNanos = Long.parseLong(parametros.getOrDefault("duracao", "20")) * 1_000_000_000L;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> parametros = new HashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (igual <= 0) {
+                System.err.println("Parâmetro inválido (use nome=valor): " + arg);
+                return;
+            }
+            parametros.put(arg.substring(0, igual), arg.substring(igual + 1));
+        }
+        new DemonstracaoClientesLentos(parametros).executar();
+    }
+
+    void executar() throws InterruptedException {
+        System.out.printf(Locale.ROOT, "=== %d clientes lentos (1 byte a cada %d ms) e %d normais em %s:%d por %ds ===%n",
+            lentos, intervaloMs, normais, host, porta, duracaoNanos / 1_000_000_000L);
+        long fim = System.nanoTime() + duracaoNanos;
+
+        // Virtual threads: centenas de clientes parados em read() sem uma thread de plataforma para cada
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < lentos; i++) {
+            threads.add(Thread.ofVirtual().start(() -> clienteLento(fim)));
+        }
+        // Dá tempo de os lentos ocuparem o servidor antes de medir os normais
+        Thread.sleep(Math.min(2000, intervaloMs * 2L));
+
+        List<GeradorCargaCardapio.HistogramaLatencia> histogramas = new ArrayList<>();
+        List<Thread> threadsNormais = new ArrayList<>();
+        for (int i = 0; i < normais; i++) {
+            GeradorCargaCardapio.HistogramaLatencia histograma = new GeradorCargaCardapio.HistogramaLatencia();
+            histogramas.add(histograma);
+            threadsNormais.add(Thread.ofPlatform().start(() -> clienteNormal(fim, histograma)));
+        }
+        for (Thread thread : threadsNormais) {
+            thread.join();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        GeradorCargaCardapio.HistogramaLatencia total = new GeradorCargaCardapio.HistogramaLatencia();
+        histogramas.forEach(total::somar);
+        long fechadas = lentasFechadasPeloServidor.sum();
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Clientes normais: %d ok, %d falhas%n", normaisOk.sum(), normaisFalha.sum());
+        if (total.total() > 0) {
+            System.out.printf(Locale.ROOT, "  latência p50 %.1f ms | p99 %.1f ms | máx %.1f ms%n",
+                total.percentil(50) / 1000.0, total.percentil(99) / 1000.0, total.percentil(100) / 1000.0);
+        }
+        System.out.printf(Locale.ROOT, "Clientes lentos: %d conexões, %d fechadas pelo servidor", conexoesLentas.sum(), fechadas);
+        if (fechadas > 0) {
+            System.out.printf(Locale.ROOT, " após %.1f s em média", duracaoLentasMs.get() / 1000.0 / fechadas);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Manda a request line e um byte de header por intervalo, sem nunca terminar; reconecta quando o servidor fecha
+     */
+    private void clienteLento(long fim) {
+        while (System.nanoTime() < fim) {
+            long inicio = System.nanoTime();
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, porta), 5000);
+                conexoesLentas.increment();
+                socket.setSoTimeout(intervaloMs);
+                OutputStream saida = socket.getOutputStream();
+                InputStream entrada = socket.getInputStream();
+                saida.write(INICIO_LENTO);
+                saida.flush();
+                while (System.nanoTime() < fim) {
+                    try {
+                        // A espera entre bytes é o próprio read: -1 (ou erro) quando o servidor fecha
+                        if (entrada.read() == -1) {
+                            break;
+                        }
+                        // Servidor respondeu (ex: 503 da fila cheia) e vai fechar: lê até o fim
+                        while (entrada.read() != -1) {
+                            // descarta
+                        }
+                        break;
+                    } catch (SocketTimeoutException e) {
+                        saida.write('X');
+                        saida.flush();
+                    }
+                }
+                if (System.nanoTime() < fim) {
+                    lentasFechadasPeloServidor.increment();
+                    duracaoLentasMs.addAndGet((System.nanoTime() - inicio) / 1_000_000);
+                }
+            } catch (IOException e) {
+                // Conexão resetada pelo servidor: também conta como fechada
+                if (System.nanoTime() < fim) {
+                    lentasFechadasPeloServidor.increment();
+                    duracaoLentasMs.addAndGet((System.nanoTime() - inicio) / 1_000_000);
+                    pausar();
+                }
+            }
+        }
+    }
+
+    private void pausar() {
+        try {
+            Thread.sleep(intervaloMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Uma conexão por requisição, com a latência medida desde o connect
+     */
+    private void clienteNormal(long fim, GeradorCargaCardapio.HistogramaLatencia histograma) {
+        byte[] resposta = new byte[4096];
+        while (System.nanoTime() < fim) {
+            long inicio = System.nanoTime();
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, porta), 5000);
+                socket.setSoTimeout(30_000);
+                socket.getOutputStream().write(REQUISICAO_NORMAL);
+                InputStream entrada = socket.getInputStream();
+                int lidos = 0;
+                int n;
+                while ((n = entrada.read(resposta, lidos, resposta.length - lidos)) > 0) {
+                    lidos += n;
+                }
+                if (lidos > 12 && new String(resposta, 0, 12, StandardCharsets.US_ASCII).endsWith("200")) {
+                    normaisOk.increment();
+                    histograma.registrar((System.nanoTime() - inicio) / 1000);
+                } else {
+                    normaisFalha.increment();
+                }
+            } catch (IOException e) {
+                normaisFalha.increment();
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package mx.florinda.cardapio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Serializador JSON de ItemCardapio que escreve direto em bytes UTF-8
+ *
+ * Substitui o String.format + escaparJson (cinco replace por campo) + StringBuilder da
+ * listagem inteira: cada item é escrito num buffer de bytes reutilizável, com os nomes
+ * dos campos já em bytes e o escape JSON feito na mesma passada que codifica o UTF-8.
+ *
+ * O buffer pode ser lido ao final (toByteArray(), para o snapshot da listagem) ou
+ * esvaziado aos poucos (ver Blocos), para enviar listas grandes ao socket em partes
+ * sem montar o documento inteiro em memória.
+ *
+ * Formato (igual ao da serialização anterior):
+ * {"id":1,"nome":"...","descricao":"...","categoria":"BEBIDA","preco":9.90,"precoComDesconto":8.90}
+ */
+public final class EscritorJsonItemCardapio {
+
+    static final int TAMANHO_BLOCO = 16 * 1024;
+
+    private static final byte[] ID = bytes("{\"id\":");
+    private static final byte[] NOME = bytes(",\"nome\":\"");
+    private static final byte[] DESCRICAO = bytes("\",\"descricao\":\"");
+    private static final byte[] CATEGORIA = bytes("\",\"categoria\":\"");
+    private static final byte[] PRECO = bytes("\",\"preco\":");
+    private static final byte[] PRECO_COM_DESCONTO = bytes(",\"precoComDesconto\":");
+    private static final byte[] NULL = bytes("null");
+    private static final byte[] PAGINA_ITENS = bytes("{\"itens\":[");
+    private static final byte[] PAGINA_QUANTIDADE = bytes("],\"quantidade\":");
+    private static final byte[] PAGINA_PROXIMO_CURSOR = bytes(",\"proximoCursor\":");
+    private static final byte[] HEX = bytes("0123456789abcdef");
+    private static final byte[][] CATEGORIAS = new byte[ItemCardapio.CategoriaCardapio.values().length][];
+
+    static {
+        for (ItemCardapio.CategoriaCardapio categoria : ItemCardapio.CategoriaCardapio.values()) {
+            CATEGORIAS[categoria.ordinal()] = bytes(categoria.name());
+        }
+    }
+
+    private byte[] buffer;
+    private int tamanho;
+
+    public EscritorJsonItemCardapio() {
+        this(256);
+    }
+
+    public EscritorJsonItemCardapio(int capacidadeInicial) {
+        this.buffer = new byte[Math.max(16, capacidadeInicial)];
+    }
+
+    /**
+     * JSON de um único item
+     */
+    public static byte[] paraBytes(ItemCardapio item) {
+        EscritorJsonItemCardapio escritor = new EscritorJsonItemCardapio();
+        escritor.escreverItem(item);
+        return escritor.toByteArray();
+    }
+
+    /**
+     * JSON de uma lista de itens, montado inteiro em memória
+     */
+    public static byte[] paraBytes(Iterable<ItemCardapio> itens, int capacidadeEstimada) {
+        EscritorJsonItemCardapio escritor = new EscritorJsonItemCardapio(capacidadeEstimada);
+        escritor.escreverByte('[');
+        boolean primeiro = true;
+        for (ItemCardapio item : itens) {
+            if (!primeiro) {
+                escritor.escreverByte(',');
+            }
+            escritor.escreverItem(item);
+            primeiro = false;
+        }
+        escritor.escreverByte(']');
+        return escritor.toByteArray();
+    }
+
+    /**
+     * Uma página da listagem: {"itens":[...],"quantidade":n,"proximoCursor":id}
+     *
+     * Lê no máximo limite itens da visão informada (sem copiar o restante do catálogo).
+     * proximoCursor é o ID do último item da página quando ainda há itens depois dele,
+     * ou null na última página.
+     */
+    public static byte[] paginaParaBytes(Iterable<ItemCardapio> itens, int limite) {
+        EscritorJsonItemCardapio escritor = new EscritorJsonItemCardapio(Math.min(limite, 1024) * 200 + 64);
+        escritor.escrever(PAGINA_ITENS);
+        Iterator<ItemCardapio> iterador = itens.iterator();
+        int quantidade = 0;
+        Long ultimoId = null;
+        while (quantidade < limite && iterador.hasNext()) {
+            ItemCardapio item = iterador.next();
+            if (quantidade > 0) {
+                escritor.escreverByte(',');
+            }
+            escritor.escreverItem(item);
+            ultimoId = item.id();
+            quantidade++;
+        }
+        escritor.escrever(PAGINA_QUANTIDADE);
+        escritor.escreverLong(quantidade);
+        escritor.escrever(PAGINA_PROXIMO_CURSOR);
+        if (ultimoId != null && iterador.hasNext()) {
+            escritor.escreverLong(ultimoId);
+        } else {
+            escritor.escrever(NULL);
+        }
+        escritor.escreverByte('}');
+        return escritor.toByteArray();
+    }
+
+    /**
+     * Escreve o JSON do item no fim do buffer
+     */
+    public void escreverItem(ItemCardapio item) {
+        escrever(ID);
+        if (item.id() == null) {
+            escrever(NULL);
+        } else {
+            escreverLong(item.id());
+        }
+        escrever(NOME);
+        escreverTexto(item.nome());
+        escrever(DESCRICAO);
+        escreverTexto(item.descricao());
+        escrever(CATEGORIA);
+        if (item.categoria() != null) {
+            escrever(CATEGORIAS[item.categoria().ordinal()]);
+        }
+        escrever(PRECO);
+        escreverDecimal(item.preco());
+        escrever(PRECO_COM_DESCONTO);
+        escreverDecimal(item.precoComDesconto());
+        escreverByte('}');
+    }
+
+    public int tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Cópia exata dos bytes escritos até agora
+     */
+    public byte[] toByteArray() {
+        byte[] copia = new byte[tamanho];
+        System.arraycopy(buffer, 0, copia, 0, tamanho);
+        return copia;
+    }
+
+    /**
+     * Envia os bytes escritos ao destino e esvazia o buffer (a capacidade é mantida)
+     */
+    public void escreverEm(OutputStream destino) throws IOException {
+        destino.write(buffer, 0, tamanho);
+        tamanho = 0;
+    }
+
+    public void reiniciar() {
+        tamanho = 0;
+    }
+
+    /**
+     * Escreve a String com escape JSON e codificação UTF-8 numa única passada
+     * (null vira "", como no escaparJson anterior)
+     */
+    private void escreverTexto(String texto) {
+        if (texto == null) {
+            return;
+        }
+        int comprimento = texto.length();
+        // Pior caso: \\u00XX (6 bytes) por caractere de controle; 3 bytes por caractere UTF-16 fora disso
+        garantirEspaco(comprimento * 6);
+        byte[] destino = buffer;
+        int posicao = tamanho;
+        for (int i = 0; i < comprimento; i++) {
+            char c = texto.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    destino[posicao++] = '\\';
+                }
+                destino[posicao++] = (byte) c;
+            } else if (c < 0x20) {
+                destino[posicao++] = '\\';
+                switch (c) {
+                    case '\n' -> destino[posicao++] = 'n';
+                    case '\r' -> destino[posicao++] = 'r';
+                    case '\t' -> destino[posicao++] = 't';
+                    case '\b' -> destino[posicao++] = 'b';
+                    case '\f' -> destino[posicao++] = 'f';
+                    default -> {
+                        destino[posicao++] = 'u';
+                        destino[posicao++] = '0';
+                        destino[posicao++] = '0';
+                        destino[posicao++] = HEX[c >> 4];
+                        destino[posicao++] = HEX[c & 0xF];
+                    }
+                }
+            } else if (c < 0x800) {
+                destino[posicao++] = (byte) (0xC0 | (c >> 6));
+                destino[posicao++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < comprimento && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, texto.charAt(++i));
+                destino[posicao++] = (byte) (0xF0 | (codePoint >> 18));
+                destino[posicao++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                destino[posicao++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                destino[posicao++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate sem par: mesmo substituto usado por String.getBytes(UTF_8)
+                destino[posicao++] = '?';
+            } else {
+                destino[posicao++] = (byte) (0xE0 | (c >> 12));
+                destino[posicao++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                destino[posicao++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        tamanho = posicao;
+    }
+
+    private void escreverLong(long valor) {
+        if (valor == Long.MIN_VALUE) {
+            escrever(bytes(Long.toString(valor)));
+            return;
+        }
+        garantirEspaco(20);
+        if (valor < 0) {
+            buffer[tamanho++] = '-';
+            valor = -valor;
+        }
+        int digitos = 1;
+        for (long resto = valor / 10; resto > 0; resto /= 10) {
+            digitos++;
+        }
+        int posicao = tamanho + digitos;
+        tamanho = posicao;
+        do {
+            buffer[--posicao] = (byte) ('0' + (valor % 10));
+            valor /= 10;
+        } while (valor > 0);
+    }
+
+    private void escreverDecimal(BigDecimal valor) {
+        if (valor == null) {
+            escrever(NULL);
+            return;
+        }
+        // BigDecimal guarda o resultado do toString(), então só a primeira serialização cria a String
+        String texto = valor.toString();
+        int comprimento = texto.length();
+        garantirEspaco(comprimento);
+        for (int i = 0; i < comprimento; i++) {
+            buffer[tamanho++] = (byte) texto.charAt(i);
+        }
+    }
+
+    private void escrever(byte[] bytes) {
+        garantirEspaco(bytes.length);
+        System.arraycopy(bytes, 0, buffer, tamanho, bytes.length);
+        tamanho += bytes.length;
+    }
+
+    private void escreverByte(char c) {
+        garantirEspaco(1);
+        buffer[tamanho++] = (byte) c;
+    }
+
+    private void garantirEspaco(int adicional) {
+        if (tamanho + adicional > buffer.length) {
+            byte[] maior = new byte[Math.max(buffer.length * 2, tamanho + adicional)];
+            System.arraycopy(buffer, 0, maior, 0, tamanho);
+            buffer = maior;
+        }
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Lista JSON gerada sob demanda, em blocos de ~TAMANHO_BLOCO bytes
+     *
+     * Cada chamada a proximoBloco() serializa itens até encher um bloco e devolve uma
+     * visão do buffer interno (reutilizado no bloco seguinte). Assim a memória usada é
+     * a de um bloco, qualquer que seja o tamanho do catálogo. Os itens vêm de uma visão
+     * do ConcurrentSkipListMap: alterações feitas durante o envio podem ou não aparecer.
+     */
+    public static final class Blocos implements RespostaHttp.CorpoEmBlocos {
+
+        private final Iterator<ItemCardapio> itens;
+        private final EscritorJsonItemCardapio escritor = new EscritorJsonItemCardapio(TAMANHO_BLOCO + 1024);
+        private ByteBuffer visao;
+        private boolean iniciado;
+        private boolean terminado;
+
+        public Blocos(Iterable<ItemCardapio> itens) {
+            this.itens = itens.iterator();
+        }
+
+        @Override
+        public ByteBuffer proximoBloco() {
+            if (terminado) {
+                return null;
+            }
+            escritor.reiniciar();
+            if (!iniciado) {
+                escritor.escreverByte('[');
+            }
+            while (escritor.tamanho() < TAMANHO_BLOCO && itens.hasNext()) {
+                if (iniciado) {
+                    escritor.escreverByte(',');
+                }
+                escritor.escreverItem(itens.next());
+                iniciado = true;
+            }
+            iniciado = true;
+            if (!itens.hasNext()) {
+                escritor.escreverByte(']');
+                terminado = true;
+            }
+            if (visao == null || visao.array() != escritor.buffer) {
+                visao = ByteBuffer.wrap(escritor.buffer);
+            }
+            visao.limit(escritor.tamanho()).position(0);
+            return visao;
+        }
+    }
+}
@@ -0,0 +1,580 @@
+package mx.florinda.cardapio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gerador de carga para o ServidorItensCardapioComSocket (substitui o plano do JMeter)
+ *
+ * Cada conexão é uma thread com um socket keep-alive próprio, que envia uma requisição por vez
+ * e lê a resposta inteira (Content-Length ou chunked) antes da próxima. A carga mistura, com os
+ * pesos configurados, GET /itens-cardapio, GET /itens-cardapio/{id}, GET /itens-cardapio/total,
+ * POST /itens-cardapio (o body do plano .jmx) e DELETE de itens criados pela própria conexão.
+ *
+ * Modos:
+ * - aberto (padrão): taxa fixa de chegada. A requisição i de cada conexão tem horário marcado
+ *   (início + i * conexoes / taxa); se o servidor atrasar, as seguintes saem sem esperar, e a
+ *   latência é medida a partir do horário marcado. Assim uma pausa do servidor aparece em todas
+ *   as requisições que deveriam ter saído durante ela (correção de coordinated omission, como no wrk2)
+ * - fechado: cada conexão envia a próxima assim que recebe a resposta. Aqui não há horário
+ *   marcado; a correção é feita depois, no histograma: cada latência maior que o intervalo esperado
+ *   (mediana medida, ou intervaloEsperadoUs) acrescenta as amostras que teriam sido enviadas
+ *   durante ela, como o copyCorrectedForCoordinatedOmission do HdrHistogram
+ *
+ * O relatório mostra a latência corrigida e a não corrigida (tempo de serviço, do envio à resposta)
+ * lado a lado, com os percentis do histograma.
+ *
+ * Uso (parâmetros nome=valor, todos opcionais):
+ *   ./gradlew runGeradorCarga --args="conexoes=50 taxa=2000 duracao=30"
+ * - host, porta (localhost, 8000)
+ * - conexoes (10), duracao em segundos (30), aquecimento em segundos, descartado do relatório (5)
+ * - modo: aberto ou fechado (aberto); taxa em requisições/s no total, no modo aberto (1000)
+ * - pesoListar, pesoItem, pesoTotal, pesoPost, pesoDelete (50, 25, 5, 10, 10)
+ * - intervaloEsperadoUs: intervalo usado na correção do modo fechado (padrão: mediana medida)
+ */
+public class GeradorCargaCardapio {
+
+    private enum Operacao {
+        LISTAR, ITEM, TOTAL, POST, DELETE
+    }
+
+    private static final Operacao[] OPERACOES = Operacao.values();
+
+    private final String host;
+    private final int porta;
+    private final int conexoes;
+    private final long duracaoNanos;
+    private final long aquecimentoNanos;
+    private final boolean aberto;
+    private final double taxa;
+    private final int[] pesos = new int[OPERACOES.length];
+    private final int somaPesos;
+    private final long intervaloEsperadoUs;
+
+    GeradorCargaCardapio(Map<String, String> parametros) {
+        this.host = parametros.getOrDefault("host", "localhost");
+        this.porta = Integer.parseInt(parametros.getOrDefault("porta", "8000"));
+        this.conexoes = Integer.parseInt(parametros.getOrDefault("conexoes", "10"));
+        this.duracaoNanos = Long.parseLong(parametros.getOrDefault("duracao", "30")) * 1_000_000_000L;
+        this.aquecimentoNanos = Long.parseLong(parametros.getOrDefault("aquecimento", "5")) * 1_000_000_000L;
+        String modo = parametros.getOrDefault("modo", "aberto");
+        if (!modo.equals("aberto") && !modo.equals("fechado")) {
+            throw new IllegalArgumentException("modo deve ser aberto ou fechado: " + modo);
+        }
+        this.aberto = modo.equals("aberto");
+        this.taxa = Double.parseDouble(parametros.getOrDefault("taxa", "1000"));
+        pesos[Operacao.LISTAR.ordinal()] = Integer.parseInt(parametros.getOrDefault("pesoListar", "50"));
+        pesos[Operacao.ITEM.ordinal()] = Integer.parseInt(parametros.getOrDefault("pesoItem", "25"));
+        pesos[Operacao.TOTAL.ordinal()] = Integer.parseInt(parametros.getOrDefault("pesoTotal", "5"));
+        pesos[Operacao.POST.ordinal()] = Integer.parseInt(parametros.getOrDefault("pesoPost", "10"));
+        pesos[Operacao.DELETE.ordinal()] = Integer.parseInt(parametros.getOrDefault("pesoDelete", "10"));
+        int soma = 0;
+        for (int peso : pesos) {
+            if (peso < 0) {
+                throw new IllegalArgumentException("Pesos não podem ser negativos");
+            }
+            soma += peso;
+        }
+        if (soma == 0 || conexoes < 1 || (aberto && taxa <= 0)) {
+            throw new IllegalArgumentException("É preciso ao menos uma conexão, um peso positivo e taxa positiva");
+        }
+        this.somaPesos = soma;
+        this.intervaloEsperadoUs = Long.parseLong(parametros.getOrDefault("intervaloEsperadoUs", "0"));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> parametros = new HashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (igual <= 0) {
+                System.err.println("Parâmetro inválido (use nome=valor): " + arg);
+                return;
+            }
+            parametros.put(arg.substring(0, igual), arg.substring(igual + 1));
+        }
+        GeradorCargaCardapio gerador;
+        try {
+            gerador = new GeradorCargaCardapio(parametros);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Configuração inválida: " + e.getMessage());
+            return;
+        }
+        gerador.executar();
+    }
+
+    void executar() throws InterruptedException {
+        System.out.printf(Locale.ROOT, "=== Carga em %s:%d: %d conexões, modo %s%s, %ds + %ds de aquecimento ===%n",
+            host, porta, conexoes, aberto ? "aberto" : "fechado",
+            aberto ? String.format(Locale.ROOT, " (%.0f req/s)", taxa) : "",
+            duracaoNanos / 1_000_000_000L, aquecimentoNanos / 1_000_000_000L);
+
+        long inicio = System.nanoTime() + 100_000_000L; // todas as conexões começam juntas
+        Conexao[] todas = new Conexao[conexoes];
+        Thread[] threads = new Thread[conexoes];
+        for (int i = 0; i < conexoes; i++) {
+            todas[i] = new Conexao(i, inicio);
+            threads[i] = new Thread(todas[i], "carga-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Resultado total = new Resultado();
+        for (Conexao conexao : todas) {
+            total.somar(conexao.resultado);
+        }
+        imprimir(total);
+    }
+
+    /**
+     * Uma conexão keep-alive e a thread que a usa
+     */
+    private final class Conexao implements Runnable {
+
+        private final int indice;
+        private final long inicio;
+        private final Resultado resultado = new Resultado();
+        // IDs criados por esta conexão, removidos pelos DELETEs
+        private final ArrayDeque<Long> criados = new ArrayDeque<>();
+        private final LeitorResposta leitor = new LeitorResposta();
+        private Socket socket;
+        private OutputStream saida;
+        private long postsEnviados;
+
+        Conexao(int indice, long inicio) {
+            this.indice = indice;
+            this.inicio = inicio;
+        }
+
+        @Override
+        public void run() {
+            long fim = inicio + aquecimentoNanos + duracaoNanos;
+            long intervalo = aberto ? (long) (conexoes * 1e9 / taxa) : 0;
+            // Espalha as conexões dentro do intervalo, para não enviarem todas no mesmo instante
+            long marcado = inicio + (aberto ? intervalo * indice / conexoes : 0);
+            while (marcado < fim) {
+                long agora = System.nanoTime();
+                if (aberto) {
+                    while (agora < marcado) {
+                        LockSupport.parkNanos(marcado - agora);
+                        agora = System.nanoTime();
+                    }
+                } else {
+                    marcado = agora;
+                }
+                Operacao operacao = sortearOperacao();
+                int status = enviar(operacao);
+                long termino = System.nanoTime();
+                if (marcado >= inicio + aquecimentoNanos) {
+                    resultado.registrar(operacao, status, (termino - marcado) / 1000, (termino - agora) / 1000);
+                }
+                if (aberto) {
+                    marcado += intervalo;
+                } else if (termino >= fim) {
+                    break;
+                }
+            }
+            fechar();
+        }
+
+        private Operacao sortearOperacao() {
+            int sorteio = ThreadLocalRandom.current().nextInt(somaPesos);
+            for (Operacao operacao : OPERACOES) {
+                sorteio -= pesos[operacao.ordinal()];
+                if (sorteio < 0) {
+                    return operacao == Operacao.DELETE && criados.isEmpty() ? Operacao.ITEM : operacao;
+                }
+            }
+            return Operacao.LISTAR;
+        }
+
+        /**
+         * Envia a requisição e lê a resposta; retorna o status HTTP, ou 0 se a conexão falhou
+         */
+        private int enviar(Operacao operacao) {
+            try {
+                if (socket == null) {
+                    conectar();
+                }
+                String body = null;
+                String linha = switch (operacao) {
+                    case LISTAR -> "GET /itens-cardapio";
+                    case ITEM -> "GET /itens-cardapio/" + ThreadLocalRandom.current().nextInt(1, 6);
+                    case TOTAL -> "GET /itens-cardapio/total";
+                    case POST -> {
+                        long n = ++postsEnviados;
+                        body = "{\"nome\": \"Item " + indice + "-" + n + "\",\"descricao\": \"Descricao do Item " + indice + "-" + n
+                            + "\",\"categoria\": \"PRATOS_PRINCIPAIS\",\"preco\": \"20.00\",\"precoComDesconto\": \"18.00\"}";
+                        yield "POST /itens-cardapio";
+                    }
+                    case DELETE -> "DELETE /itens-cardapio/" + criados.poll();
+                };
+                StringBuilder requisicao = new StringBuilder(256)
+                    .append(linha).append(" HTTP/1.1\r\nHost: ").append(host).append("\r\nUser-Agent: GeradorCargaCardapio\r\n");
+                byte[] bytesBody = body == null ? null : body.getBytes(StandardCharsets.UTF_8);
+                if (bytesBody != null) {
+                    requisicao.append("Content-Type: application/json\r\nContent-Length: ").append(bytesBody.length).append("\r\n");
+                }
+                requisicao.append("\r\n");
+                saida.write(requisicao.toString().getBytes(StandardCharsets.US_ASCII));
+                if (bytesBody != null) {
+                    saida.write(bytesBody);
+                }
+                saida.flush();
+
+                int status = leitor.ler(operacao == Operacao.POST);
+                if (operacao == Operacao.POST && status == 201) {
+                    long id = leitor.idDoBody();
+                    if (id > 0) {
+                        criados.add(id);
+                    }
+                }
+                if (leitor.fecharConexao) {
+                    fechar();
+                }
+                return status;
+            } catch (IOException e) {
+                fechar();
+                return 0;
+            }
+        }
+
+        private void conectar() throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, porta), 5000);
+            socket.setSoTimeout(30_000);
+            saida = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            leitor.entrada = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+        }
+
+        private void fechar() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignore) {
+                }
+                socket = null;
+            }
+        }
+    }
+
+    /**
+     * Lê uma resposta HTTP/1.1 do stream, descartando o body (exceto quando pedido)
+     */
+    private static final class LeitorResposta {
+
+        private InputStream entrada;
+        private final StringBuilder linha = new StringBuilder(128);
+        private final byte[] descarte = new byte[64 * 1024];
+        private byte[] body = new byte[1024];
+        private int tamanhoBody;
+        private boolean fecharConexao;
+
+        int ler(boolean guardarBody) throws IOException {
+            String statusLinha = lerLinha();
+            if (!statusLinha.startsWith("HTTP/1.")) {
+                throw new IOException("Linha de status inválida: " + statusLinha);
+            }
+            int status = Integer.parseInt(statusLinha.substring(9, 12));
+            long contentLength = -1;
+            boolean chunked = false;
+            fecharConexao = statusLinha.startsWith("HTTP/1.0");
+            String cabecalho;
+            while (!(cabecalho = lerLinha()).isEmpty()) {
+                int doisPontos = cabecalho.indexOf(':');
+                if (doisPontos < 0) {
+                    continue;
+                }
+                String nome = cabecalho.substring(0, doisPontos).trim().toLowerCase(Locale.ROOT);
+                String valor = cabecalho.substring(doisPontos + 1).trim().toLowerCase(Locale.ROOT);
+                switch (nome) {
+                    case "content-length" -> contentLength = Long.parseLong(valor);
+                    case "transfer-encoding" -> chunked = valor.contains("chunked");
+                    case "connection" -> fecharConexao = valor.contains("close");
+                    default -> {
+                    }
+                }
+            }
+            tamanhoBody = 0;
+            if (chunked) {
+                long tamanhoChunk;
+                while ((tamanhoChunk = Long.parseLong(lerLinha().split(";", 2)[0].trim(), 16)) > 0) {
+                    lerBody(tamanhoChunk, guardarBody);
+                    lerLinha();
+                }
+                // Trailers (normalmente nenhum) até a linha em branco
+                while (!lerLinha().isEmpty()) {
+                }
+            } else if (contentLength > 0) {
+                lerBody(contentLength, guardarBody);
+            } else if (contentLength < 0 && status != 304 && status != 204) {
+                throw new IOException("Resposta sem Content-Length nem chunked");
+            }
+            return status;
+        }
+
+        /**
+         * Valor numérico do primeiro "id" do body guardado, ou -1
+         */
+        long idDoBody() {
+            String texto = new String(body, 0, tamanhoBody, StandardCharsets.UTF_8);
+            int campo = texto.indexOf("\"id\"");
+            if (campo < 0) {
+                return -1;
+            }
+            int i = texto.indexOf(':', campo) + 1;
+            while (i < texto.length() && Character.isWhitespace(texto.charAt(i))) {
+                i++;
+            }
+            int inicio = i;
+            while (i < texto.length() && Character.isDigit(texto.charAt(i))) {
+                i++;
+            }
+            return i > inicio ? Long.parseLong(texto.substring(inicio, i)) : -1;
+        }
+
+        private void lerBody(long tamanho, boolean guardar) throws IOException {
+            while (tamanho > 0) {
+                byte[] destino = descarte;
+                int posicao = 0;
+                int maximo = (int) Math.min(tamanho, descarte.length);
+                if (guardar) {
+                    if (tamanhoBody + maximo > body.length) {
+                        body = Arrays.copyOf(body, Math.max(body.length * 2, tamanhoBody + maximo));
+                    }
+                    destino = body;
+                    posicao = tamanhoBody;
+                }
+                int lidos = entrada.read(destino, posicao, maximo);
+                if (lidos < 0) {
+                    throw new EOFException("Conexão encerrada no meio do body");
+                }
+                if (guardar) {
+                    tamanhoBody += lidos;
+                }
+                tamanho -= lidos;
+            }
+        }
+
+        private String lerLinha() throws IOException {
+            linha.setLength(0);
+            int b;
+            while ((b = entrada.read()) != '\n') {
+                if (b < 0) {
+                    throw new EOFException("Conexão encerrada pelo servidor");
+                }
+                if (b != '\r') {
+                    linha.append((char) b);
+                }
+            }
+            return linha.toString();
+        }
+    }
+
+    /**
+     * Contagens e histogramas de uma conexão (sem sincronização; somados no fim)
+     */
+    private static final class Resultado {
+
+        private final HistogramaLatencia[] corrigida = new HistogramaLatencia[OPERACOES.length];
+        private final HistogramaLatencia[] servico = new HistogramaLatencia[OPERACOES.length];
+        private final Map<Integer, Long> porStatus = new TreeMap<>();
+
+        Resultado() {
+            for (int i = 0; i < OPERACOES.length; i++) {
+                corrigida[i] = new HistogramaLatencia();
+                servico[i] = new HistogramaLatencia();
+            }
+        }
+
+        void registrar(Operacao operacao, int status, long corrigidaUs, long servicoUs) {
+            porStatus.merge(status, 1L, Long::sum);
+            corrigida[operacao.ordinal()].registrar(corrigidaUs);
+            servico[operacao.ordinal()].registrar(servicoUs);
+        }
+
+        void somar(Resultado outro) {
+            for (int i = 0; i < OPERACOES.length; i++) {
+                corrigida[i].somar(outro.corrigida[i]);
+                servico[i].somar(outro.servico[i]);
+            }
+            outro.porStatus.forEach((status, total) -> porStatus.merge(status, total, Long::sum));
+        }
+    }
+
+    private void imprimir(Resultado resultado) {
+        HistogramaLatencia corrigida = new HistogramaLatencia();
+        HistogramaLatencia servico = new HistogramaLatencia();
+        for (int i = 0; i < OPERACOES.length; i++) {
+            servico.somar(resultado.servico[i]);
+        }
+        long intervalo = intervaloEsperadoUs > 0 ? intervaloEsperadoUs : servico.percentil(50);
+        for (int i = 0; i < OPERACOES.length; i++) {
+            if (!aberto) {
+                // Modo fechado: a latência corrigida é estimada a partir do tempo de serviço
+                resultado.corrigida[i] = resultado.servico[i].corrigidoComIntervalo(intervalo);
+            }
+            corrigida.somar(resultado.corrigida[i]);
+        }
+
+        long total = servico.total();
+        double segundos = duracaoNanos / 1e9;
+        System.out.printf(Locale.ROOT, "%nRequisições: %,d em %.0fs (%.1f req/s)%n", total, segundos, total / segundos);
+        System.out.print("Status:");
+        resultado.porStatus.forEach((status, quantidade) ->
+            System.out.printf(Locale.ROOT, " %s=%,d", status == 0 ? "erro de conexão" : status, quantidade));
+        System.out.println();
+        if (!aberto) {
+            System.out.printf(Locale.ROOT, "Correção do modo fechado com intervalo esperado de %d µs%n", intervalo);
+        }
+
+        System.out.printf(Locale.ROOT, "%n%-10s %12s %12s%n", "Percentil", "Corrigida", "Serviço");
+        for (double percentil : new double[]{50, 75, 90, 99, 99.9, 99.99, 100}) {
+            System.out.printf(Locale.ROOT, "%-10s %9.3f ms %9.3f ms%n", percentil == 100 ? "máximo" : "p" + percentil,
+                corrigida.percentil(percentil) / 1000.0, servico.percentil(percentil) / 1000.0);
+        }
+
+        System.out.printf(Locale.ROOT, "%n%-8s %10s %12s %12s %12s%n", "Operação", "Total", "p50", "p99", "p99.9");
+        for (Operacao operacao : OPERACOES) {
+            HistogramaLatencia h = resultado.corrigida[operacao.ordinal()];
+            if (resultado.servico[operacao.ordinal()].total() > 0) {
+                System.out.printf(Locale.ROOT, "%-8s %,10d %9.3f ms %9.3f ms %9.3f ms%n", operacao,
+                    resultado.servico[operacao.ordinal()].total(),
+                    h.percentil(50) / 1000.0, h.percentil(99) / 1000.0, h.percentil(99.9) / 1000.0);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%nHistograma da latência corrigida%n%14s %10s %12s%n", "Até (ms)", "Percentil", "Acumulado");
+        corrigida.imprimirDistribuicao();
+    }
+
+    /**
+     * Histograma logarítmico em microssegundos: cada potência de 2 é dividida em 32 faixas
+     * (erro máximo de ~3%), de 1 µs a ~12 dias
+     */
+    static final class HistogramaLatencia {
+
+        private static final int BITS_SUBFAIXA = 5;
+        private static final int SUBFAIXAS = 1 << BITS_SUBFAIXA;
+        private static final int FAIXAS = (40 - BITS_SUBFAIXA + 1) * SUBFAIXAS;
+
+        private final long[] contagens = new long[FAIXAS];
+        private long total;
+        private long maximo;
+
+        void registrar(long micros) {
+            registrar(micros, 1);
+        }
+
+        void registrar(long micros, long vezes) {
+            contagens[faixa(micros)] += vezes;
+            total += vezes;
+            maximo = Math.max(maximo, micros);
+        }
+
+        void somar(HistogramaLatencia outro) {
+            for (int i = 0; i < FAIXAS; i++) {
+                contagens[i] += outro.contagens[i];
+            }
+            total += outro.total;
+            maximo = Math.max(maximo, outro.maximo);
+        }
+
+        long total() {
+            return total;
+        }
+
+        /**
+         * Cópia com as amostras que faltaram enquanto cada resposta lenta era esperada:
+         * uma latência L > intervalo também conta L - intervalo, L - 2 * intervalo, ...
+         */
+        HistogramaLatencia corrigidoComIntervalo(long intervalo) {
+            HistogramaLatencia corrigido = new HistogramaLatencia();
+            for (int i = 0; i < FAIXAS; i++) {
+                if (contagens[i] == 0) {
+                    continue;
+                }
+                long valor = i == faixa(maximo) ? maximo : limiteSuperior(i);
+                corrigido.registrar(valor, contagens[i]);
+                if (intervalo > 0) {
+                    for (long faltante = valor - intervalo; faltante >= intervalo; faltante -= intervalo) {
+                        corrigido.registrar(faltante, contagens[i]);
+                    }
+                }
+            }
+            return corrigido;
+        }
+
+        /**
+         * Limite superior da faixa que contém o percentil (o máximo exato para 100)
+         */
+        long percentil(double percentil) {
+            if (total == 0) {
+                return 0;
+            }
+            long posicao = Math.max(1, (long) Math.ceil(percentil / 100 * total));
+            long acumulado = 0;
+            for (int i = 0; i < FAIXAS; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= posicao) {
+                    return Math.min(limiteSuperior(i), maximo);
+                }
+            }
+            return maximo;
+        }
+
+        /**
+         * Percentis em escala logarítmica (50%, 75%, 87,5%...), como o outputPercentileDistribution do HdrHistogram
+         */
+        void imprimirDistribuicao() {
+            if (total == 0) {
+                return;
+            }
+            for (double restante = 50; ; restante /= 2) {
+                double percentil = 100 - restante;
+                long posicao = (long) Math.ceil(percentil / 100 * total);
+                System.out.printf(Locale.ROOT, "%14.3f %9.5f%% %,12d%n", percentil(percentil) / 1000.0, percentil, posicao);
+                if (posicao >= total) {
+                    break;
+                }
+            }
+            System.out.printf(Locale.ROOT, "%14.3f %9.5f%% %,12d%n", maximo / 1000.0, 100.0, total);
+        }
+
+        static int faixa(long micros) {
+            if (micros < SUBFAIXAS) {
+                return (int) Math.max(0, micros);
+            }
+            int expoente = 63 - Long.numberOfLeadingZeros(micros);
+            int faixa = (expoente - BITS_SUBFAIXA + 1) * SUBFAIXAS + (int) ((micros >>> (expoente - BITS_SUBFAIXA)) & (SUBFAIXAS - 1));
+            return Math.min(faixa, FAIXAS - 1);
+        }
+
+        static long limiteSuperior(int faixa) {
+            if (faixa < SUBFAIXAS) {
+                return faixa + 1;
+            }
+            int expoente = faixa / SUBFAIXAS + BITS_SUBFAIXA - 1;
+            long passo = 1L << (expoente - BITS_SUBFAIXA);
+            return (SUBFAIXAS + faixa % SUBFAIXAS) * passo + passo;
+        }
+    }
+}
@@ -3,10 +3,25 @@ package mx.florinda.cardapio;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.zip.Deflater;
 
+/**
+ * Gera o cardapio.json publicado (servido em GET /cardapio.json pelo ServidorItensCardapioComSocket
+ * e em GET /itens-cardapio pelo ServidorItensCardapio)
+ *
+ * Junto com o JSON é gravado o cardapio.json.gz, comprimido uma vez no nível máximo, para o
+ * servidor enviar a clientes com gzip sem comprimir nada por requisição. Cada arquivo é escrito
+ * num temporário no mesmo diretório e renomeado por cima do anterior: quem lê (ou já está
+ * enviando) o arquivo nunca vê um JSON pela metade. O .gz é trocado primeiro, para que um
+ * cardapio.json novo nunca conviva com um .gz mais antigo que ele.
+ */
 public class GeradorItensCardapioJSON {
 
     public void gerarArquivoJSON(String nomeArquivo) {
@@ -23,19 +38,33 @@ public class GeradorItensCardapioJSON {
 
         String json = gson.toJson(itens);
 
-        // Escrever o JSON em um arquivo
-        try (FileWriter writer = new FileWriter(nomeArquivo)) {
-            writer.write(json);
-            System.out.println("Arquivo JSON gerado com sucesso: " + nomeArquivo);
+        // Escrever o JSON (e a variante gzip) em arquivos
+        try {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            Path arquivo = Paths.get(nomeArquivo).toAbsolutePath();
+            Path arquivoGzip = arquivo.resolveSibling(arquivo.getFileName() + PublicacaoCatalogo.SUFIXO_GZIP);
+            gravarAtomicamente(arquivoGzip, CompressaoHttp.comprimir(bytes, CompressaoHttp.Codificacao.GZIP, Deflater.BEST_COMPRESSION));
+            gravarAtomicamente(arquivo, bytes);
+            System.out.println("Arquivo JSON gerado com sucesso: " + nomeArquivo + " (e " + arquivoGzip.getFileName() + ")");
         } catch (IOException e) {
             System.err.println("Erro ao gerar arquivo JSON: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    private static void gravarAtomicamente(Path destino, byte[] conteudo) throws IOException {
+        // Files.write (e não createTempFile) para o arquivo ter as permissões normais do umask
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try {
+            Files.write(temporario, conteudo);
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporario);
+        }
+    }
+
     public static void main(String[] args) {
         GeradorItensCardapioJSON gerador = new GeradorItensCardapioJSON();
-        gerador.gerarArquivoJSON("cardapio.json");
+        gerador.gerarArquivoJSON(args.length > 0 ? args[0] : "cardapio.json");
     }
 }
-
@@ -0,0 +1,111 @@
+package mx.florinda.cardapio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Grava snapshots do catálogo periodicamente, em segundo plano (checkpoint do log de escrita)
+ *
+ * A cada cardapio.snapshot.intervaloSegundos (padrão 60), se o log de escrita tiver pelo
+ * menos cardapio.snapshot.minRegistros registros novos desde o último snapshot (padrão 10000):
+ *
+ * 1. Começa um segmento novo no log e anota o último LSN. Toda alteração com LSN até ele
+ *    já está nos mapas do catálogo, porque o registro é anexado depois de o mapa ser alterado.
+ * 2. Espera o log estar no disco até esse LSN (a reprodução nunca pode começar depois
+ *    do fim do log).
+ * 3. Percorre o catálogo sem bloquear as escritas e grava o ArquivoSnapshotCatalogo.
+ *    O percurso pode ver algumas alterações posteriores ao LSN anotado; como a reprodução
+ *    recomeça no LSN seguinte e cada registro é o item inteiro ou uma remoção, o resultado
+ *    depois da reprodução é o mesmo (checkpoint "fuzzy", sem parar o servidor).
+ * 4. Reabre o arquivo gravado, conferindo o CRC de todos os itens: só um snapshot que pode ser
+ *    carregado substitui os anteriores.
+ * 5. Mantém os cardapio.snapshot.manter snapshots mais recentes (padrão 2) e apaga os
+ *    segmentos do log anteriores ao mais antigo deles, que continua servindo de reserva
+ *    caso o mais recente esteja corrompido. Como cada snapshot começa um segmento, a
+ *    inicialização a partir do mais recente pula os segmentos anteriores sem lê-los.
+ */
+public final class GravadorSnapshotCatalogo implements AutoCloseable {
+
+    static final long INTERVALO_SEGUNDOS = Long.getLong("cardapio.snapshot.intervaloSegundos", 60);
+    static final long MIN_REGISTROS = Long.getLong("cardapio.snapshot.minRegistros", 10_000);
+    static final int MANTER = Math.max(1, Integer.getInteger("cardapio.snapshot.manter", 2));
+
+    private final Path diretorio;
+    private final CatalogoCardapio catalogo;
+    private final LogEscritaCatalogo logEscrita;
+    private final LongSupplier maiorIdAtribuido;
+    private final ScheduledExecutorService agendador;
+    private volatile long lsnUltimoSnapshot;
+
+    public GravadorSnapshotCatalogo(Path diretorio, CatalogoCardapio catalogo, LogEscritaCatalogo logEscrita,
+                                    LongSupplier maiorIdAtribuido, long lsnUltimoSnapshot) {
+        this.diretorio = diretorio;
+        this.catalogo = catalogo;
+        this.logEscrita = logEscrita;
+        this.maiorIdAtribuido = maiorIdAtribuido;
+        this.lsnUltimoSnapshot = lsnUltimoSnapshot;
+        this.agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snapshot-catalogo");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void iniciar() {
+        agendador.scheduleWithFixedDelay(this::gravarSeNecessario, INTERVALO_SEGUNDOS, INTERVALO_SEGUNDOS, TimeUnit.SECONDS);
+    }
+
+    private void gravarSeNecessario() {
+        if (logEscrita.ultimoLsn() - lsnUltimoSnapshot < MIN_REGISTROS) {
+            return;
+        }
+        try {
+            gravar();
+        } catch (IOException | RuntimeException e) {
+            // Sem snapshot novo o log continua completo: tenta de novo no próximo intervalo
+            LogServidor.error("Falha ao gravar snapshot do catálogo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Grava um snapshot agora e descarta os snapshots e segmentos do log que deixaram de ser necessários
+     */
+    public Path gravar() throws IOException {
+        long inicio = System.nanoTime();
+        logEscrita.iniciarNovoSegmento();
+        long lsn = logEscrita.ultimoLsn();
+        logEscrita.aguardarDurabilidade();
+        Path arquivo = ArquivoSnapshotCatalogo.gravar(diretorio, catalogo.itensVersionados(), lsn, maiorIdAtribuido.getAsLong());
+        try {
+            ArquivoSnapshotCatalogo.abrir(arquivo);
+        } catch (IOException e) {
+            // Nada foi descartado ainda: os snapshots anteriores e o log continuam valendo
+            Files.move(arquivo, arquivo.resolveSibling(arquivo.getFileName() + ".corrompido"), StandardCopyOption.REPLACE_EXISTING);
+            throw new IOException("Snapshot " + arquivo.getFileName() + " gravado não confere: " + e.getMessage(), e);
+        }
+        lsnUltimoSnapshot = lsn;
+
+        List<Path> snapshots = ArquivoSnapshotCatalogo.listar(diretorio);
+        for (Path antigo : snapshots.subList(0, Math.max(0, snapshots.size() - MANTER))) {
+            Files.deleteIfExists(antigo);
+        }
+        long lsnMaisAntigo = ArquivoSnapshotCatalogo.lsnDoArquivo(snapshots.get(Math.max(0, snapshots.size() - MANTER)));
+        int segmentos = logEscrita.descartarSegmentosAte(lsnMaisAntigo);
+
+        LogServidor.info("Snapshot " + arquivo.getFileName() + " gravado: " + Files.size(arquivo) / 1024 + " KB em "
+            + (System.nanoTime() - inicio) / 1_000_000 + " ms (" + segmentos + " segmento(s) do log descartados)");
+        return arquivo;
+    }
+
+    @Override
+    public void close() {
+        agendador.shutdownNow();
+    }
+}
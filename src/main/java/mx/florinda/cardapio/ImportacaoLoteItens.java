@@ -0,0 +1,416 @@
+package mx.florinda.cardapio;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Importação em lote de POST /itens-cardapio/lote, processada à medida que o body chega
+ *
+ * O body pode ser um array JSON ([{...},{...}]) ou JSON delimitado por linha (um objeto
+ * por linha, NDJSON); os dois formatos são tratados pelo mesmo separador, que percorre os
+ * bytes uma única vez acompanhando a profundidade de chaves/colchetes e as strings. Cada
+ * objeto completo é convertido com o mesmo parser do POST de um item e inserido no catálogo,
+ * sem esperar o resto do body: a memória usada é a de um item, e não a do lote inteiro.
+ *
+ * IDs: itens sem "id" recebem IDs de blocos reservados de uma vez no proximoId
+ * (um getAndAdd por bloco, e não um por item). O que sobrar do último bloco é devolvido
+ * no fim, se nenhuma outra requisição tiver reservado IDs depois.
+ *
+ * Inserções: os itens são acumulados em grupos de TAMANHO_GRUPO e gravados com
+ * CatalogoCardapio.adicionarTodos(), que adquire o lock de escrita uma vez por grupo.
+ * Sem executor (modo bloqueante) o grupo é gravado na própria thread da conexão. Com executor
+ * (modo NIO) o lock, o log de escrita e os ouvintes ficam fora do reator: cada grupo vai para a
+ * fila da importação e é gravado por um worker, um grupo por vez e na ordem do body; com
+ * GRUPOS_PENDENTES_MAXIMO na fila, aguardarGravacao() avisa o reator para parar de ler o socket.
+ * Um lote interrompido (conexão encerrada no meio do body) mantém os itens já recebidos.
+ *
+ * Resposta: {"recebidos":n,"criados":n,"erros":n,"itens":[{"indice":0,"status":201,"id":7},...]}
+ * com o status de cada objeto na ordem do body (400/413 com "erro" para os rejeitados).
+ * Em memória fica só o ID criado de cada objeto (8 bytes) e a mensagem dos rejeitados; o JSON
+ * do resumo é gerado em blocos durante o envio (Transfer-Encoding: chunked).
+ */
+public final class ImportacaoLoteItens implements RequisicaoHttp.ConsumidorBody {
+
+    static final int TAMANHO_BLOCO_IDS = Integer.getInteger("cardapio.lote.blocoIds", 1024);
+    static final int TAMANHO_MAXIMO_ITEM = Integer.getInteger("cardapio.lote.maxItem", 64 * 1024);
+    private static final int TAMANHO_GRUPO = 256;
+    private static final int GRUPOS_PENDENTES_MAXIMO = 2;
+
+    private record Erro(int status, String mensagem) {
+    }
+
+    private final CatalogoCardapio catalogo;
+    private final AtomicLong proximoId;
+    // null: grupos gravados na thread que entrega o body
+    private final Executor gravacao;
+    private final long inicioNanos = System.nanoTime();
+
+    // Separador de objetos
+    private byte[] objeto = new byte[1024];
+    private int tamanhoObjeto;
+    private int profundidade;
+    private boolean emString;
+    private boolean escape;
+    private boolean objetoGrandeDemais;
+    private boolean arrayAberto;
+    private boolean arrayFechado;
+    private boolean invalido;
+    private long posicao;
+
+    // IDs reservados ainda não usados: [idLivre, fimBloco)
+    private long idLivre;
+    private long fimBloco;
+
+    // java.util.ArrayList qualificado: o pacote tem uma classe própria chamada ArrayList
+    private final List<ItemCardapio> grupo = new java.util.ArrayList<>(TAMANHO_GRUPO);
+
+    // Grupos esperando um worker (com executor); o lock mantém a gravação na ordem do body
+    private final ArrayDeque<List<ItemCardapio>> gruposPendentes = new ArrayDeque<>();
+    private final ReentrantLock gravacaoEmOrdem = new ReentrantLock();
+    private RuntimeException falhaGravacao;
+    private Runnable aoLiberar;
+
+    // Resultado de cada objeto, na ordem do body: o ID criado, ou (com o bit em comErro) a posição em detalhesErros
+    private long[] resultados = new long[256];
+    private final BitSet comErro = new BitSet();
+    private final List<Erro> detalhesErros = new java.util.ArrayList<>();
+    private int recebidos;
+    private int criados;
+    private int erros;
+    private boolean concluida;
+
+    public ImportacaoLoteItens(CatalogoCardapio catalogo, AtomicLong proximoId) {
+        this(catalogo, proximoId, null);
+    }
+
+    /**
+     * @param gravacao executor que grava os grupos fora da thread que entrega o body (ex: workers do
+     *                 modo NIO), ou null para gravar na própria thread
+     */
+    public ImportacaoLoteItens(CatalogoCardapio catalogo, AtomicLong proximoId, Executor gravacao) {
+        this.catalogo = catalogo;
+        this.proximoId = proximoId;
+        this.gravacao = gravacao;
+    }
+
+    @Override
+    public void consumir(byte[] dados, int de, int ate) {
+        for (int i = de; i < ate && !invalido; i++) {
+            byte b = dados[i];
+            if (profundidade == 0) {
+                separador(b);
+            } else {
+                dentroDoObjeto(b);
+            }
+            posicao++;
+        }
+    }
+
+    /**
+     * Grava os itens pendentes (esperando os grupos ainda na fila dos workers), devolve os IDs
+     * não usados e monta o resumo. Também é chamado quando a conexão cai no meio do body
+     * (a resposta é descartada). Se a gravação de algum grupo falhou, lança a falha.
+     */
+    public RespostaHttp concluir() {
+        if (!concluida) {
+            concluida = true;
+            if (profundidade > 0 && !invalido) {
+                registrarErro(400, "Item incompleto no fim do body");
+            } else if (arrayAberto && !arrayFechado && !invalido) {
+                registrarErro(400, "Array JSON sem ']' no fim do body");
+            }
+            gravarGrupo();
+            // Grava aqui o que ainda estiver na fila: esperar um worker poderia travar com um único worker
+            gravacaoEmOrdem.lock();
+            try {
+                while (gravarPendente()) {
+                }
+            } finally {
+                gravacaoEmOrdem.unlock();
+            }
+            // Devolve o resto do bloco se ninguém reservou IDs depois dele
+            if (idLivre < fimBloco) {
+                proximoId.compareAndSet(fimBloco, idLivre);
+            }
+            LogServidor.info("Lote importado: " + recebidos + " itens (" + criados + " criados, " + erros
+                + " com erro) em " + (System.nanoTime() - inicioNanos) / 1_000_000 + " ms");
+        }
+        if (falhaGravacao != null) {
+            throw new IllegalStateException("Falha ao gravar o lote: " + falhaGravacao.getMessage(), falhaGravacao);
+        }
+
+        // Body malformado antes de qualquer item válido: a requisição como um todo é inválida
+        if (criados == 0 && erros > 0) {
+            return RespostaHttp.emBlocos(400, "Bad Request", new Resumo());
+        }
+        return RespostaHttp.emBlocos(200, "OK", new Resumo());
+    }
+
+    /**
+     * Com GRUPOS_PENDENTES_MAXIMO grupos esperando gravação, guarda aoLiberar (chamado por um
+     * worker quando a fila baixar) e retorna true: quem entrega o body deve parar de ler até lá.
+     */
+    public boolean aguardarGravacao(Runnable aoLiberar) {
+        synchronized (gruposPendentes) {
+            if (gruposPendentes.size() < GRUPOS_PENDENTES_MAXIMO) {
+                return false;
+            }
+            this.aoLiberar = aoLiberar;
+            return true;
+        }
+    }
+
+    /**
+     * Entre objetos: espaços, quebras de linha (NDJSON), vírgulas e os colchetes do array
+     */
+    private void separador(byte b) {
+        switch (b) {
+            case ' ', '\t', '\r', '\n', ',' -> {
+            }
+            case '[' -> {
+                if (arrayAberto || recebidos > 0) {
+                    invalido(b);
+                }
+                arrayAberto = true;
+            }
+            case ']' -> {
+                if (!arrayAberto || arrayFechado) {
+                    invalido(b);
+                }
+                arrayFechado = true;
+            }
+            case '{' -> {
+                if (arrayFechado) {
+                    invalido(b);
+                    return;
+                }
+                profundidade = 1;
+                tamanhoObjeto = 0;
+                objetoGrandeDemais = false;
+                acumular(b);
+            }
+            default -> invalido(b);
+        }
+    }
+
+    private void dentroDoObjeto(byte b) {
+        acumular(b);
+        if (emString) {
+            if (escape) {
+                escape = false;
+            } else if (b == '\\') {
+                escape = true;
+            } else if (b == '"') {
+                emString = false;
+            }
+            return;
+        }
+        switch (b) {
+            case '"' -> emString = true;
+            case '{', '[' -> profundidade++;
+            case '}', ']' -> {
+                if (--profundidade == 0) {
+                    processarObjeto();
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void acumular(byte b) {
+        if (objetoGrandeDemais) {
+            return;
+        }
+        if (tamanhoObjeto == objeto.length) {
+            if (objeto.length >= TAMANHO_MAXIMO_ITEM) {
+                // Continua acompanhando a profundidade até o fim do objeto, sem guardar os bytes
+                objetoGrandeDemais = true;
+                return;
+            }
+            objeto = Arrays.copyOf(objeto, Math.min(objeto.length * 2, TAMANHO_MAXIMO_ITEM));
+        }
+        objeto[tamanhoObjeto++] = b;
+    }
+
+    private void processarObjeto() {
+        if (objetoGrandeDemais) {
+            registrarErro(413, "Item maior que " + TAMANHO_MAXIMO_ITEM + " bytes");
+            return;
+        }
+        String json = new String(objeto, 0, tamanhoObjeto, StandardCharsets.UTF_8);
+        ItemCardapio item;
+        try {
+            item = ServidorItensCardapioComSocket.parseJsonParaItemCardapio(json, this::reservarId);
+        } catch (RuntimeException e) {
+            registrarErro(400, String.valueOf(e.getMessage()));
+            return;
+        }
+        criados++;
+        registrarResultado(item.id());
+        grupo.add(item);
+        if (grupo.size() >= TAMANHO_GRUPO) {
+            gravarGrupo();
+        }
+    }
+
+    private long reservarId() {
+        if (idLivre == fimBloco) {
+            idLivre = proximoId.getAndAdd(TAMANHO_BLOCO_IDS);
+            fimBloco = idLivre + TAMANHO_BLOCO_IDS;
+        }
+        return idLivre++;
+    }
+
+    private void gravarGrupo() {
+        if (grupo.isEmpty()) {
+            return;
+        }
+        if (gravacao == null) {
+            catalogo.adicionarTodos(grupo);
+            grupo.clear();
+            return;
+        }
+        synchronized (gruposPendentes) {
+            gruposPendentes.add(new java.util.ArrayList<>(grupo));
+        }
+        grupo.clear();
+        try {
+            gravacao.execute(this::gravarProximoGrupo);
+        } catch (RejectedExecutionException e) {
+            // Executor cheio ou encerrado: grava na própria thread, senão ninguém liberaria aguardarGravacao()
+            gravarProximoGrupo();
+        }
+    }
+
+    /**
+     * Tarefa do worker: grava o grupo mais antigo da fila (uma tarefa por grupo enfileirado)
+     */
+    private void gravarProximoGrupo() {
+        gravacaoEmOrdem.lock();
+        try {
+            gravarPendente();
+        } finally {
+            gravacaoEmOrdem.unlock();
+        }
+        Runnable liberar = null;
+        synchronized (gruposPendentes) {
+            if (aoLiberar != null && gruposPendentes.size() < GRUPOS_PENDENTES_MAXIMO) {
+                liberar = aoLiberar;
+                aoLiberar = null;
+            }
+        }
+        if (liberar != null) {
+            liberar.run();
+        }
+    }
+
+    /**
+     * Grava o grupo mais antigo da fila, com gravacaoEmOrdem adquirido. Depois de uma falha os
+     * grupos seguintes são descartados (a falha é relatada por concluir). Retorna false com a fila vazia.
+     */
+    private boolean gravarPendente() {
+        List<ItemCardapio> pendente;
+        synchronized (gruposPendentes) {
+            pendente = gruposPendentes.poll();
+        }
+        if (pendente == null) {
+            return false;
+        }
+        if (falhaGravacao == null) {
+            try {
+                catalogo.adicionarTodos(pendente);
+            } catch (RuntimeException e) {
+                LogServidor.error("Falha ao gravar grupo do lote: " + e.getMessage());
+                falhaGravacao = e;
+            }
+        }
+        return true;
+    }
+
+    private void invalido(byte b) {
+        invalido = true;
+        String caractere = b >= 0x20 && b < 0x7F ? "'" + (char) b + "'" : String.format("0x%02x", b & 0xFF);
+        registrarErro(400, "JSON inválido na posição " + posicao + " do body (" + caractere + ")");
+    }
+
+    private void registrarErro(int codigo, String mensagem) {
+        erros++;
+        comErro.set(recebidos);
+        registrarResultado(detalhesErros.size());
+        detalhesErros.add(new Erro(codigo, mensagem));
+    }
+
+    private void registrarResultado(long valor) {
+        if (recebidos == resultados.length) {
+            resultados = Arrays.copyOf(resultados, resultados.length * 2);
+        }
+        resultados[recebidos++] = valor;
+    }
+
+    /**
+     * JSON do resumo gerado sob demanda em blocos de ~EscritorJsonItemCardapio.TAMANHO_BLOCO bytes,
+     * reaproveitando o texto e o buffer entre os blocos
+     */
+    private final class Resumo implements RespostaHttp.CorpoEmBlocos {
+
+        private final StringBuilder texto = new StringBuilder(EscritorJsonItemCardapio.TAMANHO_BLOCO + 256);
+        private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer bloco = ByteBuffer.allocate(EscritorJsonItemCardapio.TAMANHO_BLOCO + 1024);
+        // -1: cabeçalho do resumo ainda não escrito; recebidos + 1: terminado
+        private int proximo = -1;
+
+        @Override
+        public ByteBuffer proximoBloco() {
+            if (proximo > recebidos) {
+                return null;
+            }
+            texto.setLength(0);
+            if (proximo < 0) {
+                texto.append("{\"recebidos\":").append(recebidos).append(",\"criados\":").append(criados)
+                    .append(",\"erros\":").append(erros).append(",\"itens\":[");
+                proximo = 0;
+            }
+            while (texto.length() < EscritorJsonItemCardapio.TAMANHO_BLOCO && proximo < recebidos) {
+                escreverStatus(proximo++);
+            }
+            if (proximo == recebidos) {
+                texto.append("]}");
+                proximo++;
+            }
+            if (bloco.capacity() < texto.length() * 3) {
+                bloco = ByteBuffer.allocate(texto.length() * 3);
+            }
+            bloco.clear();
+            utf8.reset().encode(CharBuffer.wrap(texto), bloco, true);
+            utf8.flush(bloco);
+            return bloco.flip();
+        }
+
+        private void escreverStatus(int indice) {
+            if (indice > 0) {
+                texto.append(',');
+            }
+            texto.append("{\"indice\":").append(indice).append(",\"status\":");
+            if (comErro.get(indice)) {
+                Erro erro = detalhesErros.get((int) resultados[indice]);
+                texto.append(erro.status()).append(",\"erro\":\"")
+                    .append(ServidorItensCardapioComSocket.escaparJson(erro.mensagem())).append("\"}");
+            } else {
+                texto.append(201).append(",\"id\":").append(resultados[indice]).append('}');
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package mx.florinda.cardapio;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido sobre nome e descrição dos itens, para GET /itens-cardapio/busca?q=
+ *
+ * Os textos são quebrados em termos sem acento e em minúsculas ("Sanduíche" -> "sanduiche",
+ * "Café" -> "cafe", "Piñata" -> "pinata"), sem as palavras muito comuns em português e
+ * espanhol ("de", "com", "y"...). Cada termo aponta para os IDs dos itens que o contêm,
+ * com os campos em que ele aparece (nome e/ou descrição).
+ *
+ * Os termos ficam num ConcurrentSkipListMap, então cada termo da consulta também casa como
+ * prefixo ("sand" encontra "sanduiche"): é só percorrer o subMap [termo, termo + Character.MAX_VALUE).
+ * Uma consulta só olha as listas dos termos que casam, sem percorrer o catálogo.
+ * Um item precisa casar com todos os termos da consulta (E).
+ *
+ * Ranking: cada termo da consulta soma PESO_NOME se casou no nome e PESO_DESCRICAO se casou
+ * na descrição, em dobro quando o termo é exato e não só prefixo. Empates vão para o menor ID.
+ *
+ * O índice é um OuvinteCatalogo (atualizado a cada escrita), e a carga dos itens existentes
+ * é feita numa thread de fundo, como em IndiceCategoriaCatalogo; até ela terminar, a busca
+ * percorre o catálogo. Como a carga corre junto com as escritas, o índice pode ter entradas
+ * a mais, então cada item do resultado é conferido contra a consulta antes de ser devolvido.
+ */
+public final class IndiceBuscaCatalogo implements OuvinteCatalogo {
+
+    private static final int CAMPO_NOME = 1;
+    private static final int CAMPO_DESCRICAO = 2;
+    private static final int PESO_NOME = 3;
+    private static final int PESO_DESCRICAO = 1;
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+    private static final Set<String> PALAVRAS_COMUNS = Set.of(
+        "a", "o", "as", "os", "e", "de", "da", "do", "das", "dos", "em", "no", "na", "com", "um", "uma", "para", "por",
+        "y", "el", "la", "los", "las", "del", "con", "en", "un", "una");
+
+    // termo -> (ID -> campos em que o termo aparece)
+    private final ConcurrentNavigableMap<String, Map<Long, Integer>> termos = new ConcurrentSkipListMap<>();
+    // Serializa a carga inicial com as alterações do catálogo (as buscas não usam lock)
+    private final ReentrantLock escrita = new ReentrantLock();
+    private final CatalogoCardapio catalogo;
+    private volatile boolean carregado;
+
+    private IndiceBuscaCatalogo(CatalogoCardapio catalogo) {
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * Cria o índice, passa a ouvir o catálogo e inicia a carga em segundo plano (fora do construtor)
+     */
+    public static IndiceBuscaCatalogo criar(CatalogoCardapio catalogo) {
+        IndiceBuscaCatalogo indice = new IndiceBuscaCatalogo(catalogo);
+        catalogo.adicionarOuvinte(indice);
+
+        Thread carga = new Thread(indice::carregar, "indice-busca");
+        carga.setDaemon(true);
+        carga.start();
+        return indice;
+    }
+
+    private void carregar() {
+        long inicio = System.nanoTime();
+        try {
+            for (ItemCardapio item : catalogo.itens()) {
+                indexar(item);
+            }
+        } catch (RuntimeException e) {
+            // Continua sem índice: as consultas seguem percorrendo o catálogo
+            LogServidor.error("Índice de busca não carregado: " + e);
+            return;
+        }
+        carregado = true;
+        LogServidor.info("Índice de busca carregado em " + (System.nanoTime() - inicio) / 1_000_000 + " ms ("
+            + termos.size() + " termos)");
+    }
+
+    @Override
+    public void itemAdicionado(ItemCardapio item, ItemCardapio anterior) {
+        if (anterior != null) {
+            desindexar(anterior);
+        }
+        indexar(item);
+    }
+
+    @Override
+    public void itemRemovido(ItemCardapio item) {
+        desindexar(item);
+    }
+
+    private void indexar(ItemCardapio item) {
+        Map<String, Integer> campos = camposPorTermo(item);
+        escrita.lock();
+        try {
+            for (Map.Entry<String, Integer> termo : campos.entrySet()) {
+                termos.computeIfAbsent(termo.getKey(), t -> new ConcurrentHashMap<>())
+                    .merge(item.id(), termo.getValue(), (a, b) -> a | b);
+            }
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    private void desindexar(ItemCardapio item) {
+        Map<String, Integer> campos = camposPorTermo(item);
+        escrita.lock();
+        try {
+            for (String termo : campos.keySet()) {
+                Map<Long, Integer> ids = termos.get(termo);
+                if (ids != null) {
+                    ids.remove(item.id());
+                    if (ids.isEmpty()) {
+                        termos.remove(termo);
+                    }
+                }
+            }
+        } finally {
+            escrita.unlock();
+        }
+    }
+
+    /**
+     * Até limite itens que casam com todos os termos da consulta, do mais relevante para o menos
+     * (lista vazia se a consulta não tiver nenhum termo pesquisável)
+     */
+    public List<ItemCardapio> buscar(String consulta, int limite) {
+        List<String> termosConsulta = new ArrayList<>(new LinkedHashSet<>(termos(consulta)));
+        if (termosConsulta.isEmpty()) {
+            return List.of();
+        }
+        return carregado ? buscarNoIndice(termosConsulta, limite) : buscarPercorrendo(termosConsulta, limite);
+    }
+
+    private List<ItemCardapio> buscarNoIndice(List<String> termosConsulta, int limite) {
+        // Pontuação de cada candidato, começando pelo termo com menos itens para a interseção encolher logo
+        List<Map<Long, Integer>> porTermo = new ArrayList<>(termosConsulta.size());
+        for (String termo : termosConsulta) {
+            Map<Long, Integer> pontos = pontosDoTermo(termo);
+            if (pontos.isEmpty()) {
+                return List.of();
+            }
+            porTermo.add(pontos);
+        }
+        porTermo.sort(Comparator.comparingInt(Map::size));
+        Map<Long, Integer> candidatos = porTermo.get(0);
+        for (int i = 1; i < porTermo.size() && !candidatos.isEmpty(); i++) {
+            Map<Long, Integer> outro = porTermo.get(i);
+            Map<Long, Integer> intersecao = new HashMap<>();
+            for (Map.Entry<Long, Integer> candidato : candidatos.entrySet()) {
+                Integer pontos = outro.get(candidato.getKey());
+                if (pontos != null) {
+                    intersecao.put(candidato.getKey(), candidato.getValue() + pontos);
+                }
+            }
+            candidatos = intersecao;
+        }
+
+        List<Map.Entry<Long, Integer>> ordenados = new ArrayList<>(candidatos.entrySet());
+        ordenados.sort(Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        List<ItemCardapio> resultado = new ArrayList<>(Math.min(limite, ordenados.size()));
+        for (Map.Entry<Long, Integer> candidato : ordenados) {
+            if (resultado.size() == limite) {
+                break;
+            }
+            ItemCardapio item = catalogo.buscar(candidato.getKey());
+            // Confere o item atual: a entrada do índice pode ser de uma versão já substituída ou removida
+            if (item != null && pontuar(item, termosConsulta) > 0) {
+                resultado.add(item);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * ID -> pontos de todos os itens com algum termo que começa com o termo da consulta
+     */
+    private Map<Long, Integer> pontosDoTermo(String termoConsulta) {
+        Map<Long, Integer> pontos = new HashMap<>();
+        for (Map.Entry<String, Map<Long, Integer>> termo : termos.subMap(termoConsulta, termoConsulta + Character.MAX_VALUE).entrySet()) {
+            boolean exato = termo.getKey().equals(termoConsulta);
+            for (Map.Entry<Long, Integer> item : termo.getValue().entrySet()) {
+                pontos.merge(item.getKey(), pontos(item.getValue(), exato), Math::max);
+            }
+        }
+        return pontos;
+    }
+
+    /**
+     * Busca sem o índice (enquanto a carga inicial não terminou), mantendo só os limite melhores
+     */
+    private List<ItemCardapio> buscarPercorrendo(List<String> termosConsulta, int limite) {
+        record Pontuado(ItemCardapio item, int pontos) {
+        }
+        Comparator<Pontuado> pior = Comparator.comparingInt(Pontuado::pontos)
+            .thenComparing(p -> p.item().id(), Comparator.reverseOrder());
+        PriorityQueue<Pontuado> melhores = new PriorityQueue<>(pior);
+        for (ItemCardapio item : catalogo.itens()) {
+            int pontos = pontuar(item, termosConsulta);
+            if (pontos > 0) {
+                melhores.add(new Pontuado(item, pontos));
+                if (melhores.size() > limite) {
+                    melhores.poll();
+                }
+            }
+        }
+        List<ItemCardapio> resultado = new ArrayList<>(melhores.size());
+        while (!melhores.isEmpty()) {
+            resultado.add(melhores.poll().item());
+        }
+        Collections.reverse(resultado);
+        return resultado;
+    }
+
+    /**
+     * Pontuação do item para a consulta, ou 0 se algum termo da consulta não casar
+     */
+    private static int pontuar(ItemCardapio item, List<String> termosConsulta) {
+        Map<String, Integer> campos = camposPorTermo(item);
+        int total = 0;
+        for (String termoConsulta : termosConsulta) {
+            int melhor = 0;
+            for (Map.Entry<String, Integer> termo : campos.entrySet()) {
+                if (termo.getKey().startsWith(termoConsulta)) {
+                    melhor = Math.max(melhor, pontos(termo.getValue(), termo.getKey().equals(termoConsulta)));
+                }
+            }
+            if (melhor == 0) {
+                return 0;
+            }
+            total += melhor;
+        }
+        return total;
+    }
+
+    private static int pontos(int campos, boolean exato) {
+        int pontos = ((campos & CAMPO_NOME) != 0 ? PESO_NOME : 0) + ((campos & CAMPO_DESCRICAO) != 0 ? PESO_DESCRICAO : 0);
+        return exato ? pontos * 2 : pontos;
+    }
+
+    private static Map<String, Integer> camposPorTermo(ItemCardapio item) {
+        Map<String, Integer> campos = new HashMap<>();
+        for (String termo : termos(item.nome())) {
+            campos.merge(termo, CAMPO_NOME, (a, b) -> a | b);
+        }
+        for (String termo : termos(item.descricao())) {
+            campos.merge(termo, CAMPO_DESCRICAO, (a, b) -> a | b);
+        }
+        return campos;
+    }
+
+    /**
+     * Termos do texto: sem acentos, em minúsculas, quebrados em tudo que não for letra ou dígito,
+     * sem as palavras comuns
+     */
+    static List<String> termos(String texto) {
+        if (texto == null || texto.isEmpty()) {
+            return List.of();
+        }
+        String normalizado = dobrarAcentos(texto).toLowerCase(Locale.ROOT);
+        List<String> termos = new ArrayList<>();
+        int inicio = -1;
+        for (int i = 0; i <= normalizado.length(); i++) {
+            boolean parteDoTermo = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+            if (parteDoTermo && inicio < 0) {
+                inicio = i;
+            } else if (!parteDoTermo && inicio >= 0) {
+                String termo = normalizado.substring(inicio, i);
+                if (!PALAVRAS_COMUNS.contains(termo)) {
+                    termos.add(termo);
+                }
+                inicio = -1;
+            }
+        }
+        return termos;
+    }
+
+    private static String dobrarAcentos(String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) >= 0x80) {
+                // Decompõe "é" em "e" + acento combinante e descarta os acentos
+                return ACENTOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+            }
+        }
+        return texto;
+    }
+}
@@ -0,0 +1,252 @@
+package mx.florinda.cardapio;
+
+import mx.florinda.cardapio.ItemCardapio.CategoriaCardapio;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Índice secundário categoria -> IDs dos itens, para GET /itens-cardapio?categoria=
+ *
+ * Cada categoria tem um ConcurrentSkipListSet de IDs (em ordem, como a listagem), mantido
+ * como OuvinteCatalogo a cada inserção, substituição e remoção. Listar uma categoria
+ * percorre só os IDs dela e busca cada item por ID, então o custo é proporcional ao
+ * resultado e não ao catálogo.
+ *
+ * Cada categoria também guarda a versão do catálogo da última alteração que a afetou.
+ * O JSON de cada categoria fica em cache (com as variantes comprimidas, como em
+ * CacheRespostaCardapio) e só é refeito quando essa versão muda: um POST de BEBIDA não
+ * invalida a listagem de SOBREMESA. A ETag é "{CATEGORIA}.{versão}".
+ *
+ * Carga inicial (criar()): o ouvinte é registrado primeiro e os itens já existentes são indexados
+ * numa thread de fundo (para não decodificar um snapshot inteiro na inicialização).
+ * Até ela terminar, as listagens percorrem o catálogo filtrando pela categoria. Como a carga
+ * corre junto com as escritas, o índice pode ter IDs a mais (ex: um item removido no meio
+ * da carga), mas nunca a menos; por isso a categoria de cada item é conferida na leitura.
+ */
+public final class IndiceCategoriaCatalogo implements OuvinteCatalogo {
+
+    private static final CategoriaCardapio[] CATEGORIAS = CategoriaCardapio.values();
+
+    /**
+     * JSON da listagem de uma categoria na versão em que ela foi alterada pela última vez
+     * (exata = categoria não alterada durante a serialização, como em CacheRespostaCardapio.Snapshot)
+     */
+    public record Snapshot(long versao, boolean exata, CompressaoHttp.Variantes corpo) {
+    }
+
+    private final CatalogoCardapio catalogo;
+    // IDs de cada categoria, na posição do ordinal
+    private final List<NavigableSet<Long>> ids;
+    private final AtomicLongArray versoes;
+    private final AtomicReferenceArray<Snapshot> cache;
+    private volatile boolean carregado;
+
+    private IndiceCategoriaCatalogo(CatalogoCardapio catalogo) {
+        this.catalogo = catalogo;
+        this.ids = new java.util.ArrayList<>(CATEGORIAS.length);
+        for (int i = 0; i < CATEGORIAS.length; i++) {
+            ids.add(new ConcurrentSkipListSet<>());
+        }
+        this.cache = new AtomicReferenceArray<>(CATEGORIAS.length);
+        this.versoes = new AtomicLongArray(CATEGORIAS.length);
+    }
+
+    /**
+     * Cria o índice, passa a ouvir o catálogo e inicia a carga dos itens existentes em segundo plano
+     * (fora do construtor: o índice só é publicado para outras threads depois de inicializado)
+     */
+    public static IndiceCategoriaCatalogo criar(CatalogoCardapio catalogo) {
+        IndiceCategoriaCatalogo indice = new IndiceCategoriaCatalogo(catalogo);
+        catalogo.adicionarOuvinte(indice);
+        // Lida depois de registrar o ouvinte: nunca é menor que a de uma alteração já notificada
+        long versao = catalogo.versao();
+        for (int i = 0; i < CATEGORIAS.length; i++) {
+            indice.versoes.accumulateAndGet(i, versao, Math::max);
+        }
+
+        Thread carga = new Thread(indice::carregar, "indice-categoria");
+        carga.setDaemon(true);
+        carga.start();
+        return indice;
+    }
+
+    private void carregar() {
+        long inicio = System.nanoTime();
+        try {
+            for (ItemCardapio item : catalogo.itens()) {
+                if (item.categoria() != null) {
+                    ids.get(item.categoria().ordinal()).add(item.id());
+                }
+            }
+        } catch (RuntimeException e) {
+            // Continua sem índice: as listagens seguem percorrendo o catálogo
+            LogServidor.error("Índice de categorias não carregado: " + e);
+            return;
+        }
+        carregado = true;
+        LogServidor.info("Índice de categorias carregado em " + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+    }
+
+    @Override
+    public void itemAdicionado(ItemCardapio item, ItemCardapio anterior) {
+        if (anterior != null && anterior.categoria() != null && anterior.categoria() != item.categoria()) {
+            ids.get(anterior.categoria().ordinal()).remove(anterior.id());
+            alterada(anterior.categoria());
+        }
+        if (item.categoria() != null) {
+            ids.get(item.categoria().ordinal()).add(item.id());
+            alterada(item.categoria());
+        }
+    }
+
+    @Override
+    public void itemRemovido(ItemCardapio item) {
+        if (item.categoria() != null) {
+            ids.get(item.categoria().ordinal()).remove(item.id());
+            alterada(item.categoria());
+        }
+    }
+
+    /**
+     * Chamado dentro do lock de escrita do catálogo, depois de a versão ser incrementada
+     */
+    private void alterada(CategoriaCardapio categoria) {
+        versoes.set(categoria.ordinal(), catalogo.versao());
+    }
+
+    /**
+     * Versão do catálogo em que a categoria foi alterada pela última vez
+     */
+    public long versao(CategoriaCardapio categoria) {
+        return versoes.get(categoria.ordinal());
+    }
+
+    /**
+     * Quantidade aproximada de itens da categoria (pode incluir IDs que serão descartados na leitura)
+     */
+    public int tamanho(CategoriaCardapio categoria) {
+        return carregado ? ids.get(categoria.ordinal()).size() : catalogo.tamanho();
+    }
+
+    /**
+     * Itens da categoria em ordem de ID (visão sem cópia; reflete alterações concorrentes)
+     */
+    public Collection<ItemCardapio> itens(CategoriaCardapio categoria) {
+        return itensDepoisDe(categoria, Long.MIN_VALUE);
+    }
+
+    /**
+     * Itens da categoria com ID maior que o informado, para a paginação por cursor
+     */
+    public Collection<ItemCardapio> itensDepoisDe(CategoriaCardapio categoria, long id) {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<ItemCardapio> iterator() {
+                Iterator<ItemCardapio> todos = carregado
+                    ? new PorIds(ids.get(categoria.ordinal()).tailSet(id, false).iterator())
+                    : catalogo.itensDepoisDe(id).iterator();
+                return new FiltroCategoria(todos, categoria);
+            }
+
+            @Override
+            public int size() {
+                return tamanho(categoria);
+            }
+        };
+    }
+
+    /**
+     * JSON da listagem da categoria na versão atual, refeito só se a categoria mudou
+     */
+    public Snapshot snapshot(CategoriaCardapio categoria) {
+        int i = categoria.ordinal();
+        Snapshot atual = cache.get(i);
+        if (atual != null && atual.versao() == versoes.get(i) && atual.exata()) {
+            return atual;
+        }
+        // A versão é lida antes de percorrer os itens: o JSON contém pelo menos essa versão
+        long versao = versoes.get(i);
+        int capacidade = atual == null ? 4096 : atual.corpo().identidade().length + 1024;
+        byte[] json = EscritorJsonItemCardapio.paraBytes(itens(categoria), capacidade);
+        // Relida depois do percurso: se a categoria mudou no meio, o JSON não é exatamente o dessa versão
+        Snapshot novo = new Snapshot(versao, versoes.get(i) == versao, CompressaoHttp.Variantes.de(json));
+        // Só substitui se for mais novo que o atual (duas requisições podem refazer juntas)
+        return cache.updateAndGet(i, existente -> existente == null || existente.versao() < novo.versao()
+            || (existente.versao() == novo.versao() && !existente.exata() && novo.exata()) ? novo : existente);
+    }
+
+    /**
+     * Busca cada ID no catálogo, pulando os que já foram removidos
+     */
+    private final class PorIds implements Iterator<ItemCardapio> {
+
+        private final Iterator<Long> ids;
+        private ItemCardapio proximo;
+
+        PorIds(Iterator<Long> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (proximo == null && ids.hasNext()) {
+                proximo = catalogo.buscar(ids.next());
+            }
+            return proximo != null;
+        }
+
+        @Override
+        public ItemCardapio next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ItemCardapio atual = proximo;
+            proximo = null;
+            return atual;
+        }
+    }
+
+    /**
+     * Deixa passar só os itens que ainda são da categoria
+     */
+    private static final class FiltroCategoria implements Iterator<ItemCardapio> {
+
+        private final Iterator<ItemCardapio> itens;
+        private final CategoriaCardapio categoria;
+        private ItemCardapio proximo;
+
+        FiltroCategoria(Iterator<ItemCardapio> itens, CategoriaCardapio categoria) {
+            this.itens = itens;
+            this.categoria = categoria;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (proximo == null && itens.hasNext()) {
+                ItemCardapio item = itens.next();
+                if (item.categoria() == categoria) {
+                    proximo = item;
+                }
+            }
+            return proximo != null;
+        }
+
+        @Override
+        public ItemCardapio next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ItemCardapio atual = proximo;
+            proximo = null;
+            return atual;
+        }
+    }
+}
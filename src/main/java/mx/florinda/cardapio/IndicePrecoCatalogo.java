@@ -0,0 +1,272 @@
+package mx.florinda.cardapio;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+/**
+ * Índices ordenados por preço, para as consultas de faixa de preço e de promoções
+ *
+ * Cada índice é um ConcurrentSkipListSet de (valor, ID), em ordem de valor e depois de ID:
+ * - porPreco: preco de todos os itens
+ * - porPrecoComDesconto: precoComDesconto de todos os itens
+ * - promocoesPorPreco: precoComDesconto só dos itens em promoção (desconto maior que zero)
+ * - promocoesPorDesconto: profundidade do desconto (preco - precoComDesconto) dos itens em promoção
+ *
+ * Uma faixa [min, max] é um subSet do índice: O(log n) para achar o início e depois só os
+ * itens do resultado, já em ordem de preço, sem comparar BigDecimal item a item no catálogo
+ * inteiro. Os "N mais baratos" e os "N maiores descontos" são os primeiros N do índice
+ * (ou do descendingSet).
+ *
+ * Manutenção: como OuvinteCatalogo, cada inserção, troca de preço (PUT /preco substitui o item)
+ * e remoção tira as entradas do item anterior e coloca as do novo. Os itens existentes são
+ * indexados numa thread de fundo, como em IndiceCategoriaCatalogo; até ela terminar, as
+ * consultas percorrem o catálogo e ordenam o resultado. A carga pode deixar entradas de uma
+ * versão já substituída, então cada item lido é conferido: só sai se o valor atual for o da entrada.
+ */
+public final class IndicePrecoCatalogo implements OuvinteCatalogo {
+
+    /**
+     * Campo usado na ordenação de uma consulta
+     */
+    public enum Campo {
+        PRECO,
+        PRECO_COM_DESCONTO,
+        DESCONTO
+    }
+
+    private record Entrada(BigDecimal valor, long id) {
+    }
+
+    private static final Comparator<Entrada> ORDEM = Comparator.comparing(Entrada::valor).thenComparingLong(Entrada::id);
+
+    private final CatalogoCardapio catalogo;
+    private final NavigableSet<Entrada> porPreco = new ConcurrentSkipListSet<>(ORDEM);
+    private final NavigableSet<Entrada> porPrecoComDesconto = new ConcurrentSkipListSet<>(ORDEM);
+    private final NavigableSet<Entrada> promocoesPorPreco = new ConcurrentSkipListSet<>(ORDEM);
+    private final NavigableSet<Entrada> promocoesPorDesconto = new ConcurrentSkipListSet<>(ORDEM);
+    private volatile boolean carregado;
+
+    private IndicePrecoCatalogo(CatalogoCardapio catalogo) {
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * Cria o índice, passa a ouvir o catálogo e inicia a carga em segundo plano (fora do construtor)
+     */
+    public static IndicePrecoCatalogo criar(CatalogoCardapio catalogo) {
+        IndicePrecoCatalogo indice = new IndicePrecoCatalogo(catalogo);
+        catalogo.adicionarOuvinte(indice);
+
+        Thread carga = new Thread(indice::carregar, "indice-preco");
+        carga.setDaemon(true);
+        carga.start();
+        return indice;
+    }
+
+    private void carregar() {
+        long inicio = System.nanoTime();
+        try {
+            for (ItemCardapio item : catalogo.itens()) {
+                indexar(item);
+            }
+        } catch (RuntimeException e) {
+            // Continua sem índice: as consultas seguem percorrendo o catálogo
+            LogServidor.error("Índice de preços não carregado: " + e);
+            return;
+        }
+        carregado = true;
+        LogServidor.info("Índice de preços carregado em " + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+    }
+
+    @Override
+    public void itemAdicionado(ItemCardapio item, ItemCardapio anterior) {
+        if (anterior != null) {
+            desindexar(anterior);
+        }
+        indexar(item);
+    }
+
+    @Override
+    public void itemRemovido(ItemCardapio item) {
+        desindexar(item);
+    }
+
+    private void indexar(ItemCardapio item) {
+        if (item.preco() != null) {
+            porPreco.add(new Entrada(item.preco(), item.id()));
+        }
+        if (item.precoComDesconto() != null) {
+            porPrecoComDesconto.add(new Entrada(item.precoComDesconto(), item.id()));
+        }
+        if (emPromocao(item)) {
+            promocoesPorPreco.add(new Entrada(item.precoComDesconto(), item.id()));
+            promocoesPorDesconto.add(new Entrada(desconto(item), item.id()));
+        }
+    }
+
+    private void desindexar(ItemCardapio item) {
+        if (item.preco() != null) {
+            porPreco.remove(new Entrada(item.preco(), item.id()));
+        }
+        if (item.precoComDesconto() != null) {
+            porPrecoComDesconto.remove(new Entrada(item.precoComDesconto(), item.id()));
+            promocoesPorPreco.remove(new Entrada(item.precoComDesconto(), item.id()));
+        }
+        BigDecimal desconto = desconto(item);
+        if (desconto != null) {
+            promocoesPorDesconto.remove(new Entrada(desconto, item.id()));
+        }
+    }
+
+    static boolean emPromocao(ItemCardapio item) {
+        BigDecimal desconto = desconto(item);
+        return desconto != null && desconto.signum() > 0;
+    }
+
+    static BigDecimal desconto(ItemCardapio item) {
+        return item.preco() == null || item.precoComDesconto() == null ? null : item.preco().subtract(item.precoComDesconto());
+    }
+
+    /**
+     * Itens com o campo entre min e max (inclusive; null = sem limite), em ordem crescente do campo.
+     * Com DESCONTO, só entram itens em promoção.
+     */
+    public Iterable<ItemCardapio> faixa(Campo campo, BigDecimal min, BigDecimal max) {
+        if (!carregado) {
+            return percorrendo(campo, min, max, false);
+        }
+        NavigableSet<Entrada> indice = switch (campo) {
+            case PRECO -> porPreco;
+            case PRECO_COM_DESCONTO -> porPrecoComDesconto;
+            case DESCONTO -> promocoesPorDesconto;
+        };
+        if (min != null) {
+            indice = indice.tailSet(new Entrada(min, Long.MIN_VALUE), true);
+        }
+        if (max != null) {
+            indice = indice.headSet(new Entrada(max, Long.MAX_VALUE), true);
+        }
+        NavigableSet<Entrada> selecionados = indice;
+        return () -> new Conferidos(selecionados.iterator(), valorDe(campo), campo == Campo.DESCONTO);
+    }
+
+    /**
+     * Itens em promoção, dos mais baratos (precoComDesconto) para os mais caros
+     */
+    public Iterable<ItemCardapio> promocoesMaisBaratas() {
+        if (!carregado) {
+            return percorrendo(Campo.PRECO_COM_DESCONTO, null, null, true);
+        }
+        return () -> new Conferidos(promocoesPorPreco.iterator(), ItemCardapio::precoComDesconto, true);
+    }
+
+    /**
+     * Itens em promoção, do maior desconto (preco - precoComDesconto) para o menor
+     */
+    public Iterable<ItemCardapio> maioresDescontos() {
+        if (!carregado) {
+            List<ItemCardapio> promocoes = percorrendo(Campo.DESCONTO, null, null, true);
+            Collections.reverse(promocoes);
+            return promocoes;
+        }
+        return () -> new Conferidos(promocoesPorDesconto.descendingIterator(), IndicePrecoCatalogo::desconto, true);
+    }
+
+    /**
+     * Mesma consulta sem o índice (enquanto a carga inicial não terminou): filtra e ordena o catálogo inteiro
+     */
+    private List<ItemCardapio> percorrendo(Campo campo, BigDecimal min, BigDecimal max, boolean soPromocoes) {
+        Function<ItemCardapio, BigDecimal> valor = valorDe(campo);
+        List<ItemCardapio> selecionados = new ArrayList<>();
+        for (ItemCardapio item : catalogo.itens()) {
+            BigDecimal atual = valor.apply(item);
+            if (atual != null && (min == null || atual.compareTo(min) >= 0) && (max == null || atual.compareTo(max) <= 0)
+                && (emPromocao(item) || !(soPromocoes || campo == Campo.DESCONTO))) {
+                selecionados.add(item);
+            }
+        }
+        selecionados.sort(Comparator.comparing(valor).thenComparing(ItemCardapio::id));
+        return selecionados;
+    }
+
+    /**
+     * Só os primeiros limite itens (consultas "top N"), sem ler o restante do índice
+     */
+    public static Iterable<ItemCardapio> primeiros(Iterable<ItemCardapio> itens, int limite) {
+        return () -> new Iterator<>() {
+            private final Iterator<ItemCardapio> iterador = itens.iterator();
+            private int entregues;
+
+            @Override
+            public boolean hasNext() {
+                return entregues < limite && iterador.hasNext();
+            }
+
+            @Override
+            public ItemCardapio next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                entregues++;
+                return iterador.next();
+            }
+        };
+    }
+
+    private static Function<ItemCardapio, BigDecimal> valorDe(Campo campo) {
+        return switch (campo) {
+            case PRECO -> ItemCardapio::preco;
+            case PRECO_COM_DESCONTO -> ItemCardapio::precoComDesconto;
+            case DESCONTO -> IndicePrecoCatalogo::desconto;
+        };
+    }
+
+    /**
+     * Busca o item de cada entrada, pulando as que não correspondem mais ao item atual
+     * (removido, com outro valor no campo do índice ou, nos índices de promoções, sem desconto)
+     */
+    private final class Conferidos implements Iterator<ItemCardapio> {
+
+        private final Iterator<Entrada> entradas;
+        private final Function<ItemCardapio, BigDecimal> valor;
+        private final boolean soPromocoes;
+        private ItemCardapio proximo;
+
+        Conferidos(Iterator<Entrada> entradas, Function<ItemCardapio, BigDecimal> valor, boolean soPromocoes) {
+            this.entradas = entradas;
+            this.valor = valor;
+            this.soPromocoes = soPromocoes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (proximo == null && entradas.hasNext()) {
+                Entrada entrada = entradas.next();
+                ItemCardapio item = catalogo.buscar(entrada.id());
+                BigDecimal atual = item == null ? null : valor.apply(item);
+                if (atual != null && atual.compareTo(entrada.valor()) == 0 && (!soPromocoes || emPromocao(item))) {
+                    proximo = item;
+                }
+            }
+            return proximo != null;
+        }
+
+        @Override
+        public ItemCardapio next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ItemCardapio atual = proximo;
+            proximo = null;
+            return atual;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package mx.florinda.cardapio;
+
+import java.net.InetAddress;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limite de taxa por IP do cliente e por rota (token bucket), verificado logo após os headers,
+ * antes de receber o body e de executar o handler
+ *
+ * Desligado por padrão: cardapio.limite.ativo=true liga (scripts de teste, plano do JMeter e
+ * gerador de carga mandam todas as escritas do mesmo IP). Cada rota tem uma taxa (requisições por segundo) e uma rajada (tamanho do balde), configuradas
+ * como "taxa/rajada" em cardapio.limite.{rota}, com o nome da rota de MetricasServidor.Rota em
+ * minúsculas (ex: -Dcardapio.limite.criar=20/40); "0" deixa a rota sem limite. Rotas sem
+ * propriedade usam cardapio.limite.padrao (padrão: sem limite). Sem configuração por rota, só as
+ * escritas são limitadas: criar, preco e remover a 20/s com rajada de 40, e lote a 1/s com rajada de 3.
+ *
+ * O balde de cada (cliente, rota) é um único long: o instante em que ele estaria cheio de novo.
+ * Consumir uma ficha adianta esse instante em 1/taxa; a requisição passa se ele não ficar mais que
+ * rajada/taxa à frente de agora. É o mesmo token bucket, sem thread de recarga e sem lock:
+ * a atualização é um compareAndSet no AtomicLongArray do cliente (uma posição por rota).
+ *
+ * Os clientes ficam num ConcurrentHashMap (que já divide o lock das escritas por bin).
+ * A cada cardapio.limite.limpezaSegundos (padrão 60) uma thread em segundo plano remove os
+ * clientes com todos os baldes cheios: para eles, esquecer o estado não muda nada, e a memória
+ * fica limitada aos clientes ativos no último intervalo. Uma requisição que pegou o cliente
+ * logo antes da remoção consome de um balde órfão; no pior caso o cliente ganha uma rajada a mais.
+ */
+public final class LimiteTaxaCliente {
+
+    /**
+     * Taxa de uma rota, já convertida para o intervalo entre fichas e a tolerância da rajada
+     */
+    private record Limite(long intervaloNanos, long toleranciaNanos) {
+    }
+
+    private static final Map<MetricasServidor.Rota, String> PADROES = new EnumMap<>(Map.of(
+        MetricasServidor.Rota.CRIAR, "20/40",
+        MetricasServidor.Rota.PRECO, "20/40",
+        MetricasServidor.Rota.REMOVER, "20/40",
+        MetricasServidor.Rota.LOTE, "1/3"));
+
+    private static final MetricasServidor.Rota[] ROTAS = MetricasServidor.Rota.values();
+
+    // Os instantes são relativos à criação, para 0 significar "balde cheio" em qualquer valor do nanoTime
+    private final long base = System.nanoTime();
+    private final boolean ativo;
+    private final Limite[] limites = new Limite[ROTAS.length];
+    private final ConcurrentHashMap<InetAddress, AtomicLongArray> clientes = new ConcurrentHashMap<>();
+
+    public LimiteTaxaCliente() {
+        boolean algumLimite = false;
+        String padrao = System.getProperty("cardapio.limite.padrao", "0");
+        for (MetricasServidor.Rota rota : ROTAS) {
+            String propriedade = "cardapio.limite." + rota.name().toLowerCase(Locale.ROOT);
+            limites[rota.ordinal()] = lerLimite(propriedade, System.getProperty(propriedade, PADROES.getOrDefault(rota, padrao)));
+            algumLimite |= limites[rota.ordinal()] != null;
+        }
+        this.ativo = algumLimite && Boolean.parseBoolean(System.getProperty("cardapio.limite.ativo", "false"));
+
+        long intervaloLimpeza = Long.getLong("cardapio.limite.limpezaSegundos", 60);
+        if (ativo) {
+            ScheduledExecutorService limpeza = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "limite-taxa-limpeza");
+                t.setDaemon(true);
+                return t;
+            });
+            limpeza.scheduleWithFixedDelay(this::removerClientesOciosos, intervaloLimpeza, intervaloLimpeza, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * "taxa/rajada" (rajada opcional, padrão igual à taxa arredondada para cima); "0": sem limite
+     */
+    private static Limite lerLimite(String propriedade, String valor) {
+        String[] partes = valor.trim().split("/");
+        try {
+            double taxa = Double.parseDouble(partes[0].trim());
+            if (taxa <= 0) {
+                return null;
+            }
+            long rajada = partes.length > 1 ? Long.parseLong(partes[1].trim()) : (long) Math.ceil(taxa);
+            long intervalo = (long) (1_000_000_000L / taxa);
+            return new Limite(intervalo, Math.max(1, rajada) * intervalo);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + propriedade + ": " + valor + " (esperado taxa/rajada)", e);
+        }
+    }
+
+    /**
+     * Consome uma ficha do balde do cliente na rota. Retorna null se a requisição pode seguir,
+     * ou a resposta 429 com o Retry-After até a próxima ficha.
+     */
+    public RespostaHttp limitar(InetAddress cliente, MetricasServidor.Rota rota) {
+        if (!ativo || cliente == null) {
+            return null;
+        }
+        Limite limite = limites[rota.ordinal()];
+        if (limite == null) {
+            return null;
+        }
+        AtomicLongArray baldes = clientes.computeIfAbsent(cliente, c -> new AtomicLongArray(ROTAS.length));
+        int r = rota.ordinal();
+        long agora = System.nanoTime() - base;
+        while (true) {
+            long cheioEm = baldes.get(r);
+            long novo = Math.max(cheioEm, agora) + limite.intervaloNanos();
+            long excesso = novo - agora - limite.toleranciaNanos();
+            if (excesso > 0) {
+                // Balde vazio: não consome, e informa quanto falta para a próxima ficha
+                long segundos = Math.max(1, (excesso + 999_999_999L) / 1_000_000_000L);
+                return RespostaHttp.json(429, "Too Many Requests",
+                    "{\"erro\": \"Limite de requisições excedido, tente novamente\"}").comRetryAfter((int) segundos);
+            }
+            if (baldes.compareAndSet(r, cheioEm, novo)) {
+                return null;
+            }
+        }
+    }
+
+    private void removerClientesOciosos() {
+        long agora = System.nanoTime() - base;
+        int antes = clientes.size();
+        clientes.values().removeIf(baldes -> cheios(baldes, agora));
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Limite de taxa: " + (antes - clientes.size()) + " cliente(s) ocioso(s) removido(s), "
+                + clientes.size() + " restante(s)");
+        }
+    }
+
+    private static boolean cheios(AtomicLongArray baldes, long agora) {
+        for (int i = 0; i < baldes.length(); i++) {
+            if (baldes.get(i) > agora) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,646 @@
+package mx.florinda.cardapio;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Log de escrita antecipada (write-ahead log) das alterações do CatalogoCardapio
+ *
+ * Cada inserção, substituição (inclusive alteração de preço) e remoção vira um registro
+ * binário no fim do log. Na inicialização o log é reproduzido sobre um catálogo vazio,
+ * recuperando o estado anterior ao desligamento (ou queda) do servidor.
+ *
+ * Registro (big-endian):
+ *   int tamanho do payload | int CRC32C (lsn + tipo + payload) | long lsn | byte tipo | payload
+ * O LSN (log sequence number) cresce de 1 em 1; um CRC que não confere, um LSN fora de
+ * sequência ou um registro cortado no fim do último segmento é tratado como escrita
+ * interrompida pela queda: o segmento é truncado ali e o log continua dele.
+ *
+ * Segmentos: arquivos wal-{primeiro LSN}.log no diretório informado, trocados quando
+ * passam de cardapio.wal.tamanhoSegmento bytes (padrão 64 MB).
+ *
+ * Com snapshots (ArquivoSnapshotCatalogo), a reprodução começa depois do LSN do snapshot
+ * carregado, e os segmentos que só têm registros anteriores a ele são apagados
+ * (descartarSegmentosAte). Como cada registro é o item inteiro ou uma remoção por ID,
+ * reproduzir um registro cujo efeito já está no snapshot não muda o resultado. A versão do
+ * catálogo também não: depois de cada registro reproduzido ela passa a ser LSN + 1, mesmo quando o
+ * registro não altera nada (ex: remoção de um ID que o snapshot já não tem).
+ *
+ * Group commit: o log é um OuvinteCatalogo, então os registros são anexados a um buffer
+ * em memória dentro do lock de escrita do catálogo (mesma ordem das versões). Uma única
+ * thread grava o buffer no arquivo e chama FileChannel.force; enquanto um force está em
+ * andamento, os registros de todas as outras escritas se acumulam e vão juntos no próximo.
+ * Quem precisa confirmar uma escrita chama aguardarDurabilidade() depois de alterar o
+ * catálogo, e só responde ao cliente quando o force que inclui o seu registro terminar.
+ *
+ * As alterações ficam visíveis para leituras antes de estarem no disco (são aplicadas no
+ * mapa e depois registradas); o que o log garante é que nenhuma escrita confirmada ao
+ * cliente se perde.
+ *
+ * Configuração (System properties):
+ * - cardapio.wal.tamanhoSegmento: bytes por segmento (padrão 64 MB)
+ * - cardapio.wal.fsync: false grava sem FileChannel.force (sobrevive à queda do processo,
+ *   não à do sistema operacional); padrão true
+ */
+public final class LogEscritaCatalogo implements OuvinteCatalogo, AutoCloseable {
+
+    static final long TAMANHO_SEGMENTO = Long.getLong("cardapio.wal.tamanhoSegmento", 64L * 1024 * 1024);
+    static final boolean FSYNC = Boolean.parseBoolean(System.getProperty("cardapio.wal.fsync", "true"));
+
+    private static final int MAGIA = 0x43574C31; // "CWL1"
+    private static final int TAMANHO_CABECALHO_SEGMENTO = 8;
+    private static final int TAMANHO_CABECALHO_REGISTRO = 4 + 4 + 8 + 1;
+    private static final int TAMANHO_MAXIMO_PAYLOAD = 16 * 1024 * 1024;
+
+    static final byte ITEM_GRAVADO = 1;
+    static final byte ITEM_REMOVIDO = 2;
+
+    /**
+     * Resultado da reprodução do log na inicialização
+     */
+    public record Reproducao(long registros, int segmentos, long maiorId, long millis) {
+    }
+
+    private final Path diretorio;
+    private final ReentrantLock trava = new ReentrantLock();
+    private final Condition temRegistros = trava.newCondition();
+    private final Condition gravado = trava.newCondition();
+    private final Thread gravador;
+    private Reproducao reproducao;
+
+    // Protegidos por trava
+    private ByteBuffer pendente = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer emGravacao = ByteBuffer.allocate(64 * 1024);
+    private long ultimoLsn;
+    private long lsnDuravel;
+    private IOException falha;
+    private boolean fechando;
+    private long trocasPedidas;
+    private long trocasFeitas;
+
+    // Usados só pela thread gravadora (e por abrir/reproduzir, antes dela iniciar)
+    private FileChannel canal;
+    private long tamanhoSegmento;
+    private volatile long forces;
+    private volatile long registrosGravados;
+
+    private LogEscritaCatalogo(Path diretorio) {
+        this.diretorio = diretorio;
+        this.gravador = new Thread(this::gravarEmGrupo, "wal-group-commit");
+        this.gravador.setDaemon(true);
+    }
+
+    /**
+     * Abre (ou cria) o log no diretório e reproduz no catálogo os registros posteriores a
+     * lsnInicial (o LSN do snapshot carregado, ou 0 sem snapshot).
+     * O log só passa a registrar alterações depois de ouvirCatalogo().
+     */
+    public static LogEscritaCatalogo abrir(Path diretorio, CatalogoCardapio catalogo, long lsnInicial) throws IOException {
+        Files.createDirectories(diretorio);
+        LogEscritaCatalogo log = new LogEscritaCatalogo(diretorio);
+        log.reproducao = log.reproduzir(catalogo, lsnInicial);
+        log.gravador.start();
+        return log;
+    }
+
+    /**
+     * O que foi reproduzido na abertura
+     */
+    public Reproducao reproducao() {
+        return reproducao;
+    }
+
+    /**
+     * Passa a registrar as alterações do catálogo (depois da reprodução, para não registrá-la de novo)
+     */
+    public void ouvirCatalogo(CatalogoCardapio catalogo) {
+        catalogo.adicionarOuvinte(this);
+    }
+
+    @Override
+    public void itemAdicionado(ItemCardapio item, ItemCardapio anterior) {
+        anexar(ITEM_GRAVADO, item, item.id());
+    }
+
+    @Override
+    public void itemRemovido(ItemCardapio item) {
+        anexar(ITEM_REMOVIDO, null, item.id());
+    }
+
+    /**
+     * LSN do último registro anexado (ainda não necessariamente no disco)
+     */
+    public long ultimoLsn() {
+        trava.lock();
+        try {
+            return ultimoLsn;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Se a gravação do log falhou (ou ele foi fechado): daqui em diante nenhuma alteração seria
+     * durável, e quem aguardar durabilidade recebe a falha
+     */
+    public boolean falhou() {
+        trava.lock();
+        try {
+            return falha != null;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Fecha o segmento atual e bloqueia até que os registros anexados daqui em diante
+     * passem a ir para um segmento novo. Chamado antes de um snapshot: depois dele, todos os
+     * segmentos anteriores podem ser descartados, e a reprodução não precisa lê-los.
+     */
+    public void iniciarNovoSegmento() throws IOException {
+        trava.lock();
+        try {
+            long pedido = ++trocasPedidas;
+            temRegistros.signal();
+            while (trocasFeitas < pedido && falha == null) {
+                gravado.awaitUninterruptibly();
+            }
+            if (trocasFeitas < pedido) {
+                throw new IOException("Falha ao trocar o segmento do log de escrita", falha);
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Apaga os segmentos cujos registros têm todos LSN menor ou igual ao informado
+     * (já contidos em um snapshot). O segmento atual nunca é apagado.
+     * Retorna quantos segmentos foram apagados.
+     */
+    public int descartarSegmentosAte(long lsn) throws IOException {
+        List<Path> segmentos = listarSegmentos();
+        int apagados = 0;
+        // O segmento i termina no LSN anterior ao primeiro do segmento i + 1
+        for (int i = 0; i + 1 < segmentos.size() && primeiroLsn(segmentos.get(i + 1)) <= lsn + 1; i++) {
+            Files.delete(segmentos.get(i));
+            apagados++;
+        }
+        return apagados;
+    }
+
+    /**
+     * Bloqueia até que todos os registros anexados até agora estejam no disco.
+     * Chamado depois de alterar o catálogo: inclui o registro da própria alteração.
+     */
+    public void aguardarDurabilidade() throws IOException {
+        trava.lock();
+        try {
+            long alvo = ultimoLsn;
+            while (lsnDuravel < alvo && falha == null) {
+                gravado.awaitUninterruptibly();
+            }
+            if (lsnDuravel < alvo) {
+                throw new IOException("Falha ao gravar o log de escrita", falha);
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Grava o que estiver pendente e fecha o segmento atual
+     */
+    @Override
+    public void close() {
+        trava.lock();
+        try {
+            fechando = true;
+            temRegistros.signal();
+        } finally {
+            trava.unlock();
+        }
+        try {
+            gravador.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Chamado em shutdown hook, junto com o do LogServidor: vai direto para o stdout, como as demais mensagens de shutdown.
+        // registros/forces = tamanho médio dos grupos gravados por um único force
+        System.out.println("Log de escrita fechado: " + registrosGravados + " registros em " + forces + " forces");
+    }
+
+    // ---------------------------------------------------------------- escrita
+
+    private void anexar(byte tipo, ItemCardapio item, long id) {
+        trava.lock();
+        try {
+            long lsn = ++ultimoLsn;
+            if (falha != null) {
+                // Log inutilizável: quem aguardar este LSN recebe a falha (não lançar aqui, dentro do lock do catálogo)
+                return;
+            }
+            int inicio = pendente.position();
+            pendente = garantirEspaco(pendente, TAMANHO_CABECALHO_REGISTRO + 64);
+            pendente.position(inicio + TAMANHO_CABECALHO_REGISTRO);
+            if (tipo == ITEM_GRAVADO) {
+                pendente = escreverItem(pendente, item);
+            } else {
+                pendente.putLong(id);
+            }
+            int fim = pendente.position();
+            int tamanhoPayload = fim - inicio - TAMANHO_CABECALHO_REGISTRO;
+            pendente.putLong(inicio + 8, lsn);
+            pendente.put(inicio + 16, tipo);
+            CRC32C crc = new CRC32C();
+            crc.update(pendente.array(), inicio + 8, 9 + tamanhoPayload);
+            pendente.putInt(inicio, tamanhoPayload);
+            pendente.putInt(inicio + 4, (int) crc.getValue());
+            temRegistros.signal();
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Codifica o item no buffer (também usado pelos arquivos de snapshot), trocando-o por
+     * um maior quando não houver espaço. Retorna o buffer em que o item foi escrito.
+     */
+    static ByteBuffer escreverItem(ByteBuffer destino, ItemCardapio item) {
+        destino = garantirEspaco(destino, 8 + 1);
+        destino.putLong(item.id());
+        destino.put(item.categoria() == null ? -1 : (byte) item.categoria().ordinal());
+        destino = escreverTexto(destino, item.nome());
+        destino = escreverTexto(destino, item.descricao());
+        destino = escreverDecimal(destino, item.preco());
+        return escreverDecimal(destino, item.precoComDesconto());
+    }
+
+    private static ByteBuffer escreverTexto(ByteBuffer destino, String texto) {
+        if (texto == null) {
+            return garantirEspaco(destino, 4).putInt(-1);
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        return garantirEspaco(destino, 4 + bytes.length).putInt(bytes.length).put(bytes);
+    }
+
+    private static ByteBuffer escreverDecimal(ByteBuffer destino, BigDecimal valor) {
+        if (valor == null) {
+            return garantirEspaco(destino, 4).putInt(-1);
+        }
+        byte[] semEscala = valor.unscaledValue().toByteArray();
+        return garantirEspaco(destino, 4 + 4 + semEscala.length).putInt(semEscala.length).putInt(valor.scale()).put(semEscala);
+    }
+
+    static ByteBuffer garantirEspaco(ByteBuffer buffer, int adicional) {
+        if (buffer.remaining() >= adicional) {
+            return buffer;
+        }
+        ByteBuffer maior = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + adicional));
+        buffer.flip();
+        return maior.put(buffer);
+    }
+
+    /**
+     * Loop da thread gravadora: troca os buffers, grava o lote de registros e faz um único force
+     */
+    private void gravarEmGrupo() {
+        while (true) {
+            ByteBuffer lote;
+            long ateLsn;
+            long trocas;
+            trava.lock();
+            try {
+                while (pendente.position() == 0 && trocasFeitas == trocasPedidas && !fechando) {
+                    temRegistros.awaitUninterruptibly();
+                }
+                if (pendente.position() == 0 && trocasFeitas == trocasPedidas) {
+                    break;
+                }
+                lote = pendente;
+                pendente = emGravacao;
+                pendente.clear();
+                emGravacao = lote;
+                ateLsn = ultimoLsn;
+                trocas = trocasPedidas;
+            } finally {
+                trava.unlock();
+            }
+
+            IOException erro = null;
+            try {
+                lote.flip();
+                int registros = contarRegistros(lote);
+                boolean cheio = tamanhoSegmento + lote.remaining() > TAMANHO_SEGMENTO;
+                boolean novoSegmento = trocas > trocasFeitas;
+                if ((cheio || novoSegmento) && tamanhoSegmento > TAMANHO_CABECALHO_SEGMENTO) {
+                    // O segmento novo começa no primeiro registro deste lote (ou no próximo, se o lote estiver vazio)
+                    trocarSegmento(ateLsn - registros + 1);
+                }
+                if (registros > 0) {
+                    while (lote.hasRemaining()) {
+                        tamanhoSegmento += canal.write(lote);
+                    }
+                    if (FSYNC) {
+                        canal.force(false);
+                    }
+                    forces++;
+                    registrosGravados += registros;
+                }
+            } catch (IOException e) {
+                erro = e;
+                LogServidor.error("Falha ao gravar o log de escrita: " + e.getMessage());
+            }
+
+            trava.lock();
+            try {
+                if (erro != null) {
+                    falha = erro;
+                } else {
+                    lsnDuravel = ateLsn;
+                    trocasFeitas = trocas;
+                }
+                gravado.signalAll();
+            } finally {
+                trava.unlock();
+            }
+            if (erro != null) {
+                return;
+            }
+        }
+        fecharCanal();
+        trava.lock();
+        try {
+            // Escritas que chegarem depois do fechamento não serão gravadas: quem aguardá-las recebe erro
+            falha = new IOException("Log de escrita fechado");
+            gravado.signalAll();
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    private static int contarRegistros(ByteBuffer lote) {
+        int registros = 0;
+        for (int i = lote.position(); i < lote.limit(); i += TAMANHO_CABECALHO_REGISTRO + lote.getInt(i)) {
+            registros++;
+        }
+        return registros;
+    }
+
+    private void trocarSegmento(long primeiroLsn) throws IOException {
+        if (FSYNC) {
+            canal.force(false);
+        }
+        canal.close();
+        abrirSegmentoNovo(primeiroLsn);
+    }
+
+    private void abrirSegmentoNovo(long primeiroLsn) throws IOException {
+        Path arquivo = diretorio.resolve(String.format("wal-%020d.log", primeiroLsn));
+        canal = FileChannel.open(arquivo, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO_SEGMENTO);
+        cabecalho.putInt(MAGIA).putInt(1).flip();
+        while (cabecalho.hasRemaining()) {
+            canal.write(cabecalho);
+        }
+        tamanhoSegmento = TAMANHO_CABECALHO_SEGMENTO;
+        if (FSYNC) {
+            canal.force(true);
+            sincronizarDiretorio();
+        }
+    }
+
+    /**
+     * Garante que a entrada do arquivo novo no diretório também esteja no disco
+     */
+    private void sincronizarDiretorio() {
+        try (FileChannel dir = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Nem todo sistema operacional permite abrir diretórios (ex: Windows)
+        }
+    }
+
+    private void fecharCanal() {
+        try {
+            if (canal != null) {
+                canal.close();
+            }
+        } catch (IOException ignore) {
+        }
+    }
+
+    // ---------------------------------------------------------------- reprodução
+
+    private Reproducao reproduzir(CatalogoCardapio catalogo, long lsnInicial) throws IOException {
+        long inicio = System.nanoTime();
+        List<Path> segmentos = listarSegmentos();
+        long registros = 0;
+        long maiorId = 0;
+        if (!segmentos.isEmpty()) {
+            long primeiro = primeiroLsn(segmentos.get(0));
+            if (primeiro > lsnInicial + 1) {
+                throw new IOException("Log de escrita começa no LSN " + primeiro + ", mas o snapshot só vai até o LSN " + lsnInicial);
+            }
+            ultimoLsn = primeiro - 1;
+        }
+        for (int i = 0; i < segmentos.size(); i++) {
+            boolean ultimo = i == segmentos.size() - 1;
+            if (!ultimo && primeiroLsn(segmentos.get(i + 1)) <= lsnInicial + 1) {
+                // Segmento inteiro já contido no snapshot: nem precisa ser lido
+                ultimoLsn = primeiroLsn(segmentos.get(i + 1)) - 1;
+                continue;
+            }
+            long[] contagem = reproduzirSegmento(segmentos.get(i), catalogo, ultimo, lsnInicial);
+            registros += contagem[0];
+            maiorId = Math.max(maiorId, contagem[1]);
+        }
+        if (ultimoLsn < lsnInicial) {
+            if (!segmentos.isEmpty()) {
+                // O snapshot só é gravado depois de o log estar no disco até o LSN dele
+                throw new IOException("Log de escrita termina no LSN " + ultimoLsn + ", antes do snapshot (LSN " + lsnInicial + ")");
+            }
+            ultimoLsn = lsnInicial;
+        }
+        if (segmentos.isEmpty()) {
+            abrirSegmentoNovo(lsnInicial + 1);
+        } else {
+            Path atual = segmentos.get(segmentos.size() - 1);
+            canal = FileChannel.open(atual, StandardOpenOption.WRITE);
+            tamanhoSegmento = canal.size();
+            canal.position(tamanhoSegmento);
+        }
+        lsnDuravel = ultimoLsn;
+        return new Reproducao(registros, segmentos.size(), maiorId, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private List<Path> listarSegmentos() throws IOException {
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            // O nome tem o LSN com zeros à esquerda: a ordem alfabética é a ordem do log
+            return arquivos
+                .filter(p -> p.getFileName().toString().matches("wal-\\d{20}\\.log"))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private static long primeiroLsn(Path segmento) {
+        String nome = segmento.getFileName().toString();
+        return Long.parseLong(nome.substring("wal-".length(), nome.length() - ".log".length()));
+    }
+
+    /**
+     * Aplica os registros válidos do segmento com LSN maior que lsnInicial (os anteriores só
+     * são conferidos). Retorna {registros aplicados, maior ID visto}.
+     */
+    private long[] reproduzirSegmento(Path arquivo, CatalogoCardapio catalogo, boolean ultimo, long lsnInicial) throws IOException {
+        long registros = 0;
+        long maiorId = 0;
+        long posicao = 0;
+        String problema = null;
+        try (InputStream entrada = new BufferedInputStream(Files.newInputStream(arquivo), 1 << 16);
+             DataInputStream dados = new DataInputStream(entrada)) {
+            if (dados.readInt() != MAGIA || dados.readInt() != 1) {
+                problema = "cabeçalho inválido";
+            } else {
+                posicao = TAMANHO_CABECALHO_SEGMENTO;
+                byte[] payload = new byte[256];
+                CRC32C crc = new CRC32C();
+                while (true) {
+                    int tamanho;
+                    try {
+                        tamanho = dados.readInt();
+                    } catch (EOFException fim) {
+                        break;
+                    }
+                    int crcEsperado = dados.readInt();
+                    long lsn = dados.readLong();
+                    byte tipo = dados.readByte();
+                    if (tamanho < 0 || tamanho > TAMANHO_MAXIMO_PAYLOAD) {
+                        problema = "tamanho inválido na posição " + posicao;
+                        break;
+                    }
+                    if (payload.length < tamanho) {
+                        payload = new byte[Math.max(tamanho, payload.length * 2)];
+                    }
+                    dados.readFully(payload, 0, tamanho);
+
+                    crc.reset();
+                    ByteBuffer lsnTipo = ByteBuffer.allocate(9).putLong(lsn).put(tipo);
+                    crc.update(lsnTipo.array(), 0, 9);
+                    crc.update(payload, 0, tamanho);
+                    if ((int) crc.getValue() != crcEsperado) {
+                        problema = "CRC inválido na posição " + posicao;
+                        break;
+                    }
+                    if (lsn != ultimoLsn + 1) {
+                        problema = "LSN " + lsn + " fora de sequência (esperado " + (ultimoLsn + 1) + ")";
+                        break;
+                    }
+
+                    if (lsn > lsnInicial) {
+                        long id = aplicar(catalogo, tipo, ByteBuffer.wrap(payload, 0, tamanho));
+                        catalogo.reproduzido(lsn);
+                        maiorId = Math.max(maiorId, id);
+                        registros++;
+                    }
+                    ultimoLsn = lsn;
+                    posicao += TAMANHO_CABECALHO_REGISTRO + tamanho;
+                }
+            }
+        } catch (EOFException cortado) {
+            problema = "registro incompleto na posição " + posicao;
+        }
+
+        if (problema != null) {
+            if (!ultimo) {
+                throw new IOException("Log de escrita corrompido em " + arquivo.getFileName() + ": " + problema);
+            }
+            // Escrita interrompida pela queda: descarta o resto do último segmento
+            LogServidor.warn("Log de escrita: " + problema + " em " + arquivo.getFileName()
+                + "; truncando em " + posicao + " bytes");
+            try (FileChannel truncar = FileChannel.open(arquivo, StandardOpenOption.WRITE)) {
+                if (posicao < TAMANHO_CABECALHO_SEGMENTO) {
+                    truncar.truncate(0);
+                    ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO_SEGMENTO).putInt(MAGIA).putInt(1).flip();
+                    truncar.write(cabecalho);
+                } else {
+                    truncar.truncate(posicao);
+                }
+                truncar.force(true);
+            }
+        }
+        return new long[] {registros, maiorId};
+    }
+
+    private static long aplicar(CatalogoCardapio catalogo, byte tipo, ByteBuffer payload) throws IOException {
+        switch (tipo) {
+            case ITEM_GRAVADO -> {
+                ItemCardapio item = lerItem(payload);
+                catalogo.adicionar(item);
+                return item.id();
+            }
+            case ITEM_REMOVIDO -> {
+                long id = payload.getLong();
+                catalogo.remover(id);
+                return id;
+            }
+            default -> throw new IOException("Tipo de registro desconhecido: " + tipo);
+        }
+    }
+
+    static ItemCardapio lerItem(ByteBuffer payload) {
+        long id = payload.getLong();
+        byte categoria = payload.get();
+        String nome = lerTexto(payload);
+        String descricao = lerTexto(payload);
+        BigDecimal preco = lerDecimal(payload);
+        BigDecimal precoComDesconto = lerDecimal(payload);
+        return new ItemCardapio(id, nome, descricao,
+            categoria < 0 ? null : ItemCardapio.CategoriaCardapio.values()[categoria], preco, precoComDesconto);
+    }
+
+    private static String lerTexto(ByteBuffer payload) {
+        int tamanho = payload.getInt();
+        if (tamanho < 0) {
+            return null;
+        }
+        if (!payload.hasArray()) {
+            // Arquivo de snapshot mapeado em memória
+            byte[] bytes = new byte[tamanho];
+            payload.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String texto = new String(payload.array(), payload.arrayOffset() + payload.position(), tamanho, StandardCharsets.UTF_8);
+        payload.position(payload.position() + tamanho);
+        return texto;
+    }
+
+    private static BigDecimal lerDecimal(ByteBuffer payload) {
+        int tamanho = payload.getInt();
+        if (tamanho < 0) {
+            return null;
+        }
+        int escala = payload.getInt();
+        byte[] semEscala = new byte[tamanho];
+        payload.get(semEscala);
+        return new BigDecimal(new BigInteger(semEscala), escala);
+    }
+}
@@ -0,0 +1,234 @@
+package mx.florinda.cardapio;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log assíncrono com níveis para o caminho das requisições dos servidores
+ *
+ * Cada System.out.println disputa o lock do stdout e escreve no terminal na thread
+ * da requisição. Aqui as threads apenas publicam a mensagem num ring buffer sem lock
+ * (fila MPSC limitada, baseada em números de sequência por posição) e uma única thread
+ * de fundo formata e escreve tudo no stdout/stderr.
+ *
+ * Sem mensagens, a thread escritora fica parada (LockSupport.park) em vez de acordar a cada
+ * milissegundo: antes de parar ela marca que está dormindo e confere a fila de novo, e o
+ * produtor que publicar a seguir a acorda com unpark. Só um produtor chama unpark por
+ * cochilo (quem desmarcar o flag primeiro); os demais só leem o flag.
+ *
+ * - Níveis: DEBUG, INFO, WARN, ERROR (cardapio.log.nivel, padrão INFO)
+ * - Buffer cheio: a mensagem é descartada e contada, a requisição nunca espera pelo log
+ * - Amostragem: amostrar() sorteia 1 a cada cardapio.log.amostragem requisições (padrão 100)
+ *   para o resumo da requisição em INFO; os detalhes (headers, body) ficam em DEBUG
+ *
+ * Mensagens em DEBUG devem ser montadas só se debugAtivo(), para não concatenar
+ * Strings que serão descartadas.
+ */
+public final class LogServidor {
+
+    public enum Nivel {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final Nivel NIVEL = Nivel.valueOf(System.getProperty("cardapio.log.nivel", "INFO").toUpperCase());
+    private static final int AMOSTRAGEM = Math.max(1, Integer.getInteger("cardapio.log.amostragem", 100));
+    // Capacidade arredondada para potência de 2 (índice = sequência & máscara)
+    private static final int CAPACIDADE = Integer.highestOneBit(Math.max(2, Integer.getInteger("cardapio.log.capacidade", 8192) - 1) << 1);
+    private static final int MASCARA = CAPACIDADE - 1;
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private static final ZoneId FUSO = ZoneId.systemDefault();
+    // Só uma rede de segurança: com a fila vazia a escritora é acordada pelo próximo produtor
+    private static final long ESPERA_OCIOSA_NANOS = 1_000_000_000L;
+
+    private record Entrada(long instante, Nivel nivel, String thread, String mensagem) {
+    }
+
+    // sequencias[i] == posição esperada pelo produtor: posição livre; == posição + 1: entrada pronta para o consumidor
+    private static final AtomicLongArray sequencias = new AtomicLongArray(CAPACIDADE);
+    private static final AtomicReferenceArray<Entrada> entradas = new AtomicReferenceArray<>(CAPACIDADE);
+    private static final AtomicLong proximaEscrita = new AtomicLong();
+    private static final AtomicLong descartadas = new AtomicLong();
+    // Só a thread escritora lê a fila
+    private static long proximaLeitura;
+    private static volatile boolean encerrando;
+    // true enquanto a escritora está (ou vai ficar) parada esperando mensagens
+    private static final AtomicBoolean escritoraDormindo = new AtomicBoolean();
+
+    private static final PrintStream saida = new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8);
+    private static final PrintStream saidaErro = new PrintStream(new FileOutputStream(FileDescriptor.err), false, StandardCharsets.UTF_8);
+    private static final Thread escritora;
+
+    static {
+        for (int i = 0; i < CAPACIDADE; i++) {
+            sequencias.set(i, i);
+        }
+        escritora = new Thread(LogServidor::escreverEntradas, "log-servidor");
+        escritora.setDaemon(true);
+        escritora.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Deixa a thread escritora esvaziar o buffer antes da JVM terminar
+            encerrando = true;
+            LockSupport.unpark(escritora);
+            try {
+                escritora.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    private LogServidor() {
+    }
+
+    public static boolean debugAtivo() {
+        return NIVEL == Nivel.DEBUG;
+    }
+
+    public static boolean ativo(Nivel nivel) {
+        return nivel.compareTo(NIVEL) >= 0;
+    }
+
+    /**
+     * Sorteia se a requisição atual terá seu resumo registrado (1 a cada AMOSTRAGEM)
+     */
+    public static boolean amostrar() {
+        return debugAtivo() || ThreadLocalRandom.current().nextInt(AMOSTRAGEM) == 0;
+    }
+
+    public static void debug(String mensagem) {
+        registrar(Nivel.DEBUG, mensagem);
+    }
+
+    public static void info(String mensagem) {
+        registrar(Nivel.INFO, mensagem);
+    }
+
+    public static void warn(String mensagem) {
+        registrar(Nivel.WARN, mensagem);
+    }
+
+    public static void error(String mensagem) {
+        registrar(Nivel.ERROR, mensagem);
+    }
+
+    /**
+     * Quantidade de mensagens descartadas por buffer cheio desde o início
+     */
+    public static long descartadas() {
+        return descartadas.get();
+    }
+
+    private static void registrar(Nivel nivel, String mensagem) {
+        if (!ativo(nivel)) {
+            return;
+        }
+        Thread atual = Thread.currentThread();
+        // Virtual threads não têm nome por padrão
+        String thread = atual.isVirtual() ? "virtual-" + atual.threadId() : atual.getName();
+        Entrada entrada = new Entrada(System.currentTimeMillis(), nivel, thread, mensagem);
+        if (!publicar(entrada)) {
+            descartadas.incrementAndGet();
+            return;
+        }
+        // Fila estava vazia e a escritora parada: acorda (o get evita o CAS no caso comum, escritora ativa)
+        if (escritoraDormindo.get() && escritoraDormindo.compareAndSet(true, false)) {
+            LockSupport.unpark(escritora);
+        }
+    }
+
+    /**
+     * Reserva uma posição com CAS e publica a entrada; nunca bloqueia.
+     * Retorna false se o buffer estiver cheio.
+     */
+    private static boolean publicar(Entrada entrada) {
+        long posicao = proximaEscrita.get();
+        while (true) {
+            int indice = (int) (posicao & MASCARA);
+            long diferenca = sequencias.get(indice) - posicao;
+            if (diferenca == 0) {
+                if (proximaEscrita.compareAndSet(posicao, posicao + 1)) {
+                    entradas.lazySet(indice, entrada);
+                    sequencias.set(indice, posicao + 1);
+                    return true;
+                }
+                posicao = proximaEscrita.get();
+            } else if (diferenca < 0) {
+                // A posição ainda não foi liberada pelo consumidor: buffer cheio
+                return false;
+            } else {
+                // Outro produtor já ocupou esta posição
+                posicao = proximaEscrita.get();
+            }
+        }
+    }
+
+    /**
+     * Indica se a próxima entrada já foi publicada (só a thread escritora chama)
+     */
+    private static boolean haEntrada() {
+        return sequencias.get((int) (proximaLeitura & MASCARA)) == proximaLeitura + 1;
+    }
+
+    private static Entrada consumir() {
+        int indice = (int) (proximaLeitura & MASCARA);
+        if (sequencias.get(indice) != proximaLeitura + 1) {
+            return null;
+        }
+        Entrada entrada = entradas.get(indice);
+        entradas.lazySet(indice, null);
+        sequencias.set(indice, proximaLeitura + CAPACIDADE);
+        proximaLeitura++;
+        return entrada;
+    }
+
+    private static void escreverEntradas() {
+        long descartadasInformadas = 0;
+        StringBuilder linha = new StringBuilder(256);
+        while (true) {
+            Entrada entrada = consumir();
+            if (entrada == null) {
+                long totalDescartadas = descartadas.get();
+                if (totalDescartadas != descartadasInformadas) {
+                    saidaErro.println(LocalTime.now().format(FORMATO_HORA) + " [WARN ] [log-servidor] "
+                        + (totalDescartadas - descartadasInformadas) + " mensagens de log descartadas (buffer cheio, total "
+                        + totalDescartadas + ")");
+                    descartadasInformadas = totalDescartadas;
+                }
+                saida.flush();
+                saidaErro.flush();
+                if (encerrando) {
+                    return;
+                }
+                // Marca antes de conferir a fila de novo: um produtor que publicar depois da
+                // conferência vê o flag e chama unpark (que vale mesmo se vier antes do park)
+                escritoraDormindo.set(true);
+                if (!haEntrada() && !encerrando) {
+                    LockSupport.parkNanos(ESPERA_OCIOSA_NANOS);
+                }
+                escritoraDormindo.set(false);
+                continue;
+            }
+
+            linha.setLength(0);
+            FORMATO_HORA.formatTo(LocalTime.ofInstant(Instant.ofEpochMilli(entrada.instante()), FUSO), linha);
+            linha.append(" [").append(entrada.nivel());
+            if (entrada.nivel().name().length() == 4) {
+                linha.append(' ');
+            }
+            linha.append("] [").append(entrada.thread()).append("] ").append(entrada.mensagem());
+            (entrada.nivel().compareTo(Nivel.WARN) >= 0 ? saidaErro : saida).println(linha);
+        }
+    }
+}
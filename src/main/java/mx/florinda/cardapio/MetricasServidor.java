@@ -0,0 +1,354 @@
+package mx.florinda.cardapio;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas dos servidores, expostas em GET /metrics no formato texto do Prometheus
+ *
+ * O registro fica no caminho de toda requisição, então não usa lock nem aloca:
+ * - Requisições por rota e status: um AtomicLongArray com uma posição por (rota, status 100-599)
+ * - Latência por rota: histograma logarítmico num AtomicLongArray. Cada potência de 2 de
+ *   microssegundos é dividida em 4 faixas, então o erro de um percentil é de no máximo 25%;
+ *   144 faixas cobrem de 1 µs a ~19 horas
+ * - Bytes recebidos/enviados, conexões abertas e recusadas e requisições em processamento: LongAdder
+ *
+ * A rota é o modelo do path ("GET /itens-cardapio/{id}"), resolvido por rotaDe() no servidor
+ * sem criar Strings; paths desconhecidos caem todos em OUTRAS, para o número de séries não
+ * crescer com o que os clientes enviam.
+ *
+ * Na leitura (scrape) o texto é montado percorrendo os contadores: os percentis p50/p99/p999
+ * são calculados do histograma acumulado desde a inicialização, e os buckets "le" do histograma
+ * do Prometheus (em potências de 4 µs) permitem calcular percentis por janela com histogram_quantile.
+ * Fila e workers ativos vêm dos executores registrados em monitorarExecutor().
+ */
+public final class MetricasServidor {
+
+    /**
+     * Rotas com séries próprias
+     */
+    public enum Rota {
+        LISTAR("GET /itens-cardapio"),
+        TOTAL("GET /itens-cardapio/total"),
+        BUSCA("GET /itens-cardapio/busca"),
+        FAIXA_PRECO("GET /itens-cardapio/faixa-preco"),
+        PROMOCOES("GET /itens-cardapio/promocoes"),
+        ITEM("GET /itens-cardapio/{id}"),
+        CRIAR("POST /itens-cardapio"),
+        LOTE("POST /itens-cardapio/lote"),
+        PRECO("PUT /itens-cardapio/{id}/preco"),
+        REMOVER("DELETE /itens-cardapio/{id}"),
+        METRICAS("GET /metrics"),
+        SAUDE("GET /health"),
+        PUBLICADO("GET /cardapio.json"),
+        OUTRAS("outras");
+
+        private final String rotulo;
+
+        Rota(String rotulo) {
+            this.rotulo = rotulo;
+        }
+    }
+
+    public static final String TIPO_CONTEUDO = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final Rota[] ROTAS = Rota.values();
+    private static final int STATUS_MINIMO = 100;
+    private static final int STATUS_POSSIVEIS = 500;
+    private static final int FAIXAS = 144;
+    private static final int SUBFAIXAS_POR_POTENCIA = 4;
+    private static final double[] QUANTIS = {0.5, 0.99, 0.999};
+
+    // (rota, status) -> requisições
+    private static final AtomicLongArray requisicoes = new AtomicLongArray(ROTAS.length * STATUS_POSSIVEIS);
+    // (rota, faixa de latência) -> requisições
+    private static final AtomicLongArray latencias = new AtomicLongArray(ROTAS.length * FAIXAS);
+    private static final AtomicLongArray somaLatenciaMicros = new AtomicLongArray(ROTAS.length);
+    private static final LongAdder bytesRecebidos = new LongAdder();
+    private static final LongAdder bytesEnviados = new LongAdder();
+    private static final LongAdder conexoesAbertas = new LongAdder();
+    private static final LongAdder emProcessamento = new LongAdder();
+    private static final LongAdder conexoesRecusadas = new LongAdder();
+    // Conexões encerradas por prazo, por fase (ver PrazoConexao)
+    private static final AtomicLongArray conexoesExpiradas = new AtomicLongArray(PrazoConexao.Fase.values().length);
+
+    private record ExecutorMonitorado(String nome, ExecutorService executor) {
+    }
+
+    private static final List<ExecutorMonitorado> executores = new CopyOnWriteArrayList<>();
+
+    private MetricasServidor() {
+    }
+
+    /**
+     * Inclui a fila e os workers ativos do executor nas métricas (só ThreadPoolExecutor tem fila)
+     */
+    public static void monitorarExecutor(String nome, ExecutorService executor) {
+        executores.add(new ExecutorMonitorado(nome, executor));
+    }
+
+    /**
+     * Marca o início do processamento de uma requisição; o valor retornado vai para registrar()
+     */
+    public static long iniciarRequisicao() {
+        emProcessamento.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Registra uma requisição concluída (resposta escrita) iniciada em iniciarRequisicao()
+     */
+    public static void registrar(Rota rota, int status, long inicioNanos) {
+        emProcessamento.decrement();
+        long micros = Math.max(0, (System.nanoTime() - inicioNanos) / 1000);
+        int r = rota.ordinal();
+        int s = Math.min(Math.max(status - STATUS_MINIMO, 0), STATUS_POSSIVEIS - 1);
+        requisicoes.getAndIncrement(r * STATUS_POSSIVEIS + s);
+        latencias.getAndIncrement(r * FAIXAS + faixa(micros));
+        somaLatenciaMicros.getAndAdd(r, micros);
+    }
+
+    /**
+     * Requisição iniciada que não chegou a ter resposta escrita (conexão perdida no meio)
+     */
+    public static void requisicaoInterrompida() {
+        emProcessamento.decrement();
+    }
+
+    public static void conexaoAberta() {
+        conexoesAbertas.increment();
+    }
+
+    public static void conexaoFechada() {
+        conexoesAbertas.decrement();
+    }
+
+    /**
+     * Conexão aceita e respondida com 503 sem chegar a um worker (fila de admissão cheia)
+     */
+    public static void conexaoRecusada() {
+        conexoesRecusadas.increment();
+    }
+
+    /**
+     * Conexão encerrada porque o prazo da fase venceu (cliente ocioso ou lento)
+     */
+    public static void conexaoExpirada(PrazoConexao.Fase fase) {
+        conexoesExpiradas.getAndIncrement(fase.ordinal());
+    }
+
+    public static void bytesRecebidos(long bytes) {
+        bytesRecebidos.add(bytes);
+    }
+
+    public static void bytesEnviados(long bytes) {
+        bytesEnviados.add(bytes);
+    }
+
+    /**
+     * Faixa do histograma: valores abaixo de 4 têm faixa própria; a partir daí, cada potência
+     * de 2 é dividida em 4 pelos dois bits seguintes ao mais significativo
+     */
+    static int faixa(long micros) {
+        if (micros < SUBFAIXAS_POR_POTENCIA) {
+            return (int) micros;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(micros);
+        int faixa = (expoente - 1) * SUBFAIXAS_POR_POTENCIA + (int) ((micros >>> (expoente - 2)) & 3);
+        return Math.min(faixa, FAIXAS - 1);
+    }
+
+    /**
+     * Limite superior (exclusivo) da faixa, em microssegundos
+     */
+    static long limiteSuperior(int faixa) {
+        if (faixa < SUBFAIXAS_POR_POTENCIA) {
+            return faixa + 1;
+        }
+        int expoente = faixa / SUBFAIXAS_POR_POTENCIA + 1;
+        long passo = 1L << (expoente - 2);
+        return (SUBFAIXAS_POR_POTENCIA + faixa % SUBFAIXAS_POR_POTENCIA) * passo + passo;
+    }
+
+    /**
+     * Texto de GET /metrics (formato de exposição do Prometheus, versão 0.0.4)
+     */
+    public static String exportar() {
+        StringBuilder saida = new StringBuilder(8192);
+
+        cabecalho(saida, "cardapio_requisicoes_total", "counter", "Requisições atendidas por rota e status");
+        for (Rota rota : ROTAS) {
+            for (int s = 0; s < STATUS_POSSIVEIS; s++) {
+                long total = requisicoes.get(rota.ordinal() * STATUS_POSSIVEIS + s);
+                if (total > 0) {
+                    saida.append("cardapio_requisicoes_total{rota=\"").append(rota.rotulo)
+                        .append("\",status=\"").append(s + STATUS_MINIMO).append("\"} ").append(total).append('\n');
+                }
+            }
+        }
+
+        long[] faixas = new long[FAIXAS];
+        cabecalho(saida, "cardapio_requisicao_duracao_segundos", "histogram",
+            "Tempo entre a requisição completa e a resposta escrita");
+        StringBuilder quantis = new StringBuilder();
+        for (Rota rota : ROTAS) {
+            long total = 0;
+            for (int f = 0; f < FAIXAS; f++) {
+                faixas[f] = latencias.get(rota.ordinal() * FAIXAS + f);
+                total += faixas[f];
+            }
+            if (total == 0) {
+                continue;
+            }
+            String rotulo = "rota=\"" + rota.rotulo + "\"";
+            // Buckets cumulativos nas potências de 4 µs (4 µs, 16 µs, ... ~67 s)
+            long acumulado = 0;
+            int proximoLimite = 2;
+            for (int f = 0; f < FAIXAS && proximoLimite <= 26; f++) {
+                acumulado += faixas[f];
+                if (limiteSuperior(f) == 1L << proximoLimite) {
+                    saida.append("cardapio_requisicao_duracao_segundos_bucket{").append(rotulo).append(",le=\"")
+                        .append(segundos(1L << proximoLimite)).append("\"} ").append(acumulado).append('\n');
+                    proximoLimite += 2;
+                }
+            }
+            saida.append("cardapio_requisicao_duracao_segundos_bucket{").append(rotulo).append(",le=\"+Inf\"} ")
+                .append(total).append('\n');
+            saida.append("cardapio_requisicao_duracao_segundos_sum{").append(rotulo).append("} ")
+                .append(segundos(somaLatenciaMicros.get(rota.ordinal()))).append('\n');
+            saida.append("cardapio_requisicao_duracao_segundos_count{").append(rotulo).append("} ")
+                .append(total).append('\n');
+
+            for (double quantil : QUANTIS) {
+                quantis.append("cardapio_requisicao_duracao_quantil_segundos{").append(rotulo).append(",quantile=\"")
+                    .append(quantil).append("\"} ").append(segundos(percentil(faixas, total, quantil))).append('\n');
+            }
+        }
+        cabecalho(saida, "cardapio_requisicao_duracao_quantil_segundos", "gauge",
+            "p50, p99 e p999 da latência desde a inicialização (limite superior da faixa)");
+        saida.append(quantis);
+
+        valor(saida, "cardapio_bytes_recebidos_total", "counter", "Bytes lidos dos sockets", bytesRecebidos.sum());
+        valor(saida, "cardapio_bytes_enviados_total", "counter", "Bytes escritos nos sockets", bytesEnviados.sum());
+        valor(saida, "cardapio_conexoes_abertas", "gauge", "Conexões de clientes abertas", conexoesAbertas.sum());
+        valor(saida, "cardapio_requisicoes_em_processamento", "gauge",
+            "Requisições recebidas e ainda sem resposta escrita", emProcessamento.sum());
+        valor(saida, "cardapio_conexoes_recusadas_total", "counter",
+            "Conexões respondidas com 503 porque a fila de admissão estava cheia", conexoesRecusadas.sum());
+        cabecalho(saida, "cardapio_conexoes_expiradas_total", "counter", "Conexões encerradas por prazo, por fase");
+        for (PrazoConexao.Fase fase : PrazoConexao.Fase.values()) {
+            if (fase == PrazoConexao.Fase.PROCESSANDO) {
+                continue;
+            }
+            saida.append("cardapio_conexoes_expiradas_total{fase=\"").append(fase.name().toLowerCase(Locale.ROOT)).append("\"} ")
+                .append(conexoesExpiradas.get(fase.ordinal())).append('\n');
+        }
+
+        cabecalho(saida, "cardapio_executor_fila", "gauge", "Tarefas aguardando um worker");
+        for (ExecutorMonitorado monitorado : executores) {
+            if (monitorado.executor() instanceof ThreadPoolExecutor pool) {
+                saida.append("cardapio_executor_fila{executor=\"").append(monitorado.nome()).append("\"} ")
+                    .append(pool.getQueue().size()).append('\n');
+            }
+        }
+        cabecalho(saida, "cardapio_executor_workers_ativos", "gauge", "Workers executando uma tarefa");
+        for (ExecutorMonitorado monitorado : executores) {
+            if (monitorado.executor() instanceof ThreadPoolExecutor pool) {
+                saida.append("cardapio_executor_workers_ativos{executor=\"").append(monitorado.nome()).append("\"} ")
+                    .append(pool.getActiveCount()).append('\n');
+            }
+        }
+        return saida.toString();
+    }
+
+    /**
+     * Menor limite de faixa que cobre a fração quantil das requisições
+     */
+    private static long percentil(long[] faixas, long total, double quantil) {
+        long posicao = (long) Math.ceil(quantil * total);
+        long acumulado = 0;
+        for (int f = 0; f < FAIXAS; f++) {
+            acumulado += faixas[f];
+            if (acumulado >= posicao) {
+                return limiteSuperior(f);
+            }
+        }
+        return limiteSuperior(FAIXAS - 1);
+    }
+
+    private static void cabecalho(StringBuilder saida, String nome, String tipo, String ajuda) {
+        saida.append("# HELP ").append(nome).append(' ').append(ajuda).append('\n');
+        saida.append("# TYPE ").append(nome).append(' ').append(tipo).append('\n');
+    }
+
+    private static void valor(StringBuilder saida, String nome, String tipo, String ajuda, long valor) {
+        cabecalho(saida, nome, tipo, ajuda);
+        saida.append(nome).append(' ').append(valor).append('\n');
+    }
+
+    private static String segundos(long micros) {
+        return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * InputStream do socket que soma os bytes lidos (modo bloqueante)
+     */
+    public static final class EntradaContada extends FilterInputStream {
+
+        public EntradaContada(InputStream entrada) {
+            super(entrada);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                bytesRecebidos.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] destino, int deslocamento, int tamanho) throws IOException {
+            int lidos = in.read(destino, deslocamento, tamanho);
+            if (lidos > 0) {
+                bytesRecebidos.add(lidos);
+            }
+            return lidos;
+        }
+    }
+
+    /**
+     * OutputStream do socket que soma os bytes escritos (modo bloqueante).
+     * Repassa os arrays inteiros: o write(byte[], int, int) do FilterOutputStream escreve byte a byte.
+     */
+    public static final class SaidaContada extends FilterOutputStream {
+
+        public SaidaContada(OutputStream saida) {
+            super(saida);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesEnviados.increment();
+        }
+
+        @Override
+        public void write(byte[] origem, int deslocamento, int tamanho) throws IOException {
+            out.write(origem, deslocamento, tamanho);
+            bytesEnviados.add(tamanho);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package mx.florinda.cardapio;
+
+/**
+ * Recebe as alterações feitas no CatalogoCardapio
+ *
+ * Usado por estruturas derivadas do catálogo (caches de resposta, índices)
+ * para se manterem atualizadas sem que os handlers precisem conhecê-las.
+ * Os métodos são chamados na thread que fez a alteração, depois que o mapa
+ * já foi atualizado e a versão do catálogo incrementada, e ainda dentro do lock de
+ * escrita do catálogo (na mesma ordem das alterações), então devem ser rápidos.
+ */
+public interface OuvinteCatalogo {
+
+    /**
+     * Um item foi inserido ou substituído (anterior é null quando o ID é novo)
+     */
+    default void itemAdicionado(ItemCardapio item, ItemCardapio anterior) {
+    }
+
+    /**
+     * Um item foi removido do catálogo
+     */
+    default void itemRemovido(ItemCardapio item) {
+    }
+}
@@ -0,0 +1,200 @@
+package mx.florinda.cardapio;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Prazos de uma conexão, controlados pela RodaTemporizacao compartilhada
+ *
+ * A conexão passa pelas fases:
+ * - OCIOSA: keep-alive, aguardando o primeiro byte da próxima requisição (timeout de keep-alive)
+ * - CABECALHO: recebendo a request line e os headers (cardapio.prazo.cabecalhoMs, padrão 10000)
+ * - CORPO: recebendo o body (cardapio.prazo.corpoMs, padrão 10000, mais o tempo do Content-Length
+ *   a cardapio.prazo.corpoTaxaMinima bytes/s, padrão 65536)
+ * - PROCESSANDO: handler e escrita da resposta, sem prazo
+ *
+ * O prazo vale para o tempo total da fase, contado de quando ela começou: diferente do
+ * setSoTimeout, que reinicia a cada read(), um cliente que manda um byte por segundo
+ * (slowloris) não consegue segurar a conexão além do prazo. A primeira requisição da conexão
+ * já começa em CABECALHO (uma conexão sem nenhum byte não é ociosa, é lenta).
+ *
+ * Sob pressão (ex: conexões na fila esperando um worker do pool), as fases OCIOSA e CABECALHO
+ * têm prazo de cardapio.prazo.sobPressaoMs (padrão 1000): quem está ocioso ou mandando headers
+ * devagar libera a thread para quem já está esperando. Sem indicador de pressão (null, ex: modo
+ * NIO, em que conexão lenta não ocupa thread) vale só o prazo normal.
+ *
+ * Ao vencer, a ação informada no construtor é executada na thread da roda (ex: fechar o socket,
+ * o que interrompe o read() bloqueado do worker). Mudanças de fase e vencimento disputam um
+ * compareAndSet na geração da fase: um prazo vencido depois que a fase mudou não tem efeito.
+ */
+public final class PrazoConexao {
+
+    public enum Fase {
+        OCIOSA, CABECALHO, CORPO, PROCESSANDO
+    }
+
+    static final long CABECALHO_MS = Long.getLong("cardapio.prazo.cabecalhoMs", 10_000);
+    static final long CORPO_MS = Long.getLong("cardapio.prazo.corpoMs", 10_000);
+    static final long CORPO_TAXA_MINIMA = Math.max(1, Long.getLong("cardapio.prazo.corpoTaxaMinima", 64 * 1024));
+    static final long SOB_PRESSAO_MS = Long.getLong("cardapio.prazo.sobPressaoMs", 1000);
+
+    private static final int EXPIRADA = -1;
+
+    private final RodaTemporizacao roda;
+    private final BooleanSupplier sobPressao;
+    private final Runnable aoExpirar;
+    private final AtomicInteger geracao = new AtomicInteger();
+    // Alterados só pela thread dona da conexão (worker ou reator)
+    private Fase fase = Fase.PROCESSANDO;
+    private boolean jaAtendeu;
+    private volatile RodaTemporizacao.Tarefa tarefa;
+    private volatile Fase faseExpirada;
+
+    /**
+     * @param sobPressao indica se as fases OCIOSA e CABECALHO devem usar o prazo curto (pode ser null)
+     * @param aoExpirar  executada na thread da roda quando o prazo de uma fase vence
+     */
+    public PrazoConexao(RodaTemporizacao roda, BooleanSupplier sobPressao, Runnable aoExpirar) {
+        this.roda = roda;
+        this.sobPressao = sobPressao;
+        this.aoExpirar = aoExpirar;
+    }
+
+    /**
+     * Ajusta a fase conforme o estado do parser; chamado antes de cada leitura do socket (no modo
+     * NIO, quando a análise ainda não tem a requisição completa). Na mesma fase o prazo corrente
+     * continua valendo.
+     */
+    public void acompanhar(RequisicaoHttp requisicao) {
+        Fase atual;
+        long limiteMs;
+        if (requisicao.cabecalhoRecebido()) {
+            atual = Fase.CORPO;
+            limiteMs = CORPO_MS + requisicao.contentLength() * 1000L / CORPO_TAXA_MINIMA;
+        } else if (!jaAtendeu || requisicao.temRequisicaoParcial()) {
+            atual = Fase.CABECALHO;
+            limiteMs = CABECALHO_MS;
+        } else {
+            atual = Fase.OCIOSA;
+            limiteMs = ServidorItensCardapioComSocket.KEEP_ALIVE_TIMEOUT_MS;
+        }
+        int nova;
+        if (atual != fase && (nova = novaGeracao()) != EXPIRADA) {
+            fase = atual;
+            armar(nova, atual, System.nanoTime(), limiteMs);
+        }
+    }
+
+    /**
+     * Requisição completa: sem prazo até a próxima leitura
+     */
+    public void suspender() {
+        jaAtendeu = true;
+        if (fase != Fase.PROCESSANDO && novaGeracao() != EXPIRADA) {
+            fase = Fase.PROCESSANDO;
+        }
+    }
+
+    /**
+     * Encerra a conexão sem prazo pendente (a tarefa na roda é descartada)
+     */
+    public void cancelar() {
+        novaGeracao();
+    }
+
+    public boolean expirou() {
+        return geracao.get() == EXPIRADA;
+    }
+
+    /**
+     * Fase em que o prazo venceu (null se não venceu)
+     */
+    public Fase faseExpirada() {
+        return faseExpirada;
+    }
+
+    /**
+     * Invalida o prazo da fase atual; retorna a nova geração, ou EXPIRADA se ele já venceu
+     */
+    private int novaGeracao() {
+        RodaTemporizacao.Tarefa anterior = tarefa;
+        if (anterior != null) {
+            anterior.cancelar();
+        }
+        while (true) {
+            int atual = geracao.get();
+            if (atual == EXPIRADA) {
+                return EXPIRADA;
+            }
+            int nova = (atual + 1) & Integer.MAX_VALUE;
+            if (geracao.compareAndSet(atual, nova)) {
+                return nova;
+            }
+        }
+    }
+
+    private boolean pressionavel(Fase faseArmada) {
+        return sobPressao != null && (faseArmada == Fase.OCIOSA || faseArmada == Fase.CABECALHO);
+    }
+
+    private void armar(int geracaoFase, Fase faseArmada, long inicioNanos, long limiteMs) {
+        long decorridoMs = (System.nanoTime() - inicioNanos) / 1_000_000;
+        long restante = Math.max(0, limiteMs - decorridoMs);
+        boolean pressionavel = pressionavel(faseArmada);
+        long atraso = pressionavel ? Math.min(restante, Math.max(0, SOB_PRESSAO_MS - decorridoMs)) : restante;
+        if (atraso == 0 && restante > 0) {
+            // Já passou do prazo sob pressão: volta a verificar a cada intervalo de pressão
+            atraso = Math.min(restante, SOB_PRESSAO_MS);
+        }
+        tarefa = roda.agendar(atraso, () -> verificar(geracaoFase, faseArmada, inicioNanos, limiteMs));
+    }
+
+    /**
+     * Thread da roda: encerra a conexão se o prazo venceu (ou se há pressão), senão reagenda
+     */
+    private void verificar(int geracaoFase, Fase faseArmada, long inicioNanos, long limiteMs) {
+        if (geracao.get() != geracaoFase) {
+            return;
+        }
+        long decorridoMs = (System.nanoTime() - inicioNanos) / 1_000_000;
+        boolean venceu = decorridoMs >= limiteMs
+            || (pressionavel(faseArmada) && decorridoMs >= SOB_PRESSAO_MS && sobPressao.getAsBoolean());
+        if (!venceu) {
+            armar(geracaoFase, faseArmada, inicioNanos, limiteMs);
+            return;
+        }
+        if (geracao.compareAndSet(geracaoFase, EXPIRADA)) {
+            faseExpirada = faseArmada;
+            aoExpirar.run();
+        }
+    }
+
+    /**
+     * InputStream do socket que atualiza a fase antes de cada leitura (modo bloqueante)
+     */
+    public static final class Entrada extends FilterInputStream {
+        private final PrazoConexao prazo;
+        private final RequisicaoHttp requisicao;
+
+        public Entrada(InputStream in, PrazoConexao prazo, RequisicaoHttp requisicao) {
+            super(in);
+            this.prazo = prazo;
+            this.requisicao = requisicao;
+        }
+
+        @Override
+        public int read() throws IOException {
+            prazo.acompanhar(requisicao);
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            prazo.acompanhar(requisicao);
+            return super.read(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package mx.florinda.cardapio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * GET /cardapio.json - Catálogo publicado em disco pelo GeradorItensCardapioJSON, enviado sem cópia pelo heap
+ *
+ * O gerador grava o cardapio.json e o cardapio.json.gz (comprimido uma vez, no nível máximo), cada um
+ * num arquivo temporário renomeado por cima do anterior. Aqui só são decididos o status e os headers,
+ * a partir do tamanho e da data do arquivo (um stat por variante); o body é uma RegiaoArquivo que o
+ * servidor envia com FileChannel.transferTo, do page cache direto para o socket (sendfile no Linux):
+ * nada de Files.readString, String, getBytes nem buffer do tamanho do arquivo por requisição.
+ *
+ * - Clientes que aceitam gzip recebem o .gz, quando ele existe, com Content-Encoding: gzip
+ * - ETag forte "<data>-<tamanho>", com o sufixo -gzip na variante comprimida; o If-None-Match
+ *   vira 304 no rotearRequisicao, antes de o arquivo ser aberto
+ * - Range com um único intervalo de bytes ("a-b", "a-" ou "-n") responde 206 com Content-Range;
+ *   os bytes são os da variante enviada (no .gz, bytes comprimidos). Vários intervalos ou um
+ *   Range malformado são ignorados (200 com o arquivo inteiro, como a RFC 9110 permite), e um
+ *   intervalo que começa depois do fim do arquivo responde 416.
+ * - If-Range: o Range só vale se a ETag informada ainda for a atual; com outra ETag (ou uma data,
+ *   já que a resposta não tem Last-Modified) o arquivo vai inteiro
+ *
+ * Configuração (System properties):
+ * - cardapio.publicacao.arquivo: arquivo publicado (padrão cardapio.json); a variante fica no mesmo caminho + ".gz"
+ */
+final class PublicacaoCatalogo {
+
+    static final Path ARQUIVO = Path.of(System.getProperty("cardapio.publicacao.arquivo", "cardapio.json"));
+    static final String SUFIXO_GZIP = ".gz";
+
+    /**
+     * Intervalo de bytes pedido no Range, já limitado ao tamanho do arquivo
+     */
+    record Intervalo(long inicio, long tamanho) {
+    }
+
+    // Range sintaticamente válido, mas que começa depois do fim do arquivo (416)
+    static final Intervalo INSATISFAZIVEL = new Intervalo(-1, 0);
+
+    private final Path arquivo;
+    private final Path arquivoGzip;
+
+    PublicacaoCatalogo(Path arquivo) {
+        this.arquivo = arquivo;
+        this.arquivoGzip = arquivo.resolveSibling(arquivo.getFileName() + SUFIXO_GZIP);
+    }
+
+    RespostaHttp responder(RequisicaoHttp requisicao) {
+        BasicFileAttributes gzip = atributos(arquivoGzip);
+        boolean usarGzip = gzip != null && requisicao.codificacaoAceita() == CompressaoHttp.Codificacao.GZIP;
+        Path enviado = usarGzip ? arquivoGzip : arquivo;
+        BasicFileAttributes atributos = usarGzip ? gzip : atributos(arquivo);
+        if (atributos == null) {
+            return RespostaHttp.json(404, "Not Found",
+                "{\"erro\": \"Catálogo não publicado\", \"arquivo\": \"" + ServidorItensCardapioComSocket.escaparJson(arquivo.toString()) + "\"}");
+        }
+
+        long tamanhoArquivo = atributos.size();
+        String etag = "\"" + Long.toHexString(atributos.lastModifiedTime().toMillis()) + "-" + Long.toHexString(tamanhoArquivo)
+            + (usarGzip ? "-gzip" : "") + "\"";
+        CompressaoHttp.Codificacao codificacao = usarGzip ? CompressaoHttp.Codificacao.GZIP : CompressaoHttp.Codificacao.IDENTIDADE;
+        // Vary só quando existe outra variante para o mesmo recurso
+        boolean variaPorCodificacao = gzip != null;
+
+        String range = requisicao.range();
+        String ifRange = requisicao.ifRange();
+        // Se o cliente já tem esta versão, o 304 (no rotearRequisicao) vale mais que o Range
+        Intervalo intervalo = range == null || requisicao.ifNoneMatchCorresponde(etag) || (ifRange != null && !ifRange.equals(etag))
+            ? null
+            : intervalo(range, tamanhoArquivo);
+
+        if (intervalo == INSATISFAZIVEL) {
+            return RespostaHttp.json(416, "Range Not Satisfiable", "{\"erro\": \"Intervalo fora do arquivo\", \"tamanho\": " + tamanhoArquivo + "}")
+                .comContentRange("bytes */" + tamanhoArquivo);
+        }
+        if (intervalo != null) {
+            RespostaHttp.RegiaoArquivo regiao = new RespostaHttp.RegiaoArquivo(enviado, tamanhoArquivo, intervalo.inicio(), intervalo.tamanho());
+            return RespostaHttp.arquivo(206, "Partial Content", regiao, codificacao, variaPorCodificacao)
+                .comEtag(etag)
+                .comContentRange("bytes " + intervalo.inicio() + "-" + (intervalo.inicio() + intervalo.tamanho() - 1) + "/" + tamanhoArquivo);
+        }
+        RespostaHttp.RegiaoArquivo regiao = new RespostaHttp.RegiaoArquivo(enviado, tamanhoArquivo, 0, tamanhoArquivo);
+        return RespostaHttp.arquivo(200, "OK", regiao, codificacao, variaPorCodificacao).comEtag(etag);
+    }
+
+    /**
+     * Atributos do arquivo, ou null se ele não existe
+     */
+    private static BasicFileAttributes atributos(Path caminho) {
+        try {
+            return Files.readAttributes(caminho, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LogServidor.warn("Não foi possível ler os atributos de " + caminho + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Interpreta o valor do header Range para um arquivo do tamanho informado.
+     * Retorna null quando o Range deve ser ignorado (malformado, outra unidade ou vários
+     * intervalos) e INSATISFAZIVEL quando ele começa depois do fim do arquivo.
+     */
+    static Intervalo intervalo(String range, long tamanhoArquivo) {
+        if (range.length() < 6 || !range.regionMatches(true, 0, "bytes=", 0, 6) || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String especificacao = range.substring(6).trim();
+        int hifen = especificacao.indexOf('-');
+        if (hifen < 0) {
+            return null;
+        }
+        try {
+            if (hifen == 0) {
+                // "-n": os últimos n bytes
+                long sufixo = numero(especificacao.substring(1));
+                if (sufixo == 0 || tamanhoArquivo == 0) {
+                    return INSATISFAZIVEL;
+                }
+                long tamanho = Math.min(sufixo, tamanhoArquivo);
+                return new Intervalo(tamanhoArquivo - tamanho, tamanho);
+            }
+            long inicio = numero(especificacao.substring(0, hifen));
+            String textoFim = especificacao.substring(hifen + 1);
+            long fim = textoFim.isEmpty() ? Long.MAX_VALUE : numero(textoFim);
+            if (fim < inicio) {
+                return null;
+            }
+            if (inicio >= tamanhoArquivo) {
+                return INSATISFAZIVEL;
+            }
+            return new Intervalo(inicio, Math.min(fim, tamanhoArquivo - 1) - inicio + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Só dígitos (sem sinal nem espaços), como na gramática do Range
+     */
+    private static long numero(String texto) {
+        if (texto.isEmpty()) {
+            throw new NumberFormatException("vazio");
+        }
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException(texto);
+            }
+        }
+        return Long.parseLong(texto);
+    }
+}
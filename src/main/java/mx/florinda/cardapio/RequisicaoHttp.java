@@ -0,0 +1,847 @@
+package mx.florinda.cardapio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * Parser de requisições HTTP/1.x que trabalha direto sobre um buffer de bytes reutilizável
+ *
+ * Cada conexão tem um RequisicaoHttp. Os bytes recebidos do socket são acumulados no
+ * mesmo array durante toda a conexão, e o parser guarda apenas posições (início/fim)
+ * dentro dele: método, path, query, Content-Length, Connection, Accept-Encoding e Range são reconhecidos
+ * comparando bytes, sem criar Strings intermediárias, sem split e sem toLowerCase.
+ * Strings só são criadas quando alguém pede explicitamente (path(), body()).
+ *
+ * Leituras parciais são naturais: analisar() retorna INCOMPLETA enquanto faltarem bytes
+ * e continua a varredura de onde parou na próxima chamada. Bytes que sobram depois da
+ * requisição atual (pipelining) ficam no buffer e viram a próxima requisição após concluir().
+ *
+ * Uso no modo bloqueante:
+ *   while (requisicao.lerDe(inputStream) == Estado.COMPLETA) { ...; requisicao.concluir(); }
+ * Uso no modo NIO:
+ *   requisicao.lerDe(canal); if (requisicao.analisar() == Estado.COMPLETA) { ... }
+ *
+ * Body em fluxo: para as rotas aceitas pelo filtro informado no construtor (ex: importação
+ * em lote), analisar() retorna COMPLETA logo após os headers e o body é entregue aos poucos
+ * a um ConsumidorBody (entregarBody/lerBodyEmFluxo), reaproveitando o mesmo buffer. Assim um
+ * body de vários MB não precisa caber inteiro em memória nem respeitar cardapio.http.maxBody.
+ *
+ * O body é sempre delimitado pelo Content-Length. Transfer-Encoding (chunked) não é suportado e a
+ * requisição é recusada (501, ou 411 sem Content-Length), assim como Content-Length repetido com
+ * valores diferentes (400): em vez de escolher um dos enquadramentos, a conexão é fechada.
+ */
+public final class RequisicaoHttp {
+
+    public enum Metodo {
+        GET, POST, PUT, DELETE, HEAD, OUTRO
+    }
+
+    /**
+     * Recebe o body em fluxo em pedaços, na ordem de chegada. Os bytes só são válidos
+     * durante a chamada (o buffer é reaproveitado em seguida).
+     */
+    public interface ConsumidorBody {
+        void consumir(byte[] dados, int de, int ate);
+    }
+
+    public enum Estado {
+        /** Ainda faltam bytes para completar headers ou body */
+        INCOMPLETA,
+        /** Requisição completa disponível nos acessores */
+        COMPLETA,
+        /** Requisição malformada ou grande demais (ver statusErro() e mensagemErro()) */
+        INVALIDA,
+        /** O cliente fechou a conexão (sem requisição pendente, ou no meio de uma) */
+        FIM_DO_STREAM
+    }
+
+    static final int TAMANHO_MAXIMO_CABECALHO = 16 * 1024;
+    static final int TAMANHO_MAXIMO_BODY = Integer.getInteger("cardapio.http.maxBody", 1024 * 1024);
+    static final int TAMANHO_MAXIMO_BODY_EM_FLUXO = Integer.getInteger("cardapio.http.maxBodyEmFluxo", 256 * 1024 * 1024);
+    private static final int TAMANHO_INICIAL = 4096;
+
+    private static final byte[] HTTP_1_1 = bytes("HTTP/1.1");
+    private static final byte[] HTTP_1_0 = bytes("HTTP/1.0");
+    private static final byte[] CONTENT_LENGTH = bytes("content-length");
+    private static final byte[] TRANSFER_ENCODING = bytes("transfer-encoding");
+    private static final byte[] CONNECTION = bytes("connection");
+    private static final byte[] ACCEPT_ENCODING = bytes("accept-encoding");
+    private static final byte[] IF_NONE_MATCH = bytes("if-none-match");
+    private static final byte[] RANGE = bytes("range");
+    private static final byte[] IF_RANGE = bytes("if-range");
+    private static final byte[] EXPECT = bytes("expect");
+    private static final byte[] CONTINUE_100 = bytes("100-continue");
+    private static final byte[] CLOSE = bytes("close");
+    private static final byte[] KEEP_ALIVE = bytes("keep-alive");
+
+    private static final byte CONNECTION_AUSENTE = 0;
+    private static final byte CONNECTION_KEEP_ALIVE = 1;
+    private static final byte CONNECTION_CLOSE = 2;
+
+    private final Predicate<RequisicaoHttp> aceitaBodyEmFluxo;
+    private byte[] buffer = new byte[TAMANHO_INICIAL];
+    private ByteBuffer visao = ByteBuffer.wrap(buffer);
+    // Bytes válidos estão em [inicio, fim); a requisição atual começa em inicio
+    private int inicio;
+    private int fim;
+    // Posição até onde o fim dos headers já foi procurado (evita reprocessar em leituras parciais)
+    private int varredura;
+
+    // Resultado da análise (posições absolutas no buffer)
+    private boolean cabecalhoAnalisado;
+    private int inicioBody;
+    private Metodo metodo;
+    private int inicioMetodo;
+    private int fimMetodo;
+    private int inicioPath;
+    private int fimPath;
+    private int inicioQuery = -1;
+    private int fimQuery = -1;
+    private boolean http11;
+    private int contentLength;
+    private byte connection;
+    private int inicioAcceptEncoding = -1;
+    private int fimAcceptEncoding = -1;
+    private int inicioIfNoneMatch = -1;
+    private int fimIfNoneMatch = -1;
+    private int inicioRange = -1;
+    private int fimRange = -1;
+    private int inicioIfRange = -1;
+    private int fimIfRange = -1;
+    private boolean esperaContinue;
+    private int statusErro;
+    private String mensagemErro;
+    private String pathCache;
+    private String bodyCache;
+    // Body em fluxo: bytes ainda não entregues ao consumidor (no buffer a partir de inicioBody, ou no socket)
+    private boolean bodyEmFluxo;
+    private int bodyRestante;
+    private int fimCabecalhoBytes;
+
+    public RequisicaoHttp() {
+        this(requisicao -> false);
+    }
+
+    /**
+     * @param aceitaBodyEmFluxo decide, com os headers já analisados, se o body da requisição
+     *                          será entregue em fluxo em vez de acumulado no buffer
+     */
+    public RequisicaoHttp(Predicate<RequisicaoHttp> aceitaBodyEmFluxo) {
+        this.aceitaBodyEmFluxo = aceitaBodyEmFluxo;
+    }
+
+    /**
+     * Lê do stream até ter uma requisição completa (ou inválida, ou fim do stream).
+     * Lida com leituras parciais: cada read() devolve o que houver disponível.
+     */
+    public Estado lerDe(InputStream inputStream) throws IOException {
+        while (true) {
+            Estado estado = analisar();
+            if (estado != Estado.INCOMPLETA) {
+                return estado;
+            }
+            garantirEspaco();
+            int lidos = inputStream.read(buffer, fim, buffer.length - fim);
+            if (lidos == -1) {
+                return Estado.FIM_DO_STREAM;
+            }
+            fim += lidos;
+        }
+    }
+
+    /**
+     * Lê do stream só até a request line e os headers estarem analisados: retorna COMPLETA se o
+     * body também já chegou (ou é entregue em fluxo), INCOMPLETA se ainda falta body (o restante
+     * vem com lerDe), ou INVALIDA/FIM_DO_STREAM. Permite recusar a requisição sem receber o body.
+     */
+    public Estado lerCabecalhoDe(InputStream inputStream) throws IOException {
+        while (true) {
+            Estado estado = analisar();
+            if (estado != Estado.INCOMPLETA || cabecalhoAnalisado) {
+                return estado;
+            }
+            garantirEspaco();
+            int lidos = inputStream.read(buffer, fim, buffer.length - fim);
+            if (lidos == -1) {
+                return Estado.FIM_DO_STREAM;
+            }
+            fim += lidos;
+        }
+    }
+
+    /**
+     * Lê o que estiver disponível no canal não bloqueante (sem analisar).
+     * Retorna a quantidade de bytes lidos, ou -1 se o cliente fechou a conexão.
+     */
+    public int lerDe(ReadableByteChannel canal) throws IOException {
+        garantirEspaco();
+        visao.limit(buffer.length).position(fim);
+        int lidos = canal.read(visao);
+        if (lidos > 0) {
+            fim += lidos;
+        }
+        return lidos;
+    }
+
+    /**
+     * Analisa os bytes acumulados, continuando de onde a última chamada parou.
+     */
+    public Estado analisar() {
+        if (statusErro != 0) {
+            return Estado.INVALIDA;
+        }
+        if (!cabecalhoAnalisado) {
+            // Linhas em branco antes da request line são ignoradas (ex: CRLF extra após um body)
+            while (inicio < fim && (buffer[inicio] == '\r' || buffer[inicio] == '\n')) {
+                inicio++;
+            }
+            if (varredura < inicio) {
+                varredura = inicio;
+            }
+
+            int fimCabecalho = -1;
+            int i = varredura;
+            for (; i < fim; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+                if (i + 1 < fim && buffer[i + 1] == '\n') {
+                    fimCabecalho = i;
+                    inicioBody = i + 2;
+                    break;
+                }
+                if (i + 2 < fim && buffer[i + 1] == '\r' && buffer[i + 2] == '\n') {
+                    fimCabecalho = i;
+                    inicioBody = i + 3;
+                    break;
+                }
+                if (i + 2 >= fim) {
+                    // Não dá para decidir ainda se esta linha encerra os headers
+                    break;
+                }
+            }
+            if (fimCabecalho == -1) {
+                varredura = i;
+                if (fim - inicio > TAMANHO_MAXIMO_CABECALHO) {
+                    return invalida(431, "Headers muito grandes");
+                }
+                return Estado.INCOMPLETA;
+            }
+            if (!analisarCabecalho(fimCabecalho)) {
+                return Estado.INVALIDA;
+            }
+            cabecalhoAnalisado = true;
+            fimCabecalhoBytes = inicioBody;
+            if (aceitaBodyEmFluxo.test(this)) {
+                bodyEmFluxo = true;
+                bodyRestante = contentLength;
+            } else if (contentLength > TAMANHO_MAXIMO_BODY) {
+                return invalida(413, "Body maior que " + TAMANHO_MAXIMO_BODY + " bytes");
+            }
+        }
+
+        if (bodyEmFluxo) {
+            // O body é lido depois, por entregarBody()/lerBodyEmFluxo()
+            return Estado.COMPLETA;
+        }
+
+        // O body (mesmo de métodos que o ignoram) precisa estar inteiro para enquadrar a próxima requisição
+        if (fim - inicioBody < contentLength) {
+            return Estado.INCOMPLETA;
+        }
+        return Estado.COMPLETA;
+    }
+
+    /**
+     * Descarta a requisição atual, mantendo no buffer os bytes que vieram depois dela.
+     */
+    public void concluir() {
+        int proxima = cabecalhoAnalisado ? inicioBody + bodyPendente() : fim;
+        inicio = Math.min(proxima, fim);
+        if (inicio == fim) {
+            // Nada pendente: volta ao começo do buffer sem copiar
+            inicio = 0;
+            fim = 0;
+        }
+        varredura = inicio;
+        cabecalhoAnalisado = false;
+        inicioBody = 0;
+        metodo = null;
+        inicioQuery = -1;
+        fimQuery = -1;
+        http11 = false;
+        contentLength = 0;
+        connection = CONNECTION_AUSENTE;
+        inicioAcceptEncoding = -1;
+        fimAcceptEncoding = -1;
+        inicioIfNoneMatch = -1;
+        fimIfNoneMatch = -1;
+        inicioRange = -1;
+        fimRange = -1;
+        inicioIfRange = -1;
+        fimIfRange = -1;
+        esperaContinue = false;
+        statusErro = 0;
+        mensagemErro = null;
+        pathCache = null;
+        bodyCache = null;
+        bodyEmFluxo = false;
+        bodyRestante = 0;
+    }
+
+    /**
+     * Indica se já há bytes recebidos além da requisição atual (próxima requisição em pipeline)
+     */
+    public boolean temDadosPendentes() {
+        int proxima = cabecalhoAnalisado ? inicioBody + bodyPendente() : inicio;
+        return fim > proxima;
+    }
+
+    /**
+     * Indica se o cliente começou a enviar uma requisição que ainda não está completa
+     */
+    public boolean temRequisicaoParcial() {
+        return fim > inicio && !(cabecalhoAnalisado && fim - inicioBody >= bodyPendente());
+    }
+
+    /**
+     * Se a request line e os headers da requisição atual já foram recebidos e analisados
+     */
+    public boolean cabecalhoRecebido() {
+        return cabecalhoAnalisado;
+    }
+
+    /**
+     * Se o body desta requisição é entregue em fluxo (ver entregarBody e lerBodyEmFluxo)
+     */
+    public boolean bodyEmFluxo() {
+        return bodyEmFluxo;
+    }
+
+    /**
+     * Se o cliente enviou "Expect: 100-continue" e ainda aguarda o "100 Continue" para mandar
+     * o body em fluxo (curl faz isso em uploads grandes, esperando até 1s pela resposta)
+     */
+    public boolean aguardaContinue() {
+        return esperaContinue && bodyEmFluxo && bodyRestante == contentLength && bodyRestante > 0 && fim == inicioBody;
+    }
+
+    /**
+     * Entrega ao consumidor os bytes do body em fluxo já recebidos e libera o espaço que
+     * eles ocupavam no buffer. Retorna true quando o body inteiro já foi entregue.
+     */
+    public boolean entregarBody(ConsumidorBody consumidor) {
+        int disponiveis = Math.min(fim - inicioBody, bodyRestante);
+        if (disponiveis > 0) {
+            consumidor.consumir(buffer, inicioBody, inicioBody + disponiveis);
+            inicioBody += disponiveis;
+            bodyRestante -= disponiveis;
+        }
+        if (inicioBody == fim) {
+            // Tudo entregue: a próxima leitura reaproveita o espaço logo após os headers
+            inicioBody = fimCabecalhoBytes;
+            fim = fimCabecalhoBytes;
+        }
+        return bodyRestante == 0;
+    }
+
+    /**
+     * Modo bloqueante: lê do stream e entrega ao consumidor todo o body em fluxo.
+     * Lança EOFException se o cliente fechar a conexão antes do fim do body.
+     */
+    public void lerBodyEmFluxo(InputStream inputStream, ConsumidorBody consumidor) throws IOException {
+        while (!entregarBody(consumidor)) {
+            garantirEspaco();
+            int lidos = inputStream.read(buffer, fim, Math.min(buffer.length - fim, bodyRestante));
+            if (lidos == -1) {
+                throw new EOFException("Conexão encerrada com " + bodyRestante + " bytes de body pendentes");
+            }
+            fim += lidos;
+        }
+    }
+
+    public Metodo metodo() {
+        return metodo;
+    }
+
+    /**
+     * Texto do método como recebido (cria uma String; usar só para log ou métodos desconhecidos)
+     */
+    public String metodoTexto() {
+        if (metodo == null) {
+            return "?";
+        }
+        return metodo != Metodo.OUTRO
+            ? metodo.name()
+            : new String(buffer, inicioMetodo, fimMetodo - inicioMetodo, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Compara o path (sem a query string) com os bytes informados, sem criar String
+     */
+    public boolean pathIgual(byte[] esperado) {
+        return fimPath - inicioPath == esperado.length && regiaoIgual(inicioPath, esperado, false);
+    }
+
+    public boolean pathComecaCom(byte[] prefixo) {
+        return fimPath - inicioPath >= prefixo.length && regiaoIgual(inicioPath, prefixo, false);
+    }
+
+    public boolean pathTerminaCom(byte[] sufixo) {
+        return fimPath - inicioPath >= sufixo.length && regiaoIgual(fimPath - sufixo.length, sufixo, false);
+    }
+
+    /**
+     * Path sem a query string (String criada na primeira chamada)
+     */
+    public String path() {
+        if (pathCache == null) {
+            pathCache = new String(buffer, inicioPath, fimPath - inicioPath, StandardCharsets.UTF_8);
+        }
+        return pathCache;
+    }
+
+    /**
+     * Trecho do path a partir da posição informada (ex: o {id} de /itens-cardapio/{id})
+     */
+    public String sufixoPath(int deslocamento) {
+        return new String(buffer, inicioPath + deslocamento, fimPath - inicioPath - deslocamento, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Query string sem o '?', ou null se não houver
+     */
+    public String query() {
+        return inicioQuery < 0 ? null : new String(buffer, inicioQuery, fimQuery - inicioQuery, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Valor do parâmetro da query string (decodificado de URL), ou null se não estiver presente
+     * ("" para um parâmetro sem '=').
+     * A query é percorrida nos bytes; só o valor encontrado vira String.
+     */
+    public String parametro(String nome) {
+        if (inicioQuery < 0) {
+            return null;
+        }
+        int i = inicioQuery;
+        while (i < fimQuery) {
+            int fimPar = indiceDe((byte) '&', i, fimQuery);
+            if (fimPar < 0) {
+                fimPar = fimQuery;
+            }
+            int igual = indiceDe((byte) '=', i, fimPar);
+            int fimNome = igual < 0 ? fimPar : igual;
+            if (fimNome - i == nome.length() && nomeIgual(i, nome)) {
+                if (igual < 0) {
+                    return "";
+                }
+                String valor = new String(buffer, igual + 1, fimPar - igual - 1, StandardCharsets.UTF_8);
+                if (valor.indexOf('%') < 0 && valor.indexOf('+') < 0) {
+                    return valor;
+                }
+                try {
+                    return URLDecoder.decode(valor, StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    // Escape %XX malformado: devolve o valor cru e deixa o handler validá-lo
+                    return valor;
+                }
+            }
+            i = fimPar + 1;
+        }
+        return null;
+    }
+
+    public int contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Body decodificado em UTF-8 (String criada na primeira chamada; "" se não houver)
+     */
+    public String body() {
+        if (bodyEmFluxo) {
+            throw new IllegalStateException("Body em fluxo: use entregarBody()");
+        }
+        if (bodyCache == null) {
+            bodyCache = contentLength == 0 ? "" : new String(buffer, inicioBody, contentLength, StandardCharsets.UTF_8);
+        }
+        return bodyCache;
+    }
+
+    /**
+     * Se a conexão deve continuar aberta, conforme o header Connection e a versão do protocolo
+     * (HTTP/1.1 é persistente por padrão, HTTP/1.0 não)
+     */
+    public boolean manterConexao() {
+        if (connection == CONNECTION_CLOSE) {
+            return false;
+        }
+        return connection == CONNECTION_KEEP_ALIVE || http11;
+    }
+
+    /**
+     * Codificação de resposta preferida pelo cliente, negociada nos bytes do Accept-Encoding
+     */
+    public CompressaoHttp.Codificacao codificacaoAceita() {
+        return inicioAcceptEncoding < 0
+            ? CompressaoHttp.Codificacao.IDENTIDADE
+            : CompressaoHttp.negociar(buffer, inicioAcceptEncoding, fimAcceptEncoding);
+    }
+
+    /**
+     * Valor do header Range (ex: "bytes=0-1023"), ou null se não estiver presente
+     */
+    public String range() {
+        return inicioRange < 0 ? null : new String(buffer, inicioRange, fimRange - inicioRange, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Valor do header If-Range (uma ETag ou uma data), ou null se não estiver presente
+     */
+    public String ifRange() {
+        return inicioIfRange < 0 ? null : new String(buffer, inicioIfRange, fimIfRange - inicioIfRange, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Se alguma ETag do If-None-Match corresponde à informada (ou se veio "*").
+     * Usa a comparação fraca da RFC 9110: o prefixo W/ é ignorado dos dois lados.
+     */
+    public boolean ifNoneMatchCorresponde(String etag) {
+        if (inicioIfNoneMatch < 0) {
+            return false;
+        }
+        int inicioEtag = etag.startsWith("W/") ? 2 : 0;
+        int tamanhoEtag = etag.length() - inicioEtag;
+        int i = inicioIfNoneMatch;
+        while (i < fimIfNoneMatch) {
+            while (i < fimIfNoneMatch && (buffer[i] == ' ' || buffer[i] == '\t' || buffer[i] == ',')) {
+                i++;
+            }
+            int fimItem = indiceDe((byte) ',', i, fimIfNoneMatch);
+            if (fimItem < 0) {
+                fimItem = fimIfNoneMatch;
+            }
+            int fimValor = fimItem;
+            while (fimValor > i && (buffer[fimValor - 1] == ' ' || buffer[fimValor - 1] == '\t')) {
+                fimValor--;
+            }
+            if (fimValor - i == 1 && buffer[i] == '*') {
+                return true;
+            }
+            int inicioValor = fimValor - i > 2 && buffer[i] == 'W' && buffer[i + 1] == '/' ? i + 2 : i;
+            if (fimValor - inicioValor == tamanhoEtag) {
+                boolean igual = true;
+                for (int j = 0; j < tamanhoEtag && igual; j++) {
+                    igual = buffer[inicioValor + j] == etag.charAt(inicioEtag + j);
+                }
+                if (igual) {
+                    return true;
+                }
+            }
+            i = fimItem + 1;
+        }
+        return false;
+    }
+
+    public int statusErro() {
+        return statusErro;
+    }
+
+    public String mensagemErro() {
+        return mensagemErro;
+    }
+
+    /**
+     * Texto bruto dos headers (request line inclusa), para log em nível DEBUG
+     */
+    public String cabecalhoTexto() {
+        return new String(buffer, inicio, Math.max(0, inicioBody - inicio), StandardCharsets.UTF_8).trim();
+    }
+
+    private boolean analisarCabecalho(int fimCabecalho) {
+        // --- Request line: METODO SP PATH SP VERSAO ---
+        int fimLinha = fimDaLinha(inicio, fimCabecalho + 1);
+        int espaco1 = indiceDe((byte) ' ', inicio, fimLinha);
+        int espaco2 = espaco1 < 0 ? -1 : indiceDe((byte) ' ', espaco1 + 1, fimLinha);
+        if (espaco1 <= inicio || espaco2 < 0 || espaco2 == espaco1 + 1 || espaco2 + 1 >= fimLinha) {
+            invalida(400, "Request line inválida");
+            return false;
+        }
+
+        inicioMetodo = inicio;
+        fimMetodo = espaco1;
+        metodo = reconhecerMetodo(inicioMetodo, fimMetodo);
+
+        inicioPath = espaco1 + 1;
+        int interrogacao = indiceDe((byte) '?', inicioPath, espaco2);
+        if (interrogacao >= 0) {
+            fimPath = interrogacao;
+            inicioQuery = interrogacao + 1;
+            fimQuery = espaco2;
+        } else {
+            fimPath = espaco2;
+            inicioQuery = -1;
+            fimQuery = -1;
+        }
+
+        int fimVersao = fimLinha;
+        http11 = fimVersao - (espaco2 + 1) == HTTP_1_1.length && regiaoIgual(espaco2 + 1, HTTP_1_1, false);
+        if (!http11 && !(fimVersao - (espaco2 + 1) == HTTP_1_0.length && regiaoIgual(espaco2 + 1, HTTP_1_0, false))) {
+            invalida(400, "Versão HTTP não suportada");
+            return false;
+        }
+
+        // --- Headers: NOME ':' OWS VALOR OWS ---
+        contentLength = 0;
+        boolean contentLengthPresente = false;
+        boolean transferEncodingPresente = false;
+        connection = CONNECTION_AUSENTE;
+        inicioAcceptEncoding = -1;
+        inicioIfNoneMatch = -1;
+        inicioRange = -1;
+        inicioIfRange = -1;
+        esperaContinue = false;
+        int linha = proximaLinha(fimLinha);
+        while (linha <= fimCabecalho) {
+            fimLinha = fimDaLinha(linha, fimCabecalho + 1);
+            int doisPontos = indiceDe((byte) ':', linha, fimLinha);
+            if (doisPontos > linha) {
+                int inicioValor = doisPontos + 1;
+                while (inicioValor < fimLinha && (buffer[inicioValor] == ' ' || buffer[inicioValor] == '\t')) {
+                    inicioValor++;
+                }
+                int fimValor = fimLinha;
+                while (fimValor > inicioValor && (buffer[fimValor - 1] == ' ' || buffer[fimValor - 1] == '\t')) {
+                    fimValor--;
+                }
+
+                int tamanhoNome = doisPontos - linha;
+                if (tamanhoNome == CONTENT_LENGTH.length && regiaoIgual(linha, CONTENT_LENGTH, true)) {
+                    int anterior = contentLength;
+                    if (!analisarContentLength(inicioValor, fimValor)) {
+                        return false;
+                    }
+                    // Dois Content-Length diferentes: cada intermediário poderia enquadrar o body de um jeito
+                    if (contentLengthPresente && contentLength != anterior) {
+                        invalida(400, "Content-Length repetido com valores diferentes");
+                        return false;
+                    }
+                    contentLengthPresente = true;
+                } else if (tamanhoNome == TRANSFER_ENCODING.length && regiaoIgual(linha, TRANSFER_ENCODING, true)) {
+                    transferEncodingPresente = true;
+                } else if (tamanhoNome == CONNECTION.length && regiaoIgual(linha, CONNECTION, true)) {
+                    if (fimValor - inicioValor == CLOSE.length && regiaoIgual(inicioValor, CLOSE, true)) {
+                        connection = CONNECTION_CLOSE;
+                    } else if (fimValor - inicioValor == KEEP_ALIVE.length && regiaoIgual(inicioValor, KEEP_ALIVE, true)) {
+                        connection = CONNECTION_KEEP_ALIVE;
+                    }
+                } else if (tamanhoNome == ACCEPT_ENCODING.length && regiaoIgual(linha, ACCEPT_ENCODING, true)) {
+                    inicioAcceptEncoding = inicioValor;
+                    fimAcceptEncoding = fimValor;
+                } else if (tamanhoNome == IF_NONE_MATCH.length && regiaoIgual(linha, IF_NONE_MATCH, true)) {
+                    inicioIfNoneMatch = inicioValor;
+                    fimIfNoneMatch = fimValor;
+                } else if (tamanhoNome == RANGE.length && regiaoIgual(linha, RANGE, true)) {
+                    inicioRange = inicioValor;
+                    fimRange = fimValor;
+                } else if (tamanhoNome == IF_RANGE.length && regiaoIgual(linha, IF_RANGE, true)) {
+                    inicioIfRange = inicioValor;
+                    fimIfRange = fimValor;
+                } else if (tamanhoNome == EXPECT.length && regiaoIgual(linha, EXPECT, true)) {
+                    esperaContinue = fimValor - inicioValor == CONTINUE_100.length && regiaoIgual(inicioValor, CONTINUE_100, true);
+                }
+            }
+            linha = proximaLinha(fimLinha);
+        }
+        // Body chunked (ou qualquer outra codificação de transferência) não é suportado. Ignorar o header
+        // faria os chunks serem lidos como a próxima requisição da conexão (request smuggling): a
+        // requisição é recusada e, como toda INVALIDA, a conexão é fechada depois da resposta.
+        if (transferEncodingPresente) {
+            if (contentLengthPresente) {
+                invalida(501, "Transfer-Encoding não suportado");
+            } else {
+                invalida(411, "Transfer-Encoding não suportado; envie o body com Content-Length");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean analisarContentLength(int inicioValor, int fimValor) {
+        if (inicioValor == fimValor) {
+            invalida(400, "Content-Length inválido");
+            return false;
+        }
+        long valor = 0;
+        for (int i = inicioValor; i < fimValor; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') {
+                invalida(400, "Content-Length inválido");
+                return false;
+            }
+            valor = valor * 10 + (b - '0');
+            // O limite de bodies acumulados é verificado depois, quando já se sabe se o body será em fluxo
+            if (valor > TAMANHO_MAXIMO_BODY_EM_FLUXO) {
+                invalida(413, "Body maior que " + TAMANHO_MAXIMO_BODY_EM_FLUXO + " bytes");
+                return false;
+            }
+        }
+        contentLength = (int) valor;
+        return true;
+    }
+
+    private Metodo reconhecerMetodo(int de, int ate) {
+        int tamanho = ate - de;
+        if (tamanho == 3 && letra(de, 'G') && letra(de + 1, 'E') && letra(de + 2, 'T')) {
+            return Metodo.GET;
+        }
+        if (tamanho == 4 && letra(de, 'P') && letra(de + 1, 'O') && letra(de + 2, 'S') && letra(de + 3, 'T')) {
+            return Metodo.POST;
+        }
+        if (tamanho == 3 && letra(de, 'P') && letra(de + 1, 'U') && letra(de + 2, 'T')) {
+            return Metodo.PUT;
+        }
+        if (tamanho == 6 && letra(de, 'D') && letra(de + 1, 'E') && letra(de + 2, 'L')
+                && letra(de + 3, 'E') && letra(de + 4, 'T') && letra(de + 5, 'E')) {
+            return Metodo.DELETE;
+        }
+        if (tamanho == 4 && letra(de, 'H') && letra(de + 1, 'E') && letra(de + 2, 'A') && letra(de + 3, 'D')) {
+            return Metodo.HEAD;
+        }
+        return Metodo.OUTRO;
+    }
+
+    /**
+     * Compara uma letra ASCII sem diferenciar maiúsculas de minúsculas (como o equalsIgnoreCase de antes)
+     */
+    private boolean letra(int posicao, char maiuscula) {
+        return (buffer[posicao] & 0xDF) == maiuscula;
+    }
+
+    private boolean regiaoIgual(int de, byte[] esperado, boolean ignorarCaixa) {
+        for (int i = 0; i < esperado.length; i++) {
+            byte b = buffer[de + i];
+            if (ignorarCaixa && b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != esperado[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean nomeIgual(int de, String nome) {
+        for (int i = 0; i < nome.length(); i++) {
+            if (buffer[de + i] != nome.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indiceDe(byte alvo, int de, int ate) {
+        for (int i = de; i < ate; i++) {
+            if (buffer[i] == alvo) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fim do conteúdo da linha que começa em "de" (posição do CR ou LF)
+     */
+    private int fimDaLinha(int de, int limite) {
+        int lf = indiceDe((byte) '\n', de, limite);
+        int fimLinha = lf < 0 ? limite : lf;
+        return fimLinha > de && buffer[fimLinha - 1] == '\r' ? fimLinha - 1 : fimLinha;
+    }
+
+    private int proximaLinha(int fimLinha) {
+        int i = fimLinha;
+        if (i < fim && buffer[i] == '\r') {
+            i++;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Bytes de body da requisição atual que ainda ocupam (ou vão ocupar) o buffer a partir de inicioBody
+     */
+    private int bodyPendente() {
+        return bodyEmFluxo ? bodyRestante : contentLength;
+    }
+
+    private Estado invalida(int status, String mensagem) {
+        statusErro = status;
+        mensagemErro = mensagem;
+        return Estado.INVALIDA;
+    }
+
+    /**
+     * Garante espaço livre no fim do buffer: primeiro reaproveita o espaço já consumido,
+     * depois dobra o array (até o limite de headers + body).
+     */
+    private void garantirEspaco() {
+        if (fim < buffer.length) {
+            return;
+        }
+        if (inicio > 0) {
+            int deslocamento = inicio;
+            System.arraycopy(buffer, inicio, buffer, 0, fim - inicio);
+            fim -= deslocamento;
+            varredura -= deslocamento;
+            inicio = 0;
+            if (cabecalhoAnalisado) {
+                inicioBody -= deslocamento;
+                fimCabecalhoBytes -= deslocamento;
+                inicioMetodo -= deslocamento;
+                fimMetodo -= deslocamento;
+                inicioPath -= deslocamento;
+                fimPath -= deslocamento;
+                if (inicioQuery >= 0) {
+                    inicioQuery -= deslocamento;
+                    fimQuery -= deslocamento;
+                }
+                if (inicioAcceptEncoding >= 0) {
+                    inicioAcceptEncoding -= deslocamento;
+                    fimAcceptEncoding -= deslocamento;
+                }
+                if (inicioIfNoneMatch >= 0) {
+                    inicioIfNoneMatch -= deslocamento;
+                    fimIfNoneMatch -= deslocamento;
+                }
+                if (inicioRange >= 0) {
+                    inicioRange -= deslocamento;
+                    fimRange -= deslocamento;
+                }
+                if (inicioIfRange >= 0) {
+                    inicioIfRange -= deslocamento;
+                    fimIfRange -= deslocamento;
+                }
+            }
+            return;
+        }
+        int novoTamanho = (int) Math.min((long) buffer.length * 2, (long) TAMANHO_MAXIMO_CABECALHO + TAMANHO_MAXIMO_BODY + 4);
+        if (novoTamanho <= buffer.length) {
+            // Não deveria acontecer: analisar() rejeita headers/body acima do limite antes disso
+            throw new IllegalStateException("Buffer da requisição no tamanho máximo");
+        }
+        byte[] maior = new byte[novoTamanho];
+        System.arraycopy(buffer, 0, maior, 0, fim);
+        buffer = maior;
+        visao = ByteBuffer.wrap(buffer);
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+}
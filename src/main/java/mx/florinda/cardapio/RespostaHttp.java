@@ -0,0 +1,273 @@
+package mx.florinda.cardapio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Resposta HTTP montada pelos handlers do ServidorItensCardapioComSocket
+ *
+ * Os handlers decidem apenas o status e o body. Quem escreve a resposta é o loop
+ * da conexão, que sabe se a conexão será mantida aberta (keep-alive) ou fechada.
+ *
+ * O body já é guardado em bytes UTF-8, então o Content-Length anunciado é exatamente
+ * a quantidade de bytes escrita - requisito para enviar várias respostas seguidas
+ * na mesma conexão sem que o cliente se perca entre elas.
+ *
+ * Bodies grandes demais para montar em memória são gerados em blocos (CorpoEmBlocos)
+ * e enviados com Transfer-Encoding: chunked; nesse caso body() é null.
+ *
+ * Arquivos publicados em disco (ver PublicacaoCatalogo) viram uma RegiaoArquivo: o body não
+ * passa pelo heap, é copiado do page cache direto para o socket com FileChannel.transferTo
+ * (sendfile no Linux). Respostas parciais (206) e 416 levam o header Content-Range.
+ *
+ * Respostas comprimidas (ver CompressaoHttp) carregam a codificação usada, que vira o
+ * header Content-Encoding, e marcam que o body varia conforme o Accept-Encoding (Vary).
+ *
+ * A ETag (valor completo do header, com aspas) identifica a versão dos dados; cada
+ * codificação recebe uma ETag própria, já que os bytes enviados são diferentes.
+ *
+ * O Content-Type é JSON, exceto nas respostas criadas com texto() (ex: GET /metrics).
+ *
+ * Respostas de sobrecarga (503) e de limite de taxa (429) informam em Retry-After
+ * quantos segundos o cliente deve esperar antes de tentar de novo.
+ */
+public final class RespostaHttp {
+
+    /**
+     * Body produzido aos poucos, durante o envio da resposta
+     */
+    public interface CorpoEmBlocos {
+
+        /**
+         * Gera o próximo bloco do body, ou null quando não há mais nada a enviar.
+         * O ByteBuffer pode ser reutilizado pela chamada seguinte.
+         */
+        ByteBuffer proximoBloco();
+    }
+
+    /**
+     * Trecho de um arquivo enviado como body. O arquivo só é aberto no envio (abrir()), então uma
+     * resposta descartada (ex: trocada por 304) não deixa um FileChannel aberto.
+     *
+     * @param tamanhoArquivo tamanho do arquivo quando os headers foram decididos; se o arquivo
+     *                       mudou de tamanho até o envio, abrir() falha em vez de enviar outro conteúdo
+     */
+    public record RegiaoArquivo(Path arquivo, long tamanhoArquivo, long inicio, long tamanho) {
+
+        public FileChannel abrir() throws IOException {
+            FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ);
+            if (canal.size() != tamanhoArquivo) {
+                canal.close();
+                throw new IOException("Arquivo " + arquivo + " alterado entre a requisição e o envio");
+            }
+            return canal;
+        }
+    }
+
+    private static final String TIPO_JSON = "application/json; charset=utf-8";
+
+    private final int statusCode;
+    private final String statusMessage;
+    private final byte[] body;
+    private final CorpoEmBlocos corpoEmBlocos;
+    private final RegiaoArquivo regiaoArquivo;
+    private final CompressaoHttp.Codificacao codificacao;
+    private final boolean variaPorCodificacao;
+    private final String etag;
+    private final String tipoConteudo;
+    private final int retryAfterSegundos;
+    private final String contentRange;
+
+    public RespostaHttp(int statusCode, String statusMessage, byte[] body) {
+        this(statusCode, statusMessage, body, null, null, CompressaoHttp.Codificacao.IDENTIDADE, false, null, TIPO_JSON, 0, null);
+    }
+
+    private RespostaHttp(int statusCode, String statusMessage, byte[] body, CorpoEmBlocos corpoEmBlocos,
+                         RegiaoArquivo regiaoArquivo, CompressaoHttp.Codificacao codificacao, boolean variaPorCodificacao,
+                         String etag, String tipoConteudo, int retryAfterSegundos, String contentRange) {
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+        this.body = body;
+        this.corpoEmBlocos = corpoEmBlocos;
+        this.regiaoArquivo = regiaoArquivo;
+        this.codificacao = codificacao;
+        this.variaPorCodificacao = variaPorCodificacao;
+        this.etag = etag;
+        this.tipoConteudo = tipoConteudo;
+        this.retryAfterSegundos = retryAfterSegundos;
+        this.contentRange = contentRange;
+    }
+
+    /**
+     * Cria uma resposta cujo body é gerado em blocos durante o envio (Transfer-Encoding: chunked)
+     */
+    public static RespostaHttp emBlocos(int statusCode, String statusMessage, CorpoEmBlocos corpo) {
+        return new RespostaHttp(statusCode, statusMessage, null, corpo, null, CompressaoHttp.Codificacao.IDENTIDADE, false, null,
+            TIPO_JSON, 0, null);
+    }
+
+    /**
+     * Cria uma resposta cujo body é um trecho de arquivo, já na codificação informada
+     * (ex: o .gz pré-comprimido), enviado sem passar pelo heap
+     */
+    public static RespostaHttp arquivo(int statusCode, String statusMessage, RegiaoArquivo regiao,
+                                       CompressaoHttp.Codificacao codificacao, boolean variaPorCodificacao) {
+        return new RespostaHttp(statusCode, statusMessage, null, null, regiao, codificacao, variaPorCodificacao, null,
+            TIPO_JSON, 0, null);
+    }
+
+    /**
+     * Mesma resposta com o body já comprimido na codificação informada
+     */
+    public RespostaHttp codificada(CompressaoHttp.Codificacao codificacao, byte[] bodyCodificado) {
+        return new RespostaHttp(statusCode, statusMessage, bodyCodificado, null, null, codificacao, true,
+            etagDaCodificacao(codificacao), tipoConteudo, retryAfterSegundos, contentRange);
+    }
+
+    /**
+     * Mesma resposta com o body em blocos comprimido na codificação informada
+     */
+    public RespostaHttp codificadaEmBlocos(CompressaoHttp.Codificacao codificacao, CorpoEmBlocos corpoCodificado) {
+        return new RespostaHttp(statusCode, statusMessage, null, corpoCodificado, null, codificacao, true,
+            etagDaCodificacao(codificacao), tipoConteudo, retryAfterSegundos, contentRange);
+    }
+
+    /**
+     * Mesma resposta sem compressão, mas anunciando (Vary) que outra codificação poderia ser enviada
+     */
+    public RespostaHttp variandoPorCodificacao() {
+        return new RespostaHttp(statusCode, statusMessage, body, corpoEmBlocos, regiaoArquivo, codificacao, true, etag,
+            tipoConteudo, retryAfterSegundos, contentRange);
+    }
+
+    /**
+     * Mesma resposta com a ETag informada (valor completo: "..." ou W/"...")
+     */
+    public RespostaHttp comEtag(String etag) {
+        return new RespostaHttp(statusCode, statusMessage, body, corpoEmBlocos, regiaoArquivo, codificacao, variaPorCodificacao,
+            etag, tipoConteudo, retryAfterSegundos, contentRange);
+    }
+
+    /**
+     * Mesma resposta com o header Retry-After (segundos até uma nova tentativa)
+     */
+    public RespostaHttp comRetryAfter(int segundos) {
+        return new RespostaHttp(statusCode, statusMessage, body, corpoEmBlocos, regiaoArquivo, codificacao, variaPorCodificacao,
+            etag, tipoConteudo, segundos, contentRange);
+    }
+
+    /**
+     * Mesma resposta com o header Content-Range: "bytes 0-99/1000" no 206; no 416, um asterisco no
+     * lugar do intervalo, seguido do tamanho total
+     */
+    public RespostaHttp comContentRange(String valor) {
+        return new RespostaHttp(statusCode, statusMessage, body, corpoEmBlocos, regiaoArquivo, codificacao, variaPorCodificacao,
+            etag, tipoConteudo, retryAfterSegundos, valor);
+    }
+
+    /**
+     * 304 Not Modified para esta resposta: mesma ETag e Vary, sem body.
+     * Um body em blocos é descartado sem ser gerado, e um arquivo nem chega a ser aberto.
+     */
+    public RespostaHttp naoModificada() {
+        return new RespostaHttp(304, "Not Modified", new byte[0], null, null, CompressaoHttp.Codificacao.IDENTIDADE,
+            variaPorCodificacao, etag, tipoConteudo, 0, null);
+    }
+
+    /**
+     * ETag da variante comprimida: a mesma da versão, com a codificação como sufixo ("12" vira "12-gzip")
+     */
+    private String etagDaCodificacao(CompressaoHttp.Codificacao novaCodificacao) {
+        if (etag == null || novaCodificacao == CompressaoHttp.Codificacao.IDENTIDADE) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + "-" + novaCodificacao.valorCabecalho() + "\"";
+    }
+
+    /**
+     * Cria uma resposta com body JSON codificado em UTF-8
+     */
+    public static RespostaHttp json(int statusCode, String statusMessage, String json) {
+        return new RespostaHttp(statusCode, statusMessage, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cria uma resposta com body de texto em UTF-8 e o Content-Type informado
+     */
+    public static RespostaHttp texto(int statusCode, String statusMessage, String tipoConteudo, String texto) {
+        return new RespostaHttp(statusCode, statusMessage, texto.getBytes(StandardCharsets.UTF_8), null, null,
+            CompressaoHttp.Codificacao.IDENTIDADE, false, null, tipoConteudo, 0, null);
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public String statusMessage() {
+        return statusMessage;
+    }
+
+    public byte[] body() {
+        return body;
+    }
+
+    public boolean emBlocos() {
+        return corpoEmBlocos != null;
+    }
+
+    public CorpoEmBlocos corpoEmBlocos() {
+        return corpoEmBlocos;
+    }
+
+    public boolean emArquivo() {
+        return regiaoArquivo != null;
+    }
+
+    public RegiaoArquivo regiaoArquivo() {
+        return regiaoArquivo;
+    }
+
+    /**
+     * Bytes do body enviados com Content-Length (body em memória ou trecho de arquivo); -1 para body em blocos
+     */
+    public long tamanhoBody() {
+        if (regiaoArquivo != null) {
+            return regiaoArquivo.tamanho();
+        }
+        return body != null ? body.length : -1;
+    }
+
+    public CompressaoHttp.Codificacao codificacao() {
+        return codificacao;
+    }
+
+    public boolean variaPorCodificacao() {
+        return variaPorCodificacao;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    public String tipoConteudo() {
+        return tipoConteudo;
+    }
+
+    /**
+     * Segundos do header Retry-After, ou 0 quando a resposta não tem o header
+     */
+    public int retryAfterSegundos() {
+        return retryAfterSegundos;
+    }
+
+    /**
+     * Valor do header Content-Range, ou null quando a resposta não tem o header
+     */
+    public String contentRange() {
+        return contentRange;
+    }
+}
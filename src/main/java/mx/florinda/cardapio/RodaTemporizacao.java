@@ -0,0 +1,168 @@
+package mx.florinda.cardapio;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Roda de temporização (hashed timing wheel) para os prazos das conexões
+ *
+ * Uma única thread avança a roda a cada tick; cada posição (balde) guarda uma lista duplamente
+ * encadeada das tarefas que vencem nela. Uma tarefa com prazo além de uma volta completa fica
+ * no balde com o número de voltas que ainda faltam. Assim agendar e cancelar custam O(1) e cada
+ * tick só percorre um balde, independente de quantas conexões estão abertas: milhares de conexões
+ * com prazo não custam uma varredura por evento nem uma thread parada em cada uma.
+ *
+ * Agendar e cancelar podem ser chamados de qualquer thread: as tarefas novas e as canceladas
+ * passam por filas sem lock e só a thread da roda mexe nos baldes. A precisão é de um tick
+ * (a tarefa roda entre o prazo e o prazo + 1 tick), suficiente para timeouts de segundos.
+ *
+ * As ações rodam na thread da roda e devem ser rápidas (ex: fechar um socket, enfileirar para o reator).
+ */
+public final class RodaTemporizacao {
+
+    private static final int PENDENTE = 0;
+    private static final int CANCELADA = 1;
+    private static final int EXECUTADA = 2;
+
+    // Limite de tarefas novas distribuídas por tick, para um pico de agendamentos não atrasar o tick
+    private static final int NOVAS_POR_TICK = 100_000;
+
+    /**
+     * Tarefa agendada; cancelar() evita a execução se ela ainda não rodou
+     */
+    public final class Tarefa {
+        private static final AtomicIntegerFieldUpdater<Tarefa> ESTADO =
+            AtomicIntegerFieldUpdater.newUpdater(Tarefa.class, "estado");
+
+        private final Runnable acao;
+        private final long prazoNanos;
+        private volatile int estado = PENDENTE;
+        // Campos abaixo só são usados pela thread da roda
+        private long voltas;
+        private int balde = -1;
+        private Tarefa anterior;
+        private Tarefa proxima;
+
+        private Tarefa(Runnable acao, long prazoNanos) {
+            this.acao = acao;
+            this.prazoNanos = prazoNanos;
+        }
+
+        public void cancelar() {
+            if (ESTADO.compareAndSet(this, PENDENTE, CANCELADA)) {
+                canceladas.add(this);
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final Tarefa[] baldes;
+    private final int mascara;
+    private final long inicio = System.nanoTime();
+    private final Queue<Tarefa> novas = new ConcurrentLinkedQueue<>();
+    private final Queue<Tarefa> canceladas = new ConcurrentLinkedQueue<>();
+    // Ticks já processados; só a thread da roda altera
+    private long tick;
+
+    /**
+     * @param tickMs  duração de um tick (precisão dos prazos)
+     * @param baldes  posições da roda, arredondado para potência de 2 (uma volta = tickMs * baldes)
+     */
+    public RodaTemporizacao(String nome, long tickMs, int baldes) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        int tamanho = Integer.highestOneBit(Math.max(2, baldes - 1) << 1);
+        this.baldes = new Tarefa[tamanho];
+        this.mascara = tamanho - 1;
+        Thread thread = new Thread(this::girar, nome);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Agenda a ação para daqui a atrasoMs milissegundos
+     */
+    public Tarefa agendar(long atrasoMs, Runnable acao) {
+        Tarefa tarefa = new Tarefa(acao, System.nanoTime() - inicio + TimeUnit.MILLISECONDS.toNanos(atrasoMs));
+        novas.add(tarefa);
+        return tarefa;
+    }
+
+    private void girar() {
+        while (true) {
+            long proximoTick = (tick + 1) * tickNanos;
+            long espera;
+            while ((espera = proximoTick - (System.nanoTime() - inicio)) > 0) {
+                LockSupport.parkNanos(espera);
+            }
+            removerCanceladas();
+            distribuirNovas();
+            expirar(baldes[(int) (tick & mascara)]);
+            tick++;
+        }
+    }
+
+    private void distribuirNovas() {
+        Tarefa tarefa;
+        for (int i = 0; i < NOVAS_POR_TICK && (tarefa = novas.poll()) != null; i++) {
+            if (tarefa.estado != PENDENTE) {
+                continue;
+            }
+            // Tick em que a tarefa vence; prazos já passados vão para o balde atual
+            long alvo = Math.max(tarefa.prazoNanos / tickNanos, tick);
+            tarefa.voltas = (alvo - tick) / baldes.length;
+            int indice = (int) (alvo & mascara);
+            tarefa.balde = indice;
+            tarefa.proxima = baldes[indice];
+            if (tarefa.proxima != null) {
+                tarefa.proxima.anterior = tarefa;
+            }
+            baldes[indice] = tarefa;
+        }
+    }
+
+    private void removerCanceladas() {
+        Tarefa tarefa;
+        while ((tarefa = canceladas.poll()) != null) {
+            // Tarefas canceladas antes de chegarem a um balde são descartadas em distribuirNovas()
+            if (tarefa.balde >= 0) {
+                remover(tarefa);
+            }
+        }
+    }
+
+    private void expirar(Tarefa tarefa) {
+        while (tarefa != null) {
+            Tarefa proxima = tarefa.proxima;
+            if (tarefa.voltas > 0) {
+                tarefa.voltas--;
+            } else {
+                remover(tarefa);
+                if (Tarefa.ESTADO.compareAndSet(tarefa, PENDENTE, EXECUTADA)) {
+                    try {
+                        tarefa.acao.run();
+                    } catch (RuntimeException e) {
+                        LogServidor.error("Erro em tarefa da roda de temporização: " + e.getMessage());
+                    }
+                }
+            }
+            tarefa = proxima;
+        }
+    }
+
+    private void remover(Tarefa tarefa) {
+        if (tarefa.anterior != null) {
+            tarefa.anterior.proxima = tarefa.proxima;
+        } else {
+            baldes[tarefa.balde] = tarefa.proxima;
+        }
+        if (tarefa.proxima != null) {
+            tarefa.proxima.anterior = tarefa.anterior;
+        }
+        tarefa.anterior = null;
+        tarefa.proxima = null;
+        tarefa.balde = -1;
+    }
+}
@@ -7,11 +7,56 @@ import com.sun.net.httpserver.HttpHandler;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Servidor com o HttpServer do JDK que publica o cardapio.json em GET /itens-cardapio
+ *
+ * O arquivo é lido uma vez e mantido em memória já codificado (bytes originais e variantes
+ * gzip/deflate). Um WatchService no diretório do arquivo recarrega o conteúdo quando ele é
+ * alterado, criado ou substituído (ex: mv de um arquivo novo por cima): a nova versão é montada
+ * inteira e publicada numa única escrita volátil, então cada GET vê a versão antiga ou a nova,
+ * nunca uma mistura, e não faz I/O de disco. Se a releitura falhar (ex: arquivo removido),
+ * a versão anterior continua sendo servida.
+ *
+ * Configuração (System properties):
+ * - cardapio.httpserver.executor: "pool" (padrão, threads fixas) ou "virtual" (uma virtual thread por requisição)
+ * - cardapio.httpserver.threads: threads do pool (padrão: número de processadores)
+ * - cardapio.httpserver.backlog: conexões aguardando accept no SO (padrão 1024)
+ */
 public class ServidorItensCardapio {
 
+    private static final Path ARQUIVO_CARDAPIO = Paths.get("cardapio.json");
+    private static final String EXECUTOR = System.getProperty("cardapio.httpserver.executor", "pool");
+    private static final int THREADS = Integer.getInteger("cardapio.httpserver.threads",
+        Runtime.getRuntime().availableProcessors());
+    private static final int BACKLOG = Integer.getInteger("cardapio.httpserver.backlog", 1024);
+    // Eventos seguidos de uma mesma gravação são agrupados numa única releitura
+    private static final long AGRUPAMENTO_EVENTOS_MS = 50;
+
+    private final Path arquivo;
+    private volatile CompressaoHttp.Variantes conteudo;
+
+    public ServidorItensCardapio() throws IOException {
+        this(ARQUIVO_CARDAPIO);
+    }
+
+    public ServidorItensCardapio(Path arquivo) throws IOException {
+        this.arquivo = arquivo.toAbsolutePath();
+        this.conteudo = carregar();
+    }
+
     public static void main(String[] args) {
         try {
             ServidorItensCardapio servidor = new ServidorItensCardapio();
@@ -24,20 +69,39 @@ public class ServidorItensCardapio {
 
     public void iniciarServidor() throws IOException {
         // Criar o servidor na porta 8000
-        HttpServer httpServer = HttpServer.create(new InetSocketAddress(8000), 0);
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(8000), BACKLOG);
+
+        // Sem executor o HttpServer atende tudo na thread do dispatcher, uma requisição por vez
+        ExecutorService executor = "virtual".equalsIgnoreCase(EXECUTOR)
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(THREADS);
+        httpServer.setExecutor(executor);
 
         // Definir o contexto /itens-cardapio
         httpServer.createContext("/itens-cardapio", new HttpHandler() {
             @Override
             public void handle(HttpExchange exchange) throws IOException {
-                // Ler o conteúdo do arquivo JSON
-                String conteudoJSON = Files.readString(Paths.get("cardapio.json"));
+                // Conteúdo já em memória (recarregado pelo observador quando o arquivo muda)
+                CompressaoHttp.Variantes variantes = conteudo;
+                CompressaoHttp.Codificacao codificacao =
+                    CompressaoHttp.negociar(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+                byte[] resposta = variantes.corpo(codificacao);
+                if (resposta == null) {
+                    // Arquivo pequeno demais para ter variante comprimida
+                    codificacao = CompressaoHttp.Codificacao.IDENTIDADE;
+                    resposta = variantes.identidade();
+                }
 
                 // Configurar headers da resposta
                 exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                if (variantes.gzip() != null) {
+                    exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                }
+                if (codificacao != CompressaoHttp.Codificacao.IDENTIDADE) {
+                    exchange.getResponseHeaders().set("Content-Encoding", codificacao.valorCabecalho());
+                }
 
                 // Enviar resposta
-                byte[] resposta = conteudoJSON.getBytes();
                 exchange.sendResponseHeaders(200, resposta.length);
 
                 OutputStream os = exchange.getResponseBody();
@@ -46,11 +110,86 @@ public class ServidorItensCardapio {
             }
         });
 
+        WatchService observador = observarArquivo();
+
         // Iniciar o servidor
         httpServer.start();
 
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            httpServer.stop(1);
+            executor.shutdownNow();
+            try {
+                observador.close();
+            } catch (IOException ignore) {
+            }
+        }));
+
         // Imprimir mensagem no console
         System.out.println("Servidor rodando em http://localhost:8000/itens-cardapio");
+        System.out.println("Executor: " + ("virtual".equalsIgnoreCase(EXECUTOR) ? "virtual threads" : THREADS + " threads")
+            + " | Backlog: " + BACKLOG + " | Observando " + arquivo);
+    }
+
+    /**
+     * Lê o arquivo e monta as variantes comprimidas
+     */
+    private CompressaoHttp.Variantes carregar() throws IOException {
+        return CompressaoHttp.Variantes.de(Files.readAllBytes(arquivo));
+    }
+
+    /**
+     * Registra o diretório do arquivo no WatchService e inicia a thread que recarrega o conteúdo.
+     * O diretório (e não o arquivo) é observado para também pegar substituições por rename.
+     */
+    private WatchService observarArquivo() throws IOException {
+        WatchService observador = FileSystems.getDefault().newWatchService();
+        arquivo.getParent().register(observador, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> observar(observador), "observador-cardapio");
+        thread.setDaemon(true);
+        thread.start();
+        return observador;
+    }
+
+    private void observar(WatchService observador) {
+        try {
+            while (true) {
+                WatchKey chave = observador.take();
+                boolean alterado = eventosDoArquivo(chave);
+                // Uma gravação costuma gerar vários eventos; espera eles pararem antes de reler
+                while ((chave = observador.poll(AGRUPAMENTO_EVENTOS_MS, TimeUnit.MILLISECONDS)) != null) {
+                    alterado |= eventosDoArquivo(chave);
+                }
+                if (alterado) {
+                    recarregar();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Servidor encerrado
+        }
+    }
+
+    /**
+     * Consome os eventos da chave e indica se algum deles é do arquivo observado (ou se houve perda de eventos)
+     */
+    private boolean eventosDoArquivo(WatchKey chave) {
+        boolean doArquivo = false;
+        for (WatchEvent<?> evento : chave.pollEvents()) {
+            doArquivo |= evento.kind() == StandardWatchEventKinds.OVERFLOW
+                || arquivo.getFileName().equals(evento.context());
+        }
+        chave.reset();
+        return doArquivo;
     }
-}
 
+    private void recarregar() {
+        try {
+            CompressaoHttp.Variantes novo = carregar();
+            conteudo = novo;
+            System.out.println("cardapio.json recarregado: " + novo.identidade().length + " bytes");
+        } catch (IOException e) {
+            System.err.println("Não foi possível recarregar " + arquivo + ", mantendo a versão anterior: " + e.getMessage());
+        }
+    }
+}
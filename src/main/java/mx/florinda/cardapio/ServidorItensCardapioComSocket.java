@@ -1,28 +1,39 @@
 package mx.florinda.cardapio;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintStream;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
 
 /**
  * Servidor HTTP manual usando ServerSocket
@@ -40,35 +51,192 @@ import java.util.concurrent.atomic.AtomicLong;
 public class ServidorItensCardapioComSocket {
 
     private static final int PORTA = 8000;
+    // Modo de execução: "pool" (padrão, uma thread do pool por conexão), "virtual"
+    // (uma virtual thread por conexão, Java 21+) ou "nio" (Selector + workers)
+    private static final String MODO = System.getProperty("cardapio.servidor.modo", "pool");
+    // Máximo de conexões simultâneas no modo "virtual" (controle de admissão via semáforo)
+    private static final int VIRTUAL_MAX_CONEXOES = Integer.getInteger("cardapio.virtual.maxConexoes", 10_000);
+    // Limites das conexões persistentes (keep-alive), compartilhados com o modo NIO
+    static final int KEEP_ALIVE_MAX_REQUISICOES = Integer.getInteger("cardapio.keepAlive.maxRequisicoes", 100);
+    static final int KEEP_ALIVE_TIMEOUT_MS = Integer.getInteger("cardapio.keepAlive.timeoutMs", 5000);
+    // Conexões aceitas aguardando um worker do pool; com a fila cheia, a conexão recebe 503 direto do accept
+    private static final int FILA_ADMISSAO = Integer.getInteger("cardapio.admissao.fila", 1000);
+    // Descarte de leituras em massa quando a espera na fila passa do alvo (compartilhado com o modo NIO)
+    static final ControleAdmissao ADMISSAO = new ControleAdmissao();
+    // Token bucket por IP do cliente e rota, verificado antes do handler (compartilhado com o modo NIO)
+    static final LimiteTaxaCliente LIMITE_TAXA = new LimiteTaxaCliente();
+    // Prazos de leitura e keep-alive de todas as conexões (ticks de 100 ms, volta de ~51 s)
+    static final RodaTemporizacao RODA_PRAZOS = new RodaTemporizacao("prazos-conexao", 100, 512);
+    // Indica conexões aguardando uma thread: encurta os prazos de ociosas e lentas (ver PrazoConexao)
+    private static volatile BooleanSupplier sobPressao;
+    // Paginação por cursor em GET /itens-cardapio?after=<id>&limit=<n>
+    private static final int PAGINA_LIMITE_PADRAO = Integer.getInteger("cardapio.paginacao.limitePadrao", 50);
+    private static final int PAGINA_LIMITE_MAXIMO = Integer.getInteger("cardapio.paginacao.limiteMaximo", 500);
+    private static final int BUSCA_LIMITE_PADRAO = Integer.getInteger("cardapio.busca.limitePadrao", 20);
+    // Diretório dos dados persistentes (log de escrita); cardapio.wal.ativo=false mantém tudo só em memória
+    private static final Path DIRETORIO_DADOS = Path.of(System.getProperty("cardapio.dados.diretorio", "dados"));
+    private static final boolean WAL_ATIVO = Boolean.parseBoolean(System.getProperty("cardapio.wal.ativo", "true"));
+    // Sem o log a versão do catálogo recomeça a cada inicialização: as ETags levam a época (instante da inicialização)
+    private static final String PREFIXO_ETAG = WAL_ATIVO ? "" : Long.toString(System.currentTimeMillis(), 36) + "-";
+    // Snapshots periódicos do catálogo (dependem do log de escrita), carregados na inicialização
+    private static final boolean SNAPSHOT_ATIVO = Boolean.parseBoolean(System.getProperty("cardapio.snapshot.ativo", "true"));
     private static final Database database = new Database();
-    private static final Map<Long, ItemCardapio> itensCardapio = inicializarCardapio();
     private static final AtomicLong proximoId = new AtomicLong(6L); // Próximo ID disponível
+    private static LogEscritaCatalogo logEscrita; // aberto por inicializarCardapio() (null se desativado)
+    private static GravadorSnapshotCatalogo gravadorSnapshot; // idem
+    private static final CatalogoCardapio itensCardapio = inicializarCardapio();
+    // JSON de GET /itens-cardapio pré-serializado, reconstruído a cada nova versão do catálogo
+    private static final CacheRespostaCardapio cacheListagem = CacheRespostaCardapio.criar(itensCardapio);
+    // Categoria -> IDs, para GET /itens-cardapio?categoria= (com o JSON de cada categoria em cache)
+    private static final IndiceCategoriaCatalogo indiceCategoria = IndiceCategoriaCatalogo.criar(itensCardapio);
+    // Índice invertido de nome e descrição, para GET /itens-cardapio/busca?q=
+    private static final IndiceBuscaCatalogo indiceBusca = IndiceBuscaCatalogo.criar(itensCardapio);
+    // Índices ordenados por preço, preço com desconto e desconto, para faixas de preço e promoções
+    private static final IndicePrecoCatalogo indicePreco = IndicePrecoCatalogo.criar(itensCardapio);
+    // cardapio.json (e .gz) gravados pelo GeradorItensCardapioJSON, para GET /cardapio.json
+    private static final PublicacaoCatalogo publicacao = new PublicacaoCatalogo(PublicacaoCatalogo.ARQUIVO);
 
     /**
-     * Inicializa o mapa de cardápio com os itens da Database
+     * Inicializa o catálogo: carrega o snapshot mais recente e reproduz o log de escrita
+     * a partir dele, se houver, ou usa os itens da Database
      */
-    private static Map<Long, ItemCardapio> inicializarCardapio() {
-        mx.florinda.cardapio.ArrayList arrayListHelper = new mx.florinda.cardapio.ArrayList();
-        Map<Long, ItemCardapio> mapa = arrayListHelper.mapaDeItensCardapio();
+    private static CatalogoCardapio inicializarCardapio() {
+        CatalogoCardapio catalogo = new CatalogoCardapio();
+
+        boolean logVazio = true;
+        if (WAL_ATIVO) {
+            Path diretorioSnapshots = DIRETORIO_DADOS.resolve("snapshots");
+            ArquivoSnapshotCatalogo snapshot = null;
+            if (SNAPSHOT_ATIVO) {
+                long inicio = System.nanoTime();
+                try {
+                    snapshot = ArquivoSnapshotCatalogo.abrirMaisRecente(diretorioSnapshots);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Não foi possível ler os snapshots em " + diretorioSnapshots + ": " + e.getMessage(), e);
+                }
+                if (snapshot != null) {
+                    catalogo.carregarSnapshot(snapshot);
+                    proximoId.set(Math.max(proximoId.get(), snapshot.maiorId() + 1));
+                    LogServidor.info("Snapshot " + snapshot.arquivo().getFileName() + " mapeado em "
+                        + (System.nanoTime() - inicio) / 1_000_000 + " ms (" + snapshot.quantidade() + " itens, LSN " + snapshot.lsn() + ")");
+                }
+            }
+            long lsnSnapshot = snapshot == null ? 0 : snapshot.lsn();
+
+            Path diretorioLog = DIRETORIO_DADOS.resolve("wal");
+            try {
+                logEscrita = LogEscritaCatalogo.abrir(diretorioLog, catalogo, lsnSnapshot);
+            } catch (IOException e) {
+                throw new IllegalStateException("Não foi possível abrir o log de escrita em " + diretorioLog + ": " + e.getMessage(), e);
+            }
+            LogEscritaCatalogo.Reproducao reproducao = logEscrita.reproducao();
+            logVazio = snapshot == null && reproducao.registros() == 0;
+            // IDs de itens já removidos também não são reaproveitados
+            proximoId.set(Math.max(proximoId.get(), reproducao.maiorId() + 1));
+            LogServidor.info("Log de escrita: " + reproducao.registros() + " registros de " + reproducao.segmentos()
+                + " segmento(s) reproduzidos em " + reproducao.millis() + " ms (" + catalogo.tamanho() + " itens)");
+            // A partir daqui as alterações passam a ser registradas
+            logEscrita.ouvirCatalogo(catalogo);
+
+            if (SNAPSHOT_ATIVO) {
+                gravadorSnapshot = new GravadorSnapshotCatalogo(diretorioSnapshots, catalogo, logEscrita,
+                    () -> proximoId.get() - 1, lsnSnapshot);
+                gravadorSnapshot.iniciar();
+            }
+        }
 
-        // Popula o mapa com os itens iniciais da database
-        List<ItemCardapio> itensIniciais = database.listaDeItensCardapio();
-        for (ItemCardapio item : itensIniciais) {
-            mapa.put(item.id(), item);
+        if (logVazio) {
+            // Primeira execução: popula o catálogo com os itens iniciais da database (já registrados no log)
+            List<ItemCardapio> itensIniciais = database.listaDeItensCardapio();
+            for (ItemCardapio item : itensIniciais) {
+                catalogo.adicionar(item);
+            }
+        }
+
+        return catalogo;
+    }
+
+    /**
+     * Espera o log de escrita gravar no disco as alterações já feitas no catálogo.
+     * Retorna null quando a escrita pode ser confirmada ao cliente, ou a resposta de erro.
+     */
+    private static RespostaHttp aguardarDurabilidade() {
+        if (logEscrita == null) {
+            return null;
+        }
+        try {
+            logEscrita.aguardarDurabilidade();
+            return null;
+        } catch (IOException e) {
+            LogServidor.error("Escrita não confirmada: " + e.getMessage());
+            return RespostaHttp.json(500, "Internal Server Error", "{\"erro\": \"Falha ao gravar no log de escrita\"}");
         }
+    }
+
+    /**
+     * Com o log de escrita inutilizável (falha de I/O, ou já fechado no shutdown) o servidor fica
+     * somente leitura: as escritas são recusadas antes de alterar o catálogo, que continua igual
+     * ao que está no disco. Sem isso cada escrita mudaria a memória e só então receberia o 500.
+     */
+    static boolean somenteLeitura() {
+        return logEscrita != null && logEscrita.falhou();
+    }
 
-        return mapa;
+    static RespostaHttp respostaSomenteLeitura() {
+        return RespostaHttp.json(503, "Service Unavailable", "{\"erro\": \"Servidor somente leitura: falha no log de escrita\"}");
+    }
+
+    /**
+     * Grava no disco o que estiver pendente no log de escrita (shutdown)
+     */
+    static void fecharLogEscrita() {
+        if (gravadorSnapshot != null) {
+            gravadorSnapshot.close();
+        }
+        if (logEscrita != null) {
+            logEscrita.close();
+        }
     }
 
     public static void main(String[] args) {
-        System.out.println("=== Servidor HTTP com ServerSocket ===");
+        if ("nio".equalsIgnoreCase(MODO)) {
+            System.out.println("=== Servidor HTTP com ServerSocketChannel/Selector (NIO) ===");
+            System.out.println("Iniciando servidor na porta " + PORTA + "...\n");
+            try {
+                new ServidorNioItensCardapio(PORTA).iniciar();
+            } catch (IOException e) {
+                System.err.println("Não foi possível iniciar o ServerSocketChannel na porta " + PORTA + ": " + e.getMessage());
+            }
+            return;
+        }
+
+        boolean virtual = "virtual".equalsIgnoreCase(MODO);
+        System.out.println("=== Servidor HTTP com ServerSocket" + (virtual ? " (virtual threads)" : "") + " ===");
         System.out.println("Iniciando servidor na porta " + PORTA + "...\n");
 
-        // limitar o numero de threads para 50
-        ExecutorService executorService = Executors.newFixedThreadPool(50);
+        // Modo "virtual": uma virtual thread por conexão. O código continua bloqueante,
+        // mas uma thread bloqueada em I/O de socket libera a carrier thread para outras conexões.
+        // Modo "pool": limitar o numero de threads para 50, com uma fila limitada de conexões
+        // aguardando worker (ver ControleAdmissao)
+        ExecutorService executorService = virtual
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : new ThreadPoolExecutor(50, 50, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(FILA_ADMISSAO));
+        MetricasServidor.monitorarExecutor(virtual ? "virtual" : "pool", executorService);
+
+        // Virtual threads não têm limite natural como o pool, então a admissão é limitada pelo
+        // semáforo: sem permissão, o accept espera e as novas conexões aguardam no backlog do SO
+        Semaphore admissao = new Semaphore(virtual ? VIRTUAL_MAX_CONEXOES : Integer.MAX_VALUE);
+        sobPressao = executorService instanceof ThreadPoolExecutor pool
+            ? () -> !pool.getQueue().isEmpty()
+            : () -> admissao.availablePermits() == 0;
         ServerSocket serverSocket = null;
         try {
-            serverSocket = new ServerSocket(PORTA);
+            // ServerSocket de um ServerSocketChannel em modo bloqueante: o código continua usando a API de
+            // Socket, mas cada conexão aceita tem um SocketChannel, usado para enviar arquivos com transferTo
+            ServerSocketChannel canalServidor = ServerSocketChannel.open();
+            canalServidor.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverSocket = canalServidor.socket();
+            serverSocket.bind(new InetSocketAddress(PORTA));
             // shutdown hook para fechar o server socket e parar o executor quando o processo finalizar
             final ServerSocket finalServerSocket = serverSocket;
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -79,6 +247,7 @@ public class ServidorItensCardapioComSocket {
                     // ignore
                 }
                 executorService.shutdownNow();
+                fecharLogEscrita();
             }));
 
             System.out.println("Servidor aguardando conexões em http://localhost:" + PORTA);
@@ -91,20 +260,42 @@ public class ServidorItensCardapioComSocket {
             // Loop para aceitar múltiplas requisições enquanto o serverSocket estiver aberto
             while (!serverSocket.isClosed() && !Thread.currentThread().isInterrupted()) {
                 try {
+                    admissao.acquire();
+
                     // Aceita conexão do cliente (bloqueia até receber uma conexão)
-                    Socket clientSocket = serverSocket.accept();
+                    Socket clientSocket;
+                    try {
+                        clientSocket = serverSocket.accept();
+                    } catch (IOException e) {
+                        admissao.release();
+                        throw e;
+                    }
 
                     // Incrementa o contador e passa o número da requisição para a thread
                     int reqNum = numeroRequisicao.incrementAndGet();
+                    // Início da espera na fila do executor, usado pelo controle de admissão
+                    long aceitaEm = System.nanoTime();
 
                     try {
-                        // Submete a tarefa ao executor. Se estiver em shutdown, receberemos RejectedExecutionException
-                        executorService.execute(() -> trataRequisicao(reqNum, clientSocket));
+                        // Submete a tarefa ao executor. Se estiver em shutdown ou com a fila cheia,
+                        // receberemos RejectedExecutionException
+                        executorService.execute(() -> {
+                            try {
+                                trataRequisicao(reqNum, clientSocket, aceitaEm);
+                            } finally {
+                                admissao.release();
+                            }
+                        });
                     } catch (RejectedExecutionException rex) {
-                        System.err.println("Executor rejeitou a tarefa: " + rex.getMessage() + ". Fechando socket do cliente.");
-                        try {
-                            clientSocket.close();
-                        } catch (IOException ignore) {
+                        admissao.release();
+                        if (executorService.isShutdown()) {
+                            LogServidor.warn("Executor rejeitou a tarefa: " + rex.getMessage() + ". Fechando socket do cliente.");
+                            try {
+                                clientSocket.close();
+                            } catch (IOException ignore) {
+                            }
+                        } else {
+                            recusarConexao(clientSocket);
                         }
                     }
 
@@ -120,6 +311,9 @@ public class ServidorItensCardapioComSocket {
                 } catch (IOException e) {
                     System.err.println("Erro ao aceitar conexão: " + e.getMessage());
                     break;
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
 
@@ -149,175 +343,684 @@ public class ServidorItensCardapioComSocket {
         }
     }
 
+    /**
+     * Fila de admissão cheia: responde 503 com Retry-After na própria thread do accept, sem ler a
+     * requisição (a resposta cabe no buffer do socket), e fecha a conexão
+     */
+    private static void recusarConexao(Socket clientSocket) {
+        MetricasServidor.conexaoRecusada();
+        LogServidor.warn("Fila de admissão cheia (" + FILA_ADMISSAO + " conexões), respondendo 503.");
+        try (Socket socket = clientSocket) {
+            OutputStream saida = socket.getOutputStream();
+            enviarResposta(saida, ADMISSAO.respostaSobrecarga(), false);
+            saida.flush();
+            socket.shutdownOutput();
+        } catch (IOException e) {
+            // cliente já desistiu
+        }
+    }
+
     // Alterado para void pois o valor retornado não é usado pelo chamador
-    private static void trataRequisicao(int numeroRequisicao, Socket clientSocket) {
+    private static void trataRequisicao(int numeroRequisicao, Socket clientSocket, long aceitaEm) {
         // Usa try-with-resources para garantir fechamento do socket após processamento
+        MetricasServidor.conexaoAberta();
         try (Socket socket = clientSocket) {
-            System.out.println("\n========================================");
-            System.out.println("Processando requisição #" + numeroRequisicao + "...");
-            System.out.println("========================================");
-
-            System.out.println("Cliente conectado: " + socket.getInetAddress());
+            if (LogServidor.debugAtivo()) {
+                LogServidor.debug("Processando conexão #" + numeroRequisicao + " - cliente conectado: " + socket.getInetAddress());
+            }
 
-            // Define um timeout curto para leitura para evitar bloqueio indefinido
+            // Respostas pequenas saem sem esperar o ACK da anterior (Nagle + delayed ACK somavam ~40 ms
+            // no keep-alive). Os timeouts de leitura ficam com o PrazoConexao, não com setSoTimeout.
             try {
-                socket.setSoTimeout(5000); // 5 segundos
+                socket.setTcpNoDelay(true);
             } catch (IOException ignored) {
-                // Se não for possível configurar, continuamos sem timeout
             }
 
+            // Espera na fila do executor desde o accept
+            long espera = System.nanoTime() - aceitaEm;
+            ADMISSAO.registrarEspera(espera);
+
             // Processa a requisição
-            processarRequisicao(socket);
+            processarRequisicao(socket, espera);
 
             // socket será fechado automaticamente pelo try-with-resources
-            System.out.println("Conexão fechada. Pronto para próxima requisição.");
+            LogServidor.debug("Conexão fechada. Pronto para próxima requisição.");
         } catch (IOException e) {
-            System.err.println("Erro ao tratar requisição #" + numeroRequisicao + ": " + e.getMessage());
+            LogServidor.warn("Erro ao tratar requisição #" + numeroRequisicao + ": " + e.getMessage());
+        } finally {
+            MetricasServidor.conexaoFechada();
         }
     }
 
     /**
-     * Processa a requisição HTTP lendo os headers via BufferedReader
-     * e enviando resposta HTTP manual através do OutputStream
+     * Processa as requisições HTTP da conexão com o parser de bytes RequisicaoHttp
+     * e envia respostas HTTP manuais através do OutputStream
+     *
+     * A conexão é persistente (HTTP/1.1 keep-alive): depois de cada resposta o loop
+     * volta a ler a próxima requisição do mesmo socket. Requisições enviadas em
+     * sequência sem esperar resposta (pipelining) ficam no buffer do parser e são
+     * atendidas na ordem de chegada. A conexão é encerrada quando:
+     * - o cliente pede "Connection: close" (ou usa HTTP/1.0 sem "Connection: keep-alive")
+     * - o limite de requisições por conexão é atingido
+     * - a conexão fica ociosa além do timeout de keep-alive, ou os headers/body não chegam
+     *   dentro do prazo (PrazoConexao: o socket é fechado pela roda de temporização)
+     * - a requisição é malformada
+     * - o servidor está sobrecarregado (ver ControleAdmissao)
+     *
+     * Antes do handler (e do parse do JSON do body), a requisição passa pelo limite de taxa
+     * do cliente: acima do limite, recebe 429. A espera na fila do executor só conta para a
+     * primeira requisição: se ela for uma leitura em massa que esperou demais, recebe 503.
      */
-    private static void processarRequisicao(Socket clientSocket) {
+    private static void processarRequisicao(Socket clientSocket, long esperaFila) {
+        // Um parser (e seu buffer) por conexão, reutilizado em todas as requisições dela
+        RequisicaoHttp requisicao = new RequisicaoHttp(ServidorItensCardapioComSocket::recebeBodyEmFluxo);
+        // Ao vencer um prazo, a roda fecha o socket e o read() bloqueado lança SocketException
+        PrazoConexao prazo = new PrazoConexao(RODA_PRAZOS, sobPressao, () -> {
+            try {
+                clientSocket.close();
+            } catch (IOException ignore) {
+            }
+        });
         try (
-            // Obtém o InputStream do cliente e um reader para ler linhas
-            InputStream inputStream = clientSocket.getInputStream();
-            InputStreamReader isr = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-            BufferedReader reader = new BufferedReader(isr);
-
-            // Obtém o OutputStream para enviar resposta ao cliente
-            OutputStream outputStream = clientSocket.getOutputStream();
+            // Streams do socket contando os bytes para GET /metrics; a fase do prazo é atualizada antes de cada leitura
+            InputStream inputStream = new PrazoConexao.Entrada(
+                new MetricasServidor.EntradaContada(clientSocket.getInputStream()), prazo, requisicao);
 
-            // PrintStream para facilitar o envio de dados (usa Charset overload)
-            PrintStream printStream = new PrintStream(outputStream, true, StandardCharsets.UTF_8)
+            // Respostas acumuladas no buffer e enviadas de uma vez quando não há mais requisições pendentes
+            OutputStream outputStream = new BufferedOutputStream(new MetricasServidor.SaidaContada(clientSocket.getOutputStream()))
         ) {
-            System.out.println("\n--- Lendo requisição (cabecalhos) ---");
+            int atendidas = 0;
+            boolean manterConexao = true;
+
+            while (manterConexao) {
+                RequisicaoHttp.Estado estado = requisicao.lerCabecalhoDe(inputStream);
+                // Limite de taxa assim que os headers chegam: acima dele, o body nem é recebido
+                MetricasServidor.Rota rota = null;
+                RespostaHttp limitada = null;
+                if (estado == RequisicaoHttp.Estado.COMPLETA || estado == RequisicaoHttp.Estado.INCOMPLETA) {
+                    rota = rotaDe(requisicao);
+                    limitada = LIMITE_TAXA.limitar(clientSocket.getInetAddress(), rota);
+                    if (limitada == null && estado == RequisicaoHttp.Estado.INCOMPLETA) {
+                        estado = requisicao.lerDe(inputStream);
+                    }
+                }
+                prazo.suspender();
 
-            // Lê a primeira linha (request line) que contém método, path e versão HTTP
-            String requestLine = reader.readLine();
-            if (requestLine == null || requestLine.isEmpty()) {
-                System.out.println("Nenhuma requisição recebida ou conexão fechada pelo cliente.");
-                enviarResposta(printStream, 400, "Bad Request", "{}");
-                return;
-            }
+                if (estado == RequisicaoHttp.Estado.FIM_DO_STREAM) {
+                    if (requisicao.temRequisicaoParcial()) {
+                        LogServidor.warn("Conexão encerrada pelo cliente no meio de uma requisição.");
+                    } else if (LogServidor.debugAtivo()) {
+                        LogServidor.debug("Cliente encerrou a conexão após " + atendidas + " requisição(ões).");
+                    }
+                    return;
+                }
 
-            System.out.println("Request line: " + requestLine);
+                long inicio = MetricasServidor.iniciarRequisicao();
+                if (estado == RequisicaoHttp.Estado.INVALIDA) {
+                    RespostaHttp invalida = respostaRequisicaoInvalida(requisicao);
+                    try {
+                        enviarResposta(outputStream, invalida, false);
+                    } catch (IOException e) {
+                        MetricasServidor.requisicaoInterrompida();
+                        throw e;
+                    }
+                    MetricasServidor.registrar(MetricasServidor.Rota.OUTRAS, invalida.statusCode(), inicio);
+                    return;
+                }
 
-            // Parse da request line: "GET /itens-cardapio HTTP/1.1"
-            String[] parts = requestLine.split(" ");
-            if (parts.length < 3) {
-                enviarResposta(printStream, 400, "Bad Request", "{\"erro\": \"Request line inválida\"}");
-                return;
-            }
+                if (LogServidor.debugAtivo()) {
+                    LogServidor.debug("Requisição recebida:\n" + requisicao.cabecalhoTexto()
+                        + (requisicao.metodo() == RequisicaoHttp.Metodo.POST && estado == RequisicaoHttp.Estado.COMPLETA
+                            && !requisicao.bodyEmFluxo() ? "\nBody recebido: " + requisicao.body() : ""));
+                }
 
-            String metodo = parts[0];
-            String path = parts[1];
+                atendidas++;
+                manterConexao = requisicao.manterConexao() && atendidas < KEEP_ALIVE_MAX_REQUISICOES
+                    && !ADMISSAO.sobrecarregado();
 
-            // Lê o restante dos headers
-            StringBuilder headersBuilder = new StringBuilder();
-            String line;
-            int contentLength = 0;
-            while ((line = reader.readLine()) != null) {
-                if (line.isEmpty()) {
-                    break;
+                RespostaHttp resposta;
+                try {
+                    try {
+                        if (limitada != null) {
+                            resposta = limitada;
+                            // Body não recebido (incompleto ou em fluxo): a conexão não pode ser reaproveitada
+                            manterConexao &= estado == RequisicaoHttp.Estado.COMPLETA && !requisicao.bodyEmFluxo();
+                        } else if (atendidas == 1 && ADMISSAO.descartar(rota, esperaFila)) {
+                            resposta = ADMISSAO.respostaSobrecarga();
+                            manterConexao = false;
+                        } else if (requisicao.bodyEmFluxo() && somenteLeitura()) {
+                            // Somente leitura: recusa sem ler o body, que deixa a conexão inutilizável
+                            resposta = respostaSomenteLeitura();
+                            manterConexao = false;
+                        } else if (requisicao.bodyEmFluxo()) {
+                            // Importação em lote: o body é lido do socket e processado em partes
+                            ImportacaoLoteItens importacao = iniciarImportacaoLote();
+                            if (requisicao.aguardaContinue()) {
+                                outputStream.write(CONTINUE_100);
+                                outputStream.flush();
+                            }
+                            try {
+                                requisicao.lerBodyEmFluxo(inputStream, importacao);
+                            } catch (IOException | RuntimeException e) {
+                                importacao.concluir();
+                                throw e;
+                            }
+                            prazo.suspender();
+                            resposta = concluirImportacaoLote(requisicao, importacao);
+                        } else {
+                            resposta = rotearRequisicao(requisicao);
+                        }
+                    } catch (RuntimeException e) {
+                        // Falha fora do handler (ex: no meio da importação em lote), antes de qualquer byte
+                        // da resposta: 500 e só esta conexão é encerrada (o body pode não ter sido lido)
+                        LogServidor.error("Erro em " + requisicao.metodoTexto() + " " + requisicao.path() + ": " + e);
+                        resposta = RespostaHttp.json(500, "Internal Server Error", "{\"erro\": \"Erro interno do servidor\"}");
+                        manterConexao = false;
+                    }
+                    resposta = enviarResposta(outputStream, clientSocket.getChannel(), resposta, manterConexao,
+                        KEEP_ALIVE_MAX_REQUISICOES - atendidas);
+                } catch (IOException e) {
+                    MetricasServidor.requisicaoInterrompida();
+                    throw e;
+                } catch (RuntimeException e) {
+                    // Falha ao gerar um bloco do body com os headers já enviados: a resposta fica sem o
+                    // chunk final (o cliente percebe o body truncado) e só esta conexão é encerrada
+                    LogServidor.error("Erro ao enviar " + requisicao.metodoTexto() + " " + requisicao.path() + ": " + e);
+                    MetricasServidor.registrar(rota, 500, inicio);
+                    return;
                 }
-                headersBuilder.append(line).append("\n");
-                System.out.println(line);
-
-                // Captura Content-Length para requisições POST
-                if (line.toLowerCase().startsWith("content-length:")) {
-                    contentLength = Integer.parseInt(line.substring(15).trim());
+                MetricasServidor.registrar(rota, resposta.statusCode(), inicio);
+                registrarResumo(requisicao, resposta);
+
+                // Só envia ao socket quando não houver outra requisição já recebida (pipelining)
+                boolean haMaisRequisicoes = requisicao.temDadosPendentes() || inputStream.available() > 0;
+                requisicao.concluir();
+                if (!manterConexao || !haMaisRequisicoes) {
+                    outputStream.flush();
                 }
             }
 
-            // Lê o body se for POST e tiver Content-Length
-            String body = "";
-            if ("POST".equalsIgnoreCase(metodo) && contentLength > 0) {
-                char[] bodyChars = new char[contentLength];
-                int read = reader.read(bodyChars, 0, contentLength);
-                body = new String(bodyChars, 0, read);
-                System.out.println("Body recebido: " + body);
-            }
-
-            // --- ROTEAMENTO DE ENDPOINTS ---
-            System.out.println("\n--- Processando endpoint: " + metodo + " " + path + " ---");
-
-            if ("GET".equalsIgnoreCase(metodo) && "/itens-cardapio".equals(path)) {
-                handleGetItensCardapio(printStream);
-            } else if ("GET".equalsIgnoreCase(metodo) && "/itens-cardapio/total".equals(path)) {
-                handleGetTotal(printStream);
-            } else if ("GET".equalsIgnoreCase(metodo) && path.startsWith("/itens-cardapio/") && !path.equals("/itens-cardapio/total")) {
-                // GET /itens-cardapio/{id} - Busca item específico por ID
-                String idStr = path.substring("/itens-cardapio/".length());
-                handleGetItemPorId(printStream, idStr);
-            } else if ("POST".equalsIgnoreCase(metodo) && "/itens-cardapio".equals(path)) {
-                handlePostItemCardapio(printStream, body);
-            } else if ("DELETE".equalsIgnoreCase(metodo) && path.startsWith("/itens-cardapio/")) {
-                // Extrai o ID do path: /itens-cardapio/{id}
-                String idStr = path.substring("/itens-cardapio/".length());
-                handleDeleteItemCardapio(printStream, idStr);
+        } catch (IOException e) {
+            if (!prazo.expirou()) {
+                LogServidor.warn("Erro ao processar requisição: " + e.getMessage());
+            } else if (prazo.faseExpirada() == PrazoConexao.Fase.OCIOSA) {
+                LogServidor.debug("Conexão ociosa além do prazo, encerrando keep-alive.");
             } else {
-                // Endpoint não encontrado
-                enviarResposta(printStream, 404, "Not Found",
-                    "{\"erro\": \"Endpoint não encontrado\", \"path\": \"" + path + "\"}");
+                LogServidor.warn("Prazo de leitura (" + prazo.faseExpirada() + ") esgotado para " + clientSocket.getInetAddress());
+            }
+        } finally {
+            prazo.cancelar();
+            if (prazo.expirou()) {
+                MetricasServidor.conexaoExpirada(prazo.faseExpirada());
+            }
+        }
+    }
+
+    /**
+     * Resposta para requisições rejeitadas pelo parser (malformadas ou grandes demais)
+     */
+    static RespostaHttp respostaRequisicaoInvalida(RequisicaoHttp requisicao) {
+        LogServidor.warn("Requisição inválida: " + requisicao.mensagemErro());
+        String mensagem = switch (requisicao.statusErro()) {
+            case 411 -> "Length Required";
+            case 413 -> "Payload Too Large";
+            case 431 -> "Request Header Fields Too Large";
+            case 501 -> "Not Implemented";
+            default -> "Bad Request";
+        };
+        return RespostaHttp.json(requisicao.statusErro(), mensagem,
+            "{\"erro\": \"" + escaparJson(requisicao.mensagemErro()) + "\"}");
+    }
+
+    /**
+     * Resumo de uma linha por requisição, registrado em INFO para uma amostra das requisições
+     */
+    static void registrarResumo(RequisicaoHttp requisicao, RespostaHttp resposta) {
+        if (LogServidor.amostrar()) {
+            LogServidor.info(requisicao.metodoTexto() + " " + requisicao.path() + " -> " + resposta.statusCode()
+                + " (" + (resposta.emBlocos() ? "chunked" : resposta.tamanhoBody() + " bytes") + ")");
+        }
+    }
+
+    private static final byte[] PATH_ITENS = "/itens-cardapio".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_ITENS_BARRA = "/itens-cardapio/".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_TOTAL = "/itens-cardapio/total".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_LOTE = "/itens-cardapio/lote".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_BUSCA = "/itens-cardapio/busca".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_FAIXA_PRECO = "/itens-cardapio/faixa-preco".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_PROMOCOES = "/itens-cardapio/promocoes".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_METRICAS = "/metrics".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_SAUDE = "/health".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PATH_PUBLICADO = "/cardapio.json".getBytes(StandardCharsets.US_ASCII);
+    private static final String SUFIXO_PRECO = "/preco";
+    private static final byte[] SUFIXO_PRECO_BYTES = SUFIXO_PRECO.getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Rotas cujo body é processado em fluxo, sem ser acumulado no buffer da requisição
+     * (hoje só POST /itens-cardapio/lote)
+     */
+    static boolean recebeBodyEmFluxo(RequisicaoHttp requisicao) {
+        return requisicao.metodo() == RequisicaoHttp.Metodo.POST && requisicao.pathIgual(PATH_LOTE);
+    }
+
+    /**
+     * POST /itens-cardapio/lote - Início da importação; o body é entregue a ela em partes
+     */
+    static ImportacaoLoteItens iniciarImportacaoLote() {
+        return new ImportacaoLoteItens(itensCardapio, proximoId);
+    }
+
+    /**
+     * Mesma importação, com os grupos de itens gravados no executor informado (no modo NIO,
+     * os workers: o reator só separa e converte os objetos)
+     */
+    static ImportacaoLoteItens iniciarImportacaoLote(Executor gravacao) {
+        return new ImportacaoLoteItens(itensCardapio, proximoId, gravacao);
+    }
+
+    /**
+     * POST /itens-cardapio/lote - Resposta com o status de cada item, depois do body inteiro processado
+     */
+    static RespostaHttp concluirImportacaoLote(RequisicaoHttp requisicao, ImportacaoLoteItens importacao) {
+        RespostaHttp resposta = importacao.concluir();
+        // Um único force confirma o lote inteiro
+        RespostaHttp erroLog = aguardarDurabilidade();
+        return CompressaoHttp.comprimirSeAceito(erroLog != null ? erroLog : resposta, requisicao.codificacaoAceita());
+    }
+
+    /**
+     * Roteia a requisição já lida para o handler do endpoint correspondente.
+     *
+     * Usado tanto pelo modo bloqueante (pool de threads) quanto pelos workers
+     * do ServidorNioItensCardapio, garantindo o mesmo comportamento HTTP nos dois modos.
+     * As rotas são comparadas direto nos bytes do path, sem criar Strings.
+     */
+    static RespostaHttp rotearRequisicao(RequisicaoHttp requisicao) {
+        RespostaHttp resposta;
+        try {
+            resposta = rotear(requisicao);
+        } catch (RuntimeException e) {
+            // Ex: item corrompido no snapshot; a conexão continua utilizável
+            LogServidor.error("Erro em " + requisicao.metodoTexto() + " " + requisicao.path() + ": " + e.getMessage());
+            resposta = RespostaHttp.json(500, "Internal Server Error", "{\"erro\": \"Erro interno do servidor\"}");
+        }
+        // Respostas montadas por requisição são comprimidas aqui; a listagem já vem na variante pré-comprimida
+        resposta = CompressaoHttp.comprimirSeAceito(resposta, requisicao.codificacaoAceita());
+
+        // GET condicional: o cliente já tem esta versão (a ETag já inclui a codificação escolhida)
+        if (resposta.statusCode() == 200 && resposta.etag() != null && requisicao.ifNoneMatchCorresponde(resposta.etag())) {
+            return resposta.naoModificada();
+        }
+        return resposta;
+    }
+
+    /**
+     * Rota da requisição para as métricas, com as mesmas comparações de bytes do rotear()
+     * (sem criar Strings; não olha a query string)
+     */
+    static MetricasServidor.Rota rotaDe(RequisicaoHttp requisicao) {
+        RequisicaoHttp.Metodo metodo = requisicao.metodo();
+        if (metodo == RequisicaoHttp.Metodo.GET) {
+            if (requisicao.pathIgual(PATH_ITENS)) {
+                return MetricasServidor.Rota.LISTAR;
+            } else if (requisicao.pathIgual(PATH_TOTAL)) {
+                return MetricasServidor.Rota.TOTAL;
+            } else if (requisicao.pathIgual(PATH_BUSCA)) {
+                return MetricasServidor.Rota.BUSCA;
+            } else if (requisicao.pathIgual(PATH_FAIXA_PRECO)) {
+                return MetricasServidor.Rota.FAIXA_PRECO;
+            } else if (requisicao.pathIgual(PATH_PROMOCOES)) {
+                return MetricasServidor.Rota.PROMOCOES;
+            } else if (requisicao.pathIgual(PATH_METRICAS)) {
+                return MetricasServidor.Rota.METRICAS;
+            } else if (requisicao.pathIgual(PATH_SAUDE)) {
+                return MetricasServidor.Rota.SAUDE;
+            } else if (requisicao.pathIgual(PATH_PUBLICADO)) {
+                return MetricasServidor.Rota.PUBLICADO;
+            } else if (requisicao.pathComecaCom(PATH_ITENS_BARRA)) {
+                return MetricasServidor.Rota.ITEM;
+            }
+        } else if (metodo == RequisicaoHttp.Metodo.POST) {
+            if (requisicao.pathIgual(PATH_ITENS)) {
+                return MetricasServidor.Rota.CRIAR;
+            } else if (requisicao.pathIgual(PATH_LOTE)) {
+                return MetricasServidor.Rota.LOTE;
+            }
+        } else if (metodo == RequisicaoHttp.Metodo.PUT) {
+            if (requisicao.pathComecaCom(PATH_ITENS_BARRA) && requisicao.pathTerminaCom(SUFIXO_PRECO_BYTES)) {
+                return MetricasServidor.Rota.PRECO;
             }
+        } else if (metodo == RequisicaoHttp.Metodo.DELETE) {
+            if (requisicao.pathComecaCom(PATH_ITENS_BARRA)) {
+                return MetricasServidor.Rota.REMOVER;
+            }
+        }
+        return MetricasServidor.Rota.OUTRAS;
+    }
 
-        } catch (SocketTimeoutException e) {
-            System.err.println("Timeout ao ler requisição: " + e.getMessage());
-        } catch (IOException e) {
-            System.err.println("Erro ao processar requisição: " + e.getMessage());
+    private static RespostaHttp rotear(RequisicaoHttp requisicao) {
+        // --- ROTEAMENTO DE ENDPOINTS ---
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Processando endpoint: " + requisicao.metodoTexto() + " " + requisicao.path());
+        }
+
+        RequisicaoHttp.Metodo metodo = requisicao.metodo();
+        if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathIgual(PATH_ITENS)) {
+            String after = requisicao.parametro("after");
+            String limit = requisicao.parametro("limit");
+            String categoria = requisicao.parametro("categoria");
+            if (categoria != null) {
+                return handleGetItensPorCategoria(categoria, after, limit, requisicao.codificacaoAceita());
+            }
+            if (after != null || limit != null) {
+                return handleGetPaginaItensCardapio(after, limit);
+            }
+            return handleGetItensCardapio(requisicao.codificacaoAceita());
+        } else if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathIgual(PATH_TOTAL)) {
+            return handleGetTotal();
+        } else if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathIgual(PATH_BUSCA)) {
+            return handleGetBusca(requisicao.parametro("q"), requisicao.parametro("limit"));
+        } else if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathIgual(PATH_FAIXA_PRECO)) {
+            return handleGetFaixaPreco(requisicao.parametro("campo"), requisicao.parametro("min"),
+                requisicao.parametro("max"), requisicao.parametro("limit"));
+        } else if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathIgual(PATH_PROMOCOES)) {
+            return handleGetPromocoes(requisicao.parametro("ordem"), requisicao.parametro("limit"));
+        } else if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathIgual(PATH_METRICAS)) {
+            // GET /metrics - Métricas no formato texto do Prometheus
+            return RespostaHttp.texto(200, "OK", MetricasServidor.TIPO_CONTEUDO, MetricasServidor.exportar());
+        } else if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathIgual(PATH_SAUDE)) {
+            // GET /health - Health check; nunca descartado pelo controle de admissão
+            return handleGetSaude();
+        } else if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathIgual(PATH_PUBLICADO)) {
+            // GET /cardapio.json - Arquivo publicado pelo gerador, enviado com transferTo (aceita Range)
+            return publicacao.responder(requisicao);
+        } else if (metodo == RequisicaoHttp.Metodo.GET && requisicao.pathComecaCom(PATH_ITENS_BARRA)) {
+            // GET /itens-cardapio/{id} - Busca item específico por ID
+            String idStr = requisicao.sufixoPath(PATH_ITENS_BARRA.length);
+            return handleGetItemPorId(idStr);
+        } else if (metodo == RequisicaoHttp.Metodo.POST && requisicao.pathIgual(PATH_ITENS)) {
+            return handlePostItemCardapio(requisicao.body());
+        } else if (metodo == RequisicaoHttp.Metodo.PUT && requisicao.pathComecaCom(PATH_ITENS_BARRA)
+                && requisicao.pathTerminaCom(SUFIXO_PRECO_BYTES)) {
+            // PUT /itens-cardapio/{id}/preco - Altera os preços do item
+            String sufixo = requisicao.sufixoPath(PATH_ITENS_BARRA.length);
+            return handlePutPrecoItemCardapio(sufixo.substring(0, sufixo.length() - SUFIXO_PRECO.length()), requisicao.body());
+        } else if (metodo == RequisicaoHttp.Metodo.DELETE && requisicao.pathComecaCom(PATH_ITENS_BARRA)) {
+            // Extrai o ID do path: /itens-cardapio/{id}
+            String idStr = requisicao.sufixoPath(PATH_ITENS_BARRA.length);
+            return handleDeleteItemCardapio(idStr);
+        } else {
+            // Endpoint não encontrado
+            return RespostaHttp.json(404, "Not Found",
+                "{\"erro\": \"Endpoint não encontrado\", \"path\": \"" + requisicao.path() + "\"}");
         }
     }
 
+    /**
+     * ETag (com aspas, e W/ se fraca) de um valor derivado da versão do catálogo. Com
+     * cardapio.wal.ativo=false a versão volta a 1 a cada inicialização; o prefixo da época
+     * impede que uma ETag guardada antes do reinício corresponda a um conteúdo diferente.
+     */
+    static String etag(String valor, boolean forte) {
+        return (forte ? "\"" : "W/\"") + PREFIXO_ETAG + valor + "\"";
+    }
+
     /**
      * GET /itens-cardapio - Lista todos os itens do cardápio
      */
-    private static void handleGetItensCardapio(PrintStream printStream) {
-        // Converte os valores do mapa para lista e serializa como JSON
-        List<ItemCardapio> itens = new ArrayList<>(itensCardapio.values());
-        String json = itensCardapioParaJson(itens);
-        enviarResposta(printStream, 200, "OK", json);
-        System.out.println("Retornados " + itensCardapio.size() + " itens do cardápio");
+    private static RespostaHttp handleGetItensCardapio(CompressaoHttp.Codificacao codificacao) {
+        if (!cacheListagem.cabeEmSnapshot()) {
+            // Catálogo grande: o JSON é gerado em blocos durante o envio, sem montar o documento inteiro
+            if (LogServidor.debugAtivo()) {
+                LogServidor.debug("Listagem de " + itensCardapio.tamanho() + " itens enviada em blocos");
+            }
+            // ETag fraca: a versão é lida antes do envio, e alterações feitas durante o envio podem aparecer no JSON
+            long versao = itensCardapio.versao();
+            return RespostaHttp.emBlocos(200, "OK", new EscritorJsonItemCardapio.Blocos(itensCardapio.itens()))
+                .comEtag(etag(Long.toString(versao), false));
+        }
+        // O JSON já está pronto em bytes para a versão atual do catálogo: sem cópia nem serialização
+        CacheRespostaCardapio.Snapshot snapshot = cacheListagem.snapshot();
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Retornados " + itensCardapio.tamanho() + " itens do cardápio (versão " + snapshot.versao() + ")");
+        }
+        // ETag forte: o snapshot exato de uma versão é sempre o mesmo array de bytes
+        return snapshot.corpo().resposta(codificacao, etag(Long.toString(snapshot.versao()), snapshot.exata()));
+    }
+
+    /**
+     * GET /itens-cardapio?categoria={CATEGORIA} - Itens de uma categoria, lidos do índice secundário
+     * (custo proporcional ao resultado). Aceita também after/limit para paginar dentro da categoria.
+     */
+    private static RespostaHttp handleGetItensPorCategoria(String nomeCategoria, String after, String limit,
+                                                           CompressaoHttp.Codificacao codificacao) {
+        ItemCardapio.CategoriaCardapio categoria;
+        try {
+            categoria = ItemCardapio.CategoriaCardapio.valueOf(nomeCategoria.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"Categoria inválida\", \"categoria\": \"" + escaparJson(nomeCategoria)
+                    + "\", \"validas\": \"" + Arrays.toString(ItemCardapio.CategoriaCardapio.values()) + "\"}");
+        }
+        if (after != null || limit != null) {
+            return handleGetPaginaItensCardapio(after, limit, cursor -> indiceCategoria.itensDepoisDe(categoria, cursor));
+        }
+
+        if (indiceCategoria.tamanho(categoria) > CacheRespostaCardapio.LIMITE_ITENS_SNAPSHOT) {
+            // Mesmo critério da listagem completa: categorias grandes são geradas em blocos durante o envio
+            long versao = indiceCategoria.versao(categoria);
+            return RespostaHttp.emBlocos(200, "OK", new EscritorJsonItemCardapio.Blocos(indiceCategoria.itens(categoria)))
+                .comEtag(etag(categoria + "." + versao, false));
+        }
+        IndiceCategoriaCatalogo.Snapshot snapshot = indiceCategoria.snapshot(categoria);
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Itens da categoria " + categoria + " (versão " + snapshot.versao() + "): "
+                + snapshot.corpo().identidade().length + " bytes");
+        }
+        return snapshot.corpo().resposta(codificacao, etag(categoria + "." + snapshot.versao(), snapshot.exata()));
+    }
+
+    /**
+     * GET /itens-cardapio?after={id}&limit={n} - Uma página da listagem, em ordem de ID
+     *
+     * O cursor é o ID do último item recebido (proximoCursor da página anterior).
+     * A página é lida de uma visão tailMap do ConcurrentSkipListMap: O(log n) para achar
+     * o início + O(limit) para serializar, sem copiar o catálogo.
+     */
+    private static RespostaHttp handleGetPaginaItensCardapio(String after, String limit) {
+        return handleGetPaginaItensCardapio(after, limit, itensCardapio::itensDepoisDe);
+    }
+
+    private static RespostaHttp handleGetPaginaItensCardapio(String after, String limit,
+                                                             LongFunction<Collection<ItemCardapio>> itensDepoisDe) {
+        long cursor;
+        int limite;
+        try {
+            cursor = after == null || after.isEmpty() ? Long.MIN_VALUE : Long.parseLong(after);
+            limite = limit == null || limit.isEmpty() ? PAGINA_LIMITE_PADRAO : Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"Parâmetros de paginação inválidos\", \"after\": \"" + escaparJson(after)
+                    + "\", \"limit\": \"" + escaparJson(limit) + "\"}");
+        }
+        if (limite < 1 || limite > PAGINA_LIMITE_MAXIMO) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"limit deve estar entre 1 e " + PAGINA_LIMITE_MAXIMO + "\", \"limit\": " + limite + "}");
+        }
+
+        byte[] json = EscritorJsonItemCardapio.paginaParaBytes(itensDepoisDe.apply(cursor), limite);
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Página de itens após o ID " + cursor + " (limit " + limite + "): " + json.length + " bytes");
+        }
+        return new RespostaHttp(200, "OK", json);
+    }
+
+    /**
+     * GET /itens-cardapio/busca?q={texto}&limit={n} - Itens cujo nome ou descrição contém todos os
+     * termos (sem diferenciar acentos e maiúsculas; cada termo também casa como prefixo), do mais
+     * relevante para o menos. Lido do índice invertido, sem percorrer o catálogo.
+     */
+    private static RespostaHttp handleGetBusca(String q, String limit) {
+        if (q == null || q.isBlank()) {
+            return RespostaHttp.json(400, "Bad Request", "{\"erro\": \"Parâmetro 'q' é obrigatório\"}");
+        }
+        int limite;
+        try {
+            limite = limit == null || limit.isEmpty() ? BUSCA_LIMITE_PADRAO : Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            limite = -1;
+        }
+        if (limite < 1 || limite > PAGINA_LIMITE_MAXIMO) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"limit deve estar entre 1 e " + PAGINA_LIMITE_MAXIMO + "\", \"limit\": \"" + escaparJson(limit) + "\"}");
+        }
+
+        List<ItemCardapio> encontrados = indiceBusca.buscar(q, limite);
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Busca \"" + q + "\": " + encontrados.size() + " itens (limit " + limite + ")");
+        }
+        return new RespostaHttp(200, "OK", EscritorJsonItemCardapio.paraBytes(encontrados, encontrados.size() * 200 + 2));
+    }
+
+    /**
+     * GET /itens-cardapio/faixa-preco?min={v}&max={v}&campo={preco|precoComDesconto|desconto}&limit={n}
+     * Itens com o campo entre min e max (inclusive; ambos opcionais), em ordem crescente do campo.
+     * Lidos de um subSet do índice de preços e enviados em blocos à medida que são serializados.
+     */
+    private static RespostaHttp handleGetFaixaPreco(String campoStr, String minStr, String maxStr, String limit) {
+        IndicePrecoCatalogo.Campo campo = campoPreco(campoStr);
+        if (campo == null) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"campo deve ser preco, precoComDesconto ou desconto\", \"campo\": \"" + escaparJson(campoStr) + "\"}");
+        }
+        BigDecimal min;
+        BigDecimal max;
+        try {
+            min = minStr == null || minStr.isEmpty() ? null : new BigDecimal(minStr);
+            max = maxStr == null || maxStr.isEmpty() ? null : new BigDecimal(maxStr);
+        } catch (NumberFormatException e) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"Valores de preço inválidos\", \"min\": \"" + escaparJson(minStr)
+                    + "\", \"max\": \"" + escaparJson(maxStr) + "\"}");
+        }
+        if (min != null && max != null && min.compareTo(max) > 0) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"min deve ser menor ou igual a max\", \"min\": " + min + ", \"max\": " + max + "}");
+        }
+        Integer limite = limitePreco(limit, Integer.MAX_VALUE);
+        if (limite == null) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"limit deve ser maior que zero\", \"limit\": \"" + escaparJson(limit) + "\"}");
+        }
+
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Faixa de " + campo + " entre " + min + " e " + max + " (limit " + limite + ")");
+        }
+        Iterable<ItemCardapio> itens = IndicePrecoCatalogo.primeiros(indicePreco.faixa(campo, min, max), limite);
+        return RespostaHttp.emBlocos(200, "OK", new EscritorJsonItemCardapio.Blocos(itens));
+    }
+
+    /**
+     * GET /itens-cardapio/promocoes?ordem={preco|desconto}&limit={n}
+     * Os N itens em promoção (precoComDesconto menor que preco) mais baratos, ou com o maior desconto
+     */
+    private static RespostaHttp handleGetPromocoes(String ordem, String limit) {
+        Iterable<ItemCardapio> promocoes;
+        if (ordem == null || ordem.isEmpty() || ordem.equals("preco")) {
+            promocoes = indicePreco.promocoesMaisBaratas();
+        } else if (ordem.equals("desconto")) {
+            promocoes = indicePreco.maioresDescontos();
+        } else {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"ordem deve ser preco ou desconto\", \"ordem\": \"" + escaparJson(ordem) + "\"}");
+        }
+        Integer limite = limitePreco(limit, PAGINA_LIMITE_PADRAO);
+        if (limite == null || limite > PAGINA_LIMITE_MAXIMO) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"limit deve estar entre 1 e " + PAGINA_LIMITE_MAXIMO + "\", \"limit\": \"" + escaparJson(limit) + "\"}");
+        }
+        return RespostaHttp.emBlocos(200, "OK", new EscritorJsonItemCardapio.Blocos(IndicePrecoCatalogo.primeiros(promocoes, limite)));
+    }
+
+    private static IndicePrecoCatalogo.Campo campoPreco(String campo) {
+        if (campo == null || campo.isEmpty() || campo.equals("preco")) {
+            return IndicePrecoCatalogo.Campo.PRECO;
+        }
+        return switch (campo) {
+            case "precoComDesconto" -> IndicePrecoCatalogo.Campo.PRECO_COM_DESCONTO;
+            case "desconto" -> IndicePrecoCatalogo.Campo.DESCONTO;
+            default -> null;
+        };
+    }
+
+    /**
+     * limit das consultas por preço (padrão se ausente), ou null se não for um inteiro positivo
+     */
+    private static Integer limitePreco(String limit, int padrao) {
+        if (limit == null || limit.isEmpty()) {
+            return padrao;
+        }
+        try {
+            int limite = Integer.parseInt(limit);
+            return limite > 0 ? limite : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     /**
      * GET /itens-cardapio/total - Retorna a quantidade de itens do cardápio
      */
-    private static void handleGetTotal(PrintStream printStream) {
+    private static RespostaHttp handleGetTotal() {
         // ConcurrentSkipListMap.size() é thread-safe
-        int total = itensCardapio.size();
+        int total = itensCardapio.tamanho();
         String json = "{\"total\": " + total + "}";
-        enviarResposta(printStream, 200, "OK", json);
-        System.out.println("Total de itens: " + total);
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Total de itens: " + total);
+        }
+        return RespostaHttp.json(200, "OK", json);
+    }
+
+    /**
+     * GET /health - Responde 200 enquanto o servidor atende requisições, inclusive em sobrecarga
+     * (quando só as leituras em massa estão sendo descartadas)
+     */
+    private static RespostaHttp handleGetSaude() {
+        return RespostaHttp.json(200, "OK", "{\"status\": \"ok\", \"sobrecarregado\": " + ADMISSAO.sobrecarregado() + "}");
     }
 
     /**
      * GET /itens-cardapio/{id} - Busca um item específico por ID
-     * Aproveita a busca O(log n) do ConcurrentSkipListMap
+     * A ETag é "{id}.{versão}", com a versão do catálogo em que o item foi gravado pela última vez
      */
-    private static void handleGetItemPorId(PrintStream printStream, String idStr) {
+    private static RespostaHttp handleGetItemPorId(String idStr) {
         try {
             // Converte o ID de String para Long
             Long id = Long.parseLong(idStr);
 
-            // Busca direta no mapa - O(log n) - muito mais rápido que lista!
-            ItemCardapio item = itensCardapio.get(id);
+            // Busca direta no mapa por ID - O(1) - muito mais rápido que lista!
+            CatalogoCardapio.ItemVersionado versionado = itensCardapio.buscarVersionado(id);
 
-            if (item != null) {
-                String json = itemCardapioParaJson(item);
-                enviarResposta(printStream, 200, "OK", json);
-                System.out.println("Item encontrado: " + item.nome() + " (ID: " + id + ")");
+            if (versionado != null) {
+                ItemCardapio item = versionado.item();
+                if (LogServidor.debugAtivo()) {
+                    LogServidor.debug("Item encontrado: " + item.nome() + " (ID: " + id + ")");
+                }
+                return new RespostaHttp(200, "OK", EscritorJsonItemCardapio.paraBytes(item))
+                    .comEtag(etag(id + "." + versionado.versao(), true));
             } else {
-                enviarResposta(printStream, 404, "Not Found",
+                if (LogServidor.debugAtivo()) {
+                    LogServidor.debug("Item não encontrado com ID: " + id);
+                }
+                return RespostaHttp.json(404, "Not Found",
                     "{\"erro\": \"Item não encontrado\", \"id\": " + id + "}");
-                System.out.println("Item não encontrado com ID: " + id);
             }
 
         } catch (NumberFormatException e) {
-            System.err.println("ID inválido: " + idStr);
-            enviarResposta(printStream, 400, "Bad Request",
+            if (LogServidor.debugAtivo()) {
+                LogServidor.debug("ID inválido: " + idStr);
+            }
+            return RespostaHttp.json(400, "Bad Request",
                 "{\"erro\": \"ID inválido\", \"valor\": \"" + idStr + "\"}");
         }
     }
@@ -325,108 +1028,314 @@ public class ServidorItensCardapioComSocket {
     /**
      * POST /itens-cardapio - Adiciona um item do cardápio recebido em JSON
      */
-    private static void handlePostItemCardapio(PrintStream printStream, String body) {
+    private static RespostaHttp handlePostItemCardapio(String body) {
         try {
             // Parse simples do JSON recebido
             ItemCardapio novoItem = parseJsonParaItemCardapio(body);
+            if (somenteLeitura()) {
+                return respostaSomenteLeitura();
+            }
 
-            // Adiciona no mapa usando o ID como chave - ConcurrentSkipListMap é thread-safe
-            itensCardapio.put(novoItem.id(), novoItem);
-            System.out.println("Item adicionado com sucesso: " + novoItem.nome() + " (ID: " + novoItem.id() + ")");
+            // Adiciona no catálogo usando o ID como chave - ConcurrentSkipListMap é thread-safe
+            // (incrementa a versão do catálogo, invalidando o JSON pré-serializado da listagem)
+            itensCardapio.adicionar(novoItem);
+            RespostaHttp erroLog = aguardarDurabilidade();
+            if (erroLog != null) {
+                return erroLog;
+            }
+            LogServidor.info("Item adicionado com sucesso: " + novoItem.nome() + " (ID: " + novoItem.id() + ")");
 
             // Retorna o item criado
-            String json = itemCardapioParaJson(novoItem);
-            enviarResposta(printStream, 201, "Created", json);
+            return new RespostaHttp(201, "Created", EscritorJsonItemCardapio.paraBytes(novoItem));
 
         } catch (Exception e) {
-            System.err.println("Erro ao processar POST: " + e.getMessage());
-            enviarResposta(printStream, 400, "Bad Request",
+            LogServidor.warn("Erro ao processar POST: " + e.getMessage());
+            return RespostaHttp.json(400, "Bad Request",
                 "{\"erro\": \"JSON inválido ou campos obrigatórios faltando\", \"mensagem\": \"" +
-                e.getMessage().replace("\"", "\\\"") + "\"}");
+                String.valueOf(e.getMessage()).replace("\"", "\\\"") + "\"}");
         }
     }
 
+    /**
+     * PUT /itens-cardapio/{id}/preco - Altera preco e precoComDesconto de um item existente
+     * Body: {"preco": "12.00", "precoComDesconto": "10.00"} (sem precoComDesconto, vale o novo preco)
+     * Preço malformado ou negativo, ou precoComDesconto maior que preco: 400, sem alterar o catálogo (nem o log)
+     */
+    private static RespostaHttp handlePutPrecoItemCardapio(String idStr, String body) {
+        Long id;
+        try {
+            id = Long.parseLong(idStr);
+        } catch (NumberFormatException e) {
+            return RespostaHttp.json(400, "Bad Request",
+                "{\"erro\": \"ID inválido\", \"valor\": \"" + escaparJson(idStr) + "\"}");
+        }
+
+        BigDecimal preco;
+        BigDecimal precoComDesconto;
+        try {
+            preco = extrairPreco(body, "preco");
+            precoComDesconto = extrairPreco(body, "precoComDesconto");
+            if (preco == null) {
+                throw new IllegalArgumentException("Campo 'preco' é obrigatório");
+            }
+            if (precoComDesconto == null) {
+                precoComDesconto = preco;
+            }
+            validarPrecos(preco, precoComDesconto);
+        } catch (IllegalArgumentException e) {
+            return RespostaHttp.json(400, "Bad Request", "{\"erro\": \"" + escaparJson(e.getMessage()) + "\"}");
+        }
+
+        if (somenteLeitura()) {
+            return respostaSomenteLeitura();
+        }
+        CatalogoCardapio.ItemVersionado atualizado = itensCardapio.alterarPreco(id, preco, precoComDesconto);
+        if (atualizado == null) {
+            return RespostaHttp.json(404, "Not Found", "{\"erro\": \"Item não encontrado\", \"id\": " + id + "}");
+        }
+        RespostaHttp erroLog = aguardarDurabilidade();
+        if (erroLog != null) {
+            return erroLog;
+        }
+        LogServidor.info("Preço do item atualizado: " + atualizado.item().nome() + " (ID: " + id + ") -> " + preco);
+        return new RespostaHttp(200, "OK", EscritorJsonItemCardapio.paraBytes(atualizado.item()))
+            .comEtag(etag(id + "." + atualizado.versao(), true));
+    }
+
     /**
      * DELETE /itens-cardapio/{id} - Remove um item do cardápio por ID
      */
-    private static void handleDeleteItemCardapio(PrintStream printStream, String idStr) {
+    private static RespostaHttp handleDeleteItemCardapio(String idStr) {
         try {
             // Converte o ID de String para Long
             Long id = Long.parseLong(idStr);
+            if (somenteLeitura()) {
+                return respostaSomenteLeitura();
+            }
 
             // Remove diretamente do mapa - O(log n) - muito mais rápido que lista!
-            ItemCardapio itemRemovido = itensCardapio.remove(id);
+            ItemCardapio itemRemovido = itensCardapio.remover(id);
 
             // Verifica se o item foi encontrado e removido
             if (itemRemovido != null) {
-                System.out.println("Item removido com sucesso: " + itemRemovido.nome() + " (ID: " + id + ")");
+                RespostaHttp erroLog = aguardarDurabilidade();
+                if (erroLog != null) {
+                    return erroLog;
+                }
+                LogServidor.info("Item removido com sucesso: " + itemRemovido.nome() + " (ID: " + id + ")");
                 String json = "{\"mensagem\": \"Item removido com sucesso\", \"id\": " + id + "}";
-                enviarResposta(printStream, 200, "OK", json);
+                return RespostaHttp.json(200, "OK", json);
             } else {
-                System.out.println("Item não encontrado com ID: " + id);
-                enviarResposta(printStream, 404, "Not Found",
+                if (LogServidor.debugAtivo()) {
+                    LogServidor.debug("Item não encontrado com ID: " + id);
+                }
+                return RespostaHttp.json(404, "Not Found",
                     "{\"erro\": \"Item não encontrado\", \"id\": " + id + "}");
             }
 
         } catch (NumberFormatException e) {
-            System.err.println("ID inválido: " + idStr);
-            enviarResposta(printStream, 400, "Bad Request",
+            if (LogServidor.debugAtivo()) {
+                LogServidor.debug("ID inválido: " + idStr);
+            }
+            return RespostaHttp.json(400, "Bad Request",
                 "{\"erro\": \"ID inválido\", \"valor\": \"" + idStr + "\"}");
         }
     }
 
+    /**
+     * Envia uma resposta HTTP fechando a conexão em seguida (Connection: close)
+     */
+    static void enviarResposta(OutputStream outputStream, RespostaHttp resposta, boolean manterConexao) throws IOException {
+        enviarResposta(outputStream, resposta, manterConexao, 0);
+    }
+
     /**
      * Envia uma resposta HTTP com o código de status e body JSON
+     *
+     * A resposta é enquadrada estritamente pelo Content-Length: headers terminados em CRLF
+     * e exatamente body.length bytes depois da linha em branco, sem quebra de linha extra.
+     * Assim o cliente sabe onde termina esta resposta e começa a próxima na mesma conexão.
+     * Bodies gerados em blocos são enquadrados pelo Transfer-Encoding: chunked.
+     */
+    static void enviarResposta(OutputStream outputStream, RespostaHttp resposta, boolean manterConexao,
+                               int requisicoesRestantes) throws IOException {
+        enviarResposta(outputStream, null, resposta, manterConexao, requisicoesRestantes);
+    }
+
+    /**
+     * Mesmo envio, com o canal do socket para bodies em arquivo: eles vão do page cache direto
+     * para o socket com FileChannel.transferTo (sem canal, passam pelo outputStream).
+     * Retorna a resposta de fato enviada (500 se o arquivo não pôde ser aberto).
      */
-    private static void enviarResposta(PrintStream printStream, int statusCode, String statusMessage, String jsonBody) {
-        System.out.println("\n--- Enviando resposta HTTP ---");
-        System.out.println("Status: " + statusCode + " " + statusMessage);
+    static RespostaHttp enviarResposta(OutputStream outputStream, WritableByteChannel canalSocket, RespostaHttp resposta,
+                                       boolean manterConexao, int requisicoesRestantes) throws IOException {
+        // Aberto antes dos headers: se o arquivo sumiu ou mudou, ainda dá para responder outra coisa
+        FileChannel arquivo = null;
+        if (resposta.emArquivo()) {
+            try {
+                arquivo = resposta.regiaoArquivo().abrir();
+            } catch (IOException e) {
+                resposta = arquivoIndisponivel(e);
+            }
+        }
+        try {
+            outputStream.write(montarCabecalho(resposta, manterConexao, requisicoesRestantes));
+            if (resposta.emBlocos()) {
+                enviarEmBlocos(outputStream, resposta.corpoEmBlocos());
+            } else if (arquivo != null) {
+                enviarArquivo(outputStream, canalSocket, arquivo, resposta.regiaoArquivo());
+            } else {
+                outputStream.write(resposta.body());
+            }
+        } finally {
+            if (arquivo != null) {
+                arquivo.close();
+            }
+        }
 
-        printStream.println("HTTP/1.1 " + statusCode + " " + statusMessage);
-        printStream.println("Content-Type: application/json; charset=utf-8");
-        printStream.println("Content-Length: " + jsonBody.getBytes(StandardCharsets.UTF_8).length);
-        printStream.println("Connection: close");
-        printStream.println();
-        printStream.println(jsonBody);
-        printStream.flush();
+        if (LogServidor.debugAtivo()) {
+            LogServidor.debug("Resposta enviada: " + resposta.statusCode() + " " + resposta.statusMessage()
+                + (resposta.emBlocos() ? ", body (JSON) em blocos"
+                    : resposta.emArquivo() ? ", body com " + resposta.tamanhoBody() + " bytes de " + resposta.regiaoArquivo().arquivo()
+                    : ", body (JSON) com " + resposta.body().length + " bytes"));
+        }
+        return resposta;
+    }
 
-        System.out.println("Body (JSON) enviado: " + jsonBody.length() + " caracteres");
+    /**
+     * Resposta para um arquivo publicado que não pôde ser aberto no envio
+     */
+    static RespostaHttp arquivoIndisponivel(IOException e) {
+        LogServidor.warn("Arquivo publicado indisponível: " + e.getMessage());
+        return RespostaHttp.json(500, "Internal Server Error", "{\"erro\": \"Arquivo publicado indisponível\"}");
     }
 
     /**
-     * Converte uma lista de ItemCardapio para JSON manualmente
+     * Envia o trecho do arquivo com transferTo. Os headers (e respostas anteriores acumuladas no
+     * buffer, em pipelining) são descarregados antes, já que o body não passa pelo outputStream.
      */
-    private static String itensCardapioParaJson(List<ItemCardapio> itens) {
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < itens.size(); i++) {
-            if (i > 0) {
-                json.append(",");
+    private static void enviarArquivo(OutputStream outputStream, WritableByteChannel canalSocket, FileChannel arquivo,
+                                      RespostaHttp.RegiaoArquivo regiao) throws IOException {
+        outputStream.flush();
+        // Sem canal (ex: socket sem SocketChannel) a cópia passa por um buffer, contada pelo outputStream
+        WritableByteChannel destino = canalSocket != null ? canalSocket : Channels.newChannel(outputStream);
+        long posicao = regiao.inicio();
+        long fim = posicao + regiao.tamanho();
+        ByteBuffer espera = null;
+        while (posicao < fim) {
+            long enviados = arquivo.transferTo(posicao, fim - posicao, destino);
+            if (enviados <= 0) {
+                if (posicao >= arquivo.size()) {
+                    throw new IOException("Arquivo " + regiao.arquivo() + " truncado durante o envio");
+                }
+                // Virtual threads usam o socket em modo não bloqueante por baixo: com o buffer do socket
+                // cheio o sendfile não envia nada. Um write comum espera o socket (estacionando a virtual
+                // thread) e depois o envio volta para o transferTo.
+                if (espera == null) {
+                    espera = ByteBuffer.allocate(64 * 1024);
+                }
+                espera.clear().limit((int) Math.min(espera.capacity(), fim - posicao));
+                arquivo.read(espera, posicao);
+                espera.flip();
+                enviados = espera.remaining();
+                while (espera.hasRemaining()) {
+                    destino.write(espera);
+                }
+            }
+            if (canalSocket != null) {
+                MetricasServidor.bytesEnviados(enviados);
             }
-            json.append(itemCardapioParaJson(itens.get(i)));
+            posicao += enviados;
+        }
+        if (canalSocket == null) {
+            outputStream.flush();
         }
-        json.append("]");
-        return json.toString();
     }
 
     /**
-     * Converte um ItemCardapio para JSON manualmente
+     * Envia o body em chunks HTTP/1.1 ("tamanho em hexa CRLF dados CRLF"), terminando com o chunk vazio
      */
-    private static String itemCardapioParaJson(ItemCardapio item) {
-        return String.format(
-            "{\"id\":%d,\"nome\":\"%s\",\"descricao\":\"%s\",\"categoria\":\"%s\",\"preco\":%s,\"precoComDesconto\":%s}",
-            item.id(),
-            escaparJson(item.nome()),
-            escaparJson(item.descricao()),
-            item.categoria().name(),
-            item.preco().toString(),
-            item.precoComDesconto().toString()
-        );
+    private static void enviarEmBlocos(OutputStream outputStream, RespostaHttp.CorpoEmBlocos corpo) throws IOException {
+        ByteBuffer bloco;
+        while ((bloco = corpo.proximoBloco()) != null) {
+            if (!bloco.hasRemaining()) {
+                continue;
+            }
+            outputStream.write(cabecalhoChunk(bloco.remaining()));
+            outputStream.write(bloco.array(), bloco.arrayOffset() + bloco.position(), bloco.remaining());
+            outputStream.write(FIM_LINHA);
+        }
+        outputStream.write(FIM_CHUNKED);
+    }
+
+    static final byte[] FIM_LINHA = {'\r', '\n'};
+    static final byte[] FIM_CHUNKED = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    // Resposta provisória para "Expect: 100-continue", antes do body em fluxo
+    static final byte[] CONTINUE_100 = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    static byte[] cabecalhoChunk(int tamanho) {
+        return (Integer.toHexString(tamanho) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Monta a linha de status e os headers da resposta, incluindo a linha em branco final
+     */
+    static byte[] montarCabecalho(RespostaHttp resposta, boolean manterConexao, int requisicoesRestantes) {
+        StringBuilder cabecalho = new StringBuilder(160);
+        cabecalho.append("HTTP/1.1 ").append(resposta.statusCode()).append(' ').append(resposta.statusMessage()).append("\r\n");
+        // 304 nunca tem body: sem Content-Type, Content-Length nem Transfer-Encoding
+        boolean naoModificado = resposta.statusCode() == 304;
+        if (!naoModificado) {
+            cabecalho.append("Content-Type: ").append(resposta.tipoConteudo()).append("\r\n");
+        }
+        if (resposta.codificacao() != CompressaoHttp.Codificacao.IDENTIDADE) {
+            cabecalho.append("Content-Encoding: ").append(resposta.codificacao().valorCabecalho()).append("\r\n");
+        }
+        if (resposta.variaPorCodificacao()) {
+            cabecalho.append("Vary: Accept-Encoding\r\n");
+        }
+        if (resposta.etag() != null) {
+            cabecalho.append("ETag: ").append(resposta.etag()).append("\r\n");
+        }
+        if (resposta.retryAfterSegundos() > 0) {
+            cabecalho.append("Retry-After: ").append(resposta.retryAfterSegundos()).append("\r\n");
+        }
+        if (resposta.emArquivo()) {
+            cabecalho.append("Accept-Ranges: bytes\r\n");
+        }
+        if (resposta.contentRange() != null) {
+            cabecalho.append("Content-Range: ").append(resposta.contentRange()).append("\r\n");
+        }
+        if (naoModificado) {
+            // sem enquadramento do body
+        } else if (resposta.emBlocos()) {
+            cabecalho.append("Transfer-Encoding: chunked\r\n");
+        } else {
+            cabecalho.append("Content-Length: ").append(resposta.tamanhoBody()).append("\r\n");
+        }
+        if (manterConexao) {
+            cabecalho.append("Connection: keep-alive\r\n");
+            cabecalho.append("Keep-Alive: timeout=").append(KEEP_ALIVE_TIMEOUT_MS / 1000)
+                .append(", max=").append(requisicoesRestantes).append("\r\n");
+        } else {
+            cabecalho.append("Connection: close\r\n");
+        }
+        cabecalho.append("\r\n");
+        return cabecalho.toString().getBytes(StandardCharsets.UTF_8);
     }
 
     /**
      * Parse simples de JSON para ItemCardapio (sem biblioteca externa)
      */
     private static ItemCardapio parseJsonParaItemCardapio(String json) {
+        return parseJsonParaItemCardapio(json, proximoId::getAndIncrement);
+    }
+
+    /**
+     * Parse com a origem dos IDs gerados para itens sem "id" (ex: bloco reservado pela importação em lote).
+     * O ID só é gerado depois da validação, para um item rejeitado não consumir IDs.
+     */
+    static ItemCardapio parseJsonParaItemCardapio(String json, LongSupplier geradorId) {
         // Remove espaços em branco, chaves externas
         json = json.trim();
         if (json.startsWith("{")) {
@@ -441,13 +1350,8 @@ public class ServidorItensCardapioComSocket {
         String nome = extrairString(json, "nome");
         String descricao = extrairString(json, "descricao");
         String categoriaStr = extrairString(json, "categoria");
-        BigDecimal preco = extrairBigDecimal(json, "preco");
-        BigDecimal precoComDesconto = extrairBigDecimal(json, "precoComDesconto");
-
-        // Se ID não foi fornecido, gera um novo
-        if (id == null || id == 0) {
-            id = proximoId.getAndIncrement();
-        }
+        BigDecimal preco = extrairPreco(json, "preco");
+        BigDecimal precoComDesconto = extrairPreco(json, "precoComDesconto");
 
         // Valida campos obrigatórios
         if (nome == null || nome.isEmpty()) {
@@ -462,6 +1366,7 @@ public class ServidorItensCardapioComSocket {
         if (precoComDesconto == null) {
             precoComDesconto = preco;
         }
+        validarPrecos(preco, precoComDesconto);
 
         // Parse da categoria
         ItemCardapio.CategoriaCardapio categoria;
@@ -473,6 +1378,11 @@ public class ServidorItensCardapioComSocket {
             categoria = ItemCardapio.CategoriaCardapio.PRATOS_PRINCIPAIS;
         }
 
+        // Se ID não foi fornecido, gera um novo
+        if (id == null || id == 0) {
+            id = geradorId.getAsLong();
+        }
+
         return new ItemCardapio(id, nome, descricao, categoria, preco, precoComDesconto);
     }
 
@@ -526,9 +1436,36 @@ public class ServidorItensCardapioComSocket {
     }
 
     /**
-     * Extrai o valor de um campo JSON de forma simples
+     * Extrai um preço de um campo JSON: null se o campo não existir, IllegalArgumentException
+     * se ele existir mas não for um número (ex: "abc", null ou vazio)
      */
-    private static String extrairValor(String json, String campo) {
+    private static BigDecimal extrairPreco(String json, String campo) {
+        if (extrairValor(json, campo) == null) {
+            return null;
+        }
+        BigDecimal preco = extrairBigDecimal(json, campo);
+        if (preco == null) {
+            throw new IllegalArgumentException("Campo '" + campo + "' inválido");
+        }
+        return preco;
+    }
+
+    /**
+     * Preços não negativos, e o preço com desconto não pode passar do preço
+     */
+    private static void validarPrecos(BigDecimal preco, BigDecimal precoComDesconto) {
+        if (preco.signum() < 0 || precoComDesconto.signum() < 0) {
+            throw new IllegalArgumentException("Preços não podem ser negativos");
+        }
+        if (precoComDesconto.compareTo(preco) > 0) {
+            throw new IllegalArgumentException("Campo 'precoComDesconto' não pode ser maior que 'preco'");
+        }
+    }
+
+    /**
+     * Extrai o valor de um campo JSON de forma simples (visível no pacote para os benchmarks JMH)
+     */
+    static String extrairValor(String json, String campo) {
         String pattern = "\"" + campo + "\"";
         int index = json.indexOf(pattern);
         if (index == -1) {
@@ -546,6 +1483,10 @@ public class ServidorItensCardapioComSocket {
         while (startIndex < json.length() && Character.isWhitespace(json.charAt(startIndex))) {
             startIndex++;
         }
+        // Body cortado logo depois do ':' (ex: {"preco":)
+        if (startIndex >= json.length()) {
+            return null;
+        }
 
         // Determina o fim do valor
         int endIndex;
@@ -573,7 +1514,7 @@ public class ServidorItensCardapioComSocket {
     /**
      * Escapa caracteres especiais para JSON
      */
-    private static String escaparJson(String str) {
+    static String escaparJson(String str) {
         if (str == null) {
             return "";
         }
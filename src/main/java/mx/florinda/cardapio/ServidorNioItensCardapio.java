@@ -0,0 +1,720 @@
+package mx.florinda.cardapio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Servidor HTTP não bloqueante usando ServerSocketChannel e Selector
+ *
+ * Enquanto o modo padrão do ServidorItensCardapioComSocket prende uma thread do pool
+ * por conexão (inclusive enquanto o cliente está ocioso ou lento), este modo segue o
+ * padrão "reactor":
+ * - Um ou mais reatores, cada um com seu próprio Selector, fazem accept/read/write sem bloquear
+ * - O reator acumula os bytes da conexão no RequisicaoHttp dela até ter uma requisição
+ *   completa (headers + body)
+ * - A requisição completa é entregue a um pool separado de workers, que executa
+ *   os mesmos handlers do ServidorItensCardapioComSocket
+ * - A resposta volta para o reator, que a escreve no canal conforme o socket aceita;
+ *   bodies em blocos (listagens grandes) são gerados pelo reator um bloco por vez,
+ *   à medida que o socket libera espaço, e enviados como chunks HTTP
+ * - Bodies em arquivo (GET /cardapio.json) são abertos pelo worker e enviados pelo reator com
+ *   FileChannel.transferTo direto para o canal, conforme o socket aceita (sendfile no Linux)
+ * - Bodies em fluxo (POST /itens-cardapio/lote) não esperam o body completo: a cada leitura
+ *   o reator entrega os bytes recebidos à importação, e só a resposta final vai para o worker
+ * - Conexões persistentes (keep-alive) voltam a aguardar a próxima requisição; requisições
+ *   enviadas em sequência (pipelining) são atendidas uma por vez, na ordem de chegada
+ *
+ * Com isso milhares de conexões abertas ocupam apenas alguns reatores, e os workers
+ * só ficam ocupados durante o processamento de fato.
+ *
+ * Configuração (System properties):
+ * - cardapio.nio.reatores: quantidade de reatores (padrão: metade dos processadores, mínimo 1)
+ * - cardapio.nio.workers: quantidade de workers para os handlers (padrão: número de processadores)
+ */
+public class ServidorNioItensCardapio {
+
+    private static final int REATORES = Integer.getInteger("cardapio.nio.reatores",
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int WORKERS = Integer.getInteger("cardapio.nio.workers",
+        Runtime.getRuntime().availableProcessors());
+
+    // Blocos gerados por evento de escrita, para uma listagem grande não monopolizar o reator
+    private static final int BLOCOS_POR_ESCRITA = 8;
+
+    private final int porta;
+    private final Reator[] reatores;
+    private final ExecutorService workers;
+    private final AtomicInteger numeroRequisicao = new AtomicInteger(0);
+    private ServerSocketChannel serverChannel;
+
+    public ServidorNioItensCardapio(int porta) throws IOException {
+        this.porta = porta;
+        this.reatores = new Reator[REATORES];
+        for (int i = 0; i < reatores.length; i++) {
+            reatores[i] = new Reator(i);
+        }
+        this.workers = Executors.newFixedThreadPool(WORKERS);
+        MetricasServidor.monitorarExecutor("nio-workers", workers);
+    }
+
+    /**
+     * Abre o ServerSocketChannel, inicia os reatores e bloqueia até o servidor ser encerrado.
+     */
+    public void iniciar() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(porta), 1024);
+        serverChannel.configureBlocking(false);
+
+        // O primeiro reator também é responsável por aceitar novas conexões
+        reatores[0].registrarAceitacao(serverChannel);
+
+        Thread[] threads = new Thread[reatores.length];
+        for (int i = 0; i < reatores.length; i++) {
+            threads[i] = new Thread(reatores[i], "reator-nio-" + i);
+            threads[i].start();
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Shutdown hook: fechando reatores e interrompendo workers...");
+            parar();
+            ServidorItensCardapioComSocket.fecharLogEscrita();
+        }));
+
+        System.out.println("Servidor NIO aguardando conexões em http://localhost:" + porta);
+        System.out.println("Reatores: " + reatores.length + " | Workers: " + WORKERS);
+        System.out.println("Pressione Ctrl+C para parar o servidor\n");
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                parar();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fecha o canal de aceitação, os selectors e encerra os workers.
+     */
+    public void parar() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException ignore) {
+        }
+        for (Reator reator : reatores) {
+            reator.fechar();
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Estado de uma conexão: bytes recebidos até agora (no parser) e resposta pendente de escrita.
+     */
+    private static final class Conexao {
+        private final SocketChannel canal;
+        // IP do cliente, para o limite de taxa
+        private final InetAddress cliente;
+        private final RequisicaoHttp requisicao = new RequisicaoHttp(ServidorItensCardapioComSocket::recebeBodyEmFluxo);
+        // Importação em lote recebendo o body (null fora de POST /itens-cardapio/lote)
+        private ImportacaoLoteItens importacao;
+        private ByteBuffer escrita;
+        // Body em blocos ainda não enviado (null quando a resposta tem Content-Length)
+        private RespostaHttp.CorpoEmBlocos corpoEmBlocos;
+        private ByteBuffer chunk;
+        // Arquivo do body ainda não enviado (null quando o body não é um arquivo) e o trecho que falta
+        private FileChannel arquivo;
+        private long posicaoArquivo;
+        private long fimArquivo;
+        // Prazos de headers, body e keep-alive, vencidos pela roda do servidor (ver conexoesExpiradas)
+        private PrazoConexao prazo;
+        private boolean manterConexao;
+        private int atendidas;
+        // Início (System.nanoTime) e rota da requisição em andamento, para as métricas; 0 sem requisição
+        private long inicioRequisicao;
+        private MetricasServidor.Rota rota;
+        // Se a requisição atual já passou pelo limite de taxa (verificado assim que os headers chegam)
+        private boolean limiteVerificado;
+        private int status;
+
+        private Conexao(SocketChannel canal) {
+            this.canal = canal;
+            this.cliente = canal.socket().getInetAddress();
+        }
+    }
+
+    /**
+     * Loop de eventos de um Selector. Cada conexão pertence a um único reator,
+     * então o estado da Conexao só é tocado por essa thread (exceto a resposta,
+     * que chega pela fila respostasProntas).
+     */
+    private final class Reator implements Runnable {
+        private final int indice;
+        private final Selector selector;
+        private final Queue<SocketChannel> novasConexoes = new ConcurrentLinkedQueue<>();
+        private final Queue<Conexao> respostasProntas = new ConcurrentLinkedQueue<>();
+        // Conexões cujo prazo venceu, enfileiradas pela thread da roda de temporização
+        private final Queue<Conexao> conexoesExpiradas = new ConcurrentLinkedQueue<>();
+        // Importações em lote que pararam de ler esperando os workers gravarem e já podem continuar
+        private final Queue<Conexao> importacoesLiberadas = new ConcurrentLinkedQueue<>();
+        private int proximoReator;
+
+        private Reator(int indice) throws IOException {
+            this.indice = indice;
+            this.selector = Selector.open();
+        }
+
+        private void registrarAceitacao(ServerSocketChannel canal) throws IOException {
+            canal.register(selector, SelectionKey.OP_ACCEPT);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen() && !Thread.currentThread().isInterrupted()) {
+                    selector.select(1000);
+                    registrarNovasConexoes();
+                    agendarRespostasProntas();
+                    fecharConexoesExpiradas();
+                    retomarImportacoes();
+
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            aceitar();
+                        } else if (key.isReadable()) {
+                            ler(key);
+                        } else if (key.isWritable()) {
+                            escrever(key);
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // Selector fechado pelo shutdown
+            } catch (IOException e) {
+                LogServidor.error("Erro no reator #" + indice + ": " + e.getMessage());
+            }
+            LogServidor.info("Reator #" + indice + " finalizado.");
+        }
+
+        private void aceitar() {
+            SocketChannel canal;
+            try {
+                while ((canal = serverChannel.accept()) != null) {
+                    canal.configureBlocking(false);
+                    canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    MetricasServidor.conexaoAberta();
+
+                    // Distribui as conexões entre os reatores (round-robin)
+                    Reator destino = reatores[proximoReator];
+                    proximoReator = (proximoReator + 1) % reatores.length;
+                    destino.novasConexoes.add(canal);
+                    if (destino == this) {
+                        // Sem isso a conexão só seria registrada quando o select(1000) seguinte expirasse
+                        registrarNovasConexoes();
+                    } else {
+                        destino.selector.wakeup();
+                    }
+                }
+            } catch (IOException e) {
+                LogServidor.warn("Erro ao aceitar conexão: " + e.getMessage());
+            }
+        }
+
+        private void registrarNovasConexoes() {
+            SocketChannel canal;
+            while ((canal = novasConexoes.poll()) != null) {
+                try {
+                    Conexao conexao = new Conexao(canal);
+                    // Sem pressão: aqui conexão lenta não ocupa thread, vale só o prazo normal
+                    conexao.prazo = new PrazoConexao(ServidorItensCardapioComSocket.RODA_PRAZOS, null, () -> {
+                        conexoesExpiradas.add(conexao);
+                        selector.wakeup();
+                    });
+                    canal.register(selector, SelectionKey.OP_READ, conexao);
+                    conexao.prazo.acompanhar(conexao.requisicao);
+                } catch (IOException e) {
+                    fecharCanal(canal);
+                }
+            }
+        }
+
+        private void agendarRespostasProntas() {
+            Conexao conexao;
+            while ((conexao = respostasProntas.poll()) != null) {
+                SelectionKey key = conexao.canal.keyFor(selector);
+                if (key == null || !key.isValid()) {
+                    abandonarRequisicao(conexao);
+                    fecharCanal(conexao.canal);
+                    continue;
+                }
+                key.interestOps(SelectionKey.OP_WRITE);
+                // Tenta escrever imediatamente; se o socket não aceitar tudo, o Selector avisa depois
+                escrever(key);
+            }
+        }
+
+        private void ler(SelectionKey key) {
+            Conexao conexao = (Conexao) key.attachment();
+            try {
+                int lidos = conexao.requisicao.lerDe(conexao.canal);
+                if (lidos == -1) {
+                    if (conexao.requisicao.temRequisicaoParcial()) {
+                        LogServidor.warn("Conexão encerrada pelo cliente no meio de uma requisição.");
+                    }
+                    fechar(key);
+                    return;
+                }
+                MetricasServidor.bytesRecebidos(lidos);
+                if (conexao.importacao != null) {
+                    receberBodyEmFluxo(key, conexao);
+                } else {
+                    tentarDespachar(key, conexao);
+                }
+            } catch (IOException e) {
+                LogServidor.warn("Erro ao ler da conexão: " + e.getMessage());
+                fechar(key);
+            } catch (RuntimeException e) {
+                falhar(key, "ler da conexão", e);
+            }
+        }
+
+        /**
+         * Se o buffer já tiver uma requisição completa, entrega ao worker.
+         * Chamado após cada leitura e após cada resposta (requisições em pipeline).
+         */
+        private void tentarDespachar(SelectionKey key, Conexao conexao) {
+            RequisicaoHttp requisicao = conexao.requisicao;
+            RequisicaoHttp.Estado estado = requisicao.analisar();
+            RespostaHttp limitada = null;
+            if (estado != RequisicaoHttp.Estado.INVALIDA && requisicao.cabecalhoRecebido() && !conexao.limiteVerificado) {
+                // Limite de taxa assim que os headers chegam: acima dele, o body nem é recebido
+                conexao.limiteVerificado = true;
+                limitada = ServidorItensCardapioComSocket.LIMITE_TAXA.limitar(conexao.cliente,
+                    ServidorItensCardapioComSocket.rotaDe(requisicao));
+            }
+            if (estado == RequisicaoHttp.Estado.INCOMPLETA && limitada == null) {
+                // Ociosa, recebendo headers ou recebendo body: o prazo segue a fase
+                conexao.prazo.acompanhar(requisicao);
+                return;
+            }
+            conexao.limiteVerificado = false;
+            conexao.atendidas++;
+            // Requisições malformadas são respondidas e encerram a conexão, assim como no modo bloqueante
+            conexao.manterConexao = estado == RequisicaoHttp.Estado.COMPLETA
+                && requisicao.manterConexao()
+                && conexao.atendidas < ServidorItensCardapioComSocket.KEEP_ALIVE_MAX_REQUISICOES;
+            conexao.inicioRequisicao = MetricasServidor.iniciarRequisicao();
+            conexao.rota = estado != RequisicaoHttp.Estado.INVALIDA
+                ? ServidorItensCardapioComSocket.rotaDe(requisicao)
+                : MetricasServidor.Rota.OUTRAS;
+            if (limitada != null) {
+                // 429 sem executar o handler; com body não recebido (incompleto ou em fluxo) a conexão é fechada
+                conexao.manterConexao &= !requisicao.bodyEmFluxo();
+                conexao.prazo.suspender();
+                key.interestOps(0);
+                RespostaHttp resposta = limitada;
+                despachar(conexao, () -> resposta);
+                return;
+            }
+            if (estado == RequisicaoHttp.Estado.COMPLETA && requisicao.bodyEmFluxo() && ServidorItensCardapioComSocket.somenteLeitura()) {
+                // Somente leitura: recusa sem ler o body, e a conexão é fechada
+                conexao.manterConexao = false;
+                conexao.prazo.suspender();
+                key.interestOps(0);
+                despachar(conexao, ServidorItensCardapioComSocket::respostaSomenteLeitura);
+                return;
+            }
+            if (estado == RequisicaoHttp.Estado.COMPLETA && requisicao.bodyEmFluxo()) {
+                // Continua lendo: o body é processado pelo reator à medida que chega
+                conexao.importacao = ServidorItensCardapioComSocket.iniciarImportacaoLote(workers);
+                conexao.prazo.acompanhar(requisicao);
+                if (requisicao.aguardaContinue() && !enviarContinue(key, conexao)) {
+                    return;
+                }
+                receberBodyEmFluxo(key, conexao);
+                return;
+            }
+            // Enquanto o worker processa, não há interesse em novos eventos de leitura
+            conexao.prazo.suspender();
+            key.interestOps(0);
+            despachar(conexao, estado == RequisicaoHttp.Estado.INVALIDA
+                ? () -> ServidorItensCardapioComSocket.respostaRequisicaoInvalida(requisicao)
+                : () -> ServidorItensCardapioComSocket.rotearRequisicao(requisicao));
+        }
+
+        /**
+         * Envia o "100 Continue" direto no canal (socket recém-lido, buffer de envio vazio:
+         * os 25 bytes cabem numa escrita). Se nem isso couber, desiste da conexão.
+         */
+        private boolean enviarContinue(SelectionKey key, Conexao conexao) {
+            try {
+                ByteBuffer continuacao = ByteBuffer.wrap(ServidorItensCardapioComSocket.CONTINUE_100);
+                MetricasServidor.bytesEnviados(conexao.canal.write(continuacao));
+                if (!continuacao.hasRemaining()) {
+                    return true;
+                }
+                LogServidor.warn("Não foi possível enviar 100 Continue para " + endereco(conexao.canal));
+            } catch (IOException e) {
+                LogServidor.warn("Erro ao enviar 100 Continue: " + e.getMessage());
+            }
+            fechar(key);
+            return false;
+        }
+
+        /**
+         * Entrega à importação os bytes de body já lidos; os grupos completos são gravados pelos
+         * workers. Se eles ficarem para trás, a leitura para (o TCP segura o cliente) até a fila de
+         * grupos baixar. Com o body completo, a resposta (gravação do último grupo e resumo) é
+         * montada no worker, como as demais.
+         */
+        private void receberBodyEmFluxo(SelectionKey key, Conexao conexao) {
+            ImportacaoLoteItens importacao = conexao.importacao;
+            if (!conexao.requisicao.entregarBody(importacao)) {
+                if (importacao.aguardarGravacao(() -> {
+                    importacoesLiberadas.add(conexao);
+                    selector.wakeup();
+                })) {
+                    // A espera é do servidor, não do cliente: sem prazo de body até retomar
+                    conexao.prazo.suspender();
+                    key.interestOps(0);
+                }
+                return;
+            }
+            conexao.importacao = null;
+            conexao.prazo.suspender();
+            key.interestOps(0);
+            RequisicaoHttp requisicao = conexao.requisicao;
+            despachar(conexao, () -> ServidorItensCardapioComSocket.concluirImportacaoLote(requisicao, importacao));
+        }
+
+        /**
+         * Entrega a requisição atual da conexão ao worker. O buffer do parser não é tocado
+         * pelo reator até a resposta voltar (interestOps(0)), então o worker lê direto dele.
+         *
+         * O tempo entre a entrega e o início no worker é a espera na fila do controle de admissão:
+         * leituras em massa que esperaram demais recebem 503 sem executar o handler.
+         */
+        private void despachar(Conexao conexao, Supplier<RespostaHttp> handler) {
+            RequisicaoHttp requisicao = conexao.requisicao;
+            int reqNum = numeroRequisicao.incrementAndGet();
+            int restantes = ServidorItensCardapioComSocket.KEEP_ALIVE_MAX_REQUISICOES - conexao.atendidas;
+            long despachadaEm = System.nanoTime();
+            try {
+                workers.execute(() -> {
+                    if (LogServidor.debugAtivo()) {
+                        LogServidor.debug("Processando requisição #" + reqNum + " (NIO)...");
+                    }
+
+                    ControleAdmissao admissao = ServidorItensCardapioComSocket.ADMISSAO;
+                    long espera = System.nanoTime() - despachadaEm;
+                    admissao.registrarEspera(espera);
+                    // Em sobrecarga a conexão é fechada após a resposta (ver ControleAdmissao)
+                    boolean manterConexao = conexao.manterConexao && !admissao.sobrecarregado();
+
+                    RespostaHttp resposta;
+                    try {
+                        if (admissao.descartar(conexao.rota, espera)) {
+                            resposta = admissao.respostaSobrecarga();
+                            manterConexao = false;
+                        } else {
+                            resposta = handler.get();
+                        }
+                    } catch (RuntimeException e) {
+                        LogServidor.error("Erro ao processar requisição #" + reqNum + ": " + e.getMessage());
+                        resposta = RespostaHttp.json(500, "Internal Server Error", "{\"erro\": \"Erro interno\"}");
+                    }
+
+                    // Aberto aqui, fora do reator; se o arquivo sumiu ou mudou, a resposta vira um 500
+                    FileChannel arquivo = null;
+                    if (resposta.emArquivo()) {
+                        try {
+                            arquivo = resposta.regiaoArquivo().abrir();
+                        } catch (IOException e) {
+                            resposta = ServidorItensCardapioComSocket.arquivoIndisponivel(e);
+                        }
+                    }
+
+                    byte[] cabecalho = ServidorItensCardapioComSocket.montarCabecalho(resposta, manterConexao, restantes);
+                    ByteBuffer escrita;
+                    if (resposta.emBlocos() || arquivo != null) {
+                        // Só os headers agora; os chunks (ou o arquivo) são enviados pelo reator durante a escrita
+                        escrita = ByteBuffer.wrap(cabecalho);
+                    } else {
+                        escrita = ByteBuffer.allocate(cabecalho.length + resposta.body().length);
+                        escrita.put(cabecalho).put(resposta.body()).flip();
+                    }
+                    ServidorItensCardapioComSocket.registrarResumo(requisicao, resposta);
+
+                    conexao.status = resposta.statusCode();
+                    conexao.manterConexao = manterConexao;
+                    conexao.corpoEmBlocos = resposta.corpoEmBlocos();
+                    conexao.arquivo = arquivo;
+                    if (arquivo != null) {
+                        conexao.posicaoArquivo = resposta.regiaoArquivo().inicio();
+                        conexao.fimArquivo = conexao.posicaoArquivo + resposta.regiaoArquivo().tamanho();
+                    }
+                    conexao.escrita = escrita;
+                    respostasProntas.add(conexao);
+                    selector.wakeup();
+                });
+            } catch (RejectedExecutionException rex) {
+                LogServidor.warn("Workers rejeitaram a tarefa: " + rex.getMessage() + ". Fechando conexão.");
+                abandonarRequisicao(conexao);
+                fecharCanal(conexao.canal);
+            }
+        }
+
+        private void escrever(SelectionKey key) {
+            Conexao conexao = (Conexao) key.attachment();
+            try {
+                int blocos = 0;
+                while (true) {
+                    MetricasServidor.bytesEnviados(conexao.canal.write(conexao.escrita));
+                    if (conexao.escrita.hasRemaining()) {
+                        return;
+                    }
+                    if (conexao.corpoEmBlocos == null) {
+                        if (conexao.arquivo != null && !transferirArquivo(conexao)) {
+                            return;
+                        }
+                        break;
+                    }
+                    if (++blocos > BLOCOS_POR_ESCRITA) {
+                        // Continua no próximo evento OP_WRITE, depois das outras conexões
+                        return;
+                    }
+                    conexao.escrita = proximoChunk(conexao);
+                }
+                conexao.escrita = null;
+                MetricasServidor.registrar(conexao.rota, conexao.status, conexao.inicioRequisicao);
+                conexao.inicioRequisicao = 0;
+                conexao.requisicao.concluir();
+                if (!conexao.manterConexao) {
+                    // Connection: close - mesma semântica do modo bloqueante
+                    fechar(key);
+                    return;
+                }
+                // Keep-alive: volta a ler e atende a próxima requisição já recebida, se houver
+                key.interestOps(SelectionKey.OP_READ);
+                tentarDespachar(key, conexao);
+            } catch (IOException e) {
+                LogServidor.warn("Erro ao escrever na conexão: " + e.getMessage());
+                fechar(key);
+            } catch (RuntimeException e) {
+                falhar(key, "escrever na conexão", e);
+            }
+        }
+
+        /**
+         * Falha inesperada ao tratar uma conexão (ex: importação em lote, geração de um bloco do body):
+         * encerra só ela, sem derrubar o reator que atende as demais. Uma resposta em blocos já
+         * iniciada fica sem o chunk final (o cliente percebe o body truncado) e a requisição conta como 500.
+         */
+        private void falhar(SelectionKey key, String operacao, RuntimeException e) {
+            LogServidor.error("Erro inesperado ao " + operacao + " no reator #" + indice + ": " + e);
+            Conexao conexao = (Conexao) key.attachment();
+            if (conexao.inicioRequisicao != 0) {
+                MetricasServidor.registrar(conexao.rota, 500, conexao.inicioRequisicao);
+                conexao.inicioRequisicao = 0;
+            }
+            fechar(key);
+        }
+
+        /**
+         * Envia o que o socket aceitar do arquivo; retorna true quando o trecho inteiro foi enviado
+         * (e o arquivo fechado), false para continuar no próximo OP_WRITE
+         */
+        private boolean transferirArquivo(Conexao conexao) throws IOException {
+            while (conexao.posicaoArquivo < conexao.fimArquivo) {
+                long enviados = conexao.arquivo.transferTo(conexao.posicaoArquivo,
+                    conexao.fimArquivo - conexao.posicaoArquivo, conexao.canal);
+                if (enviados == 0) {
+                    if (conexao.posicaoArquivo >= conexao.arquivo.size()) {
+                        throw new IOException("Arquivo truncado durante o envio");
+                    }
+                    // Buffer do socket cheio
+                    return false;
+                }
+                MetricasServidor.bytesEnviados(enviados);
+                conexao.posicaoArquivo += enviados;
+            }
+            fecharArquivo(conexao);
+            return true;
+        }
+
+        private void fecharArquivo(Conexao conexao) {
+            if (conexao.arquivo != null) {
+                try {
+                    conexao.arquivo.close();
+                } catch (IOException ignore) {
+                }
+                conexao.arquivo = null;
+            }
+        }
+
+        /**
+         * Gera o próximo bloco do body já enquadrado como chunk HTTP, reaproveitando o buffer da conexão.
+         * Depois do último bloco devolve o chunk vazio que encerra a resposta.
+         */
+        private ByteBuffer proximoChunk(Conexao conexao) {
+            ByteBuffer bloco = conexao.corpoEmBlocos.proximoBloco();
+            while (bloco != null && !bloco.hasRemaining()) {
+                // Um chunk vazio encerraria a resposta antes da hora
+                bloco = conexao.corpoEmBlocos.proximoBloco();
+            }
+            if (bloco == null) {
+                conexao.corpoEmBlocos = null;
+                conexao.chunk = null;
+                return ByteBuffer.wrap(ServidorItensCardapioComSocket.FIM_CHUNKED);
+            }
+            byte[] cabecalho = ServidorItensCardapioComSocket.cabecalhoChunk(bloco.remaining());
+            int necessario = cabecalho.length + bloco.remaining() + ServidorItensCardapioComSocket.FIM_LINHA.length;
+            if (conexao.chunk == null || conexao.chunk.capacity() < necessario) {
+                conexao.chunk = ByteBuffer.allocate(necessario);
+            }
+            conexao.chunk.clear();
+            conexao.chunk.put(cabecalho).put(bloco).put(ServidorItensCardapioComSocket.FIM_LINHA).flip();
+            return conexao.chunk;
+        }
+
+        /**
+         * Volta a ler o body das importações cuja fila de grupos baixou
+         */
+        private void retomarImportacoes() {
+            Conexao conexao;
+            while ((conexao = importacoesLiberadas.poll()) != null) {
+                SelectionKey key = conexao.canal.keyFor(selector);
+                if (key == null || !key.isValid() || conexao.importacao == null) {
+                    continue;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                conexao.prazo.acompanhar(conexao.requisicao);
+            }
+        }
+
+        /**
+         * Fecha as conexões cujo prazo (headers, body ou keep-alive) venceu na roda de temporização
+         */
+        private void fecharConexoesExpiradas() {
+            Conexao conexao;
+            while ((conexao = conexoesExpiradas.poll()) != null) {
+                SelectionKey key = conexao.canal.keyFor(selector);
+                if (key == null || !key.isValid()) {
+                    continue;
+                }
+                PrazoConexao.Fase fase = conexao.prazo.faseExpirada();
+                if (fase != PrazoConexao.Fase.OCIOSA) {
+                    LogServidor.warn("Prazo de leitura (" + fase + ") esgotado para " + endereco(conexao.canal));
+                }
+                MetricasServidor.conexaoExpirada(fase);
+                fechar(key);
+            }
+        }
+
+        private void fechar(SelectionKey key) {
+            if (key.attachment() instanceof Conexao conexao) {
+                if (conexao.importacao != null) {
+                    // Body interrompido: grava o que já foi recebido e devolve os IDs reservados (num worker)
+                    concluirImportacaoInterrompida(conexao.importacao);
+                    conexao.importacao = null;
+                }
+                abandonarRequisicao(conexao);
+                fecharArquivo(conexao);
+                conexao.prazo.cancelar();
+            }
+            key.cancel();
+            fecharCanal(key.channel());
+        }
+
+        private void concluirImportacaoInterrompida(ImportacaoLoteItens importacao) {
+            Runnable concluir = () -> {
+                try {
+                    importacao.concluir();
+                } catch (RuntimeException e) {
+                    LogServidor.error("Erro ao concluir importação interrompida: " + e);
+                }
+            };
+            try {
+                workers.execute(concluir);
+            } catch (RejectedExecutionException e) {
+                concluir.run();
+            }
+        }
+
+        /**
+         * Conexão fechada antes de a resposta da requisição em andamento ser escrita
+         */
+        private void abandonarRequisicao(Conexao conexao) {
+            if (conexao.inicioRequisicao != 0) {
+                MetricasServidor.requisicaoInterrompida();
+                conexao.inicioRequisicao = 0;
+            }
+        }
+
+        private void fechar() {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.channel() instanceof SocketChannel) {
+                        fecharCanal(key.channel());
+                    }
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException ignore) {
+            }
+        }
+    }
+
+    private static String endereco(SocketChannel canal) {
+        try {
+            return String.valueOf(canal.getRemoteAddress());
+        } catch (IOException e) {
+            return "?";
+        }
+    }
+
+    private static void fecharCanal(Channel canal) {
+        if (canal instanceof SocketChannel && canal.isOpen()) {
+            MetricasServidor.conexaoFechada();
+        }
+        try {
+            canal.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
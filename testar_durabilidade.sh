@@ -0,0 +1,170 @@
+#!/bin/bash
+
+# Teste de queda do ServidorItensCardapioComSocket com o log de escrita (WAL)
+#
+# 1. Inicia o servidor com um diretório de dados vazio
+# 2. Vários clientes fazem POST, PUT /preco e DELETE em paralelo, anotando cada escrita confirmada
+# 3. O processo do servidor é morto com kill -9 no meio da carga
+# 4. O servidor é reiniciado sobre o mesmo diretório (reproduzindo o log)
+# 5. Toda escrita confirmada antes da queda precisa estar lá
+#
+# Uso: ./testar_durabilidade.sh [segundos de carga] [clientes]
+# Classpath: variável CP (padrão: build/classes/java/main, gerado por ./gradlew build)
+# Opções extras da JVM: variável JAVA_OPTS (ex: JAVA_OPTS=-Dcardapio.wal.ativo=false para ver o teste falhar)
+
+SEGUNDOS=${1:-3}
+CLIENTES=${2:-16}
+CP=${CP:-build/classes/java/main}
+MODO=${MODO:-pool}
+BASE_URL="http://localhost:8000"
+
+# Cores para output
+GREEN='\033[0;32m'
+RED='\033[0;31m'
+NC='\033[0m'
+
+DADOS=$(mktemp -d)
+TRABALHO=$(mktemp -d)
+trap 'kill -9 $SERVIDOR 2>/dev/null; rm -rf "$DADOS" "$TRABALHO"' EXIT
+
+iniciar_servidor() {
+    java $JAVA_OPTS -Dcardapio.dados.diretorio="$DADOS" -Dcardapio.servidor.modo="$MODO" -Dcardapio.log.nivel=WARN \
+        -cp "$CP" mx.florinda.cardapio.ServidorItensCardapioComSocket >> "$TRABALHO/servidor.log" 2>&1 &
+    SERVIDOR=$!
+    for _ in $(seq 1 50); do
+        curl -s -o /dev/null "$BASE_URL/itens-cardapio/total" && return 0
+        sleep 0.1
+    done
+    echo -e "${RED}Servidor não iniciou (veja $TRABALHO/servidor.log)${NC}"
+    cat "$TRABALHO/servidor.log"
+    exit 1
+}
+
+cat > "$TRABALHO/carga.py" << 'EOF'
+import http.client, json, sys, threading
+
+clientes, saida = int(sys.argv[1]), sys.argv[2]
+eventos = []          # (tipo, thread, dados) na ordem em que cada thread os produziu
+trava = threading.Lock()
+
+def registrar(*evento):
+    with trava:
+        eventos.append(evento)
+
+def cliente(t):
+    conexao = http.client.HTTPConnection("localhost", 8000, timeout=10)
+    meus = []
+    n = 0
+    try:
+        while True:
+            n += 1
+            if n % 5 == 0 and meus:
+                item_id = meus.pop(0)
+                registrar("delete-tentado", t, item_id)
+                conexao.request("DELETE", f"/itens-cardapio/{item_id}")
+                r = conexao.getresponse(); r.read()
+                if r.status == 200:
+                    registrar("delete-ok", t, item_id)
+            elif n % 3 == 0 and meus:
+                item_id, preco = meus[-1], f"{n}.00"
+                registrar("preco-tentado", t, (item_id, preco))
+                conexao.request("PUT", f"/itens-cardapio/{item_id}/preco", json.dumps({"preco": preco}))
+                r = conexao.getresponse(); r.read()
+                if r.status == 200:
+                    registrar("preco-ok", t, (item_id, preco))
+            else:
+                nome = f"dur-{t}-{n}"
+                conexao.request("POST", "/itens-cardapio", json.dumps({"nome": nome, "preco": "1.00"}))
+                r = conexao.getresponse(); corpo = r.read()
+                if r.status == 201:
+                    item_id = json.loads(corpo)["id"]
+                    meus.append(item_id)
+                    registrar("post-ok", t, (item_id, nome))
+    except Exception:
+        pass  # servidor caiu
+
+threads = [threading.Thread(target=cliente, args=(t,)) for t in range(clientes)]
+for th in threads: th.start()
+for th in threads: th.join()
+json.dump(eventos, open(saida, "w"))
+EOF
+
+cat > "$TRABALHO/verificar.py" << 'EOF'
+import http.client, json, sys
+
+eventos = json.load(open(sys.argv[1]))
+conexao = http.client.HTTPConnection("localhost", 8000, timeout=10)
+
+def buscar(item_id):
+    conexao.request("GET", f"/itens-cardapio/{item_id}")
+    r = conexao.getresponse(); corpo = r.read()
+    return json.loads(corpo) if r.status == 200 else None
+
+criados, removidos, delete_tentado = {}, set(), set()
+precos = {}   # id -> (último preço confirmado, preços tentados depois dele)
+for tipo, t, dados in eventos:
+    if tipo == "post-ok":
+        criados[dados[0]] = dados[1]
+    elif tipo == "delete-tentado":
+        delete_tentado.add(dados)
+    elif tipo == "delete-ok":
+        removidos.add(dados)
+    elif tipo == "preco-tentado":
+        confirmado, tentados = precos.get(dados[0], ("1.00", []))
+        precos[dados[0]] = (confirmado, tentados + [dados[1]])
+    elif tipo == "preco-ok":
+        precos[dados[0]] = (dados[1], [])
+
+confirmadas = sum(1 for e in eventos if e[0].endswith("-ok"))
+perdidas = []
+for item_id, nome in criados.items():
+    item = buscar(item_id)
+    if item_id in removidos:
+        if item is not None:
+            perdidas.append(f"DELETE {item_id} confirmado, mas o item voltou")
+    elif item_id in delete_tentado:
+        continue  # DELETE em andamento na queda: pode ou não ter sido aplicado
+    elif item is None or item["nome"] != nome:
+        perdidas.append(f"POST {item_id} ({nome}) confirmado, mas o item sumiu")
+    elif item_id in precos:
+        confirmado, tentados = precos[item_id]
+        aceitos = {float(confirmado)} | {float(p) for p in tentados}
+        if float(item["preco"]) not in aceitos:
+            perdidas.append(f"PUT preço {item_id}: esperado {confirmado}, encontrado {item['preco']}")
+
+print(f"Escritas confirmadas antes da queda: {confirmadas}")
+print(f"Escritas confirmadas perdidas: {len(perdidas)}")
+for p in perdidas[:20]:
+    print("  " + p)
+sys.exit(1 if perdidas else 0)
+EOF
+
+echo "======================================"
+echo "Teste de queda com log de escrita (WAL)"
+echo "======================================"
+echo "Diretório de dados: $DADOS | Modo: $MODO | Clientes: $CLIENTES | Carga: ${SEGUNDOS}s"
+echo ""
+
+iniciar_servidor
+python3 "$TRABALHO/carga.py" "$CLIENTES" "$TRABALHO/eventos.json" &
+CARGA=$!
+sleep "$SEGUNDOS"
+
+echo "Derrubando o servidor com kill -9 durante a carga..."
+kill -9 $SERVIDOR
+wait $SERVIDOR 2>/dev/null
+wait $CARGA
+
+echo "Reiniciando o servidor sobre o mesmo log..."
+iniciar_servidor
+echo ""
+
+python3 "$TRABALHO/verificar.py" "$TRABALHO/eventos.json"
+RESULTADO=$?
+echo ""
+if [ $RESULTADO -eq 0 ]; then
+    echo -e "${GREEN}✓ Nenhuma escrita confirmada foi perdida${NC}"
+else
+    echo -e "${RED}✗ Escritas confirmadas foram perdidas${NC}"
+fi
+exit $RESULTADO
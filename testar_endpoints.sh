@@ -5,6 +5,13 @@
 # - GET /itens-cardapio
 # - GET /itens-cardapio/total
 # - POST /itens-cardapio
+# - GET /itens-cardapio?after={id}&limit={n} (paginação)
+# - GET /itens-cardapio?categoria={CATEGORIA} (filtro por categoria)
+# - GET /itens-cardapio/busca?q={texto} (busca textual)
+# - GET /itens-cardapio/faixa-preco e /itens-cardapio/promocoes (índices de preço)
+# - GET /metrics (métricas no formato do Prometheus)
+# - GET /health (health check)
+# - GET /cardapio.json (arquivo publicado, com Range)
 
 echo "======================================"
 echo "  Testando Endpoints do Servidor HTTP"
@@ -55,6 +62,17 @@ echo "Resposta:"
 curl -s "$BASE_URL/itens-cardapio" | python3 -m json.tool
 echo ""
 
+# Teste 1.1: GET condicional com If-None-Match
+print_section "Teste 1.1: GET /itens-cardapio com If-None-Match"
+echo "Descrição: Reenvia a ETag recebida e espera 304 sem body"
+echo ""
+ETAG=$(curl -s -D - -o /dev/null "$BASE_URL/itens-cardapio" | tr -d '\r' | sed -n 's/^ETag: //p')
+echo "ETag recebida: $ETAG"
+echo "Resposta esperada: 304 (Not Modified)"
+echo -n "Status: "
+curl -s -o /dev/null -w "%{http_code} (%{size_download} bytes de body)\n" -H "If-None-Match: $ETAG" "$BASE_URL/itens-cardapio"
+echo ""
+
 # Teste 2: GET /itens-cardapio/total - Retorna a quantidade de itens
 print_section "Teste 2: GET /itens-cardapio/total"
 echo "Descrição: Retorna a quantidade total de itens do cardápio"
@@ -151,6 +169,66 @@ echo "Resposta:"
 curl -s "$BASE_URL/itens-cardapio/5" | python3 -m json.tool
 echo ""
 
+# Teste 6.3: GET /itens-cardapio?limit={n} - Primeira página da listagem
+print_section "Teste 6.3: GET /itens-cardapio?limit=3 (Paginação)"
+echo "Descrição: Retorna os 3 primeiros itens e o cursor da próxima página"
+echo ""
+echo "Endpoint: GET /itens-cardapio?limit=3"
+echo ""
+echo "Resposta:"
+curl -s "$BASE_URL/itens-cardapio?limit=3" | python3 -m json.tool
+echo ""
+
+# Teste 6.4: GET /itens-cardapio?after={id}&limit={n} - Página seguinte pelo cursor
+print_section "Teste 6.4: GET /itens-cardapio?after=3&limit=3 (Paginação)"
+echo "Descrição: Retorna os itens com ID maior que 3 (proximoCursor da página anterior)"
+echo ""
+echo "Endpoint: GET /itens-cardapio?after=3&limit=3"
+echo ""
+echo "Resposta:"
+curl -s "$BASE_URL/itens-cardapio?after=3&limit=3" | python3 -m json.tool
+echo ""
+
+# Teste 6.5: GET /itens-cardapio?categoria={CATEGORIA} - Itens de uma categoria
+print_section "Teste 6.5: GET /itens-cardapio?categoria=BEBIDA (Filtro por categoria)"
+echo "Descrição: Retorna só as bebidas, lidas do índice de categorias (JSON em cache por categoria)"
+echo ""
+echo "Endpoint: GET /itens-cardapio?categoria=BEBIDA"
+echo ""
+echo "Resposta:"
+curl -s "$BASE_URL/itens-cardapio?categoria=BEBIDA" | python3 -m json.tool
+echo ""
+
+# Teste 6.6: GET /itens-cardapio/busca?q={texto} - Busca por nome e descrição
+print_section "Teste 6.6: GET /itens-cardapio/busca?q=cafe (Busca textual)"
+echo "Descrição: Busca sem diferenciar acentos e maiúsculas; \"cafe\" encontra \"Café\" e \"Cafezinho\" (prefixo)"
+echo ""
+echo "Endpoint: GET /itens-cardapio/busca?q=cafe&limit=5"
+echo ""
+echo "Resposta:"
+curl -s "$BASE_URL/itens-cardapio/busca?q=cafe&limit=5" | python3 -m json.tool
+echo ""
+
+# Teste 6.7: GET /itens-cardapio/faixa-preco?min={v}&max={v} - Faixa de preço
+print_section "Teste 6.7: GET /itens-cardapio/faixa-preco?min=10&max=20 (Faixa de preço)"
+echo "Descrição: Itens com preço entre R$10 e R$20, em ordem de preço (índice ordenado por preço)"
+echo ""
+echo "Endpoint: GET /itens-cardapio/faixa-preco?min=10&max=20"
+echo ""
+echo "Resposta:"
+curl -s "$BASE_URL/itens-cardapio/faixa-preco?min=10&max=20" | python3 -m json.tool
+echo ""
+
+# Teste 6.8: GET /itens-cardapio/promocoes?limit={n} - Promoções mais baratas
+print_section "Teste 6.8: GET /itens-cardapio/promocoes?limit=3 (Top N em promoção)"
+echo "Descrição: Os 3 itens em promoção com o menor preço com desconto (ordem=desconto: maiores descontos)"
+echo ""
+echo "Endpoint: GET /itens-cardapio/promocoes?limit=3"
+echo ""
+echo "Resposta:"
+curl -s "$BASE_URL/itens-cardapio/promocoes?limit=3" | python3 -m json.tool
+echo ""
+
 # Teste 7: DELETE /itens-cardapio/{id} - Remove um item por ID
 print_section "Teste 7: DELETE /itens-cardapio/6 (Removendo Taco)"
 echo "Descrição: Remove o item 'Taco' (ID: 6) do cardápio"
@@ -210,6 +288,26 @@ curl -s -X POST "$BASE_URL/itens-cardapio" \
     }' | python3 -m json.tool
 echo ""
 
+# Teste 11.1: Paginação com limit inválido (teste de erro 400)
+print_section "Teste 11.1: GET /itens-cardapio?limit=0 (Teste de Erro 400)"
+echo "Descrição: Testa a validação do tamanho da página"
+echo ""
+echo "Endpoint: GET /itens-cardapio?limit=0"
+echo ""
+echo "Resposta esperada: Erro 400 (Bad Request)"
+curl -s "$BASE_URL/itens-cardapio?limit=0" | python3 -m json.tool
+echo ""
+
+# Teste 11.2: Categoria inválida (teste de erro 400)
+print_section "Teste 11.2: GET /itens-cardapio?categoria=PIZZA (Teste de Erro 400)"
+echo "Descrição: Testa a validação da categoria"
+echo ""
+echo "Endpoint: GET /itens-cardapio?categoria=PIZZA"
+echo ""
+echo "Resposta esperada: Erro 400 (Bad Request) com as categorias válidas"
+curl -s "$BASE_URL/itens-cardapio?categoria=PIZZA" | python3 -m json.tool
+echo ""
+
 # Teste 12: GET de endpoint inexistente (teste de erro 404)
 print_section "Teste 12: GET de endpoint inexistente (Teste de Erro 404)"
 echo "Descrição: Testa o retorno 404 para endpoint não encontrado"
@@ -220,6 +318,61 @@ echo "Resposta esperada: Erro 404 (Not Found)"
 curl -s "$BASE_URL/endpoint-inexistente" | python3 -m json.tool
 echo ""
 
+# Teste 13: POST /itens-cardapio/lote - Importação em lote (NDJSON)
+print_section "Teste 13: POST /itens-cardapio/lote (NDJSON)"
+echo "Descrição: Importa vários itens numa requisição, um objeto JSON por linha"
+echo "           (também aceita um array JSON). Retorna o status de cada item."
+echo ""
+echo "Body enviado:"
+cat << 'EOF'
+{"nome": "Quesadilla", "descricao": "Tortilha com queijo", "categoria": "ENTRADA", "preco": "15.00"}
+{"nome": "Horchata", "descricao": "Bebida de arroz e canela", "categoria": "BEBIDA", "preco": "8.00", "precoComDesconto": "7.00"}
+{"descricao": "Item sem nome"}
+EOF
+echo ""
+echo "Resposta esperada: 200 com 2 itens criados e 1 erro (400)"
+curl -s -X POST "$BASE_URL/itens-cardapio/lote" \
+  -H "Content-Type: application/x-ndjson" \
+  --data-binary @- << 'EOF' | python3 -m json.tool
+{"nome": "Quesadilla", "descricao": "Tortilha com queijo", "categoria": "ENTRADA", "preco": "15.00"}
+{"nome": "Horchata", "descricao": "Bebida de arroz e canela", "categoria": "BEBIDA", "preco": "8.00", "precoComDesconto": "7.00"}
+{"descricao": "Item sem nome"}
+EOF
+echo ""
+
+# Teste 14: GET /metrics - Métricas do servidor (formato texto do Prometheus)
+print_section "Teste 14: GET /metrics (Métricas)"
+echo "Descrição: Requisições por rota e status, latência (histograma e p50/p99/p999),"
+echo "           bytes, conexões abertas e fila/workers do executor"
+echo ""
+echo "Endpoint: GET /metrics"
+echo ""
+echo "Resposta (sem os buckets do histograma):"
+curl -s "$BASE_URL/metrics" | grep -v "_bucket"
+echo ""
+
+# Teste 15: GET /health - Health check (nunca descartado pelo controle de admissão)
+print_section "Teste 15: GET /health (Health check)"
+echo "Descrição: Responde 200 inclusive em sobrecarga, quando leituras em massa recebem 503 com Retry-After"
+echo ""
+echo "Endpoint: GET /health"
+echo ""
+echo "Resposta:"
+curl -s "$BASE_URL/health" | python3 -m json.tool
+echo ""
+
+# Teste 16: GET /cardapio.json - Arquivo publicado pelo GeradorItensCardapioJSON, enviado com transferTo
+print_section "Teste 16: GET /cardapio.json com Range (Arquivo publicado)"
+echo "Descrição: Só os primeiros 64 bytes do arquivo (206 Partial Content com Content-Range)"
+echo ""
+echo "Endpoint: GET /cardapio.json"
+echo "Header: Range: bytes=0-63"
+echo ""
+echo "Resposta (headers e body):"
+curl -s -i -H "Range: bytes=0-63" "$BASE_URL/cardapio.json"
+echo ""
+echo ""
+
 # Resumo final
 print_section "Resumo dos Testes"
 echo -e "${GREEN}✓ Todos os testes foram executados com sucesso!${NC}"
@@ -230,12 +383,24 @@ echo "  2. GET    /itens-cardapio/total - Total de itens"
 echo "  3. GET    /itens-cardapio/{id}  - Buscar item por ID (NOVO!)"
 echo "  4. POST   /itens-cardapio       - Adicionar item"
 echo "  5. DELETE /itens-cardapio/{id}  - Remover item por ID"
+echo "  6. GET    /itens-cardapio?after={id}&limit={n} - Paginação por cursor"
+echo "  7. GET    /itens-cardapio com If-None-Match - GET condicional (304)"
+echo "  8. POST   /itens-cardapio/lote  - Importação em lote (array JSON ou NDJSON)"
+echo "  9. GET    /itens-cardapio?categoria={CATEGORIA} - Filtro por categoria"
+echo " 10. GET    /itens-cardapio/busca?q={texto} - Busca textual por nome e descrição"
+echo " 11. GET    /itens-cardapio/faixa-preco?min={v}&max={v} - Faixa de preço"
+echo " 12. GET    /itens-cardapio/promocoes?ordem={preco|desconto}&limit={n} - Top N em promoção"
+echo " 13. GET    /metrics              - Métricas (formato Prometheus)"
+echo " 14. GET    /health               - Health check"
+echo " 15. GET    /cardapio.json com Range - Arquivo publicado (206 Partial Content)"
 echo ""
 echo "Testes de erro realizados:"
 echo "  • GET com ID inexistente (404)"
 echo "  • DELETE com ID inexistente (404)"
 echo "  • DELETE com ID inválido (400)"
 echo "  • POST com JSON inválido (400)"
+echo "  • Paginação com limit inválido (400)"
+echo "  • Categoria inválida (400)"
 echo "  • GET de endpoint inexistente (404)"
 echo ""
 echo "Benefícios do ConcurrentSkipListMap:"
@@ -243,6 +408,7 @@ echo "  • Busca por ID: O(log n) - muito mais rápido!"
 echo "  • Remoção por ID: O(log n) - muito mais rápido!"
 echo "  • Thread-safe nativo - sem synchronized"
 echo "  • Itens sempre ordenados por ID"
+echo "  • Paginação por cursor via tailMap: O(log n + página)"
 echo ""
 echo "======================================"
 